@@ -0,0 +1,157 @@
+package oracle.data.cleanup;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按列存储的清理候选
+ * 候选ID和识别时间分别存为int和long，对象类型、所有者和状态在整个存储内字典编码为int，
+ * 只有对象名和原因保留为字符串。候选数量很大时，重复出现的类型、所有者、状态只保存一份，
+ * 也不再为每行创建包装对象和格式化的时间字符串
+ */
+public class CandidateStore {
+    
+    private static final ThreadLocal<SimpleDateFormat> TIME_FORMAT = new ThreadLocal<SimpleDateFormat>() {
+        @Override
+        protected SimpleDateFormat initialValue() {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+        }
+    };
+    
+    private final StringDictionary types = new StringDictionary();
+    private final StringDictionary owners = new StringDictionary();
+    private final StringDictionary statuses = new StringDictionary();
+    
+    /**
+     * 创建一个容量为capacity行的列块，列块共享本存储的字典
+     */
+    public Block newBlock(int capacity) {
+        return new Block(capacity);
+    }
+    
+    /**
+     * 字符串字典，为每个不同的值分配一个从0开始的编码，null编码为-1
+     */
+    static class StringDictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+        
+        synchronized int encode(String value) {
+            if (value == null) return -1;
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+        
+        synchronized String decode(int code) {
+            return code < 0 ? null : values.get(code);
+        }
+    }
+    
+    /**
+     * 一段连续候选的列数据，通常对应一页
+     * 由加载线程填充，填充完成后只读
+     */
+    public class Block {
+        private int size;
+        private int[] ids;
+        private int[] typeCodes;
+        private int[] ownerCodes;
+        private int[] statusCodes;
+        private long[] identifiedTimes;
+        private String[] names;
+        private String[] reasons;
+        
+        Block(int capacity) {
+            ids = new int[capacity];
+            typeCodes = new int[capacity];
+            ownerCodes = new int[capacity];
+            statusCodes = new int[capacity];
+            identifiedTimes = new long[capacity];
+            names = new String[capacity];
+            reasons = new String[capacity];
+        }
+        
+        /**
+         * 追加一行，超过容量时自动扩容
+         */
+        public void add(int candidateId, String objectType, String objectOwner, String objectName, 
+                        String reason, long identifiedTime, String status) {
+            if (size == ids.length) {
+                int capacity = Math.max(16, size * 2);
+                ids = Arrays.copyOf(ids, capacity);
+                typeCodes = Arrays.copyOf(typeCodes, capacity);
+                ownerCodes = Arrays.copyOf(ownerCodes, capacity);
+                statusCodes = Arrays.copyOf(statusCodes, capacity);
+                identifiedTimes = Arrays.copyOf(identifiedTimes, capacity);
+                names = Arrays.copyOf(names, capacity);
+                reasons = Arrays.copyOf(reasons, capacity);
+            }
+            ids[size] = candidateId;
+            typeCodes[size] = types.encode(objectType);
+            ownerCodes[size] = owners.encode(objectOwner);
+            statusCodes[size] = statuses.encode(status);
+            identifiedTimes[size] = identifiedTime;
+            names[size] = objectName;
+            reasons[size] = reason;
+            size++;
+        }
+        
+        public int size() {
+            return size;
+        }
+        
+        public int getCandidateId(int row) {
+            return ids[row];
+        }
+        
+        public String getObjectType(int row) {
+            return types.decode(typeCodes[row]);
+        }
+        
+        public String getObjectOwner(int row) {
+            return owners.decode(ownerCodes[row]);
+        }
+        
+        public String getObjectName(int row) {
+            return names[row];
+        }
+        
+        public String getReason(int row) {
+            return reasons[row];
+        }
+        
+        /**
+         * 识别时间(毫秒时间戳)
+         */
+        public long getIdentifiedTime(int row) {
+            return identifiedTimes[row];
+        }
+        
+        public String getStatus(int row) {
+            return statuses.decode(statusCodes[row]);
+        }
+        
+        public boolean isPending(int row) {
+            return "PENDING".equals(getStatus(row));
+        }
+        
+        /**
+         * 把一行还原为候选对象，只在需要单独传递某一行时使用
+         */
+        public CleanupCandidate toCandidate(int row) {
+            return new CleanupCandidate(ids[row], getObjectType(row), getObjectOwner(row), names[row], 
+                    reasons[row], TIME_FORMAT.get().format(new Date(identifiedTimes[row])), 
+                    getStatus(row));
+        }
+    }
+}
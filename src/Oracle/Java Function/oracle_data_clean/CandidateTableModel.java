@@ -0,0 +1,311 @@
+package oracle.data.cleanup;
+
+import java.sql.SQLException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * 清理候选的虚拟表格模型
+ * 只在表格需要显示某一行时按页加载数据，每页按键集分页从数据库读取，
+ * 内存中只保留最近使用的若干页，候选数量再大界面也不会卡顿。
+ * 每页以列块形式保存在CandidateStore中，表格直接从列中读取单元格
+ */
+public class CandidateTableModel extends AbstractTableModel {
+    private static final long serialVersionUID = 1L;
+    
+    public static final int PAGE_SIZE = 500;
+    private static final int MAX_CACHED_PAGES = 40;
+    private static final String LOADING_TEXT = "加载中...";
+    private static final String FAILED_TEXT = "加载失败: ";
+    // 加载失败的页等待后再重试，每次失败等待加倍
+    private static final long RETRY_DELAY_MILLIS = 2000;
+    private static final long MAX_RETRY_DELAY_MILLIS = 60000;
+    
+    private static final String[] COLUMNS = {"ID", "类型", "所有者", "名称", "原因", "识别时间", "状态"};
+    
+    /**
+     * 页加载失败回调，在事件分发线程中调用
+     */
+    public interface PageLoadListener {
+        
+        /**
+         * @param page 加载失败的页
+         * @param error 失败原因
+         * @param retryDelayMillis 该页在这么久之后再显示时才会重试，重新加载分页索引时立即重试
+         */
+        void onPageLoadFailed(int page, SQLException error, long retryDelayMillis);
+    }
+    
+    /**
+     * 一页最近一次加载失败的情况
+     */
+    private static class PageFailure {
+        final String message;
+        final int attempts;
+        final long retryAt;
+        
+        PageFailure(String message, int attempts, long retryAt) {
+            this.message = message;
+            this.attempts = attempts;
+            this.retryAt = retryAt;
+        }
+    }
+    
+    private final ExecutorService loader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "cleanup-candidate-loader");
+            t.setDaemon(true);
+            return t;
+        }
+    });
+    
+    // 识别时间只在事件分发线程中格式化
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+    
+    private CleanupEngine engine;
+    private CandidateStore store = new CandidateStore();
+    private volatile CleanupEngine.CandidatePageIndex index;
+    private int generation;
+    
+    // 已加载的页，按访问顺序淘汰
+    private final Map<Integer, CandidateStore.Block> pages =
+            new LinkedHashMap<Integer, CandidateStore.Block>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, CandidateStore.Block> eldest) {
+                    return size() > MAX_CACHED_PAGES;
+                }
+            };
+    private final Set<Integer> loading = new HashSet<>();
+    private final Map<Integer, PageFailure> failures = new HashMap<>();
+    private PageLoadListener pageLoadListener;
+    
+    /**
+     * 设置页加载失败回调，必须在事件分发线程中调用
+     */
+    public void setPageLoadListener(PageLoadListener listener) {
+        this.pageLoadListener = listener;
+    }
+    
+    /**
+     * 使用新的分页索引替换当前数据，必须在事件分发线程中调用
+     */
+    public void reset(CleanupEngine engine, CleanupEngine.CandidatePageIndex index) {
+        synchronized (this) {
+            this.engine = engine;
+            this.index = index;
+            this.store = new CandidateStore();
+            generation++;
+            pages.clear();
+            loading.clear();
+            failures.clear();
+        }
+        fireTableDataChanged();
+    }
+    
+    @Override
+    public int getRowCount() {
+        CleanupEngine.CandidatePageIndex current = index;
+        return current == null ? 0 : current.getTotalRows();
+    }
+    
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+    
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+    
+    @Override
+    public boolean isCellEditable(int row, int column) {
+        return false; // 表格不可编辑
+    }
+    
+    @Override
+    public Object getValueAt(int row, int column) {
+        CandidateStore.Block block;
+        PageFailure failure;
+        synchronized (this) {
+            block = pages.get(row / PAGE_SIZE);
+            failure = failures.get(row / PAGE_SIZE);
+        }
+        int offset = row % PAGE_SIZE;
+        if (block == null || offset >= block.size()) {
+            // 失败的页在等待期内显示失败原因，不反复请求数据库
+            if (failure != null && System.currentTimeMillis() < failure.retryAt) {
+                return column == 3 ? FAILED_TEXT + failure.message : null;
+            }
+            requestPage(row / PAGE_SIZE);
+            return column == 3 ? LOADING_TEXT : null;
+        }
+        switch (column) {
+            case 0: return block.getCandidateId(offset);
+            case 1: return block.getObjectType(offset);
+            case 2: return block.getObjectOwner(offset);
+            case 3: return block.getObjectName(offset);
+            case 4: return block.getReason(offset);
+            case 5: return timeFormat.format(new Date(block.getIdentifiedTime(offset)));
+            case 6: return block.getStatus(offset);
+            default: return null;
+        }
+    }
+    
+    /**
+     * 返回已加载的候选，所在页尚未加载时返回null
+     */
+    public synchronized CleanupCandidate getLoadedCandidate(int row) {
+        CandidateStore.Block block = pages.get(row / PAGE_SIZE);
+        int offset = row % PAGE_SIZE;
+        return block == null || offset >= block.size() ? null : block.toCandidate(offset);
+    }
+    
+    /**
+     * 返回指定行的候选，未加载的页同步加载，只能在后台线程中调用
+     */
+    public List<CleanupCandidate> getCandidates(int[] rows) throws SQLException {
+        List<CleanupCandidate> result = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            CandidateStore.Block block = getBlock(row / PAGE_SIZE);
+            int offset = row % PAGE_SIZE;
+            if (block != null && offset < block.size()) {
+                result.add(block.toCandidate(offset));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 返回指定行中状态为PENDING的候选ID，直接从列中读取，不创建候选对象；
+     * 未加载的页同步加载，只能在后台线程中调用
+     */
+    public List<Integer> getPendingIds(int[] rows) throws SQLException {
+        List<Integer> result = new ArrayList<>();
+        for (int row : rows) {
+            CandidateStore.Block block = getBlock(row / PAGE_SIZE);
+            int offset = row % PAGE_SIZE;
+            if (block != null && offset < block.size() && block.isPending(offset)) {
+                result.add(block.getCandidateId(offset));
+            }
+        }
+        return result;
+    }
+    
+    private CandidateStore.Block getBlock(int page) throws SQLException {
+        CandidateStore.Block block;
+        synchronized (this) {
+            block = pages.get(page);
+        }
+        if (block == null) {
+            loadPageNow(page);
+            synchronized (this) {
+                block = pages.get(page);
+            }
+        }
+        return block;
+    }
+    
+    private void loadPageNow(int page) throws SQLException {
+        CleanupEngine currentEngine;
+        CleanupEngine.CandidatePageIndex currentIndex;
+        CandidateStore currentStore;
+        int currentGeneration;
+        synchronized (this) {
+            currentEngine = engine;
+            currentIndex = index;
+            currentStore = store;
+            currentGeneration = generation;
+        }
+        if (currentIndex == null || page >= currentIndex.getPageCount()) return;
+        CandidateStore.Block block = currentEngine.loadCandidatePage(currentIndex, page, currentStore);
+        synchronized (this) {
+            if (currentGeneration == generation) {
+                pages.put(page, block);
+            }
+        }
+    }
+    
+    /**
+     * 异步加载一页，加载完成后通知表格重绘该页
+     */
+    private void requestPage(final int page) {
+        final CleanupEngine currentEngine;
+        final CleanupEngine.CandidatePageIndex currentIndex;
+        final CandidateStore currentStore;
+        final int currentGeneration;
+        synchronized (this) {
+            if (index == null || page >= index.getPageCount() || !loading.add(page)) return;
+            currentEngine = engine;
+            currentIndex = index;
+            currentStore = store;
+            currentGeneration = generation;
+        }
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                CandidateStore.Block block = null;
+                SQLException error = null;
+                try {
+                    block = currentEngine.loadCandidatePage(currentIndex, page, currentStore);
+                } catch (SQLException e) {
+                    error = e;
+                }
+                final CandidateStore.Block loaded = block;
+                final SQLException loadError = error;
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        long retryDelay = 0;
+                        synchronized (CandidateTableModel.this) {
+                            if (currentGeneration != generation) return;
+                            loading.remove(page);
+                            if (loadError != null) {
+                                PageFailure previous = failures.get(page);
+                                int attempts = previous == null ? 1 : previous.attempts + 1;
+                                retryDelay = Math.min(MAX_RETRY_DELAY_MILLIS, 
+                                        RETRY_DELAY_MILLIS << Math.min(attempts - 1, 5));
+                                failures.put(page, new PageFailure(loadError.getMessage(), attempts, 
+                                        System.currentTimeMillis() + retryDelay));
+                            } else {
+                                failures.remove(page);
+                                pages.put(page, loaded);
+                            }
+                        }
+                        if (loadError != null) {
+                            if (pageLoadListener != null) {
+                                pageLoadListener.onPageLoadFailed(page, loadError, retryDelay);
+                            }
+                            int first = page * PAGE_SIZE;
+                            int last = Math.min(getRowCount(), first + PAGE_SIZE) - 1;
+                            if (last >= first) {
+                                fireTableRowsUpdated(first, last);
+                            }
+                            return;
+                        }
+                        int first = page * PAGE_SIZE;
+                        int last = Math.min(getRowCount(), first + loaded.size()) - 1;
+                        if (last >= first) {
+                            fireTableRowsUpdated(first, last);
+                        }
+                    }
+                });
+            }
+        });
+    }
+}
@@ -0,0 +1,58 @@
+package oracle.data.cleanup;
+
+/**
+ * 清理候选
+ * 对应cleanup_candidates表中的一行记录
+ */
+public class CleanupCandidate {
+    private final int candidateId;
+    private final String objectType;
+    private final String objectOwner;
+    private final String objectName;
+    private final String reason;
+    private final String identifiedTime;
+    private final String status;
+    
+    public CleanupCandidate(int candidateId, String objectType, String objectOwner, String objectName, 
+                            String reason, String identifiedTime, String status) {
+        this.candidateId = candidateId;
+        this.objectType = objectType;
+        this.objectOwner = objectOwner;
+        this.objectName = objectName;
+        this.reason = reason;
+        this.identifiedTime = identifiedTime;
+        this.status = status;
+    }
+    
+    public int getCandidateId() {
+        return candidateId;
+    }
+    
+    public String getObjectType() {
+        return objectType;
+    }
+    
+    public String getObjectOwner() {
+        return objectOwner;
+    }
+    
+    public String getObjectName() {
+        return objectName;
+    }
+    
+    public String getReason() {
+        return reason;
+    }
+    
+    public String getIdentifiedTime() {
+        return identifiedTime;
+    }
+    
+    public String getStatus() {
+        return status;
+    }
+    
+    public boolean isPending() {
+        return "PENDING".equals(status);
+    }
+}
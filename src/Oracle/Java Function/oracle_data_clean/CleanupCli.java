@@ -0,0 +1,608 @@
+package oracle.data.cleanup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.text.DecimalFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Oracle数据库垃圾数据清理工具命令行入口
+ * 不加载任何图形界面组件，适合在无X环境的数据库主机或cron中运行
+ *
+ * 用法: CleanupCli [连接选项] <命令> [参数]
+ */
+public class CleanupCli {
+    
+    private static final String USAGE =
+            "用法: CleanupCli [连接选项] <命令> [参数]\n" +
+            "\n" +
+            "连接选项:\n" +
+            "  --url <jdbcUrl>        JDBC URL，指定后忽略主机/端口/SID\n" +
+            "  --host <主机>          默认 localhost\n" +
+            "  --port <端口>          默认 1521\n" +
+            "  --sid <SID>            默认 ORCL\n" +
+            "  --user <用户名>        默认 system\n" +
+            "  --password <密码>      未指定时读取环境变量 CLEANUP_PASSWORD\n" +
+            "  --timing               在标准错误输出中打印命令耗时\n" +
+            "\n" +
+            "命令:\n" +
+            "  info [--refresh]       显示数据库信息，--refresh 忽略有效期重新加载字典快照\n" +
+            "  analyze [--auto-approve]  运行分析，继续上次未完成的清理周期；Ctrl-C在下一个检查点停止\n" +
+            "  cancel                 请求取消数据库中正在运行的清理周期\n" +
+            "  candidates             列出待处理和已批准的清理候选\n" +
+            "  approve <id>...        批准清理候选\n" +
+            "  reject <id>...         拒绝清理候选\n" +
+            "  execute                执行已批准的清理\n" +
+            "  report [天数]          生成报告，默认30天\n" +
+            "  backup <OWNER.TABLE>...  把表流式导出到本地压缩文件\n" +
+            "  restore <备份目录> [OWNER.TABLE]  从导出的备份恢复表，默认恢复到原表\n" +
+            "  metrics                以Prometheus文本格式输出数据库端最近一次清理周期的阶段耗时\n" +
+            "  export candidates|log [文件] [--format csv|jsonl] [--gzip] [--from 日期] [--to 日期]\n" +
+            "        [--status S1,S2] [--type T1,T2]\n" +
+            "                         流式导出清理候选或清理日志，未指定文件时写到标准输出；\n" +
+            "                         格式和压缩默认按文件扩展名(.csv/.jsonl，.gz)推断，日期格式yyyy-MM-dd，--to不含当天\n" +
+            "  fleet <目标列表文件> [--analyze] [--auto-approve] [--execute] [--report 天数]\n" +
+            "        [--parallel N] [--connections N] [--sort name|elapsed|candidates|reclaimed|free]\n" +
+            "                         同时处理多个数据库并合并输出结果，忽略连接选项；\n" +
+            "                         目标列表每行: 名称 JDBC_URL或主机:端口:SID 用户名 [密码环境变量名]\n";
+    
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+    
+    /**
+     * 解析参数并执行命令
+     * @return 进程退出码，0表示成功
+     */
+    static int run(String[] args) {
+        String url = null;
+        String host = "localhost";
+        String port = "1521";
+        String sid = "ORCL";
+        String user = "system";
+        String pass = System.getenv("CLEANUP_PASSWORD");
+        boolean timing = false;
+        
+        int i = 0;
+        while (i < args.length && args[i].startsWith("--")) {
+            String option = args[i];
+            if ("--timing".equals(option)) {
+                timing = true;
+                i++;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                System.err.println("缺少选项值: " + option);
+                return 2;
+            }
+            String value = args[i + 1];
+            switch (option) {
+                case "--url": url = value; break;
+                case "--host": host = value; break;
+                case "--port": port = value; break;
+                case "--sid": sid = value; break;
+                case "--user": user = value; break;
+                case "--password": pass = value; break;
+                default:
+                    System.err.println("未知选项: " + option);
+                    System.err.print(USAGE);
+                    return 2;
+            }
+            i += 2;
+        }
+        
+        if (i >= args.length) {
+            System.err.print(USAGE);
+            return 2;
+        }
+        if ("fleet".equals(args[i])) {
+            List<String> params = new ArrayList<>();
+            for (int j = i + 1; j < args.length; j++) {
+                params.add(args[j]);
+            }
+            long start = System.nanoTime();
+            try {
+                return runFleet(params);
+            } finally {
+                if (timing) {
+                    System.err.println("fleet 耗时: " + (System.nanoTime() - start) / 1000000 + " ms");
+                }
+            }
+        }
+        if (pass == null || pass.isEmpty()) {
+            System.err.println("请通过 --password 或环境变量 CLEANUP_PASSWORD 提供密码");
+            return 2;
+        }
+        
+        String command = args[i];
+        List<String> params = new ArrayList<>();
+        for (int j = i + 1; j < args.length; j++) {
+            params.add(args[j]);
+        }
+        
+        if (url == null) {
+            url = CleanupEngine.buildJdbcUrl(host, port, sid);
+        }
+        
+        long start = System.nanoTime();
+        try (CleanupEngine engine = new CleanupEngine(url, user, pass)) {
+            engine.connect();
+            return execute(engine, command, params);
+        } catch (SQLException e) {
+            System.err.println("执行命令时发生错误: " + e.getMessage());
+            return 1;
+        } catch (NumberFormatException e) {
+            System.err.println("参数不是有效的数字: " + e.getMessage());
+            return 2;
+        } finally {
+            if (timing) {
+                System.err.println(command + " 耗时: " + (System.nanoTime() - start) / 1000000 + " ms");
+            }
+        }
+    }
+    
+    private static int execute(CleanupEngine engine, String command, List<String> params) throws SQLException {
+        DecimalFormat df = new DecimalFormat("#,##0.00");
+        switch (command) {
+            case "info": {
+                if (params.contains("--refresh")) {
+                    engine.refreshDictionarySnapshots();
+                }
+                CleanupEngine.DatabaseInfo info = engine.loadDatabaseInfo();
+                System.out.println("数据库: " + info.getDbName());
+                System.out.println("数据库大小: " +
+                        (info.getDbSizeGB() < 0 ? "未知" : df.format(info.getDbSizeGB()) + " GB"));
+                System.out.println("空闲空间: " +
+                        (info.getFreeSpaceGB() < 0 ? "未知" : df.format(info.getFreeSpaceGB()) + " GB"));
+                System.out.println("上次清理时间: " + info.getLastCleanup());
+                System.out.println("已节省空间: " + df.format(info.getSpaceSavedBytes() / 1024 / 1024) + " MB");
+                System.out.println("字典快照: " +
+                        DictionarySnapshotCache.formatAge(info.getSnapshotTime(), System.currentTimeMillis()));
+                return 0;
+            }
+            case "analyze": {
+                boolean autoApprove = params.contains("--auto-approve");
+                // 进程被中断时请求数据库端在下一个检查点停止，下次analyze从检查点继续
+                final CleanupEngine cycleEngine = engine;
+                Thread cancelHook = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            cycleEngine.cancelAnalysis();
+                            System.err.println("已请求取消清理周期，下次运行从检查点继续");
+                        } catch (SQLException e) {
+                            System.err.println("请求取消清理周期失败: " + e.getMessage());
+                        }
+                    }
+                }, "cleanup-cancel-1");
+                Runtime.getRuntime().addShutdownHook(cancelHook);
+                try {
+                    engine.runAnalysis(autoApprove, new ProgressListener() {
+                        @Override
+                        public void onProgress(int completed, int total, String message) {
+                            System.err.println(message);
+                        }
+                    });
+                } catch (SQLException e) {
+                    if (engine.isCancellation(e)) {
+                        System.err.println("分析已取消，下次运行从检查点继续");
+                        return 1;
+                    }
+                    throw e;
+                } finally {
+                    try {
+                        Runtime.getRuntime().removeShutdownHook(cancelHook);
+                    } catch (IllegalStateException e) {
+                        // 已经在退出过程中
+                    }
+                }
+                System.out.println("数据库分析已完成" + (autoApprove ? "并自动批准了清理候选" : ""));
+                return 0;
+            }
+            case "cancel": {
+                engine.requestCycleCancel();
+                System.out.println("已请求取消清理周期，周期在下一个检查点停止");
+                return 0;
+            }
+            case "candidates": {
+                List<CleanupCandidate> candidates = engine.listCandidates();
+                for (CleanupCandidate c : candidates) {
+                    System.out.println(c.getCandidateId() + "\t" + c.getObjectType() + "\t" +
+                            (c.getObjectOwner() == null ? "" : c.getObjectOwner()) + "\t" +
+                            c.getObjectName() + "\t" + c.getStatus() + "\t" +
+                            c.getIdentifiedTime() + "\t" + c.getReason());
+                }
+                System.out.println("共" + candidates.size() + "个候选项");
+                return 0;
+            }
+            case "approve":
+            case "reject": {
+                List<Integer> ids = parseIds(params);
+                if (ids.isEmpty()) {
+                    System.err.println("请指定候选ID");
+                    return 2;
+                }
+                if ("approve".equals(command)) {
+                    System.out.println("已批准" + engine.approveCandidates(ids) + "个候选项");
+                } else {
+                    System.out.println("已拒绝" + engine.rejectCandidates(ids) + "个候选项");
+                }
+                return 0;
+            }
+            case "execute": {
+                int failed = 0;
+                int deferred = 0;
+                List<CleanupExecutor.Result> results = engine.executeApprovedCleanup(new CleanupListener() {
+                    @Override
+                    public void onCandidateStarted(CleanupCandidate candidate) {
+                    }
+                    
+                    @Override
+                    public void onCandidateFinished(CleanupExecutor.Result result, int completed, int total) {
+                        CleanupCandidate c = result.getCandidate();
+                        System.err.println("[" + completed + "/" + total + "] " + result.getOutcome() + " " +
+                                c.getObjectType() + " " + c.getObjectName() + " (" + result.getElapsedMillis() + " ms)" +
+                                (result.getMessage() == null ? "" : ": " + result.getMessage()));
+                    }
+                    
+                    @Override
+                    public void onWarning(String message) {
+                        System.err.println("警告: " + message);
+                    }
+                });
+                for (CleanupExecutor.Result result : results) {
+                    if (result.getOutcome() == CleanupExecutor.Outcome.DEFERRED) {
+                        deferred++;
+                    } else if (result.getOutcome() != CleanupExecutor.Outcome.CLEANED) {
+                        failed++;
+                    }
+                }
+                System.out.println("已清理" + (results.size() - failed - deferred) + "个候选项，失败" + failed + "个" +
+                        (deferred == 0 ? "" : "，超出时间预算推迟" + deferred + "个"));
+                return failed == 0 ? 0 : 1;
+            }
+            case "report": {
+                int daysBack = params.isEmpty() ? 30 : Integer.parseInt(params.get(0));
+                engine.generateReport(daysBack, new ReportListener() {
+                    @Override
+                    public void onReportLines(List<String> lines) {
+                        for (String line : lines) {
+                            System.out.println(line);
+                        }
+                        System.out.flush();
+                    }
+                });
+                return 0;
+            }
+            case "backup": {
+                if (params.isEmpty()) {
+                    System.err.println("请指定要备份的表(OWNER.TABLE)");
+                    return 2;
+                }
+                TableBackup backup = engine.createTableBackup();
+                int failed = backup.exportTables(params, engine.getBackupParallelDegree(), new ProgressListener() {
+                    @Override
+                    public void onProgress(int completed, int total, String message) {
+                        System.err.println("[" + completed + "/" + total + "] " + message);
+                    }
+                });
+                System.out.println("已备份" + (params.size() - failed) + "张表，失败" + failed + "张");
+                return failed == 0 ? 0 : 1;
+            }
+            case "restore": {
+                if (params.isEmpty()) {
+                    System.err.println("请指定备份目录");
+                    return 2;
+                }
+                String owner = null;
+                String table = null;
+                if (params.size() > 1) {
+                    int dot = params.get(1).indexOf('.');
+                    if (dot <= 0) {
+                        System.err.println("目标表格式应为OWNER.TABLE: " + params.get(1));
+                        return 2;
+                    }
+                    owner = params.get(1).substring(0, dot);
+                    table = params.get(1).substring(dot + 1);
+                }
+                try {
+                    long rows = engine.createTableBackup().restoreTable(Paths.get(params.get(0)), owner, table);
+                    System.out.println("已恢复" + rows + "行");
+                    return 0;
+                } catch (IOException e) {
+                    System.err.println("读取备份失败: " + e.getMessage());
+                    return 1;
+                }
+            }
+            case "metrics": {
+                engine.loadLastRun();
+                try {
+                    Writer out = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+                    engine.getMetrics().writePrometheus(out);
+                    out.flush();
+                } catch (IOException e) {
+                    System.err.println("输出指标失败: " + e.getMessage());
+                    return 1;
+                }
+                return 0;
+            }
+            case "export":
+                return runExport(engine, params);
+            default:
+                System.err.println("未知命令: " + command);
+                System.err.print(USAGE);
+                return 2;
+        }
+    }
+    
+    /**
+     * 导出清理候选或清理日志，过滤条件在数据库端执行
+     */
+    private static int runExport(CleanupEngine engine, List<String> params) throws SQLException {
+        CleanupExport.Source source = null;
+        String file = null;
+        String format = null;
+        boolean gzip = false;
+        Date from = null;
+        Date to = null;
+        List<String> statuses = null;
+        List<String> types = null;
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        dateFormat.setLenient(false);
+        try {
+            for (int i = 0; i < params.size(); i++) {
+                String param = params.get(i);
+                switch (param) {
+                    case "--format": format = optionValue(params, ++i, param); break;
+                    case "--gzip": gzip = true; break;
+                    case "--from": from = dateFormat.parse(optionValue(params, ++i, param)); break;
+                    case "--to": to = dateFormat.parse(optionValue(params, ++i, param)); break;
+                    case "--status": statuses = Arrays.asList(optionValue(params, ++i, param).split(",")); break;
+                    case "--type": types = Arrays.asList(optionValue(params, ++i, param).split(",")); break;
+                    default:
+                        if (param.startsWith("--") || file != null) {
+                            System.err.println("未知参数: " + param);
+                            return 2;
+                        }
+                        if (source == null) {
+                            source = "candidates".equals(param) ? CleanupExport.Source.CANDIDATES
+                                    : "log".equals(param) ? CleanupExport.Source.LOG : null;
+                            if (source == null) {
+                                System.err.println("导出的数据应为candidates或log: " + param);
+                                return 2;
+                            }
+                        } else {
+                            file = param;
+                        }
+                        break;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        } catch (ParseException e) {
+            System.err.println("日期格式应为yyyy-MM-dd: " + e.getMessage());
+            return 2;
+        }
+        if (source == null) {
+            System.err.println("请指定导出candidates或log");
+            return 2;
+        }
+        
+        CleanupExport.Format exportFormat;
+        if (format != null) {
+            try {
+                exportFormat = CleanupExport.Format.valueOf(format.toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                System.err.println("导出格式应为csv或jsonl: " + format);
+                return 2;
+            }
+        } else {
+            exportFormat = file == null ? CleanupExport.Format.CSV : CleanupExport.Format.forFileName(file);
+        }
+        CleanupExport.Filter filter = new CleanupExport.Filter(from, to, statuses, types);
+        
+        CleanupExport export = engine.createExport();
+        try {
+            long rows;
+            if (file == null || "-".equals(file)) {
+                rows = export.export(source, filter, exportFormat, gzip, System.out);
+            } else if (gzip && !CleanupExport.isGzipFile(file)) {
+                try (OutputStream out = Files.newOutputStream(Paths.get(file))) {
+                    rows = export.export(source, filter, exportFormat, true, out);
+                }
+            } else {
+                rows = export.export(source, filter, exportFormat, Paths.get(file));
+            }
+            System.err.println("已导出" + rows + "行");
+            return 0;
+        } catch (IOException e) {
+            System.err.println("写入导出文件失败: " + e.getMessage());
+            return 1;
+        }
+    }
+    
+    /**
+     * 批量处理目标列表中的数据库，输出每个目标的汇总和合并后的清理候选
+     * 各目标的密码取自目标列表中指定的环境变量，不使用连接选项
+     */
+    private static int runFleet(List<String> params) {
+        String file = null;
+        boolean analyze = false;
+        boolean autoApprove = false;
+        boolean execute = false;
+        int reportDays = 0;
+        int parallel = CleanupFleet.DEFAULT_MAX_CONCURRENT_TARGETS;
+        int connections = CleanupFleet.DEFAULT_CONNECTIONS_PER_TARGET;
+        String sort = "name";
+        try {
+            for (int i = 0; i < params.size(); i++) {
+                String param = params.get(i);
+                switch (param) {
+                    case "--analyze": analyze = true; break;
+                    case "--auto-approve": analyze = true; autoApprove = true; break;
+                    case "--execute": execute = true; break;
+                    case "--report": reportDays = Integer.parseInt(optionValue(params, ++i, param)); break;
+                    case "--parallel": parallel = Integer.parseInt(optionValue(params, ++i, param)); break;
+                    case "--connections": connections = Integer.parseInt(optionValue(params, ++i, param)); break;
+                    case "--sort": sort = optionValue(params, ++i, param); break;
+                    default:
+                        if (param.startsWith("--") || file != null) {
+                            System.err.println("未知参数: " + param);
+                            return 2;
+                        }
+                        file = param;
+                        break;
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e instanceof NumberFormatException ? "参数不是有效的数字: " + e.getMessage() : e.getMessage());
+            return 2;
+        }
+        if (file == null) {
+            System.err.println("请指定目标列表文件");
+            return 2;
+        }
+        Comparator<CleanupFleet.TargetResult> order = resultOrder(sort);
+        if (order == null) {
+            System.err.println("未知排序列: " + sort);
+            return 2;
+        }
+        
+        List<CleanupFleet.TargetResult> results;
+        try {
+            CleanupFleet fleet = new CleanupFleet(CleanupFleet.loadTargets(Paths.get(file)), parallel, connections);
+            results = fleet.run(analyze, autoApprove, execute, reportDays, new FleetListener() {
+                @Override
+                public void onTargetProgress(CleanupFleet.Target target, String message) {
+                    System.err.println("[" + target.getName() + "] " + message);
+                }
+                
+                @Override
+                public void onTargetFinished(CleanupFleet.TargetResult result, int completed, int total) {
+                    System.err.println("[" + completed + "/" + total + "] " + result.getTarget().getName() + " " +
+                            (result.isSucceeded() ? "完成" : "失败: " + result.getError()) +
+                            " (" + result.getElapsedMillis() + " ms)");
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("读取目标列表失败: " + e.getMessage());
+            return 2;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 1;
+        }
+        
+        DecimalFormat df = new DecimalFormat("#,##0.00");
+        List<CleanupFleet.TargetResult> sorted = new ArrayList<>(results);
+        Collections.sort(sorted, order);
+        System.out.println("目标\t数据库\t大小(GB)\t空闲(GB)\t待处理\t已批准\t已清理\t失败\t已取消\t推迟\t回收(MB)\t耗时(ms)\t状态");
+        int failedTargets = 0;
+        for (CleanupFleet.TargetResult r : sorted) {
+            if (!r.isSucceeded()) failedTargets++;
+            System.out.println(r.getTarget().getName() + "\t" + (r.getDbName() == null ? "" : r.getDbName()) + "\t" +
+                    (r.getDbSizeGB() < 0 ? "" : df.format(r.getDbSizeGB())) + "\t" +
+                    (r.getFreeSpaceGB() < 0 ? "" : df.format(r.getFreeSpaceGB())) + "\t" +
+                    r.getPendingCount() + "\t" + r.getApprovedCount() + "\t" +
+                    r.getCleaned() + "\t" + r.getFailed() + "\t" + r.getCancelled() + "\t" + r.getDeferred() + "\t" +
+                    df.format(r.getBytesReclaimed() / 1024.0 / 1024) + "\t" + r.getElapsedMillis() + "\t" +
+                    (r.isSucceeded() ? "成功" : "失败: " + r.getError()));
+        }
+        System.out.println();
+        List<CleanupFleet.TargetCandidate> candidates = CleanupFleet.mergeCandidates(sorted);
+        for (CleanupFleet.TargetCandidate tc : candidates) {
+            CleanupCandidate c = tc.getCandidate();
+            System.out.println(tc.getTargetName() + "\t" + c.getCandidateId() + "\t" + c.getObjectType() + "\t" +
+                    (c.getObjectOwner() == null ? "" : c.getObjectOwner()) + "\t" +
+                    c.getObjectName() + "\t" + c.getStatus() + "\t" +
+                    c.getIdentifiedTime() + "\t" + c.getReason());
+        }
+        System.out.println("共" + results.size() + "个目标，失败" + failedTargets + "个，合计" + candidates.size() + "个候选项");
+        for (CleanupFleet.TargetResult r : sorted) {
+            if (r.getReport() != null) {
+                System.out.println();
+                System.out.println("===== " + r.getTarget().getName() + " =====");
+                System.out.print(r.getReport());
+            }
+        }
+        return failedTargets == 0 ? 0 : 1;
+    }
+    
+    private static String optionValue(List<String> params, int index, String option) {
+        if (index >= params.size()) {
+            throw new IllegalArgumentException("缺少选项值: " + option);
+        }
+        return params.get(index);
+    }
+    
+    /**
+     * 汇总表的排序方式，数值列从大到小
+     */
+    private static Comparator<CleanupFleet.TargetResult> resultOrder(String column) {
+        switch (column) {
+            case "name":
+                return new Comparator<CleanupFleet.TargetResult>() {
+                    @Override
+                    public int compare(CleanupFleet.TargetResult a, CleanupFleet.TargetResult b) {
+                        return a.getTarget().getName().compareTo(b.getTarget().getName());
+                    }
+                };
+            case "elapsed":
+                return new Comparator<CleanupFleet.TargetResult>() {
+                    @Override
+                    public int compare(CleanupFleet.TargetResult a, CleanupFleet.TargetResult b) {
+                        return Long.compare(b.getElapsedMillis(), a.getElapsedMillis());
+                    }
+                };
+            case "candidates":
+                return new Comparator<CleanupFleet.TargetResult>() {
+                    @Override
+                    public int compare(CleanupFleet.TargetResult a, CleanupFleet.TargetResult b) {
+                        return Integer.compare(b.getCandidateCount(), a.getCandidateCount());
+                    }
+                };
+            case "reclaimed":
+                return new Comparator<CleanupFleet.TargetResult>() {
+                    @Override
+                    public int compare(CleanupFleet.TargetResult a, CleanupFleet.TargetResult b) {
+                        return Long.compare(b.getBytesReclaimed(), a.getBytesReclaimed());
+                    }
+                };
+            case "free":
+                return new Comparator<CleanupFleet.TargetResult>() {
+                    @Override
+                    public int compare(CleanupFleet.TargetResult a, CleanupFleet.TargetResult b) {
+                        return Double.compare(b.getFreeSpaceGB(), a.getFreeSpaceGB());
+                    }
+                };
+            default:
+                return null;
+        }
+    }
+    
+    private static List<Integer> parseIds(List<String> params) {
+        List<Integer> ids = new ArrayList<>();
+        for (String param : params) {
+            for (String id : param.split(",")) {
+                if (!id.trim().isEmpty()) {
+                    ids.add(Integer.valueOf(id.trim()));
+                }
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,1180 @@
+package oracle.data.cleanup;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Array;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 无界面的清理引擎
+ * 封装连接、分析、候选审核、执行清理和报告生成，图形界面和命令行共用此引擎，
+ * 不依赖AWT/Swing，可在无显示环境或cron中直接运行
+ */
+public class CleanupEngine implements AutoCloseable {
+    
+    private static final String DRIVER_CLASS = "oracle.jdbc.driver.OracleDriver";
+    private static final String ID_LIST_TYPE = "CLEANUP_ID_LIST";
+    
+    // 连接池默认参数
+    public static final int DEFAULT_POOL_SIZE = 4;
+    public static final int MIN_POOL_SIZE = 2;
+    private static final long POOL_BORROW_TIMEOUT_MILLIS = 30000;
+    private static final long POOL_IDLE_TIMEOUT_MILLIS = 5 * 60 * 1000;
+    private static final int POOL_STATEMENT_CACHE_SIZE = 20;
+    
+    // 报告每次从数据库读取的行数
+    private static final int REPORT_FETCH_SIZE = 500;
+    
+    private static final double GIGABYTE = 1024.0 * 1024 * 1024;
+    // 字典快照文件目录，可通过系统属性覆盖
+    private static final String SNAPSHOT_DIR_PROPERTY = "oracle.data.cleanup.snapshot.dir";
+    
+    // 流式表备份默认参数
+    private static final int DEFAULT_BACKUP_FETCH_SIZE = 5000;
+    private static final int DEFAULT_BACKUP_MAX_MB_PER_SEC = 50;
+    
+    // 导出候选和日志时每次读取的行数，可通过EXPORT_FETCH_SIZE配置修改
+    private static final int DEFAULT_EXPORT_FETCH_SIZE = 10000;
+    
+    // 仪表盘每项指标的默认查询超时(秒)，可通过DASHBOARD_QUERY_TIMEOUT配置修改
+    private static final int DEFAULT_DASHBOARD_QUERY_TIMEOUT = 10;
+    // 等待指标结果时在查询超时之外额外等待的时间，覆盖借连接和网络往返
+    private static final long DASHBOARD_WAIT_MARGIN_MILLIS = 5000;
+    
+    /**
+     * 清理周期被取消时数据库端抛出的错误号(ORA-20030)
+     */
+    public static final int CYCLE_CANCELLED_ERROR = 20030;
+    
+    /**
+     * 请求取消时没有匹配的运行中清理周期时数据库端抛出的错误号(ORA-20036)
+     */
+    public static final int NO_RUNNING_CYCLE_ERROR = 20036;
+    
+    // 数据库连接信息
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+    private final int poolSize;
+    private final CleanupMetrics metrics;
+    private ConnectionPool pool;
+    private ObjectName metricsName;
+    private volatile Path metricsFile;
+    private DictionarySnapshotCache dictionaryCache;
+    private ExecutorService dashboardExecutor;
+    private volatile int dashboardQueryTimeout = DEFAULT_DASHBOARD_QUERY_TIMEOUT;
+    
+    // 正在运行的分析是否已请求取消，以及正在进行的客户端统计信息收集
+    private volatile boolean cycleCancelled;
+    // 正在运行的分析所属的清理周期，没有时为0
+    private volatile long runningCycleId;
+    private volatile StatisticsCollector runningStatistics;
+    
+    /**
+     * 数据库概要信息
+     * 各项指标由不同线程并发写入，字段均为volatile
+     */
+    public static class DatabaseInfo {
+        
+        /**
+         * 仪表盘指标，每项独立获取
+         */
+        public enum Metric {
+            DB_NAME, DB_SIZE, FREE_SPACE, LAST_CLEANUP, SPACE_SAVED
+        }
+        
+        private volatile String dbName = "未知";
+        private volatile double dbSizeGB = -1;
+        private volatile double freeSpaceGB = -1;
+        private volatile long snapshotTime;
+        private volatile String lastCleanup = "未知";
+        private volatile double spaceSavedBytes = 0;
+        
+        /**
+         * 记录一个字典快照的加载时间，保留最早的一个
+         */
+        private synchronized void noteSnapshot(long loadedAt) {
+            if (snapshotTime == 0 || loadedAt < snapshotTime) {
+                snapshotTime = loadedAt;
+            }
+        }
+        
+        public String getDbName() {
+            return dbName;
+        }
+        
+        /**
+         * 数据库大小(GB)，未知时返回负数
+         */
+        public double getDbSizeGB() {
+            return dbSizeGB;
+        }
+        
+        /**
+         * 数据文件中的空闲空间(GB)，未知时返回负数
+         */
+        public double getFreeSpaceGB() {
+            return freeSpaceGB;
+        }
+        
+        /**
+         * 大小信息所用字典快照中最早的加载时间(毫秒时间戳)
+         */
+        public long getSnapshotTime() {
+            return snapshotTime;
+        }
+        
+        public String getLastCleanup() {
+            return lastCleanup;
+        }
+        
+        public double getSpaceSavedBytes() {
+            return spaceSavedBytes;
+        }
+    }
+    
+    /**
+     * 候选分页索引
+     * 记录候选总数以及每一页第一行的排序键(priority, identified_time, candidate_id)
+     */
+    public static class CandidatePageIndex {
+        private final int pageSize;
+        private final int totalRows;
+        private final List<Object[]> pageStarts;
+        
+        CandidatePageIndex(int pageSize, int totalRows, List<Object[]> pageStarts) {
+            this.pageSize = pageSize;
+            this.totalRows = totalRows;
+            this.pageStarts = pageStarts;
+        }
+        
+        public int getPageSize() {
+            return pageSize;
+        }
+        
+        public int getTotalRows() {
+            return totalRows;
+        }
+        
+        public int getPageCount() {
+            return pageStarts.size();
+        }
+        
+        Object[] getPageStart(int page) {
+            return pageStarts.get(page);
+        }
+    }
+    
+    public CleanupEngine(String jdbcUrl, String username, String password) {
+        this(jdbcUrl, username, password, DEFAULT_POOL_SIZE);
+    }
+    
+    /**
+     * @param poolSize 连接池最大连接数，决定可同时执行的数据库操作数；至少为2，分析期间一个连接持有清理周期锁
+     */
+    public CleanupEngine(String jdbcUrl, String username, String password, int poolSize) {
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+        this.poolSize = Math.max(MIN_POOL_SIZE, poolSize);
+        this.metrics = new CleanupMetrics(username.toUpperCase() + "@" + jdbcUrl);
+    }
+    
+    /**
+     * 根据主机、端口和SID构建JDBC URL
+     */
+    public static String buildJdbcUrl(String host, String port, String sid) {
+        return "jdbc:oracle:thin:@" + host + ":" + port + ":" + sid;
+    }
+    
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+    
+    public String getUsername() {
+        return username;
+    }
+    
+    /**
+     * 连接到数据库
+     * 创建连接池并借出一个连接验证连接信息
+     */
+    public synchronized void connect() throws SQLException {
+        if (pool != null) return;
+        // 加载Oracle JDBC驱动，其他URL(如基准测试的替身数据库)由各自注册的驱动处理
+        if (jdbcUrl.startsWith("jdbc:oracle:")) {
+            try {
+                Class.forName(DRIVER_CLASS);
+            } catch (ClassNotFoundException e) {
+                throw new SQLException("找不到Oracle JDBC驱动: " + DRIVER_CLASS, e);
+            }
+        }
+        ConnectionPool newPool = new ConnectionPool(jdbcUrl, username, password, poolSize, 
+                POOL_BORROW_TIMEOUT_MILLIS, POOL_IDLE_TIMEOUT_MILLIS, POOL_STATEMENT_CACHE_SIZE);
+        newPool.setMetrics(metrics);
+        try {
+            newPool.borrow().close();
+            pool = newPool;
+        } catch (SQLException e) {
+            newPool.close();
+            throw e;
+        }
+        dictionaryCache = new DictionarySnapshotCache(this, snapshotFile());
+        dictionaryCache.open();
+        applyClientConfig();
+        dashboardExecutor = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger seq = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "cleanup-dashboard-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        registerMetrics();
+    }
+    
+    /**
+     * 把运行指标注册到平台MBeanServer，同一目标已注册时(如同一进程中的另一个引擎)跳过
+     */
+    private void registerMetrics() {
+        try {
+            ObjectName name = new ObjectName("oracle.data.cleanup:type=CleanupMetrics,name="
+                    + ObjectName.quote(metrics.getTarget()));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (!server.isRegistered(name)) {
+                server.registerMBean(metrics, name);
+                metricsName = name;
+            }
+        } catch (JMException e) {
+            metrics.recordWarning("jmx", "注册JMX运行指标失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 运行指标，连接前后都可用，断开重连后继续累计
+     */
+    public CleanupMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * 记录一个阶段的耗时，配置了METRICS_FILE时随即写出指标文件
+     * @param start 阶段开始时的System.nanoTime()
+     */
+    private void endPhase(String phase, long start, long items, long bytes, boolean failed) {
+        metrics.recordPhase(phase, System.nanoTime() - start, items, bytes, failed);
+        publishMetrics();
+    }
+    
+    /**
+     * 把运行指标写入METRICS_FILE配置的Prometheus文本文件，未配置时不写
+     * 写入失败不影响清理操作
+     */
+    public void publishMetrics() {
+        Path file = metricsFile;
+        if (file == null) return;
+        try {
+            metrics.writePrometheusFile(file);
+        } catch (IOException e) {
+            metrics.recordWarning("metrics_file", "写入指标文件失败: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * 字典快照文件，每个连接URL和用户一个文件
+     */
+    private Path snapshotFile() {
+        String dir = System.getProperty(SNAPSHOT_DIR_PROPERTY, 
+                Paths.get(System.getProperty("user.home"), ".oracle_data_clean", "snapshots").toString());
+        String key = Integer.toHexString((jdbcUrl + "|" + username.toUpperCase()).hashCode());
+        return Paths.get(dir, key + ".snap");
+    }
+    
+    /**
+     * 一次读取客户端使用的配置：DICT_CACHE_TTL_*覆盖各视图的快照有效期(秒)，
+     * DASHBOARD_QUERY_TIMEOUT为仪表盘每项查询的超时(秒)，METRICS_FILE为Prometheus指标文件的路径。
+     * 配置表不存在或配置无效时使用默认值
+     */
+    private void applyClientConfig() {
+        List<String[]> configs;
+        try {
+            configs = loadConfig();
+        } catch (SQLException e) {
+            return;
+        }
+        for (String[] config : configs) {
+            if (config[1] == null) continue;
+            if ("METRICS_FILE".equals(config[0])) {
+                metricsFile = config[1].trim().isEmpty() ? null : Paths.get(config[1].trim());
+                continue;
+            }
+            try {
+                if ("DASHBOARD_QUERY_TIMEOUT".equals(config[0])) {
+                    dashboardQueryTimeout = Math.max(1, Integer.parseInt(config[1].trim()));
+                    continue;
+                }
+                for (DictionarySnapshotCache.View view : DictionarySnapshotCache.View.values()) {
+                    if (view.getTtlConfigName().equals(config[0])) {
+                        dictionaryCache.setTtlSeconds(view, Long.parseLong(config[1].trim()));
+                    }
+                }
+            } catch (NumberFormatException e) {
+                // 配置无效时使用默认值
+            }
+        }
+    }
+    
+    /**
+     * 字典快照缓存，尚未连接时返回null
+     */
+    public synchronized DictionarySnapshotCache getDictionaryCache() {
+        return dictionaryCache;
+    }
+    
+    /**
+     * 忽略有效期，重新加载所有字典快照
+     */
+    public void refreshDictionarySnapshots() throws SQLException {
+        DictionarySnapshotCache cache = getDictionaryCache();
+        if (cache == null) {
+            throw new SQLException("尚未连接数据库");
+        }
+        cache.refresh(true);
+    }
+    
+    public synchronized boolean isConnected() {
+        return pool != null;
+    }
+    
+    /**
+     * 从连接池借出一个连接，调用方负责关闭以归还连接
+     */
+    public Connection borrowConnection() throws SQLException {
+        ConnectionPool current;
+        synchronized (this) {
+            current = pool;
+        }
+        if (current == null) {
+            throw new SQLException("尚未连接数据库");
+        }
+        return current.borrow();
+    }
+    
+    /**
+     * 加载数据库信息
+     * 数据库大小和空闲空间取自字典快照，快照的加载时间见{@link DatabaseInfo#getSnapshotTime()}
+     */
+    public DatabaseInfo loadDatabaseInfo() throws SQLException {
+        return loadDatabaseInfo(null);
+    }
+    
+    /**
+     * 并发加载数据库信息
+     * 每项指标使用单独的连接和查询超时，总耗时取决于最慢的一项而不是各项之和。
+     * 上次清理时间和已节省空间在清理框架的表或函数不存在时保持默认值；
+     * 其他指标失败或超时时，在所有指标结束后抛出第一个错误
+     * @param listener 每项指标结束时回调，可为null
+     */
+    public DatabaseInfo loadDatabaseInfo(DashboardListener listener) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            DatabaseInfo info = fetchDatabaseInfo(listener);
+            failed = false;
+            return info;
+        } finally {
+            endPhase("dashboard", start, -1, 0, failed);
+        }
+    }
+    
+    private DatabaseInfo fetchDatabaseInfo(final DashboardListener listener) throws SQLException {
+        final DictionarySnapshotCache cache;
+        final ExecutorService executor;
+        synchronized (this) {
+            cache = dictionaryCache;
+            executor = dashboardExecutor;
+        }
+        if (cache == null) {
+            throw new SQLException("尚未连接数据库");
+        }
+        final DatabaseInfo info = new DatabaseInfo();
+        final int timeout = dashboardQueryTimeout;
+        Map<DatabaseInfo.Metric, Callable<Void>> tasks = new EnumMap<>(DatabaseInfo.Metric.class);
+        tasks.put(DatabaseInfo.Metric.DB_NAME, new Callable<Void>() {
+            @Override
+            public Void call() throws SQLException {
+                try (Connection conn = borrowConnection();
+                     PreparedStatement stmt = conn.prepareStatement("SELECT SYS_CONTEXT('USERENV', 'DB_NAME') FROM DUAL")) {
+                    stmt.setQueryTimeout(timeout);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            info.dbName = rs.getString(1);
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+        // 字典快照未过期时不访问数据库。快照查询不设超时，超过整体期限时仪表盘先返回，
+        // 查询完成后快照仍会进入缓存供下次使用
+        tasks.put(DatabaseInfo.Metric.DB_SIZE, new Callable<Void>() {
+            @Override
+            public Void call() throws SQLException {
+                DictionarySnapshotCache.Snapshot dataFiles = cache.get(DictionarySnapshotCache.View.DATA_FILES);
+                info.dbSizeGB = Math.round(dataFiles.sum(3) * 100.0 / GIGABYTE) / 100.0;
+                info.noteSnapshot(dataFiles.getLoadedAt());
+                return null;
+            }
+        });
+        tasks.put(DatabaseInfo.Metric.FREE_SPACE, new Callable<Void>() {
+            @Override
+            public Void call() throws SQLException {
+                DictionarySnapshotCache.Snapshot freeSpace = cache.get(DictionarySnapshotCache.View.FREE_SPACE);
+                info.freeSpaceGB = Math.round(freeSpace.sum(1) * 100.0 / GIGABYTE) / 100.0;
+                info.noteSnapshot(freeSpace.getLoadedAt());
+                return null;
+            }
+        });
+        tasks.put(DatabaseInfo.Metric.LAST_CLEANUP, new Callable<Void>() {
+            @Override
+            public Void call() throws SQLException {
+                try (Connection conn = borrowConnection();
+                     PreparedStatement stmt = conn.prepareStatement(
+                             "SELECT TO_CHAR(MAX(operation_time), 'YYYY-MM-DD HH24:MI:SS') " +
+                             "FROM cleanup_log WHERE operation_type = 'CLEANUP' AND status = 'COMPLETED'")) {
+                    stmt.setQueryTimeout(timeout);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next() && rs.getString(1) != null) {
+                            info.lastCleanup = rs.getString(1);
+                        }
+                    }
+                }
+                return null;
+            }
+        });
+        tasks.put(DatabaseInfo.Metric.SPACE_SAVED, new Callable<Void>() {
+            @Override
+            public Void call() throws SQLException {
+                try (Connection conn = borrowConnection();
+                     CallableStatement cstmt = conn.prepareCall("{? = call db_cleanup.get_space_savings}")) {
+                    cstmt.setQueryTimeout(timeout);
+                    cstmt.registerOutParameter(1, Types.NUMERIC);
+                    cstmt.execute();
+                    info.spaceSavedBytes = cstmt.getDouble(1);
+                }
+                return null;
+            }
+        });
+        
+        Map<DatabaseInfo.Metric, Future<Void>> futures = new EnumMap<>(DatabaseInfo.Metric.class);
+        for (final Map.Entry<DatabaseInfo.Metric, Callable<Void>> task : tasks.entrySet()) {
+            futures.put(task.getKey(), executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    try {
+                        task.getValue().call();
+                    } catch (Exception e) {
+                        if (listener != null) listener.onMetricFailed(task.getKey(), e);
+                        throw e;
+                    }
+                    if (listener != null) listener.onMetricLoaded(task.getKey(), info);
+                    return null;
+                }
+            }));
+        }
+        
+        // 查询超时之外再加一段余量作为整体期限，驱动没有响应超时(如连接挂起)时也能返回
+        long deadline = System.currentTimeMillis() + timeout * 1000L + DASHBOARD_WAIT_MARGIN_MILLIS;
+        SQLException firstError = null;
+        for (Map.Entry<DatabaseInfo.Metric, Future<Void>> entry : futures.entrySet()) {
+            DatabaseInfo.Metric metric = entry.getKey();
+            SQLException error = null;
+            try {
+                entry.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                entry.getValue().cancel(true);
+                error = new SQLTimeoutException("获取仪表盘指标 " + metric + " 超时");
+                if (listener != null) listener.onMetricFailed(metric, error);
+            } catch (ExecutionException e) {
+                error = e.getCause() instanceof SQLException ? (SQLException) e.getCause()
+                        : new SQLException("获取仪表盘指标 " + metric + " 失败", e.getCause());
+            } catch (InterruptedException e) {
+                for (Future<Void> future : futures.values()) {
+                    future.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new SQLException("加载数据库信息被中断", e);
+            }
+            // 清理框架的表或函数可能不存在，忽略这两项的错误
+            if (error != null && firstError == null
+                    && metric != DatabaseInfo.Metric.LAST_CLEANUP && metric != DatabaseInfo.Metric.SPACE_SAVED) {
+                firstError = error;
+            }
+        }
+        if (firstError != null) {
+            throw firstError;
+        }
+        return info;
+    }
+    
+    /**
+     * 加载配置
+     * 每行依次为配置名称、配置值、描述
+     */
+    public List<String[]> loadConfig() throws SQLException {
+        List<String[]> configData = new ArrayList<>();
+        try (Connection conn = borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT config_name, config_value, description FROM cleanup_config ORDER BY config_id");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                configData.add(new String[] {
+                        rs.getString("config_name"), 
+                        rs.getString("config_value"), 
+                        rs.getString("description")
+                });
+            }
+        }
+        return configData;
+    }
+    
+    /**
+     * 保存配置
+     * 所有配置项在同一个事务中批量更新
+     */
+    public void saveConfig(Map<String, String> values) throws SQLException {
+        try (Connection conn = borrowConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "UPDATE cleanup_config SET config_value = ?, last_updated = SYSTIMESTAMP, " +
+                    "updated_by = ? WHERE config_name = ?")) {
+                for (Map.Entry<String, String> entry : values.entrySet()) {
+                    pstmt.setString(1, entry.getValue());
+                    pstmt.setString(2, username);
+                    pstmt.setString(3, entry.getKey());
+                    pstmt.addBatch();
+                }
+                pstmt.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+    
+    /**
+     * 加载状态为PENDING或APPROVED的清理候选
+     */
+    public List<CleanupCandidate> listCandidates() throws SQLException {
+        List<CleanupCandidate> candidates = new ArrayList<>();
+        try (Connection conn = borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT candidate_id, object_type, object_owner, object_name, " +
+                     "reason, TO_CHAR(identified_time, 'YYYY-MM-DD HH24:MI:SS'), status " +
+                     "FROM cleanup_candidates " +
+                     "WHERE status IN ('PENDING', 'APPROVED') " +
+                     "ORDER BY priority, identified_time, candidate_id")) {
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    candidates.add(new CleanupCandidate(rs.getInt(1), rs.getString(2), rs.getString(3), 
+                            rs.getString(4), rs.getString(5), rs.getString(6), rs.getString(7)));
+                }
+            }
+        }
+        return candidates;
+    }
+    
+    /**
+     * 加载候选分页索引
+     * 一次查询得到候选总数和每页起始键，之后每页都可以独立地按键集分页加载
+     */
+    public CandidatePageIndex loadCandidatePageIndex(int pageSize) throws SQLException {
+        List<Object[]> pageStarts = new ArrayList<>();
+        int totalRows = 0;
+        try (Connection conn = borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT priority, identified_time, candidate_id, total_rows FROM (" +
+                     "  SELECT priority, identified_time, candidate_id, " +
+                     "         ROW_NUMBER() OVER (ORDER BY priority, identified_time, candidate_id) rn, " +
+                     "         COUNT(*) OVER () total_rows " +
+                     "  FROM cleanup_candidates " +
+                     "  WHERE status IN ('PENDING', 'APPROVED')) " +
+                     "WHERE MOD(rn - 1, ?) = 0 " +
+                     "ORDER BY rn")) {
+            stmt.setInt(1, pageSize);
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    pageStarts.add(new Object[] {rs.getInt(1), rs.getTimestamp(2), rs.getInt(3)});
+                    totalRows = rs.getInt(4);
+                }
+            }
+        }
+        return new CandidatePageIndex(pageSize, totalRows, pageStarts);
+    }
+    
+    /**
+     * 按键集分页加载一页候选到列块
+     * 从该页起始键开始按(priority, identified_time, candidate_id)顺序读取，不使用OFFSET
+     * @param store 列块所属的候选存储，类型、所有者和状态在存储内共享字典
+     */
+    public CandidateStore.Block loadCandidatePage(CandidatePageIndex index, int page, CandidateStore store)
+            throws SQLException {
+        Object[] start = index.getPageStart(page);
+        int priority = (Integer) start[0];
+        Timestamp identifiedTime = (Timestamp) start[1];
+        int candidateId = (Integer) start[2];
+        
+        CandidateStore.Block block = store.newBlock(index.getPageSize());
+        try (Connection conn = borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT * FROM (" +
+                     "  SELECT candidate_id, object_type, object_owner, object_name, " +
+                     "         reason, identified_time, status " +
+                     "  FROM cleanup_candidates " +
+                     "  WHERE status IN ('PENDING', 'APPROVED') " +
+                     "  AND (priority > ? OR (priority = ? AND (identified_time > ? " +
+                     "       OR (identified_time = ? AND candidate_id >= ?)))) " +
+                     "  ORDER BY priority, identified_time, candidate_id) " +
+                     "WHERE ROWNUM <= ?")) {
+            stmt.setInt(1, priority);
+            stmt.setInt(2, priority);
+            stmt.setTimestamp(3, identifiedTime);
+            stmt.setTimestamp(4, identifiedTime);
+            stmt.setInt(5, candidateId);
+            stmt.setInt(6, index.getPageSize());
+            stmt.setFetchSize(index.getPageSize());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Timestamp time = rs.getTimestamp(6);
+                    block.add(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4), 
+                            rs.getString(5), time == null ? 0 : time.getTime(), rs.getString(7));
+                }
+            }
+        }
+        return block;
+    }
+    
+    /**
+     * 批准清理候选
+     * 所有ID通过一次数组绑定调用提交，数据库端只提交一次
+     * @return 实际批准的候选数
+     */
+    public int approveCandidates(List<Integer> candidateIds) throws SQLException {
+        return callWithIdList("{call approve_cleanup_candidates(?, ?)}", candidateIds);
+    }
+    
+    /**
+     * 拒绝清理候选
+     * 所有ID通过一次数组绑定调用提交，数据库端只提交一次
+     * @return 实际拒绝的候选数
+     */
+    public int rejectCandidates(List<Integer> candidateIds) throws SQLException {
+        return callWithIdList("{call reject_cleanup_candidates(?, ?)}", candidateIds);
+    }
+    
+    private int callWithIdList(String call, List<Integer> candidateIds) throws SQLException {
+        if (candidateIds.isEmpty()) return 0;
+        try (Connection conn = borrowConnection();
+             CallableStatement cstmt = conn.prepareCall(call)) {
+            Array ids = createIdList(conn, candidateIds);
+            try {
+                cstmt.setArray(1, ids);
+                cstmt.registerOutParameter(2, Types.NUMERIC);
+                cstmt.execute();
+                return cstmt.getInt(2);
+            } finally {
+                ids.free();
+            }
+        }
+    }
+    
+    /**
+     * 创建cleanup_id_list类型的数组参数
+     * 通过反射调用OracleConnection.createOracleArray，编译时不依赖Oracle JDBC驱动；
+     * 非Oracle连接使用标准的Connection.createArrayOf
+     */
+    private Array createIdList(Connection conn, List<Integer> candidateIds) throws SQLException {
+        int[] values = new int[candidateIds.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = candidateIds.get(i);
+        }
+        if (!jdbcUrl.startsWith("jdbc:oracle:")) {
+            return conn.createArrayOf(ID_LIST_TYPE, candidateIds.toArray());
+        }
+        try {
+            Class<?> oracleConnection = Class.forName("oracle.jdbc.OracleConnection");
+            Method createArray = oracleConnection.getMethod("createOracleArray", String.class, Object.class);
+            return (Array) createArray.invoke(conn.unwrap(oracleConnection), ID_LIST_TYPE, values);
+        } catch (InvocationTargetException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException("创建ID数组失败: " + e.getCause(), e.getCause());
+        } catch (ReflectiveOperationException e) {
+            throw new SQLException("当前JDBC驱动不支持数组绑定，请使用ojdbc7或更高版本", e);
+        }
+    }
+    
+    /**
+     * 读取单个配置值，配置不存在时返回null
+     */
+    public String getConfigValue(String configName) throws SQLException {
+        try (Connection conn = borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT config_value FROM cleanup_config WHERE config_name = ?")) {
+            stmt.setString(1, configName);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+    
+    /**
+     * 在客户端并行收集统计信息
+     * 是否只处理过期的表和并行度分别由STATS_STALE_ONLY和STATS_PARALLEL_DEGREE配置决定，
+     * 并行度不超过连接池大小减一，为界面其他操作保留一个连接(分析期间再减去持有清理周期锁的连接)
+     * @return 处理的表数
+     */
+    public int collectStatistics(ProgressListener listener) throws SQLException {
+        return collectStatistics(null, listener);
+    }
+    
+    /**
+     * @param analyzedBefore 只收集在此之前收集过或从未收集过统计信息的表，为null时不限制
+     */
+    private int collectStatistics(Timestamp analyzedBefore, ProgressListener listener) throws SQLException {
+        long start = System.nanoTime();
+        int tables = -1;
+        try {
+            boolean staleOnly = "TRUE".equalsIgnoreCase(getConfigValue("STATS_STALE_ONLY"));
+            // 为界面其他操作保留一个连接，分析期间还有一个连接持有清理周期锁
+            int reserved = runningCycleId != 0 ? 2 : 1;
+            int degree = Math.max(1, Math.min(getIntConfigValue("STATS_PARALLEL_DEGREE", 1), poolSize - reserved));
+            StatisticsCollector collector = new StatisticsCollector(this, staleOnly, degree, analyzedBefore, listener);
+            runningStatistics = collector;
+            if (cycleCancelled) {
+                collector.cancel();
+            }
+            try {
+                tables = collector.collect();
+            } finally {
+                runningStatistics = null;
+            }
+            return tables;
+        } finally {
+            endPhase("collect_statistics", start, tables, 0, tables < 0);
+        }
+    }
+    
+    /**
+     * 读取整数配置值，配置不存在或无效时返回默认值
+     */
+    private int getIntConfigValue(String configName, int defaultValue) throws SQLException {
+        String value = getConfigValue(configName);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                // 配置无效时使用默认值
+            }
+        }
+        return defaultValue;
+    }
+    
+    /**
+     * 运行分析
+     * @param autoApprove 是否自动批准并执行识别出的清理候选
+     */
+    public void runAnalysis(boolean autoApprove) throws SQLException {
+        runAnalysis(autoApprove, null);
+    }
+    
+    /**
+     * 运行分析
+     * 先打开清理周期，有可继续的未完成周期时沿用它的检查点；周期还没有完成统计信息收集时，
+     * 在客户端并行收集统计信息(跳过周期开始后已收集过的表)并回调进度，记录检查点后执行跳过统计信息收集的清理周期，
+     * 数据库端跳过检查点之前的阶段。
+     * 调用{@link #cancelAnalysis()}取消后抛出SQLException，可用{@link #isCancellation(SQLException)}判断
+     * @param autoApprove 是否自动批准并执行识别出的清理候选
+     * @param listener 统计信息收集进度回调，可为null
+     */
+    public void runAnalysis(boolean autoApprove, ProgressListener listener) throws SQLException {
+        cycleCancelled = false;
+        String lastPhase = null;
+        Timestamp runStarted = null;
+        // open_cycle的会话持有清理周期锁，整个分析在这个连接上运行，结束时释放锁
+        try (Connection cycleConn = borrowConnection()) {
+            try {
+                try (CallableStatement cstmt = cycleConn.prepareCall("{? = call db_cleanup.open_cycle(?)}")) {
+                    cstmt.registerOutParameter(1, Types.NUMERIC);
+                    cstmt.setString(2, autoApprove ? "Y" : "N");
+                    cstmt.execute();
+                    runningCycleId = cstmt.getLong(1);
+                }
+                try (PreparedStatement stmt = cycleConn.prepareStatement(
+                        "SELECT last_phase, started_time FROM cleanup_run WHERE run_id = ?")) {
+                    stmt.setLong(1, runningCycleId);
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        if (rs.next()) {
+                            lastPhase = rs.getString(1);
+                            runStarted = rs.getTimestamp(2);
+                        }
+                    }
+                }
+                if (lastPhase == null) {
+                    collectStatistics(runStarted, listener);
+                    try (CallableStatement cstmt = cycleConn.prepareCall(
+                            "{call db_cleanup.checkpoint_phase(?, 'COLLECT_STATS')}")) {
+                        cstmt.setLong(1, runningCycleId);
+                        cstmt.execute();
+                    }
+                } else if (listener != null) {
+                    listener.onProgress(1, 1, "继续第" + runningCycleId + "号清理周期，跳过" + lastPhase + "及之前的阶段");
+                }
+                if (cycleCancelled) {
+                    throw new SQLException("分析已取消，下次运行从检查点继续", null, CYCLE_CANCELLED_ERROR);
+                }
+                
+                long start = System.nanoTime();
+                boolean failed = true;
+                // 传入open_cycle返回的周期编号，数据库端继续这个周期而不是重新打开
+                try (CallableStatement cstmt = cycleConn.prepareCall("{call run_db_cleanup(?, ?, ?)}")) {
+                    cstmt.setString(1, autoApprove ? "Y" : "N");
+                    cstmt.setString(2, "N");
+                    cstmt.setLong(3, runningCycleId);
+                    cstmt.execute();
+                    failed = false;
+                } finally {
+                    // 周期失败时数据库端也记录了已完成的阶段
+                    try {
+                        loadLastRun();
+                    } catch (SQLException e) {
+                        // cleanup_run_phase表不存在时只记录客户端耗时
+                    }
+                    endPhase("run_cycle", start, -1, 0, failed);
+                }
+            } finally {
+                runningCycleId = 0;
+                // 周期结束时数据库端已释放锁，取消或失败在周期开始前时在这里释放
+                try (CallableStatement cstmt = cycleConn.prepareCall("{call db_cleanup.release_cycle_lock}")) {
+                    cstmt.execute();
+                } catch (SQLException e) {
+                    // 连接已失效时会话结束，锁随之释放
+                }
+            }
+        }
+    }
+    
+    /**
+     * 请求取消正在运行的分析
+     * 客户端统计信息收集在各线程收集完当前表后停止；数据库端的清理周期在下一个阶段、下一个候选
+     * 或下一张统计表之前停止。已完成的阶段和已清理的候选都已提交，下次运行从检查点继续
+     * @throws SQLException 本客户端的周期已不在运行时错误号为{@link #NO_RUNNING_CYCLE_ERROR}
+     */
+    public void cancelAnalysis() throws SQLException {
+        cycleCancelled = true;
+        StatisticsCollector collector = runningStatistics;
+        if (collector != null) {
+            collector.cancel();
+        }
+        long runId = runningCycleId;
+        if (runId != 0) {
+            requestCycleCancel(runId);
+        }
+    }
+    
+    /**
+     * 请求取消数据库中正在运行的清理周期，包括其他客户端或调度作业启动的周期
+     * @throws SQLException 没有正在运行的周期时错误号为{@link #NO_RUNNING_CYCLE_ERROR}
+     */
+    public void requestCycleCancel() throws SQLException {
+        requestCycleCancel(0);
+    }
+    
+    /**
+     * @param runId 要取消的清理周期，为0时取消所有运行中的周期
+     */
+    private void requestCycleCancel(long runId) throws SQLException {
+        try (Connection conn = borrowConnection();
+             CallableStatement cstmt = conn.prepareCall("{call db_cleanup.request_cancel(?)}")) {
+            if (runId != 0) {
+                cstmt.setLong(1, runId);
+            } else {
+                cstmt.setNull(1, Types.NUMERIC);
+            }
+            cstmt.execute();
+        }
+    }
+    
+    /**
+     * 异常是否由取消清理周期引起
+     */
+    public boolean isCancellation(SQLException e) {
+        return cycleCancelled || e.getErrorCode() == CYCLE_CANCELLED_ERROR;
+    }
+    
+    /**
+     * 加载数据库端最近一次清理周期各阶段的耗时并保存到运行指标
+     * @return 各阶段按开始时间排列，没有记录时为空
+     */
+    public List<CleanupMetrics.RunPhase> loadLastRun() throws SQLException {
+        List<CleanupMetrics.RunPhase> phases = new ArrayList<>();
+        long runId = -1;
+        try (Connection conn = borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT run_id, phase_name, started_time, elapsed_ms, item_count, space_saved, status " +
+                     "FROM cleanup_run_phase " +
+                     "WHERE run_id = (SELECT MAX(run_id) FROM cleanup_run_phase) " +
+                     "ORDER BY started_time, phase_name");
+             ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                runId = rs.getLong(1);
+                Timestamp started = rs.getTimestamp(3);
+                long items = rs.getLong(5);
+                if (rs.wasNull()) items = -1;
+                long saved = rs.getLong(6);
+                if (rs.wasNull()) saved = -1;
+                phases.add(new CleanupMetrics.RunPhase(rs.getString(2), started == null ? 0 : started.getTime(), 
+                        rs.getLong(4), items, saved, rs.getString(7)));
+            }
+        }
+        if (runId >= 0) {
+            metrics.setLastRun(runId, phases);
+        }
+        return phases;
+    }
+    
+    /**
+     * 创建并行清理执行器
+     * 并行度和表空间、所有者并发限制分别由CLEANUP_PARALLEL_DEGREE、CLEANUP_MAX_PER_TABLESPACE
+     * 和CLEANUP_MAX_PER_OWNER配置决定，并行度不超过连接池大小减一；
+     * 时间预算由CLEANUP_TIME_BUDGET_MINUTES配置决定，耗时估算见{@link #createCostModel(boolean, boolean)}
+     * @param listener 进度回调，可为null
+     */
+    public CleanupExecutor createCleanupExecutor(CleanupListener listener) throws SQLException {
+        int degree = Math.max(1, Math.min(getIntConfigValue("CLEANUP_PARALLEL_DEGREE", 1), poolSize - 1));
+        // BACKUP_MODE为EXPORT时删表前由客户端把表导出到本地文件，代替数据库内的CTAS备份
+        TableBackup backup = null;
+        boolean backupEnabled = "TRUE".equalsIgnoreCase(getConfigValue("BACKUP_BEFORE_CLEANUP"));
+        if (backupEnabled && "EXPORT".equalsIgnoreCase(getConfigValue("BACKUP_MODE"))) {
+            backup = createTableBackup();
+        }
+        long timeBudgetMillis = getIntConfigValue("CLEANUP_TIME_BUDGET_MINUTES", 0) * 60000L;
+        return new CleanupExecutor(this, degree, getIntConfigValue("CLEANUP_MAX_PER_TABLESPACE", 1), 
+                getIntConfigValue("CLEANUP_MAX_PER_OWNER", 1), backup, 
+                createCostModel(backupEnabled, backup != null), timeBudgetMillis, createThrottle(), listener);
+    }
+    
+    /**
+     * 创建清理限流
+     * 回收空间和DDL数的速率上限由THROTTLE_MAX_MB_PER_MINUTE和THROTTLE_MAX_DDL_PER_MINUTE配置决定，
+     * 负载阈值和最长暂停时间由LOAD_MAX_CPU_PCT、LOAD_MAX_REDO_MB_PER_SEC、LOAD_MAX_ACTIVE_SESSIONS
+     * 和LOAD_BACKOFF_MAX_SECONDS配置决定，与调度作业中存储过程的限流使用同一组配置
+     */
+    private CleanupThrottle createThrottle() throws SQLException {
+        return new CleanupThrottle(this, 
+                getIntConfigValue("THROTTLE_MAX_MB_PER_MINUTE", 0) * 1024L * 1024, 
+                getIntConfigValue("THROTTLE_MAX_DDL_PER_MINUTE", 0), 
+                getIntConfigValue("LOAD_MAX_CPU_PCT", 80), 
+                getIntConfigValue("LOAD_MAX_REDO_MB_PER_SEC", 50) * 1048576.0, 
+                getIntConfigValue("LOAD_MAX_ACTIVE_SESSIONS", 0), 
+                getIntConfigValue("LOAD_BACKOFF_MAX_SECONDS", 300) * 1000L);
+    }
+    
+    /**
+     * 创建清理耗时估算
+     * 固定开销和每GB耗时由CLEANUP_DDL_BASE_SECONDS和CLEANUP_DDL_SECONDS_PER_GB配置决定；
+     * 库内备份每GB耗时由CLEANUP_BACKUP_SECONDS_PER_GB配置决定，客户端导出按BACKUP_MAX_MB_PER_SEC换算，
+     * 重组每GB耗时由REORG_SECONDS_PER_GB配置决定
+     * @param backupEnabled 删表前是否备份
+     * @param exportBackup 是否由客户端导出备份
+     */
+    private CleanupExecutor.CostModel createCostModel(boolean backupEnabled, boolean exportBackup) throws SQLException {
+        double backupSecondsPerGb = 0;
+        if (backupEnabled) {
+            int maxMbPerSec = exportBackup ? getIntConfigValue("BACKUP_MAX_MB_PER_SEC", DEFAULT_BACKUP_MAX_MB_PER_SEC) : 0;
+            backupSecondsPerGb = maxMbPerSec > 0 ? 1024.0 / maxMbPerSec
+                    : getIntConfigValue("CLEANUP_BACKUP_SECONDS_PER_GB", 20);
+        }
+        return new CleanupExecutor.CostModel(getIntConfigValue("CLEANUP_DDL_BASE_SECONDS", 5), 
+                getIntConfigValue("CLEANUP_DDL_SECONDS_PER_GB", 1), backupSecondsPerGb, 
+                getIntConfigValue("REORG_SECONDS_PER_GB", 60));
+    }
+    
+    /**
+     * 创建流式表备份
+     * 备份目录、每次读取的行数和所有并行备份合计的吞吐量上限分别由BACKUP_EXPORT_DIR、
+     * BACKUP_FETCH_SIZE和BACKUP_MAX_MB_PER_SEC配置决定，未配置目录时使用~/.oracle_data_clean/backups
+     */
+    public TableBackup createTableBackup() throws SQLException {
+        String dir = getConfigValue("BACKUP_EXPORT_DIR");
+        Path baseDir = dir == null || dir.trim().isEmpty()
+                ? Paths.get(System.getProperty("user.home"), ".oracle_data_clean", "backups")
+                : Paths.get(dir.trim());
+        long maxBytesPerSecond = getIntConfigValue("BACKUP_MAX_MB_PER_SEC", DEFAULT_BACKUP_MAX_MB_PER_SEC) * 1024L * 1024;
+        return new TableBackup(this, baseDir, getIntConfigValue("BACKUP_FETCH_SIZE", DEFAULT_BACKUP_FETCH_SIZE), 
+                new ThroughputLimiter(maxBytesPerSecond));
+    }
+    
+    /**
+     * 创建候选和日志的流式导出，每次读取的行数由EXPORT_FETCH_SIZE配置决定
+     */
+    public CleanupExport createExport() throws SQLException {
+        return new CleanupExport(this, getIntConfigValue("EXPORT_FETCH_SIZE", DEFAULT_EXPORT_FETCH_SIZE));
+    }
+    
+    /**
+     * 备份和恢复的并行度，与清理执行共用CLEANUP_PARALLEL_DEGREE配置
+     */
+    public int getBackupParallelDegree() throws SQLException {
+        return Math.max(1, Math.min(getIntConfigValue("CLEANUP_PARALLEL_DEGREE", 1), poolSize - 1));
+    }
+    
+    /**
+     * 执行已批准的清理
+     * @param listener 进度回调，可为null
+     * @return 每个候选的结果
+     */
+    public List<CleanupExecutor.Result> executeApprovedCleanup(CleanupListener listener) throws SQLException {
+        long start = System.nanoTime();
+        List<CleanupExecutor.Result> results = null;
+        try {
+            results = createCleanupExecutor(listener).execute();
+            return results;
+        } finally {
+            recordExecution(start, results);
+        }
+    }
+    
+    /**
+     * 记录一次清理执行的耗时、清理的对象数和回收的字节数
+     * 界面自行调用执行器时，执行结束后调用此方法
+     * @param start 执行开始时的System.nanoTime()
+     * @param results 执行结果，执行失败时为null
+     */
+    public void recordExecution(long start, List<CleanupExecutor.Result> results) {
+        long cleaned = 0;
+        long bytes = 0;
+        if (results != null) {
+            for (CleanupExecutor.Result result : results) {
+                if (result.getOutcome() == CleanupExecutor.Outcome.CLEANED) {
+                    cleaned++;
+                    bytes += result.getReclaimedBytes();
+                }
+            }
+        }
+        endPhase("execute_cleanup", start, results == null ? -1 : cleaned, bytes, results == null);
+    }
+    
+    /**
+     * 生成报告
+     * @param daysBack 报告覆盖的天数
+     */
+    public String generateReport(int daysBack) throws SQLException {
+        final StringBuilder report = new StringBuilder();
+        generateReport(daysBack, new ReportListener() {
+            @Override
+            public void onReportLines(List<String> lines) {
+                for (String line : lines) {
+                    report.append(line).append("\n");
+                }
+            }
+        });
+        return report.toString();
+    }
+    
+    /**
+     * 生成报告并按批回调
+     * 从管道函数db_cleanup.cleanup_report按数组批量读取报告行，每读取一批回调一次，
+     * 报告行数再多也只需要少量往返
+     * @param daysBack 报告覆盖的天数
+     */
+    public void generateReport(int daysBack, ReportListener listener) throws SQLException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            readReport(daysBack, listener);
+            failed = false;
+        } finally {
+            endPhase("report", start, -1, 0, failed);
+        }
+    }
+    
+    private void readReport(int daysBack, ReportListener listener) throws SQLException {
+        try (Connection conn = borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(
+                     "SELECT line_text FROM TABLE(db_cleanup.cleanup_report(?))")) {
+            stmt.setInt(1, daysBack);
+            stmt.setFetchSize(REPORT_FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                List<String> batch = new ArrayList<>(REPORT_FETCH_SIZE);
+                while (rs.next()) {
+                    String line = rs.getString(1);
+                    batch.add(line == null ? "" : line);
+                    if (batch.size() == REPORT_FETCH_SIZE) {
+                        listener.onReportLines(batch);
+                        batch = new ArrayList<>(REPORT_FETCH_SIZE);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    listener.onReportLines(batch);
+                }
+            }
+        }
+    }
+    
+    /**
+     * 关闭连接池
+     */
+    @Override
+    public synchronized void close() {
+        if (pool == null) return;
+        if (metricsName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (JMException e) {
+                // 已被注销时忽略
+            }
+            metricsName = null;
+        }
+        dashboardExecutor.shutdownNow();
+        dashboardExecutor = null;
+        pool.close();
+        pool = null;
+        dictionaryCache = null;
+    }
+}
@@ -0,0 +1,506 @@
+package oracle.data.cleanup;
+
+import java.io.IOException;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 并行清理执行器
+ * 按每秒可回收的字节数从高到低执行已批准的候选，可回收字节数包括表及其索引、LOB段，
+ * 预计耗时由{@link CostModel}估算；数据文件和表空间要等同一表空间中的表(以及数据文件)结束后才开始。
+ * 由固定数量的工作线程各自借用连接调用db_cleanup.cleanup_candidate，
+ * 同一表空间、同一所有者同时清理的候选数分别受限，避免集中冲击某个表空间。
+ * 设置了时间预算时，预计在预算内完成不了的候选不再开始，以DEFERRED结果返回并保持已批准状态，
+ * 维护窗口提前结束时已经回收了大部分空间。
+ * 指定了表备份时，删表前先把表流式导出到本地文件，导出失败的表不会被删除
+ */
+public class CleanupExecutor {
+    
+    // 同一表空间内的依赖顺序：先删表，再删数据文件，最后删表空间
+    private static final String[] PHASES = {"TABLE", "DATAFILE", "TABLESPACE"};
+    
+    // 价值相同时保持原来的优先级顺序
+    private static final String APPROVED_SQL =
+            "SELECT c.candidate_id, c.object_type, c.object_owner, c.object_name, c.reason, " +
+            "TO_CHAR(c.identified_time, 'YYYY-MM-DD HH24:MI:SS'), c.status, " +
+            "v.tablespace_name, v.reclaimable_bytes " +
+            "FROM cleanup_candidates c " +
+            "JOIN cleanup_candidate_value v ON v.candidate_id = c.candidate_id " +
+            "WHERE c.status = 'APPROVED' " +
+            "AND c.object_type IN ('TABLE', 'REORG', 'DATAFILE', 'TABLESPACE') " +
+            "ORDER BY c.priority, c.identified_time, c.candidate_id";
+    
+    /**
+     * 清理结果类型
+     * DEFERRED表示预计在时间预算内完成不了而没有开始，候选保持已批准状态
+     */
+    public enum Outcome {
+        CLEANED, FAILED, CANCELLED, DEFERRED
+    }
+    
+    /**
+     * 清理耗时估算
+     * 预计秒数 = 固定开销 + 可回收GB数 × 每GB秒数，删表且需要备份时再加上备份每GB的秒数，
+     * 重组按重组每GB的秒数计算
+     */
+    public static class CostModel {
+        
+        public static final CostModel DEFAULT = new CostModel(5, 1, 0);
+        
+        private static final double GIGABYTE = 1024.0 * 1024 * 1024;
+        
+        private final double baseSeconds;
+        private final double secondsPerGb;
+        private final double backupSecondsPerGb;
+        private final double reorgSecondsPerGb;
+        
+        public CostModel(double baseSeconds, double secondsPerGb, double backupSecondsPerGb) {
+            this(baseSeconds, secondsPerGb, backupSecondsPerGb, secondsPerGb);
+        }
+        
+        /**
+         * @param baseSeconds 每个候选的固定开销(秒)
+         * @param secondsPerGb DDL每GB的耗时(秒)
+         * @param backupSecondsPerGb 删表前备份每GB的耗时(秒)，不备份时为0
+         * @param reorgSecondsPerGb 重组(含重建索引)每GB可回收空间的耗时(秒)
+         */
+        public CostModel(double baseSeconds, double secondsPerGb, double backupSecondsPerGb, double reorgSecondsPerGb) {
+            this.baseSeconds = Math.max(0, baseSeconds);
+            this.secondsPerGb = Math.max(0, secondsPerGb);
+            this.backupSecondsPerGb = Math.max(0, backupSecondsPerGb);
+            this.reorgSecondsPerGb = Math.max(0, reorgSecondsPerGb);
+        }
+        
+        public double estimateSeconds(String objectType, long reclaimableBytes) {
+            double perGb = "REORG".equals(objectType) ? reorgSecondsPerGb
+                    : secondsPerGb + ("TABLE".equals(objectType) ? backupSecondsPerGb : 0);
+            // 至少按1秒计算，避免可回收空间为0的候选除以0
+            return Math.max(1, baseSeconds + reclaimableBytes / GIGABYTE * perGb);
+        }
+    }
+    
+    /**
+     * 单个候选的清理结果
+     */
+    public static class Result {
+        private final CleanupCandidate candidate;
+        private final String tablespace;
+        private final long reclaimableBytes;
+        private final long reclaimedBytes;
+        private final Outcome outcome;
+        private final String message;
+        private final long elapsedMillis;
+        
+        Result(WorkItem item, Outcome outcome, String message, long elapsedMillis) {
+            this(item, outcome, message, elapsedMillis, 0);
+        }
+        
+        Result(WorkItem item, Outcome outcome, String message, long elapsedMillis, long reclaimedBytes) {
+            this.candidate = item.candidate;
+            this.tablespace = item.tablespace;
+            this.reclaimableBytes = item.reclaimableBytes;
+            this.reclaimedBytes = reclaimedBytes;
+            this.outcome = outcome;
+            this.message = message;
+            this.elapsedMillis = elapsedMillis;
+        }
+        
+        public CleanupCandidate getCandidate() {
+            return candidate;
+        }
+        
+        /**
+         * 候选所在的表空间，无法确定时为null
+         */
+        public String getTablespace() {
+            return tablespace;
+        }
+        
+        /**
+         * 开始执行前估算的可回收字节数
+         */
+        public long getReclaimableBytes() {
+            return reclaimableBytes;
+        }
+        
+        /**
+         * 清理后实际回收的字节数，由数据库按清理日志中的节省空间返回；没有清理成功时为0
+         */
+        public long getReclaimedBytes() {
+            return reclaimedBytes;
+        }
+        
+        public Outcome getOutcome() {
+            return outcome;
+        }
+        
+        /**
+         * 失败时的错误信息
+         */
+        public String getMessage() {
+            return message;
+        }
+        
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+    
+    private final CleanupEngine engine;
+    private final int degree;
+    private final int maxPerTablespace;
+    private final int maxPerOwner;
+    private final TableBackup backup;
+    private final CostModel costModel;
+    private final long timeBudgetMillis;
+    private final CleanupThrottle throttle;
+    private final CleanupListener listener;
+    private volatile boolean cancelled;
+    
+    /**
+     * @param degree 并行工作线程数
+     * @param maxPerTablespace 同一表空间同时清理的最大候选数
+     * @param maxPerOwner 同一所有者同时清理的最大候选数
+     * @param listener 进度回调，可为null
+     */
+    public CleanupExecutor(CleanupEngine engine, int degree, int maxPerTablespace, int maxPerOwner, 
+                           CleanupListener listener) {
+        this(engine, degree, maxPerTablespace, maxPerOwner, null, CostModel.DEFAULT, 0, listener);
+    }
+    
+    /**
+     * @param backup 删表前的客户端表备份，为null时由存储过程按BACKUP_BEFORE_CLEANUP配置在库内备份
+     * @param costModel 用于排序和时间预算的耗时估算
+     * @param timeBudgetMillis 时间预算(毫秒)，小于等于0表示不限制
+     */
+    public CleanupExecutor(CleanupEngine engine, int degree, int maxPerTablespace, int maxPerOwner, 
+                           TableBackup backup, CostModel costModel, long timeBudgetMillis, 
+                           CleanupListener listener) {
+        this(engine, degree, maxPerTablespace, maxPerOwner, backup, costModel, timeBudgetMillis, null, listener);
+    }
+    
+    /**
+     * @param throttle 每个候选开始前的限流和负载退避，为null时不限流
+     */
+    public CleanupExecutor(CleanupEngine engine, int degree, int maxPerTablespace, int maxPerOwner, 
+                           TableBackup backup, CostModel costModel, long timeBudgetMillis, 
+                           CleanupThrottle throttle, CleanupListener listener) {
+        this.engine = engine;
+        this.degree = Math.max(1, degree);
+        this.maxPerTablespace = Math.max(1, maxPerTablespace);
+        this.maxPerOwner = Math.max(1, maxPerOwner);
+        this.backup = backup;
+        this.costModel = costModel == null ? CostModel.DEFAULT : costModel;
+        this.timeBudgetMillis = timeBudgetMillis;
+        this.throttle = throttle;
+        this.listener = listener;
+    }
+    
+    /**
+     * 取消执行
+     * 不再开始新的候选，正在执行的候选会完成后再返回，剩余候选以CANCELLED结果回调
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    /**
+     * 报告执行期间的警告，记入运行指标并回调监听器
+     * @param source 警告来源，见{@link CleanupMetrics#recordWarning}
+     */
+    void warn(String source, String message) {
+        engine.getMetrics().recordWarning(source, message);
+        if (listener != null) {
+            listener.onWarning(message);
+        }
+    }
+    
+    /**
+     * 执行所有已批准的候选
+     * 单个候选失败不影响其他候选，失败原因由存储过程记录到清理日志并在结果中返回
+     * @return 每个候选的结果，按结束顺序排列
+     */
+    public List<Result> execute() throws SQLException {
+        List<WorkItem> approved = loadApproved();
+        int total = approved.size();
+        List<Result> results = new ArrayList<>(total);
+        if (total == 0) {
+            return results;
+        }
+        
+        for (WorkItem item : approved) {
+            item.estimatedSeconds = costModel.estimateSeconds(item.candidate.getObjectType(), item.reclaimableBytes);
+        }
+        // 稳定排序，价值相同时保持查询的优先级顺序
+        Collections.sort(approved, new Comparator<WorkItem>() {
+            @Override
+            public int compare(WorkItem a, WorkItem b) {
+                return Double.compare(b.bytesPerSecond(), a.bytesPerSecond());
+            }
+        });
+        
+        ExecutorService workers = Executors.newFixedThreadPool(degree, new ThreadFactory() {
+            private final AtomicInteger seq = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "cleanup-exec-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        boolean interrupted = false;
+        try {
+            interrupted = run(workers, new LinkedList<>(approved), results, total);
+        } finally {
+            workers.shutdown();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * 按排序后的顺序调度候选，所有候选结束后才返回
+     * @return 等待期间线程是否被中断
+     */
+    private boolean run(ExecutorService workers, LinkedList<WorkItem> pending, List<Result> results, 
+                        int total) throws SQLException {
+        CompletionService<Result> completion = new ExecutorCompletionService<>(workers);
+        Map<String, Integer> runningByTablespace = new HashMap<>();
+        Map<String, Integer> runningByOwner = new HashMap<>();
+        // 每个阶段在各表空间中尚未结束的候选数，用于保证同一表空间内先表、再数据文件、最后表空间
+        List<Map<String, Integer>> unfinished = new ArrayList<>(PHASES.length);
+        for (int i = 0; i < PHASES.length; i++) {
+            unfinished.add(new HashMap<String, Integer>());
+        }
+        for (WorkItem item : pending) {
+            adjust(unfinished.get(item.phase), item.tablespace, 1);
+        }
+        long deadline = timeBudgetMillis > 0 ? System.currentTimeMillis() + timeBudgetMillis : Long.MAX_VALUE;
+        int running = 0;
+        boolean interrupted = false;
+        
+        while (!pending.isEmpty() || running > 0) {
+            if (cancelled) {
+                for (WorkItem item : pending) {
+                    finish(item, new Result(item, Outcome.CANCELLED, null, 0), unfinished, results, total);
+                }
+                pending.clear();
+            }
+            
+            // 按价值顺序挑选依赖已满足、未超过表空间和所有者并发限制的候选
+            long now = System.currentTimeMillis();
+            Iterator<WorkItem> it = pending.iterator();
+            while (running < degree && it.hasNext()) {
+                final WorkItem item = it.next();
+                if (isBlocked(unfinished, item)) {
+                    continue;
+                }
+                if (deadline != Long.MAX_VALUE && now + (long) (item.estimatedSeconds * 1000) > deadline) {
+                    it.remove();
+                    finish(item, new Result(item, Outcome.DEFERRED, 
+                            "预计耗时" + Math.round(item.estimatedSeconds) + "秒，超出本次时间预算", 0), 
+                            unfinished, results, total);
+                    continue;
+                }
+                if (count(runningByTablespace, item.tablespace) >= maxPerTablespace
+                        || count(runningByOwner, item.candidate.getObjectOwner()) >= maxPerOwner) {
+                    continue;
+                }
+                it.remove();
+                adjust(runningByTablespace, item.tablespace, 1);
+                adjust(runningByOwner, item.candidate.getObjectOwner(), 1);
+                completion.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return cleanup(item);
+                    }
+                });
+                running++;
+            }
+            if (running == 0) {
+                continue;
+            }
+            
+            Result result;
+            try {
+                result = completion.take().get();
+            } catch (InterruptedException e) {
+                // 正在执行的DDL不能安全中断，取消后继续等待它们结束
+                interrupted = true;
+                cancel();
+                continue;
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw new SQLException("清理执行失败: " + cause.getMessage(), cause);
+            }
+            running--;
+            adjust(runningByTablespace, result.tablespace, -1);
+            adjust(runningByOwner, result.candidate.getObjectOwner(), -1);
+            adjust(unfinished.get(phaseOf(result.candidate.getObjectType())), result.tablespace, -1);
+            finish(result, results, total);
+        }
+        return interrupted;
+    }
+    
+    // 同一表空间中还有前面阶段的候选没有结束
+    private static boolean isBlocked(List<Map<String, Integer>> unfinished, WorkItem item) {
+        for (int p = 0; p < item.phase; p++) {
+            if (count(unfinished.get(p), item.tablespace) > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static int phaseOf(String objectType) {
+        // 重组和删表一样先于同一表空间的数据文件和表空间处理
+        if ("REORG".equals(objectType)) {
+            return 0;
+        }
+        for (int i = 0; i < PHASES.length; i++) {
+            if (PHASES[i].equals(objectType)) {
+                return i;
+            }
+        }
+        return PHASES.length - 1;
+    }
+    
+    private Result cleanup(WorkItem item) {
+        if (cancelled) {
+            return new Result(item, Outcome.CANCELLED, null, 0);
+        }
+        if (throttle != null) {
+            try {
+                if (!throttle.acquire(item.reclaimableBytes, this)) {
+                    return new Result(item, Outcome.CANCELLED, null, 0);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new Result(item, Outcome.CANCELLED, null, 0);
+            }
+        }
+        if (listener != null) {
+            listener.onCandidateStarted(item.candidate);
+        }
+        long start = System.currentTimeMillis();
+        boolean backedUp = false;
+        if (backup != null && "TABLE".equals(item.candidate.getObjectType())) {
+            try {
+                backup.exportTable(item.candidate.getObjectOwner(), item.candidate.getObjectName());
+                backedUp = true;
+            } catch (SQLException | IOException e) {
+                return new Result(item, Outcome.FAILED, "备份失败: " + e.getMessage(), 
+                        System.currentTimeMillis() - start);
+            }
+        }
+        try (Connection conn = engine.borrowConnection();
+             CallableStatement cstmt = conn.prepareCall("{call db_cleanup.cleanup_candidate(?, ?, ?)}")) {
+            cstmt.setInt(1, item.candidate.getCandidateId());
+            cstmt.setString(2, backedUp ? "Y" : "N");
+            cstmt.registerOutParameter(3, Types.NUMERIC);
+            cstmt.execute();
+            return new Result(item, Outcome.CLEANED, null, 
+                    System.currentTimeMillis() - start, cstmt.getLong(3));
+        } catch (SQLException e) {
+            return new Result(item, Outcome.FAILED, e.getMessage(), 
+                    System.currentTimeMillis() - start);
+        }
+    }
+    
+    // 没有提交执行的候选直接结束
+    private void finish(WorkItem item, Result result, List<Map<String, Integer>> unfinished, 
+                        List<Result> results, int total) {
+        adjust(unfinished.get(item.phase), item.tablespace, -1);
+        finish(result, results, total);
+    }
+    
+    private void finish(Result result, List<Result> results, int total) {
+        // 取消和推迟的候选没有执行，不计入对象耗时
+        if (result.outcome == Outcome.CLEANED || result.outcome == Outcome.FAILED) {
+            engine.getMetrics().recordObject(result.candidate.getObjectType(), result.elapsedMillis * 1000000L, 
+                    result.reclaimedBytes, result.outcome == Outcome.FAILED);
+        }
+        results.add(result);
+        if (listener != null) {
+            listener.onCandidateFinished(result, results.size(), total);
+        }
+    }
+    
+    private List<WorkItem> loadApproved() throws SQLException {
+        List<WorkItem> items = new ArrayList<>();
+        try (Connection conn = engine.borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(APPROVED_SQL)) {
+            stmt.setFetchSize(1000);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    CleanupCandidate candidate = new CleanupCandidate(rs.getInt(1), rs.getString(2), 
+                            rs.getString(3), rs.getString(4), rs.getString(5), rs.getString(6), rs.getString(7));
+                    items.add(new WorkItem(candidate, rs.getString(8), rs.getLong(9)));
+                }
+            }
+        }
+        return items;
+    }
+    
+    // 键为null(表空间或所有者未知)时不限制并发
+    private static int count(Map<String, Integer> running, String key) {
+        if (key == null) return 0;
+        Integer n = running.get(key);
+        return n == null ? 0 : n;
+    }
+    
+    private static void adjust(Map<String, Integer> running, String key, int delta) {
+        if (key == null) return;
+        int n = count(running, key) + delta;
+        if (n <= 0) {
+            running.remove(key);
+        } else {
+            running.put(key, n);
+        }
+    }
+    
+    private static class WorkItem {
+        private final CleanupCandidate candidate;
+        private final String tablespace;
+        private final long reclaimableBytes;
+        private final int phase;
+        private double estimatedSeconds;
+        
+        WorkItem(CleanupCandidate candidate, String tablespace, long reclaimableBytes) {
+            this.candidate = candidate;
+            this.tablespace = tablespace;
+            this.reclaimableBytes = reclaimableBytes;
+            this.phase = phaseOf(candidate.getObjectType());
+        }
+        
+        double bytesPerSecond() {
+            return reclaimableBytes / estimatedSeconds;
+        }
+    }
+}
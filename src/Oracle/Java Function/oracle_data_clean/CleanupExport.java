@@ -0,0 +1,365 @@
+package oracle.data.cleanup;
+
+import java.io.BufferedWriter;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 清理候选和清理日志的流式导出
+ * 以只进只读的结果集和较大的fetchSize读取，逐行写成CSV或JSON Lines(可选gzip压缩)，
+ * 不在内存中保留已读取的行，导出数百万行日志时内存占用不变。
+ * 时间范围、状态和对象类型过滤在SQL中完成，日志按时间过滤时只扫描对应的月分区
+ */
+public class CleanupExport {
+    
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final String TIMESTAMP_PATTERN = "yyyy-MM-dd HH:mm:ss";
+    
+    /**
+     * 导出的数据
+     */
+    public enum Source {
+        CANDIDATES("cleanup_candidates", "identified_time", "candidate_id", 
+                "candidate_id, object_type, object_owner, object_name, reason, identified_time, status, " +
+                "approved_by, approved_time, cleanup_time, priority"), 
+        // 日志按分区顺序输出，不排序，避免在数据库端对全部日志排序
+        LOG("cleanup_log", "operation_time", null, 
+                "log_id, operation_type, object_type, object_owner, object_name, operation_time, status, " +
+                "error_message, space_saved, performed_by");
+        
+        private final String table;
+        private final String timeColumn;
+        private final String orderColumn;
+        private final String columns;
+        
+        Source(String table, String timeColumn, String orderColumn, String columns) {
+            this.table = table;
+            this.timeColumn = timeColumn;
+            this.orderColumn = orderColumn;
+            this.columns = columns;
+        }
+    }
+    
+    /**
+     * 输出格式
+     */
+    public enum Format {
+        CSV, JSONL;
+        
+        /**
+         * 按文件扩展名(忽略.gz)推断格式，.jsonl和.json为JSON Lines，其他为CSV
+         */
+        public static Format forFileName(String fileName) {
+            String name = fileName.toLowerCase(Locale.ROOT);
+            if (isGzipFile(name)) {
+                name = name.substring(0, name.length() - 3);
+            }
+            return name.endsWith(".jsonl") || name.endsWith(".json") ? JSONL : CSV;
+        }
+    }
+    
+    /**
+     * 导出过滤条件，为null或空的条件不过滤
+     */
+    public static class Filter {
+        private final Date from;
+        private final Date to;
+        private final List<String> statuses;
+        private final List<String> objectTypes;
+        
+        /**
+         * @param from 起始时间(含)，按候选的识别时间或日志的操作时间过滤
+         * @param to 结束时间(不含)
+         * @param statuses 状态，如PENDING、APPROVED或COMPLETED、FAILED
+         * @param objectTypes 对象类型，如TABLE、DATAFILE
+         */
+        public Filter(Date from, Date to, Collection<String> statuses, Collection<String> objectTypes) {
+            this.from = from;
+            this.to = to;
+            this.statuses = upperCase(statuses);
+            this.objectTypes = upperCase(objectTypes);
+        }
+        
+        private static List<String> upperCase(Collection<String> values) {
+            if (values == null || values.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<String> result = new ArrayList<>(values.size());
+            for (String value : values) {
+                result.add(value.trim().toUpperCase(Locale.ROOT));
+            }
+            return result;
+        }
+    }
+    
+    public static final Filter NO_FILTER = new Filter(null, null, null, null);
+    
+    private final CleanupEngine engine;
+    private final int fetchSize;
+    
+    /**
+     * @param fetchSize 每次从数据库读取的行数
+     */
+    public CleanupExport(CleanupEngine engine, int fetchSize) {
+        this.engine = engine;
+        this.fetchSize = Math.max(1, fetchSize);
+    }
+    
+    /**
+     * 导出到文件，文件名以.gz结尾时gzip压缩
+     * @return 导出的行数
+     */
+    public long export(Source source, Filter filter, Format format, Path file) throws SQLException, IOException {
+        try (OutputStream out = Files.newOutputStream(file)) {
+            return export(source, filter, format, isGzipFile(file.getFileName().toString()), out);
+        }
+    }
+    
+    /**
+     * 导出到输出流，结束时刷新但不关闭out
+     * @param gzip 是否gzip压缩
+     * @return 导出的行数
+     */
+    public long export(Source source, Filter filter, Format format, boolean gzip, OutputStream out)
+            throws SQLException, IOException {
+        GZIPOutputStream compressed = gzip ? new GZIPOutputStream(new NonClosingOutputStream(out), BUFFER_BYTES) : null;
+        Writer writer = new BufferedWriter(new OutputStreamWriter(
+                compressed != null ? compressed : new NonClosingOutputStream(out), StandardCharsets.UTF_8), BUFFER_BYTES);
+        try (Connection conn = engine.borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(buildSql(source, filter), 
+                     ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY)) {
+            stmt.setFetchSize(fetchSize);
+            int index = 1;
+            if (filter.from != null) {
+                stmt.setTimestamp(index++, new Timestamp(filter.from.getTime()));
+            }
+            if (filter.to != null) {
+                stmt.setTimestamp(index++, new Timestamp(filter.to.getTime()));
+            }
+            for (String status : filter.statuses) {
+                stmt.setString(index++, status);
+            }
+            for (String objectType : filter.objectTypes) {
+                stmt.setString(index++, objectType);
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.setFetchSize(fetchSize);
+                long rows = format == Format.JSONL ? writeJsonLines(rs, writer) : writeCsv(rs, writer);
+                writer.flush();
+                if (compressed != null) {
+                    compressed.finish();
+                }
+                out.flush();
+                return rows;
+            }
+        } finally {
+            writer.close();
+        }
+    }
+    
+    private static String buildSql(Source source, Filter filter) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(source.columns)
+                .append(" FROM ").append(source.table).append(" WHERE 1 = 1");
+        if (filter.from != null) {
+            sql.append(" AND ").append(source.timeColumn).append(" >= ?");
+        }
+        if (filter.to != null) {
+            sql.append(" AND ").append(source.timeColumn).append(" < ?");
+        }
+        appendInList(sql, "status", filter.statuses.size());
+        appendInList(sql, "object_type", filter.objectTypes.size());
+        if (source.orderColumn != null) {
+            sql.append(" ORDER BY ").append(source.orderColumn);
+        }
+        return sql.toString();
+    }
+    
+    private static void appendInList(StringBuilder sql, String column, int count) {
+        if (count == 0) return;
+        sql.append(" AND ").append(column).append(" IN (");
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ", ?");
+        }
+        sql.append(')');
+    }
+    
+    private static long writeCsv(ResultSet rs, Writer out) throws SQLException, IOException {
+        ResultSetMetaData md = rs.getMetaData();
+        int columnCount = md.getColumnCount();
+        int[] sqlTypes = new int[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            sqlTypes[c] = md.getColumnType(c + 1);
+            if (c > 0) out.write(',');
+            out.write(md.getColumnName(c + 1).toLowerCase(Locale.ROOT));
+        }
+        out.write("\r\n");
+        
+        SimpleDateFormat timestampFormat = new SimpleDateFormat(TIMESTAMP_PATTERN);
+        long rows = 0;
+        while (rs.next()) {
+            for (int c = 0; c < columnCount; c++) {
+                if (c > 0) out.write(',');
+                String value = readValue(rs, c + 1, sqlTypes[c], timestampFormat);
+                if (value != null) {
+                    writeCsvField(out, value);
+                }
+            }
+            out.write("\r\n");
+            rows++;
+        }
+        return rows;
+    }
+    
+    private static long writeJsonLines(ResultSet rs, Writer out) throws SQLException, IOException {
+        ResultSetMetaData md = rs.getMetaData();
+        int columnCount = md.getColumnCount();
+        int[] sqlTypes = new int[columnCount];
+        String[] keys = new String[columnCount];
+        for (int c = 0; c < columnCount; c++) {
+            sqlTypes[c] = md.getColumnType(c + 1);
+            keys[c] = "\"" + md.getColumnName(c + 1).toLowerCase(Locale.ROOT) + "\":";
+        }
+        
+        SimpleDateFormat timestampFormat = new SimpleDateFormat(TIMESTAMP_PATTERN);
+        long rows = 0;
+        while (rs.next()) {
+            out.write('{');
+            for (int c = 0; c < columnCount; c++) {
+                if (c > 0) out.write(',');
+                out.write(keys[c]);
+                String value = readValue(rs, c + 1, sqlTypes[c], timestampFormat);
+                if (value == null) {
+                    out.write("null");
+                } else if (isNumeric(sqlTypes[c])) {
+                    out.write(value);
+                } else {
+                    writeJsonString(out, value);
+                }
+            }
+            out.write("}\n");
+            rows++;
+        }
+        return rows;
+    }
+    
+    private static String readValue(ResultSet rs, int column, int sqlType, SimpleDateFormat timestampFormat)
+            throws SQLException {
+        if (isNumeric(sqlType)) {
+            BigDecimal value = rs.getBigDecimal(column);
+            return value == null ? null : value.toPlainString();
+        }
+        if (sqlType == Types.TIMESTAMP || sqlType == Types.DATE || sqlType == Types.TIMESTAMP_WITH_TIMEZONE) {
+            Timestamp value = rs.getTimestamp(column);
+            return value == null ? null : timestampFormat.format(value);
+        }
+        return rs.getString(column);
+    }
+    
+    private static boolean isNumeric(int sqlType) {
+        switch (sqlType) {
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.BIGINT:
+            case Types.DOUBLE:
+            case Types.FLOAT:
+            case Types.REAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+    
+    /**
+     * 按RFC 4180写CSV字段，含逗号、引号或换行时加引号
+     */
+    private static void writeCsvField(Writer out, String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char ch = value.charAt(i);
+            quote = ch == ',' || ch == '"' || ch == '\r' || ch == '\n';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch == '"') out.write('"');
+            out.write(ch);
+        }
+        out.write('"');
+    }
+    
+    private static void writeJsonString(Writer out, String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            switch (ch) {
+                case '"': out.write("\\\""); break;
+                case '\\': out.write("\\\\"); break;
+                case '\n': out.write("\\n"); break;
+                case '\r': out.write("\\r"); break;
+                case '\t': out.write("\\t"); break;
+                default:
+                    if (ch < 0x20) {
+                        out.write(String.format("\\u%04x", (int) ch));
+                    } else {
+                        out.write(ch);
+                    }
+                    break;
+            }
+        }
+        out.write('"');
+    }
+    
+    /**
+     * 文件名是否以.gz结尾，导出到这样的文件时gzip压缩
+     */
+    public static boolean isGzipFile(String fileName) {
+        return fileName.toLowerCase(Locale.ROOT).endsWith(".gz");
+    }
+    
+    /**
+     * 关闭写入器时不关闭调用方的输出流(如标准输出)
+     */
+    private static class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+        
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
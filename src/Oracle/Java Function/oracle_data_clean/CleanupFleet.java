@@ -0,0 +1,513 @@
+package oracle.data.cleanup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批量处理多个数据库
+ * 每个目标使用独立的清理引擎和连接池，多个目标同时分析、生成报告和执行清理。
+ * 同时处理的目标数和每个目标的连接数都有上限；某个目标连接失败或出错只记录在它自己的结果中，
+ * 不影响其他目标，整批的耗时接近最慢的那个数据库
+ */
+public class CleanupFleet {
+    
+    public static final int DEFAULT_MAX_CONCURRENT_TARGETS = 8;
+    public static final int DEFAULT_CONNECTIONS_PER_TARGET = 3;
+    public static final String DEFAULT_PASSWORD_ENV = "CLEANUP_PASSWORD";
+    
+    /**
+     * 读取清理候选时每页的行数，候选按页以键集分页读入列存储
+     */
+    static final int CANDIDATE_PAGE_SIZE = 1000;
+    
+    /**
+     * 一个目标数据库
+     */
+    public static class Target {
+        private final String name;
+        private final String jdbcUrl;
+        private final String username;
+        private final String password;
+        
+        /**
+         * @param password 密码，为null时处理该目标会失败
+         */
+        public Target(String name, String jdbcUrl, String username, String password) {
+            this.name = name;
+            this.jdbcUrl = jdbcUrl;
+            this.username = username;
+            this.password = password;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public String getJdbcUrl() {
+            return jdbcUrl;
+        }
+        
+        public String getUsername() {
+            return username;
+        }
+        
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+    
+    /**
+     * 一个目标的处理结果
+     */
+    public static class TargetResult {
+        private final Target target;
+        private String error;
+        private String dbName;
+        private double dbSizeGB = -1;
+        private double freeSpaceGB = -1;
+        private List<CandidateStore.Block> candidateBlocks = Collections.emptyList();
+        private int candidateCount;
+        private int pendingCount;
+        private int cleaned;
+        private int failed;
+        private int cancelled;
+        private int deferred;
+        private long bytesReclaimed;
+        private String report;
+        private long elapsedMillis;
+        
+        TargetResult(Target target) {
+            this.target = target;
+        }
+        
+        public Target getTarget() {
+            return target;
+        }
+        
+        public boolean isSucceeded() {
+            return error == null;
+        }
+        
+        /**
+         * 失败原因，成功时为null
+         */
+        public String getError() {
+            return error;
+        }
+        
+        public String getDbName() {
+            return dbName;
+        }
+        
+        /**
+         * 数据库大小，未取得时为-1
+         */
+        public double getDbSizeGB() {
+            return dbSizeGB;
+        }
+        
+        /**
+         * 空闲空间，未取得时为-1
+         */
+        public double getFreeSpaceGB() {
+            return freeSpaceGB;
+        }
+        
+        /**
+         * 处理结束时状态为PENDING或APPROVED的清理候选，按页存放在该目标的列存储中
+         */
+        public List<CandidateStore.Block> getCandidateBlocks() {
+            return candidateBlocks;
+        }
+        
+        public int getCandidateCount() {
+            return candidateCount;
+        }
+        
+        public int getPendingCount() {
+            return pendingCount;
+        }
+        
+        public int getApprovedCount() {
+            return candidateCount - pendingCount;
+        }
+        
+        public int getCleaned() {
+            return cleaned;
+        }
+        
+        public int getFailed() {
+            return failed;
+        }
+        
+        /**
+         * 因取消而没有执行的候选数，不计入失败
+         */
+        public int getCancelled() {
+            return cancelled;
+        }
+        
+        public int getDeferred() {
+            return deferred;
+        }
+        
+        public long getBytesReclaimed() {
+            return bytesReclaimed;
+        }
+        
+        /**
+         * 报告内容，未要求生成报告时为null
+         */
+        public String getReport() {
+            return report;
+        }
+        
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+    }
+    
+    /**
+     * 合并视图中的一行清理候选
+     * 只引用候选所在的列块和行号，取用时才还原为候选对象
+     */
+    public static class TargetCandidate {
+        private final String targetName;
+        private final CandidateStore.Block block;
+        private final int row;
+        
+        TargetCandidate(String targetName, CandidateStore.Block block, int row) {
+            this.targetName = targetName;
+            this.block = block;
+            this.row = row;
+        }
+        
+        public String getTargetName() {
+            return targetName;
+        }
+        
+        public CleanupCandidate getCandidate() {
+            return block.toCandidate(row);
+        }
+    }
+    
+    private final List<Target> targets;
+    private final int maxConcurrentTargets;
+    private final int connectionsPerTarget;
+    
+    private volatile boolean cancelled;
+    private final Set<CleanupExecutor> runningCleanups = Collections.synchronizedSet(new HashSet<CleanupExecutor>());
+    private final Set<CleanupEngine> runningAnalyses = Collections.synchronizedSet(new HashSet<CleanupEngine>());
+    
+    public CleanupFleet(List<Target> targets) {
+        this(targets, DEFAULT_MAX_CONCURRENT_TARGETS, DEFAULT_CONNECTIONS_PER_TARGET);
+    }
+    
+    /**
+     * @param maxConcurrentTargets 同时处理的目标数上限
+     * @param connectionsPerTarget 每个目标的连接池大小，清理并行度不超过该值减一
+     */
+    public CleanupFleet(List<Target> targets, int maxConcurrentTargets, int connectionsPerTarget) {
+        this.targets = new ArrayList<>(targets);
+        this.maxConcurrentTargets = Math.max(1, maxConcurrentTargets);
+        this.connectionsPerTarget = Math.max(CleanupEngine.MIN_POOL_SIZE, connectionsPerTarget);
+    }
+    
+    public List<Target> getTargets() {
+        return Collections.unmodifiableList(targets);
+    }
+    
+    /**
+     * 从目标列表文件加载目标
+     * 每行一个目标: 名称 JDBC_URL或主机:端口:SID 用户名 [密码环境变量名]，
+     * 未指定环境变量名时使用CLEANUP_PASSWORD；空行和#开头的行忽略
+     */
+    public static List<Target> loadTargets(Path file) throws IOException {
+        List<Target> targets = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNo = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNo++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\\s+");
+                if (fields.length < 3 || fields.length > 4) {
+                    throw new IOException(file + " 第" + lineNo + "行格式应为: 名称 JDBC_URL 用户名 [密码环境变量名]");
+                }
+                if (!names.add(fields[0])) {
+                    throw new IOException(file + " 第" + lineNo + "行目标名称重复: " + fields[0]);
+                }
+                String url = fields[1];
+                if (!url.startsWith("jdbc:")) {
+                    String[] parts = url.split(":");
+                    if (parts.length != 3) {
+                        throw new IOException(file + " 第" + lineNo + "行连接应为JDBC URL或主机:端口:SID: " + url);
+                    }
+                    url = CleanupEngine.buildJdbcUrl(parts[0], parts[1], parts[2]);
+                }
+                String passwordEnv = fields.length > 3 ? fields[3] : DEFAULT_PASSWORD_ENV;
+                targets.add(new Target(fields[0], url, fields[2], System.getenv(passwordEnv)));
+            }
+        }
+        return targets;
+    }
+    
+    /**
+     * 处理所有目标
+     * 每个目标依次连接、读取数据库信息、按需分析和执行清理、读取清理候选、按需生成报告。
+     * 取消后尚未开始的目标直接记为已取消，正在处理的目标在当前步骤结束后停止，正在运行的分析在数据库端的下一个检查点停止，
+     * 正在执行的清理按执行器的方式取消
+     * @param analyze 是否运行分析
+     * @param autoApprove 分析后是否自动批准
+     * @param execute 是否执行已批准的清理
+     * @param reportDays 报告覆盖的天数，小于等于0时不生成报告
+     * @param listener 进度回调，可为null
+     * @return 每个目标的结果，顺序与目标列表一致
+     */
+    public List<TargetResult> run(final boolean analyze, final boolean autoApprove, final boolean execute, 
+                                  final int reportDays, final FleetListener listener) throws InterruptedException {
+        cancelled = false;
+        if (targets.isEmpty()) return new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxConcurrentTargets, targets.size()), 
+                new ThreadFactory() {
+                    private final AtomicInteger seq = new AtomicInteger();
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread t = new Thread(r, "cleanup-fleet-" + seq.incrementAndGet());
+                        t.setDaemon(true);
+                        return t;
+                    }
+                });
+        CompletionService<TargetResult> completion = new ExecutorCompletionService<>(executor);
+        Map<Future<TargetResult>, Target> submitted = new LinkedHashMap<>();
+        Map<Target, TargetResult> results = new LinkedHashMap<>();
+        try {
+            for (final Target target : targets) {
+                submitted.put(completion.submit(new Callable<TargetResult>() {
+                    @Override
+                    public TargetResult call() {
+                        return processTarget(target, analyze, autoApprove, execute, reportDays, listener);
+                    }
+                }), target);
+            }
+            for (int i = 0; i < targets.size(); i++) {
+                Future<TargetResult> future = completion.take();
+                TargetResult result;
+                try {
+                    result = future.get();
+                } catch (ExecutionException e) {
+                    // processTarget自行捕获异常，这里只会是Error之类的意外情况
+                    result = new TargetResult(submitted.get(future));
+                    result.error = String.valueOf(e.getCause());
+                }
+                results.put(result.getTarget(), result);
+                if (listener != null) {
+                    listener.onTargetFinished(result, i + 1, targets.size());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        List<TargetResult> ordered = new ArrayList<>(targets.size());
+        for (Target target : targets) {
+            ordered.add(results.get(target));
+        }
+        return ordered;
+    }
+    
+    /**
+     * 取消批量处理
+     * 正在运行的分析由后台线程请求各数据库在下一个检查点停止，调用方不等待数据库往返
+     */
+    public void cancel() {
+        cancelled = true;
+        synchronized (runningCleanups) {
+            for (CleanupExecutor cleanup : runningCleanups) {
+                cleanup.cancel();
+            }
+        }
+        final List<CleanupEngine> engines;
+        synchronized (runningAnalyses) {
+            engines = new ArrayList<>(runningAnalyses);
+        }
+        if (engines.isEmpty()) return;
+        Thread canceller = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (CleanupEngine engine : engines) {
+                    try {
+                        engine.cancelAnalysis();
+                    } catch (SQLException e) {
+                        engine.getMetrics().recordWarning("cancel", 
+                                "请求取消" + engine.getJdbcUrl() + "的清理周期失败: " + e.getMessage());
+                    }
+                }
+            }
+        }, "cleanup-fleet-cancel-1");
+        canceller.setDaemon(true);
+        canceller.start();
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    private TargetResult processTarget(Target target, boolean analyze, boolean autoApprove, boolean execute, 
+                                       int reportDays, FleetListener listener) {
+        TargetResult result = new TargetResult(target);
+        long start = System.currentTimeMillis();
+        try {
+            checkCancelled();
+            if (target.password == null) {
+                throw new SQLException("未提供密码，请设置目标列表中指定的密码环境变量");
+            }
+            try (CleanupEngine engine = new CleanupEngine(target.jdbcUrl, target.username, target.password, 
+                    connectionsPerTarget)) {
+                progress(listener, target, "正在连接 " + target.jdbcUrl);
+                engine.connect();
+                CleanupEngine.DatabaseInfo info = engine.loadDatabaseInfo();
+                result.dbName = info.getDbName();
+                result.dbSizeGB = info.getDbSizeGB();
+                result.freeSpaceGB = info.getFreeSpaceGB();
+                if (analyze) {
+                    checkCancelled();
+                    progress(listener, target, "正在分析");
+                    runningAnalyses.add(engine);
+                    try {
+                        engine.runAnalysis(autoApprove);
+                    } finally {
+                        runningAnalyses.remove(engine);
+                    }
+                }
+                if (execute) {
+                    checkCancelled();
+                    progress(listener, target, "正在执行清理");
+                    executeCleanup(engine, result);
+                }
+                loadCandidates(engine, result);
+                if (reportDays > 0) {
+                    checkCancelled();
+                    progress(listener, target, "正在生成报告");
+                    result.report = engine.generateReport(reportDays);
+                }
+            }
+        } catch (Exception e) {
+            // 任何异常都只影响当前目标
+            result.error = e.getMessage() == null ? e.toString() : e.getMessage();
+        } finally {
+            result.elapsedMillis = System.currentTimeMillis() - start;
+        }
+        return result;
+    }
+    
+    private void executeCleanup(CleanupEngine engine, TargetResult result) throws Exception {
+        CleanupExecutor cleanup = engine.createCleanupExecutor(null);
+        runningCleanups.add(cleanup);
+        if (cancelled) {
+            cleanup.cancel();
+        }
+        long start = System.nanoTime();
+        List<CleanupExecutor.Result> results = null;
+        try {
+            results = cleanup.execute();
+        } finally {
+            runningCleanups.remove(cleanup);
+            engine.recordExecution(start, results);
+        }
+        for (CleanupExecutor.Result r : results) {
+            switch (r.getOutcome()) {
+                case CLEANED:
+                    result.cleaned++;
+                    result.bytesReclaimed += r.getReclaimedBytes();
+                    break;
+                case DEFERRED:
+                    result.deferred++;
+                    break;
+                case CANCELLED:
+                    result.cancelled++;
+                    break;
+                default:
+                    result.failed++;
+                    break;
+            }
+        }
+    }
+    
+    /**
+     * 按键集分页把候选读入该目标自己的列存储，不为每行创建候选对象；每页之间检查取消
+     */
+    private void loadCandidates(CleanupEngine engine, TargetResult result) throws SQLException {
+        checkCancelled();
+        CleanupEngine.CandidatePageIndex index = engine.loadCandidatePageIndex(CANDIDATE_PAGE_SIZE);
+        CandidateStore store = new CandidateStore();
+        List<CandidateStore.Block> blocks = new ArrayList<>(index.getPageCount());
+        int count = 0;
+        int pending = 0;
+        for (int page = 0; page < index.getPageCount(); page++) {
+            checkCancelled();
+            CandidateStore.Block block = engine.loadCandidatePage(index, page, store);
+            for (int row = 0; row < block.size(); row++) {
+                if (block.isPending(row)) pending++;
+            }
+            count += block.size();
+            blocks.add(block);
+        }
+        result.candidateBlocks = blocks;
+        result.candidateCount = count;
+        result.pendingCount = pending;
+    }
+    
+    private void checkCancelled() throws SQLException {
+        if (cancelled) {
+            throw new SQLException("已取消");
+        }
+    }
+    
+    private static void progress(FleetListener listener, Target target, String message) {
+        if (listener != null) {
+            listener.onTargetProgress(target, message);
+        }
+    }
+    
+    /**
+     * 把各目标的清理候选合并为一个列表，每行带目标名称，失败的目标没有候选
+     */
+    public static List<TargetCandidate> mergeCandidates(List<TargetResult> results) {
+        int total = 0;
+        for (TargetResult result : results) {
+            total += result.getCandidateCount();
+        }
+        List<TargetCandidate> merged = new ArrayList<>(total);
+        for (TargetResult result : results) {
+            for (CandidateStore.Block block : result.getCandidateBlocks()) {
+                for (int row = 0; row < block.size(); row++) {
+                    merged.add(new TargetCandidate(result.getTarget().getName(), block, row));
+                }
+            }
+        }
+        return merged;
+    }
+}
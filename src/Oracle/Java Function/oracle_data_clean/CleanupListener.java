@@ -0,0 +1,25 @@
+package oracle.data.cleanup;
+
+/**
+ * 清理执行回调
+ * 在执行清理的后台线程中调用，实现方需要自行切换到界面线程
+ */
+public interface CleanupListener {
+    
+    /**
+     * 某个候选开始清理
+     */
+    void onCandidateStarted(CleanupCandidate candidate);
+    
+    /**
+     * 某个候选清理结束(成功、失败或被取消)
+     * @param completed 已结束的候选数
+     * @param total 候选总数
+     */
+    void onCandidateFinished(CleanupExecutor.Result result, int completed, int total);
+    
+    /**
+     * 执行期间不影响清理继续的警告，如负载过高暂停、无法读取实例负载
+     */
+    void onWarning(String message);
+}
@@ -0,0 +1,568 @@
+package oracle.data.cleanup;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 清理运行指标
+ * 记录客户端各阶段和各类对象的清理耗时、JDBC往返次数和语句耗时分布，以及数据库端最近一次清理周期的阶段耗时。
+ * 通过JMX发布，也可以写成Prometheus文本格式，由node exporter的textfile收集器读取
+ */
+public class CleanupMetrics implements CleanupMetricsMBean {
+    
+    // 语句耗时直方图各桶的上限(秒)
+    private static final double[] LATENCY_BUCKETS = {0.001, 0.005, 0.01, 0.05, 0.1, 0.5, 1, 5, 30};
+    
+    /**
+     * 一类操作的累计耗时
+     */
+    public static class Timing {
+        private final String name;
+        private long count;
+        private long failures;
+        private long totalNanos;
+        private long maxNanos;
+        private long lastNanos;
+        private long lastItems = -1;
+        private long totalBytes;
+        private long lastFinished;
+        
+        Timing(String name) {
+            this.name = name;
+        }
+        
+        synchronized void record(long nanos, long items, long bytes, boolean failed) {
+            count++;
+            if (failed) failures++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            lastNanos = nanos;
+            lastItems = items;
+            totalBytes += Math.max(0, bytes);
+            lastFinished = System.currentTimeMillis();
+        }
+        
+        synchronized Timing copy() {
+            Timing copy = new Timing(name);
+            copy.count = count;
+            copy.failures = failures;
+            copy.totalNanos = totalNanos;
+            copy.maxNanos = maxNanos;
+            copy.lastNanos = lastNanos;
+            copy.lastItems = lastItems;
+            copy.totalBytes = totalBytes;
+            copy.lastFinished = lastFinished;
+            return copy;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public long getCount() {
+            return count;
+        }
+        
+        public long getFailures() {
+            return failures;
+        }
+        
+        public double getTotalSeconds() {
+            return totalNanos / 1e9;
+        }
+        
+        public double getMaxSeconds() {
+            return maxNanos / 1e9;
+        }
+        
+        public double getLastSeconds() {
+            return lastNanos / 1e9;
+        }
+        
+        /**
+         * 最近一次处理的对象数，未知时为-1
+         */
+        public long getLastItems() {
+            return lastItems;
+        }
+        
+        public long getTotalBytes() {
+            return totalBytes;
+        }
+        
+        /**
+         * 最近一次结束的时间(毫秒时间戳)
+         */
+        public long getLastFinished() {
+            return lastFinished;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s: 次数=%d 失败=%d 合计=%.3fs 最近=%.3fs 最大=%.3fs%s%s", name, count, failures, 
+                    getTotalSeconds(), getLastSeconds(), getMaxSeconds(), 
+                    lastItems < 0 ? "" : " 对象数=" + lastItems, 
+                    totalBytes == 0 ? "" : " 回收字节=" + totalBytes);
+        }
+    }
+    
+    /**
+     * 数据库端清理周期的一个阶段，取自cleanup_run_phase表
+     */
+    public static class RunPhase {
+        private final String name;
+        private final long startedTime;
+        private final long elapsedMillis;
+        private final long itemCount;
+        private final long spaceSaved;
+        private final String status;
+        
+        public RunPhase(String name, long startedTime, long elapsedMillis, long itemCount, long spaceSaved, 
+                        String status) {
+            this.name = name;
+            this.startedTime = startedTime;
+            this.elapsedMillis = elapsedMillis;
+            this.itemCount = itemCount;
+            this.spaceSaved = spaceSaved;
+            this.status = status;
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        /**
+         * 开始时间(毫秒时间戳)
+         */
+        public long getStartedTime() {
+            return startedTime;
+        }
+        
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+        
+        /**
+         * 处理的对象数，未记录时为-1
+         */
+        public long getItemCount() {
+            return itemCount;
+        }
+        
+        /**
+         * 回收的字节数，未记录时为-1
+         */
+        public long getSpaceSaved() {
+            return spaceSaved;
+        }
+        
+        public String getStatus() {
+            return status;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s: %s 耗时=%.3fs%s%s", name, status, elapsedMillis / 1000.0, 
+                    itemCount < 0 ? "" : " 对象数=" + itemCount, 
+                    spaceSaved < 0 ? "" : " 回收字节=" + spaceSaved);
+        }
+    }
+    
+    private final String target;
+    
+    // 按首次出现的顺序保存
+    private final Map<String, Timing> phases = new LinkedHashMap<>();
+    private final Map<String, Timing> objects = new LinkedHashMap<>();
+    
+    private final AtomicLong roundTrips = new AtomicLong();
+    private final AtomicLong statements = new AtomicLong();
+    private final AtomicLong statementErrors = new AtomicLong();
+    private final AtomicLong statementNanos = new AtomicLong();
+    private final AtomicLong maxStatementNanos = new AtomicLong();
+    private final AtomicLongArray latencyBuckets = new AtomicLongArray(LATENCY_BUCKETS.length);
+    
+    private volatile long lastRunId = -1;
+    private volatile List<RunPhase> lastRun = Collections.emptyList();
+    
+    // 按来源统计的客户端警告次数和最近一条警告
+    private final Map<String, AtomicLong> warnings = new LinkedHashMap<>();
+    private volatile String lastWarning;
+    
+    /**
+     * @param target 目标数据库标识，作为每个Prometheus指标的target标签
+     */
+    public CleanupMetrics(String target) {
+        this.target = target;
+    }
+    
+    public String getTarget() {
+        return target;
+    }
+    
+    /**
+     * 记录客户端一个阶段的耗时
+     * @param items 处理的对象数，未知时为-1
+     * @param bytes 回收的字节数
+     */
+    public void recordPhase(String phase, long nanos, long items, long bytes, boolean failed) {
+        timing(phases, phase).record(nanos, items, bytes, failed);
+    }
+    
+    /**
+     * 记录清理一个对象的耗时
+     * @param bytes 回收的字节数，失败时为0
+     */
+    public void recordObject(String objectType, long nanos, long bytes, boolean failed) {
+        timing(objects, objectType).record(nanos, 1, bytes, failed);
+    }
+    
+    /**
+     * 记录一次语句执行，语句执行也计为一次往返
+     */
+    public void recordStatement(long nanos, boolean failed) {
+        roundTrips.incrementAndGet();
+        statements.incrementAndGet();
+        if (failed) {
+            statementErrors.incrementAndGet();
+        }
+        statementNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxStatementNanos.get()) && !maxStatementNanos.compareAndSet(max, nanos)) {
+            // 被其他线程更新后重试
+        }
+        double seconds = nanos / 1e9;
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            if (seconds <= LATENCY_BUCKETS[i]) {
+                latencyBuckets.incrementAndGet(i);
+                break;
+            }
+        }
+    }
+    
+    /**
+     * 记录一条客户端警告，不影响清理操作的问题(如无法读取实例负载)通过运行指标报告而不是输出到控制台
+     * @param source 警告来源，作为Prometheus指标的source标签
+     */
+    public void recordWarning(String source, String message) {
+        synchronized (warnings) {
+            AtomicLong count = warnings.get(source);
+            if (count == null) {
+                count = new AtomicLong();
+                warnings.put(source, count);
+            }
+            count.incrementAndGet();
+        }
+        lastWarning = message;
+    }
+    
+    /**
+     * 记录一次语句以外的往返，如提交和回滚
+     */
+    public void recordRoundTrip() {
+        roundTrips.incrementAndGet();
+    }
+    
+    /**
+     * 保存数据库端最近一次清理周期的阶段耗时
+     */
+    public void setLastRun(long runId, List<RunPhase> phases) {
+        lastRun = Collections.unmodifiableList(new ArrayList<>(phases));
+        lastRunId = runId;
+    }
+    
+    /**
+     * 数据库端最近一次清理周期的编号，尚未加载时为-1
+     */
+    public long getLastRunId() {
+        return lastRunId;
+    }
+    
+    public List<RunPhase> getLastRun() {
+        return lastRun;
+    }
+    
+    public List<Timing> getPhaseTimings() {
+        return copy(phases);
+    }
+    
+    public List<Timing> getObjectTimings() {
+        return copy(objects);
+    }
+    
+    @Override
+    public long getJdbcRoundTrips() {
+        return roundTrips.get();
+    }
+    
+    @Override
+    public long getJdbcStatements() {
+        return statements.get();
+    }
+    
+    @Override
+    public long getJdbcStatementErrors() {
+        return statementErrors.get();
+    }
+    
+    @Override
+    public double getJdbcMeanStatementMillis() {
+        long count = statements.get();
+        return count == 0 ? 0 : statementNanos.get() / 1e6 / count;
+    }
+    
+    @Override
+    public double getJdbcMaxStatementMillis() {
+        return maxStatementNanos.get() / 1e6;
+    }
+    
+    @Override
+    public long getWarnings() {
+        long total = 0;
+        synchronized (warnings) {
+            for (AtomicLong count : warnings.values()) {
+                total += count.get();
+            }
+        }
+        return total;
+    }
+    
+    @Override
+    public String getLastWarning() {
+        return lastWarning;
+    }
+    
+    @Override
+    public long getBytesReclaimed() {
+        long total = 0;
+        for (Timing timing : getObjectTimings()) {
+            total += timing.getTotalBytes();
+        }
+        return total;
+    }
+    
+    @Override
+    public String[] getPhaseSummary() {
+        return summary(getPhaseTimings());
+    }
+    
+    @Override
+    public String[] getObjectSummary() {
+        return summary(getObjectTimings());
+    }
+    
+    @Override
+    public String[] getLastRunSummary() {
+        return summary(lastRun);
+    }
+    
+    @Override
+    public void reset() {
+        synchronized (phases) {
+            phases.clear();
+        }
+        synchronized (objects) {
+            objects.clear();
+        }
+        roundTrips.set(0);
+        statements.set(0);
+        statementErrors.set(0);
+        statementNanos.set(0);
+        maxStatementNanos.set(0);
+        for (int i = 0; i < latencyBuckets.length(); i++) {
+            latencyBuckets.set(i, 0);
+        }
+        synchronized (warnings) {
+            warnings.clear();
+        }
+        lastWarning = null;
+    }
+    
+    /**
+     * 以Prometheus文本格式输出所有指标
+     */
+    public void writePrometheus(Writer out) throws IOException {
+        List<Timing> phaseTimings = getPhaseTimings();
+        List<Timing> objectTimings = getObjectTimings();
+        
+        header(out, "oracle_cleanup_phase_duration_seconds", "summary", "客户端各阶段的耗时");
+        for (Timing t : phaseTimings) {
+            sample(out, "oracle_cleanup_phase_duration_seconds_sum", "phase", t.getName(), t.getTotalSeconds());
+            sample(out, "oracle_cleanup_phase_duration_seconds_count", "phase", t.getName(), t.getCount());
+        }
+        header(out, "oracle_cleanup_phase_last_duration_seconds", "gauge", "客户端各阶段最近一次的耗时");
+        for (Timing t : phaseTimings) {
+            sample(out, "oracle_cleanup_phase_last_duration_seconds", "phase", t.getName(), t.getLastSeconds());
+        }
+        header(out, "oracle_cleanup_phase_last_items", "gauge", "客户端各阶段最近一次处理的对象数");
+        for (Timing t : phaseTimings) {
+            if (t.getLastItems() >= 0) {
+                sample(out, "oracle_cleanup_phase_last_items", "phase", t.getName(), t.getLastItems());
+            }
+        }
+        header(out, "oracle_cleanup_phase_failures_total", "counter", "客户端各阶段的失败次数");
+        for (Timing t : phaseTimings) {
+            sample(out, "oracle_cleanup_phase_failures_total", "phase", t.getName(), t.getFailures());
+        }
+        
+        header(out, "oracle_cleanup_object_duration_seconds", "summary", "按对象类型统计的清理耗时");
+        for (Timing t : objectTimings) {
+            sample(out, "oracle_cleanup_object_duration_seconds_sum", "object_type", t.getName(), t.getTotalSeconds());
+            sample(out, "oracle_cleanup_object_duration_seconds_count", "object_type", t.getName(), t.getCount());
+        }
+        header(out, "oracle_cleanup_object_reclaimed_bytes_total", "counter", "按对象类型统计的回收字节数");
+        for (Timing t : objectTimings) {
+            sample(out, "oracle_cleanup_object_reclaimed_bytes_total", "object_type", t.getName(), t.getTotalBytes());
+        }
+        header(out, "oracle_cleanup_object_failures_total", "counter", "按对象类型统计的清理失败次数");
+        for (Timing t : objectTimings) {
+            sample(out, "oracle_cleanup_object_failures_total", "object_type", t.getName(), t.getFailures());
+        }
+        
+        header(out, "oracle_cleanup_jdbc_round_trips_total", "counter", "JDBC往返次数，不含分批读取结果集");
+        sample(out, "oracle_cleanup_jdbc_round_trips_total", null, null, roundTrips.get());
+        header(out, "oracle_cleanup_jdbc_statement_errors_total", "counter", "执行失败的JDBC语句数");
+        sample(out, "oracle_cleanup_jdbc_statement_errors_total", null, null, statementErrors.get());
+        header(out, "oracle_cleanup_jdbc_statement_duration_seconds", "histogram", "JDBC语句执行耗时");
+        long cumulative = 0;
+        for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+            cumulative += latencyBuckets.get(i);
+            sample(out, "oracle_cleanup_jdbc_statement_duration_seconds_bucket", "le", 
+                    String.valueOf(LATENCY_BUCKETS[i]), cumulative);
+        }
+        long count = statements.get();
+        sample(out, "oracle_cleanup_jdbc_statement_duration_seconds_bucket", "le", "+Inf", count);
+        sample(out, "oracle_cleanup_jdbc_statement_duration_seconds_sum", null, null, statementNanos.get() / 1e9);
+        sample(out, "oracle_cleanup_jdbc_statement_duration_seconds_count", null, null, count);
+        
+        Map<String, Long> warningCounts = new LinkedHashMap<>();
+        synchronized (warnings) {
+            for (Map.Entry<String, AtomicLong> entry : warnings.entrySet()) {
+                warningCounts.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+        header(out, "oracle_cleanup_warnings_total", "counter", "客户端警告次数");
+        for (Map.Entry<String, Long> entry : warningCounts.entrySet()) {
+            sample(out, "oracle_cleanup_warnings_total", "source", entry.getKey(), entry.getValue());
+        }
+        
+        List<RunPhase> run = lastRun;
+        if (lastRunId >= 0) {
+            header(out, "oracle_cleanup_db_run_id", "gauge", "数据库端最近一次清理周期的编号");
+            sample(out, "oracle_cleanup_db_run_id", null, null, lastRunId);
+            header(out, "oracle_cleanup_db_phase_duration_seconds", "gauge", "数据库端最近一次清理周期各阶段的耗时");
+            for (RunPhase p : run) {
+                sample(out, "oracle_cleanup_db_phase_duration_seconds", "phase", p.getName(), p.getElapsedMillis() / 1000.0);
+            }
+            header(out, "oracle_cleanup_db_phase_items", "gauge", "数据库端最近一次清理周期各阶段处理的对象数");
+            for (RunPhase p : run) {
+                if (p.getItemCount() >= 0) {
+                    sample(out, "oracle_cleanup_db_phase_items", "phase", p.getName(), p.getItemCount());
+                }
+            }
+            header(out, "oracle_cleanup_db_phase_reclaimed_bytes", "gauge", "数据库端最近一次清理周期各阶段回收的字节数");
+            for (RunPhase p : run) {
+                if (p.getSpaceSaved() >= 0) {
+                    sample(out, "oracle_cleanup_db_phase_reclaimed_bytes", "phase", p.getName(), p.getSpaceSaved());
+                }
+            }
+        }
+    }
+    
+    /**
+     * 把所有指标写入文件
+     * 先写临时文件再改名，收集器不会读到写了一半的文件
+     */
+    public void writePrometheusFile(Path file) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (Writer out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writePrometheus(out);
+            }
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    private static Timing timing(Map<String, Timing> timings, String name) {
+        synchronized (timings) {
+            Timing timing = timings.get(name);
+            if (timing == null) {
+                timing = new Timing(name);
+                timings.put(name, timing);
+            }
+            return timing;
+        }
+    }
+    
+    private static List<Timing> copy(Map<String, Timing> timings) {
+        List<Timing> result;
+        synchronized (timings) {
+            result = new ArrayList<>(timings.values());
+        }
+        for (int i = 0; i < result.size(); i++) {
+            result.set(i, result.get(i).copy());
+        }
+        return result;
+    }
+    
+    private static String[] summary(List<?> items) {
+        String[] lines = new String[items.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = items.get(i).toString();
+        }
+        return lines;
+    }
+    
+    private static void header(Writer out, String name, String type, String help) throws IOException {
+        out.write("# HELP " + name + " " + help + "\n");
+        out.write("# TYPE " + name + " " + type + "\n");
+    }
+    
+    private void sample(Writer out, String name, String label, String labelValue, double value) throws IOException {
+        StringBuilder line = new StringBuilder(name);
+        line.append("{target=\"").append(escape(target)).append('"');
+        if (label != null) {
+            line.append(',').append(label).append("=\"").append(escape(labelValue)).append('"');
+        }
+        line.append("} ");
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            line.append((long) value);
+        } else {
+            line.append(String.format(Locale.ROOT, "%.6f", value));
+        }
+        out.write(line.append('\n').toString());
+    }
+    
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+    
+    /**
+     * 格式化毫秒时间戳，用于界面显示
+     */
+    public static String formatTime(long millis) {
+        return millis <= 0 ? "" : new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date(millis));
+    }
+}
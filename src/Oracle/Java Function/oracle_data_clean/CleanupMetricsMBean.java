@@ -0,0 +1,56 @@
+package oracle.data.cleanup;
+
+/**
+ * 清理运行指标的JMX接口
+ * 注册名为oracle.data.cleanup:type=CleanupMetrics,name="用户@连接URL"
+ */
+public interface CleanupMetricsMBean {
+    
+    /**
+     * JDBC往返次数，包括语句执行、提交和回滚，不含分批读取结果集
+     */
+    long getJdbcRoundTrips();
+    
+    long getJdbcStatements();
+    
+    long getJdbcStatementErrors();
+    
+    double getJdbcMeanStatementMillis();
+    
+    double getJdbcMaxStatementMillis();
+    
+    /**
+     * 已清理对象合计回收的字节数
+     */
+    long getBytesReclaimed();
+    
+    /**
+     * 客户端警告次数，如无法读取实例负载、写入指标文件或字典快照失败
+     */
+    long getWarnings();
+    
+    /**
+     * 最近一次客户端警告，没有时为null
+     */
+    String getLastWarning();
+    
+    /**
+     * 客户端各阶段的耗时汇总，每个阶段一行
+     */
+    String[] getPhaseSummary();
+    
+    /**
+     * 按对象类型汇总的清理耗时，每种类型一行
+     */
+    String[] getObjectSummary();
+    
+    /**
+     * 数据库端最近一次清理周期的阶段耗时，每个阶段一行
+     */
+    String[] getLastRunSummary();
+    
+    /**
+     * 清空所有累计指标
+     */
+    void reset();
+}
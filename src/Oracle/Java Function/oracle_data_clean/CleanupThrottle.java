@@ -0,0 +1,198 @@
+package oracle.data.cleanup;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 清理限流和负载退避
+ * 所有工作线程共享同一个实例：每个候选开始前按回收空间和DDL数申请额度，两者中较慢的一个决定候选之间的间隔；
+ * 实例负载(v$sysmetric中最近一分钟的主机CPU使用率、重做生成速率和平均活动会话数)超过阈值时暂停，
+ * 暂停时间从15秒起逐次加倍。负载恢复后限流间隔先按暂停次数放慢，之后每个负载正常的候选减半。
+ * 负载采样最多每{@link #SAMPLE_INTERVAL_NANOS}查询一次，各线程共用最近一次的结果
+ */
+public class CleanupThrottle {
+    
+    private static final long SAMPLE_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(15);
+    private static final long INITIAL_BACKOFF_MILLIS = 15000;
+    // 等待时每次最多睡眠的时间，醒来后检查是否已取消
+    private static final long WAIT_SLICE_NANOS = TimeUnit.SECONDS.toNanos(1);
+    // 最多积累一分钟的空闲额度
+    private static final long MAX_BURST_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final double MAX_SLOWDOWN = 8;
+    
+    private static final String CPU_METRIC = "Host CPU Utilization (%)";
+    private static final String REDO_METRIC = "Redo Generated Per Sec";
+    private static final String SESSIONS_METRIC = "Average Active Sessions";
+    
+    private static final String LOAD_SQL =
+        "SELECT metric_name, value FROM v$sysmetric " +
+        "WHERE group_id = 2 AND metric_name IN (?, ?, ?) " +
+        "UNION ALL " +
+        "SELECT 'cpu_count', TO_NUMBER(value) FROM v$parameter WHERE name = 'cpu_count'";
+    
+    private final CleanupEngine engine;
+    private final double nanosPerByte;
+    private final long nanosPerDdl;
+    private final double maxCpuPct;
+    private final double maxRedoBytesPerSecond;
+    private final double maxActiveSessions;
+    private final long maxBackoffMillis;
+    
+    private long nextFreeNanos = System.nanoTime();
+    private double slowdown = 1;
+    
+    // 最近一次负载采样，受this保护
+    private long sampledAt;
+    private String pressure;
+    private boolean loadCheckEnabled = true;
+    
+    /**
+     * @param maxBytesPerMinute 每分钟最多回收的字节数，小于等于0表示不限制
+     * @param maxDdlPerMinute 每分钟最多执行的清理DDL数，小于等于0表示不限制
+     * @param maxCpuPct 主机CPU使用率阈值(%)，小于等于0表示不检查
+     * @param maxRedoBytesPerSecond 每秒生成重做日志的字节数阈值，小于等于0表示不检查
+     * @param maxActiveSessions 平均活动会话数阈值，小于0表示不检查，0表示取CPU数
+     * @param maxBackoffMillis 负载过高时单次暂停的上限(毫秒)
+     */
+    public CleanupThrottle(CleanupEngine engine, long maxBytesPerMinute, int maxDdlPerMinute, 
+                           double maxCpuPct, double maxRedoBytesPerSecond, double maxActiveSessions, 
+                           long maxBackoffMillis) {
+        this.engine = engine;
+        this.nanosPerByte = maxBytesPerMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / (double) maxBytesPerMinute : 0;
+        this.nanosPerDdl = maxDdlPerMinute > 0 ? TimeUnit.MINUTES.toNanos(1) / maxDdlPerMinute : 0;
+        this.maxCpuPct = maxCpuPct;
+        this.maxRedoBytesPerSecond = maxRedoBytesPerSecond;
+        this.maxActiveSessions = maxActiveSessions;
+        this.maxBackoffMillis = Math.max(INITIAL_BACKOFF_MILLIS, maxBackoffMillis);
+    }
+    
+    /**
+     * 开始清理一个候选前等待负载恢复和限流额度
+     * @param bytes 候选的可回收字节数
+     * @param executor 所属的执行器，执行器取消后停止等待
+     * @return 等到额度时返回true，执行器在等待期间被取消时返回false
+     */
+    public boolean acquire(long bytes, CleanupExecutor executor) throws InterruptedException {
+        long start = System.nanoTime();
+        try {
+            long backoff = INITIAL_BACKOFF_MILLIS;
+            boolean paused = false;
+            String reason;
+            while ((reason = currentPressure(executor)) != null) {
+                if (!paused) {
+                    executor.warn("throttle", "实例负载过高(" + reason + ")，暂停清理");
+                    paused = true;
+                }
+                synchronized (this) {
+                    slowdown = Math.min(slowdown * 2, MAX_SLOWDOWN);
+                }
+                if (!sleepUntil(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff), executor)) {
+                    return false;
+                }
+                backoff = Math.min(backoff * 2, maxBackoffMillis);
+            }
+            
+            long waitUntil;
+            synchronized (this) {
+                if (!paused && slowdown > 1) {
+                    slowdown = Math.max(1, slowdown / 2);
+                }
+                long cost = (long) (Math.max(Math.max(0, bytes) * nanosPerByte, nanosPerDdl) * slowdown);
+                if (cost == 0) {
+                    return true;
+                }
+                long now = System.nanoTime();
+                if (nextFreeNanos < now - MAX_BURST_NANOS) {
+                    nextFreeNanos = now - MAX_BURST_NANOS;
+                }
+                waitUntil = nextFreeNanos;
+                nextFreeNanos += cost;
+            }
+            return sleepUntil(waitUntil, executor);
+        } finally {
+            long waited = System.nanoTime() - start;
+            if (waited >= TimeUnit.MILLISECONDS.toNanos(1)) {
+                engine.getMetrics().recordPhase("throttle_wait", waited, 1, 0, false);
+            }
+        }
+    }
+    
+    private static boolean sleepUntil(long deadline, CleanupExecutor executor) throws InterruptedException {
+        long delay;
+        while ((delay = deadline - System.nanoTime()) > 0) {
+            if (executor.isCancelled()) {
+                return false;
+            }
+            LockSupport.parkNanos(Math.min(delay, WAIT_SLICE_NANOS));
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+        return !executor.isCancelled();
+    }
+    
+    /**
+     * 当前的负载过高原因，负载正常时返回null
+     * 查询失败(通常是没有查询v$sysmetric的权限)时通过执行器报告一次警告，之后不再检查负载
+     */
+    private synchronized String currentPressure(CleanupExecutor executor) {
+        if (!loadCheckEnabled) {
+            return null;
+        }
+        long now = System.nanoTime();
+        if (sampledAt != 0 && now - sampledAt < SAMPLE_INTERVAL_NANOS) {
+            return pressure;
+        }
+        try {
+            pressure = evaluate(sampleLoad());
+            sampledAt = now;
+        } catch (SQLException e) {
+            executor.warn("throttle", "无法读取实例负载，不再按负载暂停清理: " + e.getMessage());
+            loadCheckEnabled = false;
+            pressure = null;
+        }
+        return pressure;
+    }
+    
+    private Map<String, Double> sampleLoad() throws SQLException {
+        Map<String, Double> metrics = new HashMap<>();
+        try (Connection conn = engine.borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(LOAD_SQL)) {
+            stmt.setString(1, CPU_METRIC);
+            stmt.setString(2, REDO_METRIC);
+            stmt.setString(3, SESSIONS_METRIC);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    metrics.put(rs.getString(1), rs.getDouble(2));
+                }
+            }
+        }
+        return metrics;
+    }
+    
+    private String evaluate(Map<String, Double> metrics) {
+        Double cpu = metrics.get(CPU_METRIC);
+        if (maxCpuPct > 0 && cpu != null && cpu > maxCpuPct) {
+            return String.format("主机CPU使用率%.0f%%", cpu);
+        }
+        Double redo = metrics.get(REDO_METRIC);
+        if (maxRedoBytesPerSecond > 0 && redo != null && redo > maxRedoBytesPerSecond) {
+            return String.format("重做生成%.1fMB/秒", redo / 1048576);
+        }
+        double maxSessions = maxActiveSessions;
+        if (maxSessions == 0 && metrics.containsKey("cpu_count")) {
+            maxSessions = metrics.get("cpu_count");
+        }
+        Double sessions = metrics.get(SESSIONS_METRIC);
+        if (maxSessions > 0 && sessions != null && sessions > maxSessions) {
+            return String.format("平均活动会话%.1f", sessions);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,463 @@
+package oracle.data.cleanup;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 简单的JDBC连接池
+ * 限制最大连接数，借出前校验连接，定期回收空闲连接，并按连接缓存PreparedStatement/CallableStatement。
+ * 借出的连接调用close()时归还到池中而不是真正关闭。
+ * 设置了运行指标时，记录每次语句执行的耗时和提交、回滚的往返次数
+ */
+public class ConnectionPool implements AutoCloseable {
+    
+    // 借出时如果连接在该时间内刚被使用过，则跳过校验
+    private static final long VALIDATION_INTERVAL_MILLIS = 1000;
+    private static final int VALIDATION_TIMEOUT_SECONDS = 5;
+    
+    private final String jdbcUrl;
+    private final String username;
+    private final String password;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long idleTimeoutMillis;
+    private final int statementCacheSize;
+    
+    private final Semaphore permits;
+    private final Deque<PooledConnection> idle = new ArrayDeque<>();
+    private final ScheduledExecutorService evictor;
+    private volatile CleanupMetrics metrics;
+    private volatile boolean closed;
+    
+    /**
+     * @param maxSize 最大连接数
+     * @param borrowTimeoutMillis 等待可用连接的最长时间
+     * @param idleTimeoutMillis 空闲连接超过该时间后被关闭
+     * @param statementCacheSize 每个连接缓存的语句数，0表示不缓存
+     */
+    public ConnectionPool(String jdbcUrl, String username, String password, int maxSize, 
+                          long borrowTimeoutMillis, long idleTimeoutMillis, int statementCacheSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("连接池大小必须大于0");
+        }
+        this.jdbcUrl = jdbcUrl;
+        this.username = username;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.permits = new Semaphore(maxSize, true);
+        
+        this.evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "cleanup-pool-evictor");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                evictIdle();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+    }
+    
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * 设置记录JDBC往返和语句耗时的运行指标，为null时不记录
+     */
+    public void setMetrics(CleanupMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * 当前被借出的连接数
+     */
+    public int getActiveCount() {
+        return maxSize - permits.availablePermits();
+    }
+    
+    public synchronized int getIdleCount() {
+        return idle.size();
+    }
+    
+    /**
+     * 借出一个连接，使用完毕后调用close()归还
+     */
+    public Connection borrow() throws SQLException {
+        if (closed) {
+            throw new SQLException("连接池已关闭");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("等待数据库连接超时，连接池已满(" + maxSize + ")");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("等待数据库连接时被中断", e);
+        }
+        
+        try {
+            PooledConnection pooled;
+            while ((pooled = pollIdle()) != null) {
+                if (validate(pooled)) {
+                    return pooled.lease();
+                }
+                pooled.closePhysical();
+            }
+            pooled = new PooledConnection(DriverManager.getConnection(jdbcUrl, username, password));
+            return pooled.lease();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    private synchronized PooledConnection pollIdle() {
+        // 后进先出，优先复用最近使用过的连接
+        return idle.pollFirst();
+    }
+    
+    private boolean validate(PooledConnection pooled) {
+        if (System.currentTimeMillis() - pooled.lastUsed < VALIDATION_INTERVAL_MILLIS) {
+            return true;
+        }
+        try {
+            return pooled.physical.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+    
+    private void release(PooledConnection pooled, boolean reusable) {
+        try {
+            if (reusable && !closed) {
+                pooled.lastUsed = System.currentTimeMillis();
+                synchronized (this) {
+                    idle.addFirst(pooled);
+                }
+            } else {
+                pooled.closePhysical();
+            }
+        } finally {
+            permits.release();
+        }
+    }
+    
+    /**
+     * 关闭空闲时间超过阈值的连接
+     */
+    private void evictIdle() {
+        long now = System.currentTimeMillis();
+        Deque<PooledConnection> expired = new ArrayDeque<>();
+        synchronized (this) {
+            Iterator<PooledConnection> it = idle.iterator();
+            while (it.hasNext()) {
+                PooledConnection pooled = it.next();
+                if (now - pooled.lastUsed > idleTimeoutMillis) {
+                    it.remove();
+                    expired.add(pooled);
+                }
+            }
+        }
+        for (PooledConnection pooled : expired) {
+            pooled.closePhysical();
+        }
+    }
+    
+    /**
+     * 关闭连接池，已借出的连接在归还时关闭
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = pollIdle()) != null) {
+            pooled.closePhysical();
+        }
+    }
+    
+    /**
+     * 池中的物理连接及其语句缓存
+     */
+    private class PooledConnection {
+        private final Connection physical;
+        private final Map<String, CachedStatement> statementCache;
+        private volatile long lastUsed = System.currentTimeMillis();
+        
+        PooledConnection(Connection physical) {
+            this.physical = physical;
+            this.statementCache = new LinkedHashMap<String, CachedStatement>(16, 0.75f, true) {
+                private static final long serialVersionUID = 1L;
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, CachedStatement> eldest) {
+                    if (size() > statementCacheSize && !eldest.getValue().inUse) {
+                        closeQuietly(eldest.getValue().statement);
+                        return true;
+                    }
+                    return false;
+                }
+            };
+        }
+        
+        Connection lease() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), 
+                    new Class<?>[] {Connection.class}, new LeasedConnectionHandler(this));
+        }
+        
+        /**
+         * 从缓存获取语句，缓存中不存在或正在使用时新建
+         */
+        Statement prepare(String key, Method method, Object[] args, Class<?> type) throws Throwable {
+            if (statementCacheSize <= 0) {
+                return timed((Statement) invoke(physical, method, args), type);
+            }
+            CachedStatement cached = statementCache.get(key);
+            if (cached != null && cached.inUse) {
+                // 同一SQL在同一连接上被同时使用时不走缓存
+                return timed((Statement) invoke(physical, method, args), type);
+            }
+            if (cached == null) {
+                cached = new CachedStatement((Statement) invoke(physical, method, args));
+                statementCache.put(key, cached);
+            }
+            cached.inUse = true;
+            return (Statement) Proxy.newProxyInstance(Connection.class.getClassLoader(), 
+                    new Class<?>[] {type}, new CachedStatementHandler(cached));
+        }
+        
+        void closePhysical() {
+            for (CachedStatement cached : statementCache.values()) {
+                closeQuietly(cached.statement);
+            }
+            statementCache.clear();
+            try {
+                physical.close();
+            } catch (SQLException e) {
+                // 忽略关闭错误
+            }
+        }
+    }
+    
+    private static class CachedStatement {
+        private final Statement statement;
+        private volatile boolean inUse;
+        
+        CachedStatement(Statement statement) {
+            this.statement = statement;
+        }
+    }
+    
+    /**
+     * 借出连接的代理，拦截close()和语句创建
+     */
+    private class LeasedConnectionHandler implements InvocationHandler {
+        private final PooledConnection pooled;
+        private boolean released;
+        
+        LeasedConnectionHandler(PooledConnection pooled) {
+            this.pooled = pooled;
+        }
+        
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (!released) {
+                    released = true;
+                    release(pooled, resetForReuse());
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return released || pooled.physical.isClosed();
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if ("toString".equals(name)) {
+                return "PooledConnection@" + Integer.toHexString(System.identityHashCode(proxy));
+            }
+            if (released) {
+                throw new SQLException("连接已归还到连接池");
+            }
+            if (args != null && args.length == 1 && args[0] instanceof String) {
+                if ("prepareStatement".equals(name)) {
+                    return pooled.prepare("S:" + args[0], method, args, PreparedStatement.class);
+                }
+                if ("prepareCall".equals(name)) {
+                    return pooled.prepare("C:" + args[0], method, args, CallableStatement.class);
+                }
+            }
+            if (method.getReturnType() == Statement.class || method.getReturnType() == PreparedStatement.class
+                    || method.getReturnType() == CallableStatement.class) {
+                return timed((Statement) ConnectionPool.invoke(pooled.physical, method, args), method.getReturnType());
+            }
+            if ("commit".equals(name) || "rollback".equals(name)) {
+                CleanupMetrics current = metrics;
+                if (current != null) {
+                    current.recordRoundTrip();
+                }
+            }
+            return ConnectionPool.invoke(pooled.physical, method, args);
+        }
+        
+        /**
+         * 归还前恢复连接状态，失败时丢弃该连接
+         */
+        private boolean resetForReuse() {
+            try {
+                if (pooled.physical.isClosed()) {
+                    return false;
+                }
+                if (!pooled.physical.getAutoCommit()) {
+                    pooled.physical.rollback();
+                    pooled.physical.setAutoCommit(true);
+                }
+                return true;
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * 缓存语句的代理，close()只归还到语句缓存
+     */
+    private class CachedStatementHandler implements InvocationHandler {
+        private final CachedStatement cached;
+        private boolean closed;
+        
+        CachedStatementHandler(CachedStatement cached) {
+            this.cached = cached;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("close".equals(name)) {
+                if (!closed) {
+                    closed = true;
+                    try {
+                        ((PreparedStatement) cached.statement).clearParameters();
+                    } catch (SQLException e) {
+                        // 忽略清理错误
+                    }
+                    cached.inUse = false;
+                }
+                return null;
+            }
+            if ("isClosed".equals(name)) {
+                return closed || cached.statement.isClosed();
+            }
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            if (closed) {
+                throw new SQLException("语句已关闭");
+            }
+            return invokeTimed(cached.statement, method, args);
+        }
+    }
+    
+    /**
+     * 未缓存语句的代理，只记录执行耗时
+     */
+    private class TimedStatementHandler implements InvocationHandler {
+        private final Statement statement;
+        
+        TimedStatementHandler(Statement statement) {
+            this.statement = statement;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if ("equals".equals(name)) {
+                return proxy == args[0];
+            }
+            if ("hashCode".equals(name)) {
+                return System.identityHashCode(proxy);
+            }
+            return invokeTimed(statement, method, args);
+        }
+    }
+    
+    /**
+     * 设置了运行指标时为语句加上计时代理
+     */
+    private Statement timed(Statement statement, Class<?> type) {
+        if (metrics == null) {
+            return statement;
+        }
+        return (Statement) Proxy.newProxyInstance(Connection.class.getClassLoader(), 
+                new Class<?>[] {type}, new TimedStatementHandler(statement));
+    }
+    
+    /**
+     * 调用语句方法，execute开头的方法记录耗时和是否失败
+     */
+    private Object invokeTimed(Statement statement, Method method, Object[] args) throws Throwable {
+        CleanupMetrics current = metrics;
+        if (current == null || !method.getName().startsWith("execute")) {
+            return invoke(statement, method, args);
+        }
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = invoke(statement, method, args);
+            failed = false;
+            return result;
+        } finally {
+            current.recordStatement(System.nanoTime() - start, failed);
+        }
+    }
+    
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+    
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            // 忽略关闭错误
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package oracle.data.cleanup;
+
+/**
+ * 仪表盘指标回调
+ * 各项指标并发获取，每项获取完成或失败时在获取它的后台线程中回调，界面实现需要自行切换到事件分发线程
+ */
+public interface DashboardListener {
+    
+    /**
+     * 某项指标已获取，新值已写入info
+     */
+    void onMetricLoaded(CleanupEngine.DatabaseInfo.Metric metric, CleanupEngine.DatabaseInfo info);
+    
+    /**
+     * 某项指标获取失败或超时，info中对应的值保持不变
+     */
+    void onMetricFailed(CleanupEngine.DatabaseInfo.Metric metric, Exception error);
+}
@@ -0,0 +1,403 @@
+package oracle.data.cleanup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 数据字典快照缓存
+ * 仪表盘反复查询的dba_data_files、dba_free_space、dba_segments和dba_tables在客户端保存聚合后的快照，
+ * 每个视图有各自的有效期，过期时只重新查询该视图。
+ * 快照以紧凑的二进制格式保存在本地文件中，客户端重启后一次读入并直接打开上次的快照
+ */
+public class DictionarySnapshotCache {
+    
+    private static final int FILE_MAGIC = 0x44534E50;
+    private static final int FILE_VERSION = 1;
+    private static final int FETCH_SIZE = 500;
+    
+    /**
+     * 缓存的字典视图
+     * 列类型中L表示整数列，S表示字符串列
+     */
+    public enum View {
+        DATA_FILES("SELECT file_id, tablespace_name, file_name, bytes FROM dba_data_files", "LSSL", 3600), 
+        FREE_SPACE("SELECT file_id, SUM(bytes) FROM dba_free_space GROUP BY file_id", "LL", 600), 
+        SEGMENTS("SELECT tablespace_name, owner, COUNT(*), SUM(bytes) FROM dba_segments " +
+                "GROUP BY tablespace_name, owner", "SSLL", 1800), 
+        TABLES("SELECT owner, COUNT(*), SUM(NVL(num_rows, 0)) FROM dba_tables GROUP BY owner", "SLL", 3600);
+        
+        private final String sql;
+        private final String columnTypes;
+        private final long defaultTtlSeconds;
+        
+        View(String sql, String columnTypes, long defaultTtlSeconds) {
+            this.sql = sql;
+            this.columnTypes = columnTypes;
+            this.defaultTtlSeconds = defaultTtlSeconds;
+        }
+        
+        /**
+         * 覆盖默认有效期的配置项名称
+         */
+        public String getTtlConfigName() {
+            return "DICT_CACHE_TTL_" + name();
+        }
+        
+        public long getDefaultTtlSeconds() {
+            return defaultTtlSeconds;
+        }
+    }
+    
+    /**
+     * 某个视图的一次快照，按列存储，创建后只读
+     */
+    public static class Snapshot {
+        private final View view;
+        private final long loadedAt;
+        private final int rowCount;
+        // 每列为long[]或String[]
+        private final Object[] columns;
+        
+        Snapshot(View view, long loadedAt, int rowCount, Object[] columns) {
+            this.view = view;
+            this.loadedAt = loadedAt;
+            this.rowCount = rowCount;
+            this.columns = columns;
+        }
+        
+        public View getView() {
+            return view;
+        }
+        
+        /**
+         * 快照从数据库加载的时间(毫秒时间戳)
+         */
+        public long getLoadedAt() {
+            return loadedAt;
+        }
+        
+        public int getRowCount() {
+            return rowCount;
+        }
+        
+        public long getLong(int row, int column) {
+            return ((long[]) columns[column])[row];
+        }
+        
+        public String getString(int row, int column) {
+            return ((String[]) columns[column])[row];
+        }
+        
+        /**
+         * 整数列所有行之和
+         */
+        public long sum(int column) {
+            long total = 0;
+            for (long value : (long[]) columns[column]) {
+                total += value;
+            }
+            return total;
+        }
+    }
+    
+    private final CleanupEngine engine;
+    private final Path file;
+    private final Map<View, Long> ttlMillis = new EnumMap<>(View.class);
+    private final Map<View, Snapshot> snapshots = new EnumMap<>(View.class);
+    private final Map<View, Object> refreshLocks = new EnumMap<>(View.class);
+    
+    /**
+     * @param file 快照文件，为null时只在内存中缓存
+     */
+    public DictionarySnapshotCache(CleanupEngine engine, Path file) {
+        this.engine = engine;
+        this.file = file;
+        for (View view : View.values()) {
+            ttlMillis.put(view, view.getDefaultTtlSeconds() * 1000);
+            refreshLocks.put(view, new Object());
+        }
+    }
+    
+    /**
+     * 设置某个视图的有效期，小于等于0表示每次都重新查询
+     */
+    public synchronized void setTtlSeconds(View view, long seconds) {
+        ttlMillis.put(view, seconds * 1000);
+    }
+    
+    /**
+     * 返回视图的快照，没有快照或已过期时从数据库重新加载
+     */
+    public Snapshot get(View view) throws SQLException {
+        Snapshot snapshot = getCached(view);
+        if (snapshot != null && !isExpired(snapshot)) {
+            return snapshot;
+        }
+        // 同一视图只由一个线程刷新，其他线程等待并复用结果
+        synchronized (refreshLocks.get(view)) {
+            snapshot = getCached(view);
+            if (snapshot != null && !isExpired(snapshot)) {
+                return snapshot;
+            }
+            snapshot = load(view);
+            synchronized (this) {
+                snapshots.put(view, snapshot);
+            }
+            save();
+            return snapshot;
+        }
+    }
+    
+    /**
+     * 刷新快照
+     * @param force 为true时刷新所有视图，否则只刷新已过期的视图
+     */
+    public void refresh(boolean force) throws SQLException {
+        for (View view : View.values()) {
+            synchronized (refreshLocks.get(view)) {
+                Snapshot snapshot = getCached(view);
+                if (!force && snapshot != null && !isExpired(snapshot)) continue;
+                snapshot = load(view);
+                synchronized (this) {
+                    snapshots.put(view, snapshot);
+                }
+            }
+        }
+        save();
+    }
+    
+    /**
+     * 返回已缓存的快照，不访问数据库，没有快照时返回null
+     */
+    public synchronized Snapshot getCached(View view) {
+        return snapshots.get(view);
+    }
+    
+    /**
+     * 所有已缓存快照中最早的加载时间，没有快照时返回0
+     */
+    public synchronized long getOldestLoadedAt() {
+        long oldest = 0;
+        for (Snapshot snapshot : snapshots.values()) {
+            if (oldest == 0 || snapshot.getLoadedAt() < oldest) {
+                oldest = snapshot.getLoadedAt();
+            }
+        }
+        return oldest;
+    }
+    
+    private synchronized boolean isExpired(Snapshot snapshot) {
+        return System.currentTimeMillis() - snapshot.getLoadedAt() >= ttlMillis.get(snapshot.getView());
+    }
+    
+    /**
+     * 把快照时间格式化为"N 分钟前"形式的缓存年龄
+     */
+    public static String formatAge(long loadedAt, long now) {
+        if (loadedAt <= 0) return "尚未加载";
+        long seconds = Math.max(0, (now - loadedAt) / 1000);
+        if (seconds < 60) return "刚刚";
+        if (seconds < 3600) return (seconds / 60) + " 分钟前";
+        if (seconds < 86400) return (seconds / 3600) + " 小时前";
+        return (seconds / 86400) + " 天前";
+    }
+    
+    private Snapshot load(View view) throws SQLException {
+        String types = view.columnTypes;
+        List<Object[]> rows = new ArrayList<>();
+        long loadedAt = System.currentTimeMillis();
+        try (Connection conn = engine.borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(view.sql)) {
+            stmt.setFetchSize(FETCH_SIZE);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    Object[] row = new Object[types.length()];
+                    for (int c = 0; c < row.length; c++) {
+                        row[c] = types.charAt(c) == 'L' ? (Object) rs.getLong(c + 1) : rs.getString(c + 1);
+                    }
+                    rows.add(row);
+                }
+            }
+        }
+        Object[] columns = new Object[types.length()];
+        for (int c = 0; c < columns.length; c++) {
+            if (types.charAt(c) == 'L') {
+                long[] values = new long[rows.size()];
+                for (int r = 0; r < values.length; r++) {
+                    values[r] = (Long) rows.get(r)[c];
+                }
+                columns[c] = values;
+            } else {
+                String[] values = new String[rows.size()];
+                for (int r = 0; r < values.length; r++) {
+                    values[r] = (String) rows.get(r)[c];
+                }
+                columns[c] = values;
+            }
+        }
+        return new Snapshot(view, loadedAt, rows.size(), columns);
+    }
+    
+    // ---------------------------------------------------------------------
+    // 快照文件
+    // 文件头: magic(int) 版本(int) 视图数(int)
+    // 每个视图: 名称 列类型 加载时间(long) 行数(int) 数据长度(int) 数据
+    // 数据按列存放，整数列为连续的long，字符串列每个值为长度(int，null为-1)加UTF-8字节
+    // ---------------------------------------------------------------------
+    
+    /**
+     * 从快照文件加载上次保存的快照
+     * 文件不存在或格式不符时保持空缓存，之后按需从数据库加载
+     */
+    public void open() {
+        if (file == null) return;
+        Map<View, Snapshot> loaded = new EnumMap<>(View.class);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            // 读入堆内缓冲而不是内存映射：映射在垃圾回收前不会释放，Windows上会使save替换文件失败
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("快照文件过大: " + size + "字节");
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) break;
+            }
+            buffer.flip();
+            if (buffer.getInt() != FILE_MAGIC || buffer.getInt() != FILE_VERSION) return;
+            int viewCount = buffer.getInt();
+            for (int i = 0; i < viewCount; i++) {
+                String name = readString(buffer);
+                String types = readString(buffer);
+                long loadedAt = buffer.getLong();
+                int rowCount = buffer.getInt();
+                int length = buffer.getInt();
+                int end = buffer.position() + length;
+                View view = findView(name);
+                // 视图定义变化后旧数据的列不再对应，直接跳过
+                if (view != null && view.columnTypes.equals(types)) {
+                    loaded.put(view, new Snapshot(view, loadedAt, rowCount, readColumns(buffer, types, rowCount)));
+                }
+                buffer.position(end);
+            }
+        } catch (NoSuchFileException e) {
+            return;
+        } catch (IOException | BufferUnderflowException | IllegalArgumentException e) {
+            engine.getMetrics().recordWarning("dictionary_snapshot", "忽略无法读取的字典快照文件 " + file + ": " + e);
+            return;
+        }
+        synchronized (this) {
+            snapshots.putAll(loaded);
+        }
+    }
+    
+    private static View findView(String name) {
+        for (View view : View.values()) {
+            if (view.name().equals(name)) return view;
+        }
+        return null;
+    }
+    
+    private static Object[] readColumns(ByteBuffer buffer, String types, int rowCount) {
+        Object[] columns = new Object[types.length()];
+        for (int c = 0; c < columns.length; c++) {
+            if (types.charAt(c) == 'L') {
+                long[] values = new long[rowCount];
+                buffer.asLongBuffer().get(values);
+                buffer.position(buffer.position() + rowCount * 8);
+                columns[c] = values;
+            } else {
+                String[] values = new String[rowCount];
+                for (int r = 0; r < rowCount; r++) {
+                    values[r] = readString(buffer);
+                }
+                columns[c] = values;
+            }
+        }
+        return columns;
+    }
+    
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) return null;
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * 保存所有快照，先写临时文件再替换，避免并发读取到写了一半的文件
+     * 保存失败只影响下次启动，不影响当前缓存
+     */
+    private synchronized void save() {
+        if (file == null) return;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(snapshots.size());
+            for (Snapshot snapshot : snapshots.values()) {
+                String types = snapshot.getView().columnTypes;
+                ByteArrayOutputStream data = new ByteArrayOutputStream();
+                DataOutputStream dataOut = new DataOutputStream(data);
+                for (int c = 0; c < types.length(); c++) {
+                    for (int r = 0; r < snapshot.getRowCount(); r++) {
+                        if (types.charAt(c) == 'L') {
+                            dataOut.writeLong(snapshot.getLong(r, c));
+                        } else {
+                            writeString(dataOut, snapshot.getString(r, c));
+                        }
+                    }
+                }
+                dataOut.flush();
+                writeString(out, snapshot.getView().name());
+                writeString(out, types);
+                out.writeLong(snapshot.getLoadedAt());
+                out.writeInt(snapshot.getRowCount());
+                out.writeInt(data.size());
+                data.writeTo(out);
+            }
+            out.flush();
+            
+            Files.createDirectories(file.toAbsolutePath().getParent());
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            Files.write(temp, bytes.toByteArray());
+            try {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            engine.getMetrics().recordWarning("dictionary_snapshot", "保存字典快照文件 " + file + " 失败: " + e);
+        }
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+}
@@ -0,0 +1,20 @@
+package oracle.data.cleanup;
+
+/**
+ * 批量处理多个数据库时的回调
+ * 在各目标的后台线程中调用，实现方需要自行切换到界面线程
+ */
+public interface FleetListener {
+    
+    /**
+     * 某个目标的处理进度
+     */
+    void onTargetProgress(CleanupFleet.Target target, String message);
+    
+    /**
+     * 某个目标处理结束(成功或失败)
+     * @param completed 已结束的目标数
+     * @param total 目标总数
+     */
+    void onTargetFinished(CleanupFleet.TargetResult result, int completed, int total);
+}
@@ -11,20 +11,20 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.sql.CallableStatement;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.ResultSet;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.sql.SQLException;
-import java.sql.Statement;
-import java.sql.Timestamp;
-import java.sql.Types;
+import java.sql.SQLTimeoutException;
 import java.text.DecimalFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 
 import javax.swing.BorderFactory;
@@ -34,6 +34,7 @@ import javax.swing.DefaultListModel;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
+import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
 import javax.swing.JList;
@@ -51,7 +52,10 @@ import javax.swing.ListSelectionModel;
 import javax.swing.SpinnerNumberModel;
 import javax.swing.SwingUtilities;
 import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.UIManager;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
 import javax.swing.table.DefaultTableCellRenderer;
@@ -64,11 +68,8 @@ import javax.swing.table.DefaultTableModel;
 public class OracleDataCleanup extends JFrame {
     private static final long serialVersionUID = 1L;
     
-    // 数据库连接信息
-    private String jdbcUrl;
-    private String username;
-    private String password;
-    private Connection connection;
+    // 清理引擎
+    private CleanupEngine engine;
     
     // UI组件
     private JTabbedPane tabbedPane;
@@ -77,6 +78,8 @@ public class OracleDataCleanup extends JFrame {
     private JPanel candidatesPanel;
     private JPanel configPanel;
     private JPanel reportPanel;
+    private JPanel metricsPanel;
+    private JPanel fleetPanel;
     
     // 连接面板组件
     private JTextField hostField;
@@ -90,19 +93,30 @@ public class OracleDataCleanup extends JFrame {
     // 仪表盘面板组件
     private JLabel dbNameLabel;
     private JLabel dbSizeLabel;
+    private JLabel freeSpaceLabel;
     private JLabel lastCleanupLabel;
     private JLabel spaceSavedLabel;
+    private JLabel snapshotAgeLabel;
+    private JButton refreshSnapshotButton;
+    private long snapshotTime;
+    private JCheckBox autoRefreshCheckbox;
+    private JSpinner autoRefreshSpinner;
+    private Timer autoRefreshTimer;
+    private boolean dashboardRefreshing;
     private JButton runAnalysisButton;
+    private boolean analysisRunning;
     private JCheckBox autoApproveCheckbox;
     private JProgressBar progressBar;
     
     // 候选面板组件
-    private DefaultTableModel candidatesTableModel;
+    private CandidateTableModel candidatesTableModel;
     private JTable candidatesTable;
     private JButton approveButton;
     private JButton rejectButton;
     private JButton executeCleanupButton;
     private JButton refreshCandidatesButton;
+    private JTextArea cleanupLogArea;
+    private CleanupExecutor runningCleanup;
     
     // 配置面板组件
     private DefaultTableModel configTableModel;
@@ -112,8 +126,34 @@ public class OracleDataCleanup extends JFrame {
     // 报告面板组件
     private JSpinner daysBackSpinner;
     private JButton generateReportButton;
+    private JComboBox<String> exportSourceCombo;
+    private JButton exportButton;
     private JTextArea reportTextArea;
     
+    // 运行指标面板组件
+    private DefaultTableModel lastRunTableModel;
+    private DefaultTableModel clientTimingTableModel;
+    private JLabel jdbcStatsLabel;
+    private JButton refreshMetricsButton;
+    
+    // 多库面板组件
+    private JTextField fleetFileField;
+    private JButton fleetBrowseButton;
+    private JCheckBox fleetAnalyzeCheckbox;
+    private JCheckBox fleetAutoApproveCheckbox;
+    private JCheckBox fleetExecuteCheckbox;
+    private JCheckBox fleetReportCheckbox;
+    private JSpinner fleetReportDaysSpinner;
+    private JSpinner fleetParallelSpinner;
+    private JSpinner fleetConnectionsSpinner;
+    private JButton fleetRunButton;
+    private JButton fleetCancelButton;
+    private JLabel fleetStatusLabel;
+    private DefaultTableModel fleetSummaryTableModel;
+    private DefaultTableModel fleetCandidatesTableModel;
+    private JTextArea fleetReportArea;
+    private CleanupFleet runningFleet;
+    
     /**
      * 构造函数
      */
@@ -153,6 +193,8 @@ public class OracleDataCleanup extends JFrame {
         candidatesPanel = new JPanel();
         configPanel = new JPanel();
         reportPanel = new JPanel();
+        metricsPanel = new JPanel();
+        fleetPanel = new JPanel();
         
         // 初始化连接面板组件
         hostField = new JTextField("localhost", 15);
@@ -168,29 +210,49 @@ public class OracleDataCleanup extends JFrame {
         dbNameLabel = new JLabel("数据库: 未连接");
         dbSizeLabel = new JLabel("数据库大小: 未知");
         lastCleanupLabel = new JLabel("上次清理时间: 未知");
+        freeSpaceLabel = new JLabel("空闲空间: 未知");
         spaceSavedLabel = new JLabel("已节省空间: 0 MB");
+        snapshotAgeLabel = new JLabel("字典快照: 尚未加载");
+        refreshSnapshotButton = new JButton("强制刷新");
+        autoRefreshCheckbox = new JCheckBox("自动刷新，间隔");
+        autoRefreshSpinner = new JSpinner(new SpinnerNumberModel(60, 10, 3600, 10));
         runAnalysisButton = new JButton("运行分析");
         autoApproveCheckbox = new JCheckBox("自动批准清理候选");
         progressBar = new JProgressBar();
         progressBar.setStringPainted(true);
         
         // 初始化候选面板组件
-        String[] candidatesColumns = {"ID", "类型", "所有者", "名称", "原因", "识别时间", "状态"};
-        candidatesTableModel = new DefaultTableModel(candidatesColumns, 0) {
-            private static final long serialVersionUID = 1L;
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false; // 表格不可编辑
-            }
-        };
+        candidatesTableModel = new CandidateTableModel();
         candidatesTable = new JTable(candidatesTableModel);
         candidatesTable.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         candidatesTable.getTableHeader().setReorderingAllowed(false);
         
+        // 设置状态列的颜色
+        candidatesTable.getColumnModel().getColumn(6).setCellRenderer(new DefaultTableCellRenderer() {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
+                Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+                if (value != null) {
+                    if ("APPROVED".equals(value.toString())) {
+                        c.setForeground(Color.GREEN.darker());
+                    } else if ("PENDING".equals(value.toString())) {
+                        c.setForeground(Color.BLUE);
+                    } else {
+                        c.setForeground(table.getForeground());
+                    }
+                }
+                return c;
+            }
+        });
+        
         approveButton = new JButton("批准选中项");
         rejectButton = new JButton("拒绝选中项");
         executeCleanupButton = new JButton("执行已批准的清理");
         refreshCandidatesButton = new JButton("刷新列表");
+        cleanupLogArea = new JTextArea(6, 80);
+        cleanupLogArea.setEditable(false);
+        cleanupLogArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
         
         // 初始化配置面板组件
         String[] configColumns = {"配置名称", "配置值", "描述"};
@@ -207,9 +269,79 @@ public class OracleDataCleanup extends JFrame {
         // 初始化报告面板组件
         daysBackSpinner = new JSpinner(new SpinnerNumberModel(30, 1, 365, 1));
         generateReportButton = new JButton("生成报告");
+        exportSourceCombo = new JComboBox<>(new String[] {"清理候选", "清理日志"});
+        exportButton = new JButton("导出...");
         reportTextArea = new JTextArea();
         reportTextArea.setEditable(false);
         reportTextArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        
+        // 初始化运行指标面板组件
+        lastRunTableModel = new DefaultTableModel(
+                new String[] {"阶段", "开始时间", "耗时(秒)", "对象数", "回收空间(MB)", "状态"}, 0) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        clientTimingTableModel = new DefaultTableModel(
+                new String[] {"操作", "次数", "失败", "最近耗时(秒)", "平均耗时(秒)", "最大耗时(秒)", "最近对象数", "回收空间(MB)"}, 0) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        jdbcStatsLabel = new JLabel("JDBC: 暂无数据");
+        refreshMetricsButton = new JButton("刷新");
+        
+        // 初始化多库面板组件
+        fleetFileField = new JTextField(30);
+        fleetBrowseButton = new JButton("选择...");
+        fleetAnalyzeCheckbox = new JCheckBox("运行分析", true);
+        fleetAutoApproveCheckbox = new JCheckBox("自动批准");
+        fleetExecuteCheckbox = new JCheckBox("执行已批准的清理");
+        fleetReportCheckbox = new JCheckBox("生成报告");
+        fleetReportDaysSpinner = new JSpinner(new SpinnerNumberModel(7, 1, 365, 1));
+        fleetParallelSpinner = new JSpinner(new SpinnerNumberModel(CleanupFleet.DEFAULT_MAX_CONCURRENT_TARGETS, 1, 64, 1));
+        fleetConnectionsSpinner = new JSpinner(new SpinnerNumberModel(CleanupFleet.DEFAULT_CONNECTIONS_PER_TARGET, CleanupEngine.MIN_POOL_SIZE, 16, 1));
+        fleetRunButton = new JButton("开始");
+        fleetCancelButton = new JButton("取消");
+        fleetCancelButton.setEnabled(false);
+        fleetStatusLabel = new JLabel(" ");
+        // 数值列声明具体类型，表头点击排序时按数值而不是按字符串比较
+        final Class<?>[] summaryClasses = {String.class, String.class, Double.class, Double.class, Integer.class, 
+                Integer.class, Integer.class, Integer.class, Integer.class, Integer.class, Double.class, Double.class, 
+                String.class};
+        fleetSummaryTableModel = new DefaultTableModel(new String[] {"目标", "数据库", "大小(GB)", "空闲(GB)", 
+                "待处理", "已批准", "已清理", "失败", "已取消", "推迟", "回收空间(MB)", "耗时(秒)", "状态"}, 0) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+            
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return summaryClasses[column];
+            }
+        };
+        fleetCandidatesTableModel = new DefaultTableModel(new String[] {"目标", "ID", "类型", "所有者", "对象名", 
+                "状态", "识别时间", "原因"}, 0) {
+            private static final long serialVersionUID = 1L;
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+            
+            @Override
+            public Class<?> getColumnClass(int column) {
+                return column == 1 ? Integer.class : String.class;
+            }
+        };
+        fleetReportArea = new JTextArea();
+        fleetReportArea.setEditable(false);
+        fleetReportArea.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
     }
     
     /**
@@ -269,9 +401,24 @@ public class OracleDataCleanup extends JFrame {
         statsPanel.add(Box.createVerticalStrut(10));
         statsPanel.add(dbSizeLabel);
         statsPanel.add(Box.createVerticalStrut(10));
+        statsPanel.add(freeSpaceLabel);
+        statsPanel.add(Box.createVerticalStrut(10));
         statsPanel.add(lastCleanupLabel);
         statsPanel.add(Box.createVerticalStrut(10));
         statsPanel.add(spaceSavedLabel);
+        statsPanel.add(Box.createVerticalStrut(10));
+        JPanel snapshotPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        snapshotPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        snapshotPanel.add(snapshotAgeLabel);
+        snapshotPanel.add(Box.createHorizontalStrut(10));
+        snapshotPanel.add(refreshSnapshotButton);
+        statsPanel.add(snapshotPanel);
+        JPanel autoRefreshPanel = new JPanel(new FlowLayout(FlowLayout.LEFT, 0, 0));
+        autoRefreshPanel.setAlignmentX(Component.LEFT_ALIGNMENT);
+        autoRefreshPanel.add(autoRefreshCheckbox);
+        autoRefreshPanel.add(autoRefreshSpinner);
+        autoRefreshPanel.add(new JLabel(" 秒"));
+        statsPanel.add(autoRefreshPanel);
         
         JPanel actionPanel = new JPanel();
         actionPanel.setLayout(new BoxLayout(actionPanel, BoxLayout.Y_AXIS));
@@ -303,7 +450,13 @@ public class OracleDataCleanup extends JFrame {
         candidatesButtonPanel.add(rejectButton);
         candidatesButtonPanel.add(executeCleanupButton);
         candidatesButtonPanel.add(refreshCandidatesButton);
-        candidatesPanel.add(candidatesButtonPanel, BorderLayout.SOUTH);
+        
+        JPanel candidatesSouthPanel = new JPanel(new BorderLayout());
+        candidatesSouthPanel.add(candidatesButtonPanel, BorderLayout.NORTH);
+        JScrollPane cleanupLogScrollPane = new JScrollPane(cleanupLogArea);
+        cleanupLogScrollPane.setBorder(BorderFactory.createTitledBorder("清理进度"));
+        candidatesSouthPanel.add(cleanupLogScrollPane, BorderLayout.CENTER);
+        candidatesPanel.add(candidatesSouthPanel, BorderLayout.SOUTH);
         
         // 布局配置面板
         configPanel.setLayout(new BorderLayout());
@@ -325,23 +478,94 @@ public class OracleDataCleanup extends JFrame {
         reportControlPanel.add(daysBackSpinner);
         reportControlPanel.add(new JLabel("天的报告"));
         reportControlPanel.add(generateReportButton);
+        reportControlPanel.add(Box.createHorizontalStrut(20));
+        reportControlPanel.add(exportSourceCombo);
+        reportControlPanel.add(exportButton);
         reportPanel.add(reportControlPanel, BorderLayout.NORTH);
         
         JScrollPane reportScrollPane = new JScrollPane(reportTextArea);
         reportPanel.add(reportScrollPane, BorderLayout.CENTER);
         
+        // 布局运行指标面板
+        metricsPanel.setLayout(new BorderLayout());
+        metricsPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
+        
+        JPanel metricsTablesPanel = new JPanel();
+        metricsTablesPanel.setLayout(new BoxLayout(metricsTablesPanel, BoxLayout.Y_AXIS));
+        JScrollPane lastRunScrollPane = new JScrollPane(new JTable(lastRunTableModel));
+        lastRunScrollPane.setBorder(BorderFactory.createTitledBorder("数据库端最近一次清理周期"));
+        metricsTablesPanel.add(lastRunScrollPane);
+        JScrollPane clientTimingScrollPane = new JScrollPane(new JTable(clientTimingTableModel));
+        clientTimingScrollPane.setBorder(BorderFactory.createTitledBorder("客户端操作(本次启动以来)"));
+        metricsTablesPanel.add(clientTimingScrollPane);
+        metricsPanel.add(metricsTablesPanel, BorderLayout.CENTER);
+        
+        JPanel metricsSouthPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        metricsSouthPanel.add(jdbcStatsLabel);
+        metricsSouthPanel.add(refreshMetricsButton);
+        metricsPanel.add(metricsSouthPanel, BorderLayout.SOUTH);
+        
+        // 布局多库面板
+        fleetPanel.setLayout(new BorderLayout());
+        fleetPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
+        
+        JPanel fleetControlPanel = new JPanel();
+        fleetControlPanel.setLayout(new BoxLayout(fleetControlPanel, BoxLayout.Y_AXIS));
+        JPanel fleetFilePanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        fleetFilePanel.add(new JLabel("目标列表文件:"));
+        fleetFilePanel.add(fleetFileField);
+        fleetFilePanel.add(fleetBrowseButton);
+        fleetControlPanel.add(fleetFilePanel);
+        JPanel fleetOptionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        fleetOptionPanel.add(fleetAnalyzeCheckbox);
+        fleetOptionPanel.add(fleetAutoApproveCheckbox);
+        fleetOptionPanel.add(fleetExecuteCheckbox);
+        fleetOptionPanel.add(fleetReportCheckbox);
+        fleetOptionPanel.add(fleetReportDaysSpinner);
+        fleetOptionPanel.add(new JLabel("天"));
+        fleetControlPanel.add(fleetOptionPanel);
+        JPanel fleetLimitPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        fleetLimitPanel.add(new JLabel("同时处理的数据库数:"));
+        fleetLimitPanel.add(fleetParallelSpinner);
+        fleetLimitPanel.add(new JLabel("每个数据库的连接数:"));
+        fleetLimitPanel.add(fleetConnectionsSpinner);
+        fleetLimitPanel.add(fleetRunButton);
+        fleetLimitPanel.add(fleetCancelButton);
+        fleetControlPanel.add(fleetLimitPanel);
+        fleetPanel.add(fleetControlPanel, BorderLayout.NORTH);
+        
+        JPanel fleetTablesPanel = new JPanel();
+        fleetTablesPanel.setLayout(new BoxLayout(fleetTablesPanel, BoxLayout.Y_AXIS));
+        JTable fleetSummaryTable = new JTable(fleetSummaryTableModel);
+        fleetSummaryTable.setAutoCreateRowSorter(true);
+        JScrollPane fleetSummaryScrollPane = new JScrollPane(fleetSummaryTable);
+        fleetSummaryScrollPane.setBorder(BorderFactory.createTitledBorder("各数据库汇总"));
+        fleetTablesPanel.add(fleetSummaryScrollPane);
+        JTable fleetCandidatesTable = new JTable(fleetCandidatesTableModel);
+        fleetCandidatesTable.setAutoCreateRowSorter(true);
+        JTabbedPane fleetResultTabs = new JTabbedPane();
+        fleetResultTabs.addTab("合并的清理候选", new JScrollPane(fleetCandidatesTable));
+        fleetResultTabs.addTab("报告", new JScrollPane(fleetReportArea));
+        fleetTablesPanel.add(fleetResultTabs);
+        fleetPanel.add(fleetTablesPanel, BorderLayout.CENTER);
+        fleetPanel.add(fleetStatusLabel, BorderLayout.SOUTH);
+        
         // 添加面板到选项卡
         tabbedPane.addTab("连接", connectionPanel);
         tabbedPane.addTab("仪表盘", dashboardPanel);
         tabbedPane.addTab("清理候选", candidatesPanel);
         tabbedPane.addTab("配置", configPanel);
         tabbedPane.addTab("报告", reportPanel);
+        tabbedPane.addTab("运行指标", metricsPanel);
+        tabbedPane.addTab("多库", fleetPanel);
         
         // 初始时禁用除连接面板外的其他面板
         tabbedPane.setEnabledAt(1, false);
         tabbedPane.setEnabledAt(2, false);
         tabbedPane.setEnabledAt(3, false);
         tabbedPane.setEnabledAt(4, false);
+        tabbedPane.setEnabledAt(5, false);
+        // 多库面板使用目标列表中的连接信息，不依赖连接面板
     }
     
     /**
@@ -356,6 +580,95 @@ public class OracleDataCleanup extends JFrame {
             }
         });
         
+        // 强制刷新字典快照按钮事件
+        refreshSnapshotButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                loadDatabaseInfo(true);
+            }
+        });
+        
+        // 仪表盘自动刷新，上一次刷新未结束时跳过
+        autoRefreshTimer = new Timer(60000, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (!dashboardRefreshing) {
+                    loadDatabaseInfo(false);
+                }
+            }
+        });
+        autoRefreshCheckbox.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (autoRefreshCheckbox.isSelected()) {
+                    autoRefreshTimer.restart();
+                } else {
+                    autoRefreshTimer.stop();
+                }
+            }
+        });
+        autoRefreshSpinner.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                int millis = (Integer) autoRefreshSpinner.getValue() * 1000;
+                autoRefreshTimer.setDelay(millis);
+                autoRefreshTimer.setInitialDelay(millis);
+            }
+        });
+        
+        // 每30秒更新一次快照年龄
+        new Timer(30000, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                updateSnapshotAge();
+            }
+        }).start();
+        
+        // 切换到运行指标选项卡时显示客户端已记录的指标
+        tabbedPane.addChangeListener(new ChangeListener() {
+            @Override
+            public void stateChanged(ChangeEvent e) {
+                if (tabbedPane.getSelectedComponent() == metricsPanel) {
+                    showMetrics();
+                }
+            }
+        });
+        
+        // 刷新运行指标按钮事件
+        refreshMetricsButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                refreshMetrics();
+            }
+        });
+        
+        // 多库面板按钮事件
+        fleetBrowseButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                JFileChooser chooser = new JFileChooser();
+                if (chooser.showOpenDialog(OracleDataCleanup.this) == JFileChooser.APPROVE_OPTION) {
+                    fleetFileField.setText(chooser.getSelectedFile().getPath());
+                }
+            }
+        });
+        fleetRunButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                runFleet();
+            }
+        });
+        fleetCancelButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (runningFleet != null) {
+                    runningFleet.cancel();
+                    fleetCancelButton.setEnabled(false);
+                    fleetStatusLabel.setText("正在取消，等待进行中的操作结束...");
+                }
+            }
+        });
+        
         // 运行分析按钮事件
         runAnalysisButton.addActionListener(new ActionListener() {
             @Override
@@ -388,6 +701,19 @@ public class OracleDataCleanup extends JFrame {
             }
         });
         
+        // 候选页加载失败时在清理进度中提示，并计入运行指标的警告
+        candidatesTableModel.setPageLoadListener(new CandidateTableModel.PageLoadListener() {
+            @Override
+            public void onPageLoadFailed(int page, SQLException error, long retryDelayMillis) {
+                cleanupLogArea.append("加载第" + (page + 1) + "页清理候选失败: " + error.getMessage() +
+                        "，" + retryDelayMillis / 1000 + "秒后滚动到该页时重试，或点击\"刷新列表\"\n");
+                if (engine != null) {
+                    engine.getMetrics().recordWarning("candidates", 
+                            "加载第" + (page + 1) + "页清理候选失败: " + error.getMessage());
+                }
+            }
+        });
+        
         // 刷新候选按钮事件
         refreshCandidatesButton.addActionListener(new ActionListener() {
             @Override
@@ -411,6 +737,14 @@ public class OracleDataCleanup extends JFrame {
                 generateReport();
             }
         });
+        
+        // 导出按钮事件
+        exportButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                exportData();
+            }
+        });
     }
     
     /**
@@ -429,10 +763,8 @@ public class OracleDataCleanup extends JFrame {
             return;
         }
         
-        // 构建JDBC URL
-        jdbcUrl = "jdbc:oracle:thin:@" + host + ":" + port + ":" + sid;
-        username = user;
-        password = pass;
+        // 构建清理引擎
+        final CleanupEngine newEngine = new CleanupEngine(CleanupEngine.buildJdbcUrl(host, port, sid), user, pass);
         
         // 禁用连接按钮，显示连接中状态
         connectButton.setEnabled(false);
@@ -444,11 +776,7 @@ public class OracleDataCleanup extends JFrame {
             @Override
             protected Boolean doInBackground() throws Exception {
                 try {
-                    // 加载Oracle JDBC驱动
-                    Class.forName("oracle.jdbc.driver.OracleDriver");
-                    
-                    // 连接数据库
-                    connection = DriverManager.getConnection(jdbcUrl, username, password);
+                    newEngine.connect();
                     return true;
                 } catch (Exception ex) {
                     ex.printStackTrace();
@@ -462,6 +790,7 @@ public class OracleDataCleanup extends JFrame {
                     boolean success = get();
                     if (success) {
                         // 连接成功
+                        engine = newEngine;
                         statusLabel.setText("已连接");
                         statusLabel.setForeground(Color.GREEN);
                         
@@ -507,113 +836,157 @@ public class OracleDataCleanup extends JFrame {
      * 加载数据库信息
      */
     private void loadDatabaseInfo() {
-        if (connection == null) return;
+        loadDatabaseInfo(false);
+    }
+    
+    /**
+     * 加载数据库信息
+     * @param forceRefresh 是否忽略有效期重新加载字典快照
+     */
+    private void loadDatabaseInfo(final boolean forceRefresh) {
+        if (engine == null || dashboardRefreshing) return;
         
-        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
-            private String dbName = "未知";
-            private String dbSize = "未知";
-            private String lastCleanup = "未知";
-            private String spaceSaved = "0 MB";
-            
+        dashboardRefreshing = true;
+        refreshSnapshotButton.setEnabled(false);
+        // 每项指标到达时立即更新对应标签，不等待其他指标
+        final DashboardListener listener = new DashboardListener() {
             @Override
-            protected Void doInBackground() throws Exception {
-                try {
-                    // 获取数据库名称
-                    try (Statement stmt = connection.createStatement();
-                         ResultSet rs = stmt.executeQuery("SELECT SYS_CONTEXT('USERENV', 'DB_NAME') FROM DUAL")) {
-                        if (rs.next()) {
-                            dbName = rs.getString(1);
-                        }
+            public void onMetricLoaded(final CleanupEngine.DatabaseInfo.Metric metric, 
+                                       final CleanupEngine.DatabaseInfo info) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        showMetric(metric, info);
                     }
-                    
-                    // 获取数据库大小
-                    try (Statement stmt = connection.createStatement();
-                         ResultSet rs = stmt.executeQuery(
-                                 "SELECT ROUND(SUM(bytes)/1024/1024/1024, 2) FROM dba_data_files")) {
-                        if (rs.next()) {
-                            double sizeGB = rs.getDouble(1);
-                            dbSize = new DecimalFormat("#,##0.00").format(sizeGB) + " GB";
-                        }
-                    }
-                    
-                    // 获取上次清理时间
-                    try (Statement stmt = connection.createStatement();
-                         ResultSet rs = stmt.executeQuery(
-                                 "SELECT TO_CHAR(MAX(operation_time), 'YYYY-MM-DD HH24:MI:SS') " +
-                                 "FROM cleanup_log WHERE operation_type = 'CLEANUP' AND status = 'COMPLETED'")) {
-                        if (rs.next() && rs.getString(1) != null) {
-                            lastCleanup = rs.getString(1);
-                        }
-                    } catch (SQLException e) {
-                        // 表可能不存在，忽略错误
-                    }
-                    
-                    // 获取已节省空间
-                    try {
-                        CallableStatement cstmt = connection.prepareCall("{? = call db_cleanup.get_space_savings}");
-                        cstmt.registerOutParameter(1, Types.NUMERIC);
-                        cstmt.execute();
-                        double savedBytes = cstmt.getDouble(1);
-                        double savedMB = savedBytes / 1024 / 1024;
-                        spaceSaved = new DecimalFormat("#,##0.00").format(savedMB) + " MB";
-                        cstmt.close();
-                    } catch (SQLException e) {
-                        // 函数可能不存在，忽略错误
+                });
+            }
+            
+            @Override
+            public void onMetricFailed(final CleanupEngine.DatabaseInfo.Metric metric, final Exception error) {
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        showMetricFailed(metric, error);
                     }
-                    
-                } catch (Exception e) {
-                    e.printStackTrace();
+                });
+            }
+        };
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                if (forceRefresh) {
+                    engine.refreshDictionarySnapshots();
                 }
+                engine.loadDatabaseInfo(listener);
                 return null;
             }
             
             @Override
             protected void done() {
-                dbNameLabel.setText("数据库: " + dbName);
-                dbSizeLabel.setText("数据库大小: " + dbSize);
-                lastCleanupLabel.setText("上次清理时间: " + lastCleanup);
-                spaceSavedLabel.setText("已节省空间: " + spaceSaved);
+                dashboardRefreshing = false;
+                refreshSnapshotButton.setEnabled(true);
+                try {
+                    get();
+                } catch (Exception e) {
+                    // 各项指标的错误已显示在对应标签中
+                }
             }
         };
         
         worker.execute();
     }
     
+    /**
+     * 显示一项已获取的指标，值没有变化时不重绘标签
+     */
+    private void showMetric(CleanupEngine.DatabaseInfo.Metric metric, CleanupEngine.DatabaseInfo info) {
+        DecimalFormat df = new DecimalFormat("#,##0.00");
+        switch (metric) {
+            case DB_NAME:
+                updateLabel(dbNameLabel, "数据库: " + info.getDbName());
+                break;
+            case DB_SIZE:
+                updateLabel(dbSizeLabel, "数据库大小: " +
+                        (info.getDbSizeGB() < 0 ? "未知" : df.format(info.getDbSizeGB()) + " GB"));
+                snapshotTime = info.getSnapshotTime();
+                updateSnapshotAge();
+                break;
+            case FREE_SPACE:
+                updateLabel(freeSpaceLabel, "空闲空间: " +
+                        (info.getFreeSpaceGB() < 0 ? "未知" : df.format(info.getFreeSpaceGB()) + " GB"));
+                snapshotTime = info.getSnapshotTime();
+                updateSnapshotAge();
+                break;
+            case LAST_CLEANUP:
+                updateLabel(lastCleanupLabel, "上次清理时间: " + info.getLastCleanup());
+                break;
+            case SPACE_SAVED:
+                updateLabel(spaceSavedLabel, "已节省空间: " + df.format(info.getSpaceSavedBytes() / 1024 / 1024) + " MB");
+                break;
+        }
+    }
+    
+    /**
+     * 显示一项指标的失败状态
+     * 上次清理时间和已节省空间在清理框架的表或函数不存在时失败，保持原值
+     */
+    private void showMetricFailed(CleanupEngine.DatabaseInfo.Metric metric, Exception error) {
+        String state = error instanceof SQLTimeoutException ? "超时" : "获取失败";
+        switch (metric) {
+            case DB_NAME:
+                updateLabel(dbNameLabel, "数据库: " + state);
+                break;
+            case DB_SIZE:
+                updateLabel(dbSizeLabel, "数据库大小: " + state);
+                break;
+            case FREE_SPACE:
+                updateLabel(freeSpaceLabel, "空闲空间: " + state);
+                break;
+            default:
+                break;
+        }
+    }
+    
+    private static void updateLabel(JLabel label, String text) {
+        if (!text.equals(label.getText())) {
+            label.setText(text);
+        }
+    }
+    
+    /**
+     * 更新字典快照年龄显示
+     */
+    private void updateSnapshotAge() {
+        updateLabel(snapshotAgeLabel, "字典快照: " +
+                DictionarySnapshotCache.formatAge(snapshotTime, System.currentTimeMillis()));
+    }
+    
     /**
      * 加载配置
      */
     private void loadConfig() {
-        if (connection == null) return;
+        if (engine == null) return;
         
-        SwingWorker<List<Object[]>, Void> worker = new SwingWorker<List<Object[]>, Void>() {
+        SwingWorker<List<String[]>, Void> worker = new SwingWorker<List<String[]>, Void>() {
             @Override
-            protected List<Object[]> doInBackground() throws Exception {
-                List<Object[]> configData = new ArrayList<>();
-                try (Statement stmt = connection.createStatement();
-                     ResultSet rs = stmt.executeQuery(
-                             "SELECT config_name, config_value, description FROM cleanup_config ORDER BY config_id")) {
-                    while (rs.next()) {
-                        Object[] row = new Object[3];
-                        row[0] = rs.getString("config_name");
-                        row[1] = rs.getString("config_value");
-                        row[2] = rs.getString("description");
-                        configData.add(row);
-                    }
+            protected List<String[]> doInBackground() throws Exception {
+                try {
+                    return engine.loadConfig();
                 } catch (SQLException e) {
                     // 表可能不存在
                     e.printStackTrace();
+                    return new ArrayList<>();
                 }
-                return configData;
             }
             
             @Override
             protected void done() {
                 try {
-                    List<Object[]> configData = get();
+                    List<String[]> configData = get();
                     // 清空表格
                     configTableModel.setRowCount(0);
                     // 添加数据
-                    for (Object[] row : configData) {
+                    for (String[] row : configData) {
                         configTableModel.addRow(row);
                     }
                 } catch (Exception e) {
@@ -627,69 +1000,23 @@ public class OracleDataCleanup extends JFrame {
     
     /**
      * 加载候选
+     * 只加载分页索引，表格滚动到哪一页再加载哪一页
      */
     private void loadCandidates() {
-        if (connection == null) return;
+        if (engine == null) return;
         
-        SwingWorker<List<Object[]>, Void> worker = new SwingWorker<List<Object[]>, Void>() {
+        SwingWorker<CleanupEngine.CandidatePageIndex, Void> worker = new SwingWorker<CleanupEngine.CandidatePageIndex, Void>() {
             @Override
-            protected List<Object[]> doInBackground() throws Exception {
-                List<Object[]> candidateData = new ArrayList<>();
-                try (Statement stmt = connection.createStatement();
-                     ResultSet rs = stmt.executeQuery(
-                             "SELECT candidate_id, object_type, object_owner, object_name, " +
-                             "reason, TO_CHAR(identified_time, 'YYYY-MM-DD HH24:MI:SS'), status " +
-                             "FROM cleanup_candidates " +
-                             "WHERE status IN ('PENDING', 'APPROVED') " +
-                             "ORDER BY priority, identified_time")) {
-                    while (rs.next()) {
-                        Object[] row = new Object[7];
-                        row[0] = rs.getInt(1);
-                        row[1] = rs.getString(2);
-                        row[2] = rs.getString(3);
-                        row[3] = rs.getString(4);
-                        row[4] = rs.getString(5);
-                        row[5] = rs.getString(6);
-                        row[6] = rs.getString(7);
-                        candidateData.add(row);
-                    }
-                } catch (SQLException e) {
-                    // 表可能不存在
-                    e.printStackTrace();
-                }
-                return candidateData;
+            protected CleanupEngine.CandidatePageIndex doInBackground() throws Exception {
+                return engine.loadCandidatePageIndex(CandidateTableModel.PAGE_SIZE);
             }
             
             @Override
             protected void done() {
                 try {
-                    List<Object[]> candidateData = get();
-                    // 清空表格
-                    candidatesTableModel.setRowCount(0);
-                    // 添加数据
-                    for (Object[] row : candidateData) {
-                        candidatesTableModel.addRow(row);
-                    }
-                    
-                    // 设置状态列的颜色
-                    candidatesTable.getColumnModel().getColumn(6).setCellRenderer(new DefaultTableCellRenderer() {
-                        private static final long serialVersionUID = 1L;
-                        @Override
-                        public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
-                            Component c = super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-                            if (value != null) {
-                                if ("APPROVED".equals(value.toString())) {
-                                    c.setForeground(Color.GREEN.darker());
-                                } else if ("PENDING".equals(value.toString())) {
-                                    c.setForeground(Color.BLUE);
-                                } else {
-                                    c.setForeground(table.getForeground());
-                                }
-                            }
-                            return c;
-                        }
-                    });
+                    candidatesTableModel.reset(engine, get());
                 } catch (Exception e) {
+                    // 表可能不存在
                     e.printStackTrace();
                 }
             }
@@ -702,50 +1029,25 @@ public class OracleDataCleanup extends JFrame {
      * 保存配置
      */
     private void saveConfig() {
-        if (connection == null) return;
+        if (engine == null) return;
         
         final int rowCount = configTableModel.getRowCount();
         if (rowCount == 0) return;
         
+        final Map<String, String> values = new LinkedHashMap<>();
+        for (int i = 0; i < rowCount; i++) {
+            values.put((String) configTableModel.getValueAt(i, 0), (String) configTableModel.getValueAt(i, 1));
+        }
+        
         SwingWorker<Boolean, Void> worker = new SwingWorker<Boolean, Void>() {
             @Override
             protected Boolean doInBackground() throws Exception {
                 try {
-                    connection.setAutoCommit(false);
-                    
-                    PreparedStatement pstmt = connection.prepareStatement(
-                            "UPDATE cleanup_config SET config_value = ?, last_updated = SYSTIMESTAMP, " +
-                            "updated_by = ? WHERE config_name = ?");
-                    
-                    for (int i = 0; i < rowCount; i++) {
-                        String configName = (String) configTableModel.getValueAt(i, 0);
-                        String configValue = (String) configTableModel.getValueAt(i, 1);
-                        
-                        pstmt.setString(1, configValue);
-                        pstmt.setString(2, username);
-                        pstmt.setString(3, configName);
-                        pstmt.addBatch();
-                    }
-                    
-                    pstmt.executeBatch();
-                    connection.commit();
-                    pstmt.close();
-                    
+                    engine.saveConfig(values);
                     return true;
                 } catch (Exception e) {
                     e.printStackTrace();
-                    try {
-                        connection.rollback();
-                    } catch (SQLException ex) {
-                        ex.printStackTrace();
-                    }
                     return false;
-                } finally {
-                    try {
-                        connection.setAutoCommit(true);
-                    } catch (SQLException e) {
-                        e.printStackTrace();
-                    }
                 }
             }
             
@@ -771,62 +1073,46 @@ public class OracleDataCleanup extends JFrame {
         worker.execute();
     }
     
+    /**
+     * 获取指定行中状态为PENDING的候选ID，未加载的页会同步加载，只能在后台线程中调用
+     */
+    private List<Integer> getPendingIds(int[] rows) throws SQLException {
+        return candidatesTableModel.getPendingIds(rows);
+    }
+    
     /**
      * 批准选中的候选
      */
     private void approveSelectedCandidates() {
-        if (connection == null) return;
+        if (engine == null) return;
         
-        int[] selectedRows = candidatesTable.getSelectedRows();
+        final int[] selectedRows = candidatesTable.getSelectedRows();
         if (selectedRows.length == 0) {
             JOptionPane.showMessageDialog(this, "请选择要批准的候选项", "未选择", JOptionPane.WARNING_MESSAGE);
             return;
         }
         
-        final List<Integer> candidateIds = new ArrayList<>();
-        for (int row : selectedRows) {
-            int candidateId = (Integer) candidatesTableModel.getValueAt(row, 0);
-            String status = (String) candidatesTableModel.getValueAt(row, 6);
-            if ("PENDING".equals(status)) {
-                candidateIds.add(candidateId);
-            }
-        }
-        
-        if (candidateIds.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "所选候选项中没有待处理的项", "无效选择", JOptionPane.WARNING_MESSAGE);
-            return;
-        }
-        
-        SwingWorker<Boolean, Void> worker = new SwingWorker<Boolean, Void>() {
+        SwingWorker<Integer, Void> worker = new SwingWorker<Integer, Void>() {
             @Override
-            protected Boolean doInBackground() throws Exception {
-                try {
-                    CallableStatement cstmt = connection.prepareCall("{call approve_cleanup_candidate(?)}");
-                    
-                    for (Integer candidateId : candidateIds) {
-                        cstmt.setInt(1, candidateId);
-                        cstmt.execute();
-                    }
-                    
-                    cstmt.close();
-                    return true;
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    return false;
+            protected Integer doInBackground() throws Exception {
+                List<Integer> candidateIds = getPendingIds(selectedRows);
+                if (candidateIds.isEmpty()) {
+                    return 0;
                 }
+                return engine.approveCandidates(candidateIds);
             }
             
             @Override
             protected void done() {
                 try {
-                    boolean success = get();
-                    if (success) {
+                    int count = get();
+                    if (count == 0) {
                         JOptionPane.showMessageDialog(OracleDataCleanup.this, 
-                                "已批准" + candidateIds.size() + "个候选项", "批准成功", JOptionPane.INFORMATION_MESSAGE);
-                        loadCandidates(); // 刷新列表
+                                "所选候选项中没有待处理的项", "无效选择", JOptionPane.WARNING_MESSAGE);
                     } else {
                         JOptionPane.showMessageDialog(OracleDataCleanup.this, 
-                                "批准候选项时发生错误", "批准错误", JOptionPane.ERROR_MESSAGE);
+                                "已批准" + count + "个候选项", "批准成功", JOptionPane.INFORMATION_MESSAGE);
+                        loadCandidates(); // 刷新列表
                     }
                 } catch (Exception e) {
                     e.printStackTrace();
@@ -843,58 +1129,35 @@ public class OracleDataCleanup extends JFrame {
      * 拒绝选中的候选
      */
     private void rejectSelectedCandidates() {
-        if (connection == null) return;
+        if (engine == null) return;
         
-        int[] selectedRows = candidatesTable.getSelectedRows();
+        final int[] selectedRows = candidatesTable.getSelectedRows();
         if (selectedRows.length == 0) {
             JOptionPane.showMessageDialog(this, "请选择要拒绝的候选项", "未选择", JOptionPane.WARNING_MESSAGE);
             return;
         }
         
-        final List<Integer> candidateIds = new ArrayList<>();
-        for (int row : selectedRows) {
-            int candidateId = (Integer) candidatesTableModel.getValueAt(row, 0);
-            String status = (String) candidatesTableModel.getValueAt(row, 6);
-            if ("PENDING".equals(status)) {
-                candidateIds.add(candidateId);
-            }
-        }
-        
-        if (candidateIds.isEmpty()) {
-            JOptionPane.showMessageDialog(this, "所选候选项中没有待处理的项", "无效选择", JOptionPane.WARNING_MESSAGE);
-            return;
-        }
-        
-        SwingWorker<Boolean, Void> worker = new SwingWorker<Boolean, Void>() {
+        SwingWorker<Integer, Void> worker = new SwingWorker<Integer, Void>() {
             @Override
-            protected Boolean doInBackground() throws Exception {
-                try {
-                    CallableStatement cstmt = connection.prepareCall("{call reject_cleanup_candidate(?)}");
-                    
-                    for (Integer candidateId : candidateIds) {
-                        cstmt.setInt(1, candidateId);
-                        cstmt.execute();
-                    }
-                    
-                    cstmt.close();
-                    return true;
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    return false;
+            protected Integer doInBackground() throws Exception {
+                List<Integer> candidateIds = getPendingIds(selectedRows);
+                if (candidateIds.isEmpty()) {
+                    return 0;
                 }
+                return engine.rejectCandidates(candidateIds);
             }
             
             @Override
             protected void done() {
                 try {
-                    boolean success = get();
-                    if (success) {
+                    int count = get();
+                    if (count == 0) {
                         JOptionPane.showMessageDialog(OracleDataCleanup.this, 
-                                "已拒绝" + candidateIds.size() + "个候选项", "拒绝成功", JOptionPane.INFORMATION_MESSAGE);
-                        loadCandidates(); // 刷新列表
+                                "所选候选项中没有待处理的项", "无效选择", JOptionPane.WARNING_MESSAGE);
                     } else {
                         JOptionPane.showMessageDialog(OracleDataCleanup.this, 
-                                "拒绝候选项时发生错误", "拒绝错误", JOptionPane.ERROR_MESSAGE);
+                                "已拒绝" + count + "个候选项", "拒绝成功", JOptionPane.INFORMATION_MESSAGE);
+                        loadCandidates(); // 刷新列表
                     }
                 } catch (Exception e) {
                     e.printStackTrace();
@@ -909,9 +1172,17 @@ public class OracleDataCleanup extends JFrame {
     
     /**
      * 执行已批准的清理
+     * 清理进行中再次点击按钮时取消，已开始的候选会执行完毕
      */
     private void executeCleanup() {
-        if (connection == null) return;
+        if (engine == null) return;
+        
+        if (runningCleanup != null) {
+            runningCleanup.cancel();
+            executeCleanupButton.setEnabled(false);
+            progressBar.setString("正在取消清理...");
+            return;
+        }
         
         // 确认执行
         int confirm = JOptionPane.showConfirmDialog(this, 
@@ -922,45 +1193,112 @@ public class OracleDataCleanup extends JFrame {
             return;
         }
         
-        // 禁用按钮，显示进度条
+        // 切换为取消按钮，显示进度条
         executeCleanupButton.setEnabled(false);
         progressBar.setIndeterminate(true);
         progressBar.setString("正在执行清理...");
+        cleanupLogArea.setText("");
         
-        SwingWorker<Boolean, Void> worker = new SwingWorker<Boolean, Void>() {
+        SwingWorker<List<CleanupExecutor.Result>, CleanupExecutor.Result> worker =
+                new SwingWorker<List<CleanupExecutor.Result>, CleanupExecutor.Result>() {
+            private int finished;
+            
             @Override
-            protected Boolean doInBackground() throws Exception {
+            protected List<CleanupExecutor.Result> doInBackground() throws Exception {
+                long start = System.nanoTime();
+                final CleanupExecutor executor = engine.createCleanupExecutor(new CleanupListener() {
+                    @Override
+                    public void onCandidateStarted(final CleanupCandidate candidate) {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (runningCleanup != null && !runningCleanup.isCancelled()) {
+                                    progressBar.setString("正在清理: " + candidate.getObjectName());
+                                }
+                            }
+                        });
+                    }
+                    
+                    @Override
+                    public void onCandidateFinished(CleanupExecutor.Result result, int completed, int total) {
+                        publish(result);
+                        setProgress(completed * 100 / total);
+                    }
+                    
+                    @Override
+                    public void onWarning(final String message) {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                cleanupLogArea.append("警告: " + message + "\n");
+                            }
+                        });
+                    }
+                });
+                SwingUtilities.invokeLater(new Runnable() {
+                    @Override
+                    public void run() {
+                        runningCleanup = executor;
+                        executeCleanupButton.setText("取消清理");
+                        executeCleanupButton.setEnabled(true);
+                    }
+                });
+                List<CleanupExecutor.Result> results = null;
                 try {
-                    CallableStatement cstmt = connection.prepareCall("{call execute_approved_cleanup}");
-                    cstmt.execute();
-                    cstmt.close();
-                    return true;
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    return false;
+                    results = executor.execute();
+                    return results;
+                } finally {
+                    engine.recordExecution(start, results);
                 }
             }
             
+            @Override
+            protected void process(List<CleanupExecutor.Result> chunk) {
+                for (CleanupExecutor.Result result : chunk) {
+                    finished++;
+                    CleanupCandidate c = result.getCandidate();
+                    cleanupLogArea.append(result.getOutcome() + "  " + c.getObjectType() + "  " +
+                            (c.getObjectOwner() == null ? "" : c.getObjectOwner() + ".") + c.getObjectName() +
+                            "  " + result.getElapsedMillis() + " ms" +
+                            (result.getMessage() == null ? "" : "  " + result.getMessage()) + "\n");
+                }
+                progressBar.setIndeterminate(false);
+                progressBar.setMaximum(100);
+                progressBar.setValue(getProgress());
+                progressBar.setString("已完成" + finished + "个候选项");
+            }
+            
             @Override
             protected void done() {
                 try {
-                    boolean success = get();
-                    if (success) {
-                        JOptionPane.showMessageDialog(OracleDataCleanup.this, 
-                                "清理操作已成功执行", "清理成功", JOptionPane.INFORMATION_MESSAGE);
-                        loadCandidates(); // 刷新列表
-                        loadDatabaseInfo(); // 更新数据库信息
-                    } else {
-                        JOptionPane.showMessageDialog(OracleDataCleanup.this, 
-                                "执行清理操作时发生错误", "清理错误", JOptionPane.ERROR_MESSAGE);
+                    int cleaned = 0;
+                    int failed = 0;
+                    int cancelled = 0;
+                    int deferred = 0;
+                    for (CleanupExecutor.Result result : get()) {
+                        switch (result.getOutcome()) {
+                            case CLEANED: cleaned++; break;
+                            case FAILED: failed++; break;
+                            case DEFERRED: deferred++; break;
+                            default: cancelled++; break;
+                        }
                     }
+                    JOptionPane.showMessageDialog(OracleDataCleanup.this, 
+                            "已清理" + cleaned + "个候选项，失败" + failed + "个，取消" + cancelled + "个" +
+                            (deferred == 0 ? "" : "，超出时间预算推迟" + deferred + "个"), 
+                            "清理完成", failed > 0 ? JOptionPane.WARNING_MESSAGE : JOptionPane.INFORMATION_MESSAGE);
+                    loadCandidates(); // 刷新列表
+                    loadDatabaseInfo(); // 更新数据库信息
                 } catch (Exception e) {
                     e.printStackTrace();
                     JOptionPane.showMessageDialog(OracleDataCleanup.this, 
                             "执行清理操作时发生错误: " + e.getMessage(), "清理错误", JOptionPane.ERROR_MESSAGE);
                 } finally {
+                    runningCleanup = null;
+                    executeCleanupButton.setText("执行已批准的清理");
                     executeCleanupButton.setEnabled(true);
                     progressBar.setIndeterminate(false);
+                    progressBar.setValue(0);
                     progressBar.setString("");
                 }
             }
@@ -973,54 +1311,77 @@ public class OracleDataCleanup extends JFrame {
      * 运行分析
      */
     private void runAnalysis() {
-        if (connection == null) return;
+        if (engine == null) return;
+        
+        if (analysisRunning) {
+            cancelAnalysis();
+            return;
+        }
         
         final boolean autoApprove = autoApproveCheckbox.isSelected();
         
-        // 禁用按钮，显示进度条
-        runAnalysisButton.setEnabled(false);
+        // 切换为取消按钮，显示进度条
+        analysisRunning = true;
+        runAnalysisButton.setText("取消分析");
         progressBar.setIndeterminate(true);
         progressBar.setString("正在分析数据库...");
         
-        SwingWorker<Boolean, Void> worker = new SwingWorker<Boolean, Void>() {
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
             @Override
-            protected Boolean doInBackground() throws Exception {
-                try {
-                    CallableStatement cstmt = connection.prepareCall("{call run_db_cleanup(?)}");
-                    cstmt.setString(1, autoApprove ? "Y" : "N");
-                    cstmt.execute();
-                    cstmt.close();
-                    return true;
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    return false;
-                }
+            protected Void doInBackground() throws Exception {
+                engine.runAnalysis(autoApprove, new ProgressListener() {
+                    @Override
+                    public void onProgress(final int completed, final int total, final String message) {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (completed < total) {
+                                    progressBar.setIndeterminate(false);
+                                    progressBar.setMaximum(total);
+                                    progressBar.setValue(completed);
+                                    progressBar.setString(message);
+                                } else {
+                                    // 统计信息收集完成或已在上次中断的周期中完成，进入识别阶段
+                                    progressBar.setIndeterminate(true);
+                                    progressBar.setString("正在分析数据库...");
+                                }
+                            }
+                        });
+                    }
+                });
+                return null;
             }
             
             @Override
             protected void done() {
                 try {
-                    boolean success = get();
-                    if (success) {
+                    get();
+                    JOptionPane.showMessageDialog(OracleDataCleanup.this, 
+                            "数据库分析已完成" + (autoApprove ? "并自动批准了清理候选" : ""), 
+                            "分析成功", JOptionPane.INFORMATION_MESSAGE);
+                    loadCandidates(); // 刷新列表
+                    loadDatabaseInfo(); // 更新数据库信息
+                    
+                    // 如果有候选项，切换到候选选项卡
+                    if (candidatesTableModel.getRowCount() > 0) {
+                        tabbedPane.setSelectedIndex(2);
+                    }
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    if (cause instanceof SQLException && engine.isCancellation((SQLException) cause)) {
                         JOptionPane.showMessageDialog(OracleDataCleanup.this, 
-                                "数据库分析已完成" + (autoApprove ? "并自动批准了清理候选" : ""), 
-                                "分析成功", JOptionPane.INFORMATION_MESSAGE);
-                        loadCandidates(); // 刷新列表
-                        loadDatabaseInfo(); // 更新数据库信息
-                        
-                        // 如果有候选项，切换到候选选项卡
-                        if (candidatesTableModel.getRowCount() > 0) {
-                            tabbedPane.setSelectedIndex(2);
-                        }
+                                "分析已取消，已完成的阶段和已清理的候选都已保存，下次运行分析时从检查点继续", 
+                                "分析已取消", JOptionPane.INFORMATION_MESSAGE);
+                        loadCandidates();
                     } else {
+                        cause.printStackTrace();
                         JOptionPane.showMessageDialog(OracleDataCleanup.this, 
-                                "分析数据库时发生错误", "分析错误", JOptionPane.ERROR_MESSAGE);
+                                "分析数据库时发生错误: " + cause.getMessage() +
+                                "\n下次运行分析时从最后完成的阶段继续", "分析错误", JOptionPane.ERROR_MESSAGE);
                     }
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    JOptionPane.showMessageDialog(OracleDataCleanup.this, 
-                            "分析数据库时发生错误: " + e.getMessage(), "分析错误", JOptionPane.ERROR_MESSAGE);
                 } finally {
+                    analysisRunning = false;
+                    runAnalysisButton.setText("运行分析");
                     runAnalysisButton.setEnabled(true);
                     progressBar.setIndeterminate(false);
                     progressBar.setString("");
@@ -1031,11 +1392,249 @@ public class OracleDataCleanup extends JFrame {
         worker.execute();
     }
     
+    /**
+     * 请求取消正在运行的分析，数据库端在下一个检查点停止
+     */
+    private void cancelAnalysis() {
+        runAnalysisButton.setEnabled(false);
+        progressBar.setIndeterminate(true);
+        progressBar.setString("正在取消分析，等待当前步骤结束...");
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                engine.cancelAnalysis();
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(OracleDataCleanup.this, 
+                            "请求取消分析失败: " + e.getMessage(), "取消错误", JOptionPane.ERROR_MESSAGE);
+                    runAnalysisButton.setEnabled(analysisRunning);
+                }
+            }
+        };
+        worker.execute();
+    }
+    
+    /**
+     * 从数据库重新加载最近一次清理周期的阶段耗时，然后显示所有运行指标
+     */
+    private void refreshMetrics() {
+        if (engine == null) return;
+        
+        refreshMetricsButton.setEnabled(false);
+        SwingWorker<Void, Void> worker = new SwingWorker<Void, Void>() {
+            @Override
+            protected Void doInBackground() throws Exception {
+                engine.loadLastRun();
+                return null;
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    get();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    JOptionPane.showMessageDialog(OracleDataCleanup.this, 
+                            "加载清理周期的阶段耗时失败: " + e.getMessage(), "加载错误", JOptionPane.ERROR_MESSAGE);
+                } finally {
+                    refreshMetricsButton.setEnabled(true);
+                    showMetrics();
+                }
+            }
+        };
+        
+        worker.execute();
+    }
+    
+    /**
+     * 显示客户端已记录的运行指标，不访问数据库
+     */
+    private void showMetrics() {
+        if (engine == null) return;
+        CleanupMetrics metrics = engine.getMetrics();
+        DecimalFormat seconds = new DecimalFormat("0.000");
+        DecimalFormat mb = new DecimalFormat("#,##0.00");
+        
+        lastRunTableModel.setRowCount(0);
+        for (CleanupMetrics.RunPhase phase : metrics.getLastRun()) {
+            lastRunTableModel.addRow(new Object[] {
+                    phase.getName(), 
+                    CleanupMetrics.formatTime(phase.getStartedTime()), 
+                    seconds.format(phase.getElapsedMillis() / 1000.0), 
+                    phase.getItemCount() < 0 ? "" : String.valueOf(phase.getItemCount()), 
+                    phase.getSpaceSaved() < 0 ? "" : mb.format(phase.getSpaceSaved() / 1024.0 / 1024), 
+                    phase.getStatus()
+            });
+        }
+        
+        clientTimingTableModel.setRowCount(0);
+        List<CleanupMetrics.Timing> timings = new ArrayList<>(metrics.getPhaseTimings());
+        int phaseCount = timings.size();
+        timings.addAll(metrics.getObjectTimings());
+        for (int i = 0; i < timings.size(); i++) {
+            CleanupMetrics.Timing t = timings.get(i);
+            clientTimingTableModel.addRow(new Object[] {
+                    i < phaseCount ? t.getName() : "清理" + t.getName(), 
+                    t.getCount(), 
+                    t.getFailures(), 
+                    seconds.format(t.getLastSeconds()), 
+                    seconds.format(t.getCount() == 0 ? 0 : t.getTotalSeconds() / t.getCount()), 
+                    seconds.format(t.getMaxSeconds()), 
+                    t.getLastItems() < 0 ? "" : String.valueOf(t.getLastItems()), 
+                    t.getTotalBytes() == 0 ? "" : mb.format(t.getTotalBytes() / 1024.0 / 1024)
+            });
+        }
+        
+        jdbcStatsLabel.setText("JDBC: 往返" + metrics.getJdbcRoundTrips() + "次，语句" + metrics.getJdbcStatements() +
+                "条，失败" + metrics.getJdbcStatementErrors() + "条，平均" +
+                seconds.format(metrics.getJdbcMeanStatementMillis()) + " ms，最长" +
+                seconds.format(metrics.getJdbcMaxStatementMillis()) + " ms，警告" + metrics.getWarnings() + "条");
+        jdbcStatsLabel.setToolTipText(metrics.getLastWarning() == null ? null : "最近的警告: " + metrics.getLastWarning());
+    }
+    
+    /**
+     * 批量处理目标列表中的数据库
+     * 每个数据库处理结束就加入汇总表，全部结束后显示合并的清理候选和报告
+     */
+    private void runFleet() {
+        final String file = fleetFileField.getText().trim();
+        if (file.isEmpty()) {
+            JOptionPane.showMessageDialog(this, "请选择目标列表文件", "输入错误", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        final List<CleanupFleet.Target> targets;
+        try {
+            targets = CleanupFleet.loadTargets(Paths.get(file));
+        } catch (IOException | InvalidPathException e) {
+            JOptionPane.showMessageDialog(this, "读取目标列表失败: " + e.getMessage(), "输入错误", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        final boolean analyze = fleetAnalyzeCheckbox.isSelected() || fleetAutoApproveCheckbox.isSelected();
+        final boolean autoApprove = fleetAutoApproveCheckbox.isSelected();
+        final boolean execute = fleetExecuteCheckbox.isSelected();
+        if (execute) {
+            int option = JOptionPane.showConfirmDialog(this, 
+                    "确定要在" + targets.size() + "个数据库上执行已批准的清理操作吗？", 
+                    "确认清理", JOptionPane.YES_NO_OPTION, JOptionPane.WARNING_MESSAGE);
+            if (option != JOptionPane.YES_OPTION) return;
+        }
+        final int reportDays = fleetReportCheckbox.isSelected() ? (Integer) fleetReportDaysSpinner.getValue() : 0;
+        final CleanupFleet fleet = new CleanupFleet(targets, (Integer) fleetParallelSpinner.getValue(), 
+                (Integer) fleetConnectionsSpinner.getValue());
+        
+        runningFleet = fleet;
+        fleetRunButton.setEnabled(false);
+        fleetCancelButton.setEnabled(true);
+        fleetSummaryTableModel.setRowCount(0);
+        fleetCandidatesTableModel.setRowCount(0);
+        fleetReportArea.setText("");
+        fleetStatusLabel.setText("正在处理" + targets.size() + "个数据库...");
+        
+        SwingWorker<List<CleanupFleet.TargetResult>, CleanupFleet.TargetResult> worker =
+                new SwingWorker<List<CleanupFleet.TargetResult>, CleanupFleet.TargetResult>() {
+            private volatile int finished;
+            
+            @Override
+            protected List<CleanupFleet.TargetResult> doInBackground() throws Exception {
+                return fleet.run(analyze, autoApprove, execute, reportDays, new FleetListener() {
+                    @Override
+                    public void onTargetProgress(final CleanupFleet.Target target, final String message) {
+                        SwingUtilities.invokeLater(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (!fleet.isCancelled()) {
+                                    fleetStatusLabel.setText("[" + finished + "/" + targets.size() + "] " +
+                                            target.getName() + ": " + message);
+                                }
+                            }
+                        });
+                    }
+                    
+                    @Override
+                    public void onTargetFinished(CleanupFleet.TargetResult result, int completed, int total) {
+                        finished = completed;
+                        publish(result);
+                    }
+                });
+            }
+            
+            @Override
+            protected void process(List<CleanupFleet.TargetResult> chunks) {
+                for (CleanupFleet.TargetResult r : chunks) {
+                    fleetSummaryTableModel.addRow(new Object[] {
+                            r.getTarget().getName(), 
+                            r.getDbName(), 
+                            r.getDbSizeGB() < 0 ? null : r.getDbSizeGB(), 
+                            r.getFreeSpaceGB() < 0 ? null : r.getFreeSpaceGB(), 
+                            r.getPendingCount(), 
+                            r.getApprovedCount(), 
+                            r.getCleaned(), 
+                            r.getFailed(), 
+                            r.getCancelled(), 
+                            r.getDeferred(), 
+                            Math.round(r.getBytesReclaimed() / 1024.0 / 1024 * 100) / 100.0, 
+                            r.getElapsedMillis() / 1000.0, 
+                            r.isSucceeded() ? "成功" : "失败: " + r.getError()
+                    });
+                }
+            }
+            
+            @Override
+            protected void done() {
+                runningFleet = null;
+                fleetRunButton.setEnabled(true);
+                fleetCancelButton.setEnabled(false);
+                try {
+                    List<CleanupFleet.TargetResult> results = get();
+                    int failed = 0;
+                    StringBuilder reports = new StringBuilder();
+                    for (CleanupFleet.TargetResult r : results) {
+                        if (!r.isSucceeded()) failed++;
+                        if (r.getReport() != null) {
+                            reports.append("===== ").append(r.getTarget().getName()).append(" =====\n");
+                            reports.append(r.getReport()).append("\n");
+                        }
+                    }
+                    List<CleanupFleet.TargetCandidate> candidates = CleanupFleet.mergeCandidates(results);
+                    for (CleanupFleet.TargetCandidate tc : candidates) {
+                        CleanupCandidate c = tc.getCandidate();
+                        fleetCandidatesTableModel.addRow(new Object[] {
+                                tc.getTargetName(), 
+                                c.getCandidateId(), 
+                                c.getObjectType(), 
+                                c.getObjectOwner(), 
+                                c.getObjectName(), 
+                                c.getStatus(), 
+                                c.getIdentifiedTime(), 
+                                c.getReason()
+                        });
+                    }
+                    fleetReportArea.setText(reports.toString());
+                    fleetReportArea.setCaretPosition(0);
+                    fleetStatusLabel.setText("共" + results.size() + "个数据库，失败" + failed + "个，合计" +
+                            candidates.size() + "个清理候选" + (fleet.isCancelled() ? "(已取消)" : ""));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    fleetStatusLabel.setText("批量处理失败: " + e.getMessage());
+                }
+            }
+        };
+        
+        worker.execute();
+    }
+    
     /**
      * 生成报告
      */
     private void generateReport() {
-        if (connection == null) return;
+        if (engine == null) return;
         
         final int daysBack = (Integer) daysBackSpinner.getValue();
         
@@ -1043,58 +1642,40 @@ public class OracleDataCleanup extends JFrame {
         generateReportButton.setEnabled(false);
         reportTextArea.setText("正在生成报告...");
         
-        SwingWorker<String, Void> worker = new SwingWorker<String, Void>() {
+        // 报告按批读取，每读到一批就追加到文本框
+        SwingWorker<Void, String> worker = new SwingWorker<Void, String>() {
+            private boolean started;
+            
             @Override
-            protected String doInBackground() throws Exception {
-                StringBuilder report = new StringBuilder();
-                try {
-                    // 创建一个特殊的连接来捕获DBMS_OUTPUT
-                    Connection conn = DriverManager.getConnection(jdbcUrl, username, password);
-                    
-                    // 启用DBMS_OUTPUT
-                    CallableStatement enableStmt = conn.prepareCall("BEGIN DBMS_OUTPUT.ENABLE(NULL); END;");
-                    enableStmt.execute();
-                    enableStmt.close();
-                    
-                    // 调用报告存储过程
-                    CallableStatement reportStmt = conn.prepareCall("{call show_cleanup_report(?)}");
-                    reportStmt.setInt(1, daysBack);
-                    reportStmt.execute();
-                    reportStmt.close();
-                    
-                    // 获取DBMS_OUTPUT的内容
-                    CallableStatement getLineStmt = conn.prepareCall(
-                            "BEGIN DBMS_OUTPUT.GET_LINE(:line, :status); END;");
-                    getLineStmt.registerOutParameter(1, Types.VARCHAR);
-                    getLineStmt.registerOutParameter(2, Types.INTEGER);
-                    
-                    String line;
-                    int status;
-                    do {
-                        getLineStmt.execute();
-                        line = getLineStmt.getString(1);
-                        status = getLineStmt.getInt(2);
-                        
-                        if (status == 0 && line != null) {
-                            report.append(line).append("\n");
+            protected Void doInBackground() throws Exception {
+                engine.generateReport(daysBack, new ReportListener() {
+                    @Override
+                    public void onReportLines(List<String> lines) {
+                        StringBuilder text = new StringBuilder();
+                        for (String line : lines) {
+                            text.append(line).append("\n");
                         }
-                    } while (status == 0);
-                    
-                    getLineStmt.close();
-                    conn.close();
-                    
-                    return report.toString();
-                } catch (Exception e) {
-                    e.printStackTrace();
-                    return "生成报告时发生错误: " + e.getMessage();
+                        publish(text.toString());
+                    }
+                });
+                return null;
+            }
+            
+            @Override
+            protected void process(List<String> chunks) {
+                if (!started) {
+                    started = true;
+                    reportTextArea.setText("");
+                }
+                for (String text : chunks) {
+                    reportTextArea.append(text);
                 }
             }
             
             @Override
             protected void done() {
                 try {
-                    String reportText = get();
-                    reportTextArea.setText(reportText);
+                    get();
                     reportTextArea.setCaretPosition(0); // 滚动到顶部
                 } catch (Exception e) {
                     e.printStackTrace();
@@ -1108,6 +1689,57 @@ public class OracleDataCleanup extends JFrame {
         worker.execute();
     }
     
+    /**
+     * 把最近若干天(与报告的天数相同)的清理候选或清理日志流式导出到文件
+     * 格式和压缩按文件扩展名推断：.jsonl为JSON Lines，其他为CSV，以.gz结尾时gzip压缩
+     */
+    private void exportData() {
+        if (engine == null) return;
+        
+        final CleanupExport.Source source = exportSourceCombo.getSelectedIndex() == 0
+                ? CleanupExport.Source.CANDIDATES : CleanupExport.Source.LOG;
+        final int daysBack = (Integer) daysBackSpinner.getValue();
+        JFileChooser chooser = new JFileChooser();
+        chooser.setSelectedFile(new File((source == CleanupExport.Source.CANDIDATES
+                ? "cleanup_candidates" : "cleanup_log") + ".csv.gz"));
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        final Path file = chooser.getSelectedFile().toPath();
+        final Date from = new Date(System.currentTimeMillis() - daysBack * 24L * 60 * 60 * 1000);
+        
+        exportButton.setEnabled(false);
+        exportButton.setText("正在导出...");
+        
+        SwingWorker<Long, Void> worker = new SwingWorker<Long, Void>() {
+            @Override
+            protected Long doInBackground() throws Exception {
+                return engine.createExport().export(source, new CleanupExport.Filter(from, null, null, null), 
+                        CleanupExport.Format.forFileName(file.getFileName().toString()), file);
+            }
+            
+            @Override
+            protected void done() {
+                try {
+                    long rows = get();
+                    JOptionPane.showMessageDialog(OracleDataCleanup.this, 
+                            "已导出" + rows + "行到 " + file, 
+                            "导出完成", JOptionPane.INFORMATION_MESSAGE);
+                } catch (Exception e) {
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(OracleDataCleanup.this, 
+                            "导出时发生错误: " + cause.getMessage(), 
+                            "导出失败", JOptionPane.ERROR_MESSAGE);
+                } finally {
+                    exportButton.setText("导出...");
+                    exportButton.setEnabled(true);
+                }
+            }
+        };
+        
+        worker.execute();
+    }
+    
     /**
      * 主方法
      */
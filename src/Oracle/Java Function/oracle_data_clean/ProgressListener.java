@@ -0,0 +1,15 @@
+package oracle.data.cleanup;
+
+/**
+ * 长时间操作的进度回调
+ * 回调在后台线程中触发，界面实现需要自行切换到事件分发线程
+ */
+public interface ProgressListener {
+    
+    /**
+     * @param completed 已完成的工作量
+     * @param total 总工作量
+     * @param message 当前进度说明
+     */
+    void onProgress(int completed, int total, String message);
+}
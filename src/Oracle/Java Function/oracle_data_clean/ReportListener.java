@@ -0,0 +1,15 @@
+package oracle.data.cleanup;
+
+import java.util.List;
+
+/**
+ * 报告输出回调
+ * 每从数据库读取一批报告行调用一次，在读取报告的线程中调用
+ */
+public interface ReportListener {
+    
+    /**
+     * @param lines 本批读取的报告行，按报告顺序排列
+     */
+    void onReportLines(List<String> lines);
+}
@@ -0,0 +1,209 @@
+package oracle.data.cleanup;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 客户端并行统计信息收集
+ * 把待收集的表切成若干块，由固定数量的工作线程各自借用连接池中的连接调用
+ * db_cleanup.gather_table_stats，每完成一块回调一次进度
+ */
+public class StatisticsCollector {
+    
+    // 每个工作线程大约分到的块数，块越多进度越平滑
+    private static final int CHUNKS_PER_WORKER = 4;
+    
+    // 排除的用户在客户端解析，%s替换为绑定变量列表，没有排除的用户时为空
+    private static final String TARGETS_SQL =
+            "SELECT owner, table_name FROM dba_tab_statistics " +
+            "WHERE object_type = 'TABLE' " +
+            "%s" +
+            "AND table_name NOT LIKE 'BIN$%%' " +
+            "AND (? = 'N' OR stale_stats = 'YES' OR last_analyzed IS NULL) " +
+            "AND (? IS NULL OR last_analyzed IS NULL OR last_analyzed < ?) " +
+            "ORDER BY owner, table_name";
+    
+    private final CleanupEngine engine;
+    private final boolean staleOnly;
+    private final int degree;
+    private final ProgressListener listener;
+    private final Timestamp analyzedBefore;
+    
+    private volatile boolean cancelled;
+    
+    /**
+     * @param staleOnly 只处理统计信息过期或缺失的表
+     * @param degree 并行工作线程数
+     * @param listener 进度回调，可为null
+     */
+    public StatisticsCollector(CleanupEngine engine, boolean staleOnly, int degree, ProgressListener listener) {
+        this(engine, staleOnly, degree, null, listener);
+    }
+    
+    /**
+     * @param analyzedBefore 只处理在此之前收集过或从未收集过统计信息的表，继续中断的清理周期时传入周期开始时间，
+     *                       已收集过的表不再重复；为null时不限制
+     */
+    public StatisticsCollector(CleanupEngine engine, boolean staleOnly, int degree, Timestamp analyzedBefore, 
+                               ProgressListener listener) {
+        this.engine = engine;
+        this.staleOnly = staleOnly;
+        this.degree = Math.max(1, degree);
+        this.analyzedBefore = analyzedBefore;
+        this.listener = listener;
+    }
+    
+    /**
+     * 取消收集，各工作线程收集完当前表后停止，collect抛出SQLException
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+    
+    public boolean isCancelled() {
+        return cancelled;
+    }
+    
+    /**
+     * 执行统计信息收集
+     * @return 处理的表数
+     */
+    public int collect() throws SQLException {
+        List<String[]> targets = loadTargets();
+        int total = targets.size();
+        report(0, total, "需要收集统计信息的表: " + total);
+        if (total == 0) {
+            return 0;
+        }
+        
+        int chunkSize = Math.max(1, (total + degree * CHUNKS_PER_WORKER - 1) / (degree * CHUNKS_PER_WORKER));
+        ExecutorService workers = Executors.newFixedThreadPool(degree, new ThreadFactory() {
+            private final AtomicInteger seq = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "cleanup-stats-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        CompletionService<Integer> completion = new ExecutorCompletionService<>(workers);
+        int chunks = 0;
+        try {
+            for (int from = 0; from < total; from += chunkSize) {
+                final List<String[]> chunk = targets.subList(from, Math.min(total, from + chunkSize));
+                completion.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        return gatherChunk(chunk);
+                    }
+                });
+                chunks++;
+            }
+            
+            int completed = 0;
+            for (int i = 0; i < chunks; i++) {
+                completed += completion.take().get();
+                report(completed, total, "已收集统计信息: " + completed + "/" + total +
+                        " (块 " + (i + 1) + "/" + chunks + ")");
+            }
+            return completed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("统计信息收集被中断", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException("统计信息收集失败: " + cause.getMessage(), cause);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+    
+    private List<String[]> loadTargets() throws SQLException {
+        List<String> excluded = excludedSchemas(engine.getConfigValue("EXCLUDED_SCHEMAS"));
+        StringBuilder excludedFilter = new StringBuilder();
+        if (!excluded.isEmpty()) {
+            excludedFilter.append("AND owner NOT IN (");
+            for (int i = 0; i < excluded.size(); i++) {
+                excludedFilter.append(i == 0 ? "?" : ", ?");
+            }
+            excludedFilter.append(") ");
+        }
+        
+        List<String[]> targets = new ArrayList<>();
+        try (Connection conn = engine.borrowConnection();
+             PreparedStatement stmt = conn.prepareStatement(String.format(TARGETS_SQL, excludedFilter))) {
+            stmt.setFetchSize(1000);
+            int index = 1;
+            for (String schema : excluded) {
+                stmt.setString(index++, schema);
+            }
+            stmt.setString(index++, staleOnly ? "Y" : "N");
+            stmt.setTimestamp(index++, analyzedBefore);
+            stmt.setTimestamp(index, analyzedBefore);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    targets.add(new String[] {rs.getString(1), rs.getString(2)});
+                }
+            }
+        }
+        return targets;
+    }
+    
+    /**
+     * 按db_cleanup.get_excluded_schemas的规则解析EXCLUDED_SCHEMAS：逗号分隔，去掉首尾空白，跳过空项
+     */
+    static List<String> excludedSchemas(String config) {
+        List<String> schemas = new ArrayList<>();
+        if (config == null) {
+            return schemas;
+        }
+        for (String item : config.split(",")) {
+            String schema = item.trim();
+            if (!schema.isEmpty()) {
+                schemas.add(schema);
+            }
+        }
+        return schemas;
+    }
+    
+    /**
+     * 收集一个块中所有表的统计信息，单表失败由存储过程记录日志
+     */
+    private int gatherChunk(List<String[]> chunk) throws SQLException {
+        try (Connection conn = engine.borrowConnection();
+             CallableStatement cstmt = conn.prepareCall("{call db_cleanup.gather_table_stats(?, ?)}")) {
+            for (String[] table : chunk) {
+                if (cancelled || Thread.currentThread().isInterrupted()) {
+                    throw new SQLException("统计信息收集被取消");
+                }
+                cstmt.setString(1, table[0]);
+                cstmt.setString(2, table[1]);
+                cstmt.execute();
+            }
+        }
+        return chunk.size();
+    }
+    
+    private void report(int completed, int total, String message) {
+        if (listener != null) {
+            listener.onProgress(completed, total, message);
+        }
+    }
+}
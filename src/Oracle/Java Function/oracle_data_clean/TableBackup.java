@@ -0,0 +1,585 @@
+package oracle.data.cleanup;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 流式表备份
+ * 以较大的fetchSize通过JDBC读取整张表，逐行编码后写入本地的gzip分块文件，
+ * 不在数据库中创建备份表，备份不占用待回收的表空间。
+ * 每个备份是一个目录，包含建表DDL(table.sql)、若干数据块(part-NNNNN.tbk.gz)和最后写入的清单(manifest.properties)，
+ * 没有清单的目录是未完成的备份，不能用于恢复。
+ * 日期时间和间隔在数据库中转换为与客户端时区无关的字符串，恢复时按同一格式显式转换；
+ * 含有无法恢复的列类型(对象、集合、XMLTYPE、BFILE等)的表导出失败，不会被删除
+ */
+public class TableBackup {
+    
+    public static final String MANIFEST_FILE = "manifest.properties";
+    private static final String DDL_FILE = "table.sql";
+    private static final int CHUNK_MAGIC = 0x54424B31;
+    // 每个数据块未压缩的大小上限
+    private static final long CHUNK_BYTES = 256L * 1024 * 1024;
+    // 累积到该字节数后才向限速器申请额度，减少同步开销
+    private static final int LIMITER_BATCH_BYTES = 64 * 1024;
+    private static final int BUFFER_BYTES = 64 * 1024;
+    private static final int RESTORE_BATCH_ROWS = 1000;
+    
+    // 列的编码方式
+    private static final byte KIND_NUMBER = 'N';
+    private static final byte KIND_STRING = 'S';
+    // 在数据库中格式化的日期时间和间隔
+    private static final byte KIND_DATETIME = 'T';
+    private static final byte KIND_BYTES = 'B';
+    // BINARY_FLOAT和BINARY_DOUBLE按IEEE 754位模式保存，保留NaN和无穷大
+    private static final byte KIND_DOUBLE = 'F';
+    
+    // Oracle JDBC驱动特有的类型编号(oracle.jdbc.OracleTypes)
+    private static final int ORACLE_BINARY_FLOAT = 100;
+    private static final int ORACLE_BINARY_DOUBLE = 101;
+    private static final int ORACLE_TIMESTAMPTZ = -101;
+    private static final int ORACLE_TIMESTAMPLTZ = -102;
+    private static final int ORACLE_INTERVALYM = -103;
+    private static final int ORACLE_INTERVALDS = -104;
+    
+    // DATE和TIMESTAMP统一转换为TIMESTAMP(9)格式化，带时区的类型附加时区偏移
+    private static final String TIMESTAMP_FORMAT = "SYYYY-MM-DD HH24:MI:SS.FF9";
+    private static final String TIMESTAMP_TZ_FORMAT = TIMESTAMP_FORMAT + " TZH:TZM";
+    
+    private final CleanupEngine engine;
+    private final Path baseDir;
+    private final int fetchSize;
+    private final ThroughputLimiter limiter;
+    
+    /**
+     * @param baseDir 备份根目录，每个备份在其下创建一个子目录
+     * @param fetchSize 导出时每次从数据库读取的行数
+     * @param limiter 所有并行备份共享的吞吐量限制
+     */
+    public TableBackup(CleanupEngine engine, Path baseDir, int fetchSize, ThroughputLimiter limiter) {
+        this.engine = engine;
+        this.baseDir = baseDir;
+        this.fetchSize = Math.max(1, fetchSize);
+        this.limiter = limiter;
+    }
+    
+    public Path getBaseDir() {
+        return baseDir;
+    }
+    
+    /**
+     * 导出一张表
+     * @return 备份目录
+     */
+    public Path exportTable(String owner, String table) throws SQLException, IOException {
+        String stamp = new SimpleDateFormat("yyyyMMddHHmmss").format(new Date());
+        Path dir = baseDir.resolve(owner + "." + table + "." + stamp);
+        
+        long rows = 0;
+        int chunks = 0;
+        try (Connection conn = engine.borrowConnection()) {
+            // 先读取列类型，有无法恢复的列时在写入任何文件之前失败
+            String[] names;
+            int[] sqlTypes;
+            byte[] kinds;
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "SELECT * FROM " + qualify(owner, table) + " WHERE 1 = 0");
+                 ResultSet rs = stmt.executeQuery()) {
+                ResultSetMetaData md = rs.getMetaData();
+                int columnCount = md.getColumnCount();
+                names = new String[columnCount];
+                sqlTypes = new int[columnCount];
+                kinds = new byte[columnCount];
+                for (int c = 0; c < columnCount; c++) {
+                    names[c] = md.getColumnName(c + 1);
+                    sqlTypes[c] = md.getColumnType(c + 1);
+                    kinds[c] = kindOf(sqlTypes[c]);
+                    if (kinds[c] == 0) {
+                        throw new SQLException("表 " + owner + "." + table + " 的列 " + names[c] + " 类型为" +
+                                md.getColumnTypeName(c + 1) + "，无法备份和恢复");
+                    }
+                }
+            }
+            StringBuilder select = new StringBuilder("SELECT ");
+            for (int c = 0; c < names.length; c++) {
+                select.append(c == 0 ? "" : ", ").append(selectExpression(quote(names[c]), sqlTypes[c]));
+            }
+            select.append(" FROM ").append(qualify(owner, table));
+            
+            Files.createDirectories(dir);
+            String ddl = loadDdl(conn, owner, table);
+            if (ddl != null) {
+                Files.write(dir.resolve(DDL_FILE), ddl.getBytes(StandardCharsets.UTF_8));
+            }
+            
+            try (PreparedStatement stmt = conn.prepareStatement(select.toString())) {
+                stmt.setFetchSize(fetchSize);
+                try (ResultSet rs = stmt.executeQuery()) {
+                    int columnCount = names.length;
+                    DataOutputStream out = null;
+                    int unthrottled = 0;
+                    try {
+                        while (rs.next()) {
+                            if (out == null) {
+                                out = openChunk(dir, chunks++, names, sqlTypes, kinds);
+                            }
+                            int before = out.size();
+                            for (int c = 0; c < columnCount; c++) {
+                                writeValue(out, rs, c + 1, kinds[c]);
+                            }
+                            rows++;
+                            unthrottled += out.size() - before;
+                            if (unthrottled >= LIMITER_BATCH_BYTES) {
+                                limiter.acquire(unthrottled);
+                                unthrottled = 0;
+                            }
+                            if (out.size() >= CHUNK_BYTES) {
+                                out.close();
+                                out = null;
+                            }
+                        }
+                        // 空表也写一个只有表头的数据块，恢复时据此得到列信息
+                        if (chunks == 0) {
+                            out = openChunk(dir, chunks++, names, sqlTypes, kinds);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("备份 " + owner + "." + table + " 被中断", e);
+                    } finally {
+                        if (out != null) {
+                            out.close();
+                        }
+                    }
+                }
+            }
+        }
+        
+        Properties manifest = new Properties();
+        manifest.setProperty("owner", owner);
+        manifest.setProperty("table", table);
+        manifest.setProperty("rows", String.valueOf(rows));
+        manifest.setProperty("chunks", String.valueOf(chunks));
+        manifest.setProperty("created", stamp);
+        try (OutputStream out = Files.newOutputStream(dir.resolve(MANIFEST_FILE))) {
+            manifest.store(out, "table backup");
+        }
+        return dir;
+    }
+    
+    /**
+     * 并行导出多张表，单张表失败不影响其他表
+     * @param tables 表名，格式为OWNER.TABLE
+     * @param degree 同时导出的表数
+     * @param listener 每张表结束时回调，可为null
+     * @return 失败的表数
+     */
+    public int exportTables(List<String> tables, int degree, final ProgressListener listener) throws SQLException {
+        ExecutorService workers = Executors.newFixedThreadPool(Math.max(1, degree), new ThreadFactory() {
+            private final AtomicInteger seq = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, "cleanup-backup-" + seq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        final int total = tables.size();
+        final AtomicInteger completed = new AtomicInteger();
+        final AtomicInteger failed = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(total);
+        try {
+            for (final String name : tables) {
+                futures.add(workers.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() {
+                        String message;
+                        int dot = name.indexOf('.');
+                        try {
+                            if (dot <= 0) {
+                                throw new IllegalArgumentException("表名格式应为OWNER.TABLE: " + name);
+                            }
+                            Path dir = exportTable(name.substring(0, dot), name.substring(dot + 1));
+                            message = "已备份 " + name + " 到 " + dir;
+                        } catch (Exception e) {
+                            failed.incrementAndGet();
+                            message = "备份 " + name + " 失败: " + e.getMessage();
+                        }
+                        if (listener != null) {
+                            listener.onProgress(completed.incrementAndGet(), total, message);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("备份被中断", e);
+        } catch (ExecutionException e) {
+            throw new SQLException("备份执行失败: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        return failed.get();
+    }
+    
+    /**
+     * 从备份目录恢复一张表
+     * 目标表不存在时先执行备份中的建表DDL，此时目标必须与备份的表同名；目标表已有数据时拒绝恢复。
+     * 数据按块读取、批量插入，所有数据块在一个事务中提交，失败时整体回滚，
+     * 目标表仍为空，重新运行不会产生重复的行
+     * @param owner 目标所有者，为null时使用备份中的所有者
+     * @param table 目标表名，为null时使用备份中的表名
+     * @return 恢复的行数
+     */
+    public long restoreTable(Path dir, String owner, String table) throws SQLException, IOException {
+        Properties manifest = new Properties();
+        try (InputStream in = Files.newInputStream(dir.resolve(MANIFEST_FILE))) {
+            manifest.load(in);
+        }
+        String sourceOwner = manifest.getProperty("owner");
+        String sourceTable = manifest.getProperty("table");
+        String targetOwner = owner != null ? owner : sourceOwner;
+        String targetTable = table != null ? table : sourceTable;
+        int chunks = Integer.parseInt(manifest.getProperty("chunks"));
+        
+        long rows = 0;
+        try (Connection conn = engine.borrowConnection()) {
+            if (!tableExists(conn, targetOwner, targetTable)) {
+                Path ddlFile = dir.resolve(DDL_FILE);
+                if (!Files.exists(ddlFile) || !targetOwner.equals(sourceOwner) || !targetTable.equals(sourceTable)) {
+                    throw new SQLException("目标表 " + targetOwner + "." + targetTable + " 不存在，且无法用备份中的DDL创建");
+                }
+                try (PreparedStatement stmt = conn.prepareStatement(
+                        stripTerminator(new String(Files.readAllBytes(ddlFile), StandardCharsets.UTF_8)))) {
+                    stmt.execute();
+                }
+            }
+            
+            if (hasRows(conn, targetOwner, targetTable)) {
+                throw new SQLException("目标表 " + targetOwner + "." + targetTable + " 已有数据，" +
+                        "恢复前先清空该表或恢复到另一张表");
+            }
+            
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try {
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    rows += restoreChunk(conn, chunkFile(dir, chunk), targetOwner, targetTable);
+                }
+                conn.commit();
+            } catch (SQLException | IOException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+        return rows;
+    }
+    
+    private long restoreChunk(Connection conn, Path file, String owner, String table) throws SQLException, IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file), BUFFER_BYTES), BUFFER_BYTES))) {
+            if (in.readInt() != CHUNK_MAGIC) {
+                throw new IOException("不是表备份数据块: " + file);
+            }
+            int columnCount = in.readInt();
+            int[] sqlTypes = new int[columnCount];
+            byte[] kinds = new byte[columnCount];
+            StringBuilder columns = new StringBuilder();
+            StringBuilder params = new StringBuilder();
+            for (int c = 0; c < columnCount; c++) {
+                String name = readString(in);
+                sqlTypes[c] = in.readInt();
+                kinds[c] = in.readByte();
+                columns.append(c == 0 ? "" : ", ").append(quote(name));
+                params.append(c == 0 ? "" : ", ")
+                        .append(kinds[c] == KIND_DATETIME ? bindExpression(sqlTypes[c]) : "?");
+            }
+            
+            long rows = 0;
+            try (PreparedStatement stmt = conn.prepareStatement("INSERT INTO " + qualify(owner, table) +
+                    " (" + columns + ") VALUES (" + params + ")")) {
+                int batched = 0;
+                while (true) {
+                    try {
+                        readValue(in, stmt, 1, kinds[0], sqlTypes[0]);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    for (int c = 1; c < columnCount; c++) {
+                        readValue(in, stmt, c + 1, kinds[c], sqlTypes[c]);
+                    }
+                    stmt.addBatch();
+                    rows++;
+                    if (++batched == RESTORE_BATCH_ROWS) {
+                        stmt.executeBatch();
+                        batched = 0;
+                    }
+                }
+                if (batched > 0) {
+                    stmt.executeBatch();
+                }
+            }
+            return rows;
+        }
+    }
+    
+    private DataOutputStream openChunk(Path dir, int chunk, String[] names, int[] sqlTypes, byte[] kinds)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(Files.newOutputStream(chunkFile(dir, chunk)), BUFFER_BYTES), BUFFER_BYTES));
+        out.writeInt(CHUNK_MAGIC);
+        out.writeInt(names.length);
+        for (int c = 0; c < names.length; c++) {
+            writeString(out, names[c]);
+            out.writeInt(sqlTypes[c]);
+            out.writeByte(kinds[c]);
+        }
+        return out;
+    }
+    
+    private static Path chunkFile(Path dir, int chunk) {
+        return dir.resolve(String.format("part-%05d.tbk.gz", chunk));
+    }
+    
+    /**
+     * @return 列的编码方式，无法备份和恢复的类型返回0
+     */
+    private static byte kindOf(int sqlType) {
+        switch (sqlType) {
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+            case Types.INTEGER:
+            case Types.SMALLINT:
+            case Types.TINYINT:
+            case Types.BIGINT:
+            case Types.FLOAT:
+                return KIND_NUMBER;
+            case Types.REAL:
+            case Types.DOUBLE:
+            case ORACLE_BINARY_FLOAT:
+            case ORACLE_BINARY_DOUBLE:
+                return KIND_DOUBLE;
+            case Types.DATE:
+            case Types.TIMESTAMP:
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+            case ORACLE_TIMESTAMPTZ:
+            case ORACLE_TIMESTAMPLTZ:
+            case ORACLE_INTERVALYM:
+            case ORACLE_INTERVALDS:
+                return KIND_DATETIME;
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+            case Types.BLOB:
+                return KIND_BYTES;
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+            case Types.CLOB:
+            case Types.NCLOB:
+            case Types.ROWID:
+                return KIND_STRING;
+            default:
+                return 0;
+        }
+    }
+    
+    /**
+     * 导出时读取列的表达式，日期时间和间隔在数据库中格式化，不经过客户端时区
+     * TIMESTAMP WITH LOCAL TIME ZONE按会话时区转换为带偏移的时间，表示的时刻不变
+     */
+    private static String selectExpression(String column, int sqlType) {
+        switch (sqlType) {
+            case Types.DATE:
+            case Types.TIMESTAMP:
+                return "TO_CHAR(CAST(" + column + " AS TIMESTAMP(9)), '" + TIMESTAMP_FORMAT + "')";
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+            case ORACLE_TIMESTAMPTZ:
+            case ORACLE_TIMESTAMPLTZ:
+                return "TO_CHAR(CAST(" + column + " AS TIMESTAMP(9) WITH TIME ZONE), '" + TIMESTAMP_TZ_FORMAT + "')";
+            case ORACLE_INTERVALYM:
+            case ORACLE_INTERVALDS:
+                return "TO_CHAR(" + column + ")";
+            default:
+                return column;
+        }
+    }
+    
+    /**
+     * 恢复时插入KIND_DATETIME列的绑定表达式，按导出的格式显式转换
+     */
+    private static String bindExpression(int sqlType) {
+        switch (sqlType) {
+            case Types.TIMESTAMP_WITH_TIMEZONE:
+            case ORACLE_TIMESTAMPTZ:
+            case ORACLE_TIMESTAMPLTZ:
+                return "TO_TIMESTAMP_TZ(?, '" + TIMESTAMP_TZ_FORMAT + "')";
+            case ORACLE_INTERVALYM:
+                return "TO_YMINTERVAL(?)";
+            case ORACLE_INTERVALDS:
+                return "TO_DSINTERVAL(?)";
+            default:
+                return "TO_TIMESTAMP(?, '" + TIMESTAMP_FORMAT + "')";
+        }
+    }
+    
+    // 每个值前有一个字节标记是否为null
+    private static void writeValue(DataOutputStream out, ResultSet rs, int column, byte kind)
+            throws SQLException, IOException {
+        switch (kind) {
+            case KIND_NUMBER: {
+                BigDecimal value = rs.getBigDecimal(column);
+                out.writeBoolean(value != null);
+                if (value != null) writeString(out, value.toString());
+                break;
+            }
+            case KIND_DOUBLE: {
+                double value = rs.getDouble(column);
+                boolean present = !rs.wasNull();
+                out.writeBoolean(present);
+                if (present) out.writeLong(Double.doubleToRawLongBits(value));
+                break;
+            }
+            case KIND_BYTES: {
+                byte[] value = rs.getBytes(column);
+                out.writeBoolean(value != null);
+                if (value != null) {
+                    out.writeInt(value.length);
+                    out.write(value);
+                }
+                break;
+            }
+            default: {
+                String value = rs.getString(column);
+                out.writeBoolean(value != null);
+                if (value != null) writeString(out, value);
+                break;
+            }
+        }
+    }
+    
+    private static void readValue(DataInputStream in, PreparedStatement stmt, int column, byte kind, int sqlType)
+            throws SQLException, IOException {
+        if (!in.readBoolean()) {
+            // 日期时间和间隔绑定的是格式化后的字符串
+            stmt.setNull(column, kind == KIND_DATETIME ? Types.VARCHAR : sqlType);
+            return;
+        }
+        switch (kind) {
+            case KIND_NUMBER:
+                stmt.setBigDecimal(column, new BigDecimal(readString(in)));
+                break;
+            case KIND_DOUBLE:
+                stmt.setDouble(column, Double.longBitsToDouble(in.readLong()));
+                break;
+            case KIND_BYTES: {
+                byte[] value = new byte[in.readInt()];
+                in.readFully(value);
+                stmt.setBytes(column, value);
+                break;
+            }
+            default:
+                stmt.setString(column, readString(in));
+                break;
+        }
+    }
+    
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+    
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    /**
+     * 读取建表DDL，没有DBMS_METADATA权限时返回null，此时只能恢复到已存在的表
+     */
+    private static String loadDdl(Connection conn, String owner, String table) {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT DBMS_METADATA.GET_DDL('TABLE', ?, ?) FROM DUAL")) {
+            stmt.setString(1, table);
+            stmt.setString(2, owner);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+    
+    private static boolean tableExists(Connection conn, String owner, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT COUNT(*) FROM dba_tables WHERE owner = ? AND table_name = ?")) {
+            stmt.setString(1, owner);
+            stmt.setString(2, table);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() && rs.getInt(1) > 0;
+            }
+        }
+    }
+    
+    private static boolean hasRows(Connection conn, String owner, String table) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(
+                "SELECT COUNT(*) FROM " + qualify(owner, table) + " WHERE ROWNUM = 1");
+             ResultSet rs = stmt.executeQuery()) {
+            return rs.next() && rs.getInt(1) > 0;
+        }
+    }
+    
+    private static String stripTerminator(String ddl) {
+        String trimmed = ddl.trim();
+        while (trimmed.endsWith(";") || trimmed.endsWith("/")) {
+            trimmed = trimmed.substring(0, trimmed.length() - 1).trim();
+        }
+        return trimmed;
+    }
+    
+    private static String qualify(String owner, String table) {
+        return quote(owner) + "." + quote(table);
+    }
+    
+    private static String quote(String identifier) {
+        return "\"" + identifier.replace("\"", "\"\"") + "\"";
+    }
+}
@@ -0,0 +1,52 @@
+package oracle.data.cleanup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 字节吞吐量限制
+ * 多个线程共享同一个限制器，合计速率不超过设定值。
+ * 每次申请按速率把下一个可用时间点向后推，申请方在该时间点之前等待
+ */
+public class ThroughputLimiter {
+    
+    // 最多允许累积1秒的空闲额度，空闲后恢复时不会出现长时间不受限的突发
+    private static final long MAX_BURST_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private final double nanosPerByte;
+    private long nextFreeNanos = System.nanoTime();
+    
+    /**
+     * @param bytesPerSecond 每秒允许的字节数，小于等于0表示不限制
+     */
+    public ThroughputLimiter(long bytesPerSecond) {
+        this.nanosPerByte = bytesPerSecond > 0 ? 1e9 / bytesPerSecond : 0;
+    }
+    
+    public boolean isUnlimited() {
+        return nanosPerByte == 0;
+    }
+    
+    /**
+     * 申请传输bytes字节的额度，超过速率时等待
+     */
+    public void acquire(long bytes) throws InterruptedException {
+        if (nanosPerByte == 0 || bytes <= 0) return;
+        long waitUntil;
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (nextFreeNanos < now - MAX_BURST_NANOS) {
+                nextFreeNanos = now - MAX_BURST_NANOS;
+            }
+            waitUntil = nextFreeNanos;
+            nextFreeNanos += (long) (bytes * nanosPerByte);
+        }
+        long delay;
+        while ((delay = waitUntil - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(delay);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+}
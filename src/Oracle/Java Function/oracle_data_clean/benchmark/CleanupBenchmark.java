@@ -0,0 +1,242 @@
+package oracle.data.cleanup.benchmark;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.SwingUtilities;
+
+import oracle.data.cleanup.CandidateTableModel;
+import oracle.data.cleanup.CleanupEngine;
+import oracle.data.cleanup.CleanupExport;
+import oracle.data.cleanup.ReportListener;
+
+/**
+ * 客户端热点路径的基准测试
+ * 在内存替身数据库上测量候选加载、批量审批、报告读取、候选导出和仪表盘刷新，
+ * 每个场景先预热再测量，输出每次操作的耗时分布和数据库往返次数
+ *
+ * 用法: java oracle.data.cleanup.benchmark.CleanupBenchmark [--rows N] [--latency-us N]
+ *          [--warmup N] [--iterations N] [场景名...]
+ */
+public class CleanupBenchmark {
+    
+    private static final int APPROVE_BATCH = 1000;
+    private static final int SCROLL_PAGES = 20;
+    
+    /**
+     * 一个基准场景
+     */
+    interface Scenario {
+        /**
+         * 每次测量前调用，不计入耗时
+         */
+        void setUp() throws Exception;
+        
+        void run() throws Exception;
+    }
+    
+    private final StandInDatabase database;
+    private final CleanupEngine engine;
+    private final CandidateTableModel model = new CandidateTableModel();
+    private final Map<String, Scenario> scenarios = new LinkedHashMap<>();
+    
+    // 防止结果被优化掉
+    private long sink;
+    
+    CleanupBenchmark(int rows, long latencyMicros) throws SQLException, IOException {
+        database = new StandInDatabase(rows, latencyMicros);
+        // 字典快照写到临时目录，不影响用户目录下真实数据库的快照
+        if (System.getProperty("oracle.data.cleanup.snapshot.dir") == null) {
+            System.setProperty("oracle.data.cleanup.snapshot.dir", 
+                    Files.createTempDirectory("cleanup-bench").toString());
+        }
+        engine = new CleanupEngine(database.register("bench"), "bench", "bench");
+        engine.connect();
+        
+        scenarios.put("candidatePageIndex", new Scenario() {
+            @Override
+            public void setUp() {
+            }
+            
+            @Override
+            public void run() throws Exception {
+                sink += engine.loadCandidatePageIndex(CandidateTableModel.PAGE_SIZE).getTotalRows();
+            }
+        });
+        scenarios.put("candidateScroll", new Scenario() {
+            @Override
+            public void setUp() {
+            }
+            
+            @Override
+            public void run() throws Exception {
+                final CleanupEngine.CandidatePageIndex index =
+                        engine.loadCandidatePageIndex(CandidateTableModel.PAGE_SIZE);
+                SwingUtilities.invokeAndWait(new Runnable() {
+                    @Override
+                    public void run() {
+                        model.reset(engine, index);
+                    }
+                });
+                // 模拟向下滚动浏览前若干页并选中全部行
+                int rowCount = Math.min(model.getRowCount(), SCROLL_PAGES * CandidateTableModel.PAGE_SIZE);
+                int[] rows = new int[rowCount];
+                for (int i = 0; i < rowCount; i++) {
+                    rows[i] = i;
+                }
+                sink += model.getPendingIds(rows).size();
+            }
+        });
+        scenarios.put("bulkApprove", new Scenario() {
+            private List<Integer> ids;
+            
+            @Override
+            public void setUp() {
+                database.resetStatuses();
+                ids = database.pendingIds(APPROVE_BATCH);
+            }
+            
+            @Override
+            public void run() throws Exception {
+                sink += engine.approveCandidates(ids);
+            }
+        });
+        scenarios.put("report", new Scenario() {
+            @Override
+            public void setUp() {
+            }
+            
+            @Override
+            public void run() throws Exception {
+                engine.generateReport(30, new ReportListener() {
+                    @Override
+                    public void onReportLines(List<String> lines) {
+                        sink += lines.size();
+                    }
+                });
+            }
+        });
+        scenarios.put("dashboard", new Scenario() {
+            @Override
+            public void setUp() {
+            }
+            
+            @Override
+            public void run() throws Exception {
+                sink += (long) engine.loadDatabaseInfo().getSpaceSavedBytes();
+            }
+        });
+        scenarios.put("exportCandidates", new Scenario() {
+            @Override
+            public void setUp() {
+            }
+            
+            @Override
+            public void run() throws Exception {
+                // 导出为gzip压缩的CSV，只计数不落盘
+                OutputStream out = new OutputStream() {
+                    @Override
+                    public void write(int b) {
+                        sink++;
+                    }
+                    
+                    @Override
+                    public void write(byte[] b, int off, int len) {
+                        sink += len;
+                    }
+                };
+                sink += engine.createExport().export(CleanupExport.Source.CANDIDATES, CleanupExport.NO_FILTER, 
+                        CleanupExport.Format.CSV, true, out);
+            }
+        });
+        scenarios.put("dictionaryRefresh", new Scenario() {
+            @Override
+            public void setUp() {
+            }
+            
+            @Override
+            public void run() throws Exception {
+                engine.refreshDictionarySnapshots();
+                sink += engine.getDictionaryCache().getOldestLoadedAt();
+            }
+        });
+    }
+    
+    void runAll(List<String> names, int warmup, int iterations) throws Exception {
+        System.out.printf("%-20s %10s %10s %10s %10s %12s%n", "场景", "平均(ms)", "最小(ms)", "p50(ms)", "p99(ms)", "往返/次");
+        for (Map.Entry<String, Scenario> entry : scenarios.entrySet()) {
+            if (!names.isEmpty() && !names.contains(entry.getKey())) continue;
+            Scenario scenario = entry.getValue();
+            for (int i = 0; i < warmup; i++) {
+                scenario.setUp();
+                scenario.run();
+            }
+            List<Long> samples = new ArrayList<>(iterations);
+            long roundTrips = 0;
+            for (int i = 0; i < iterations; i++) {
+                scenario.setUp();
+                long before = database.getRoundTrips();
+                long start = System.nanoTime();
+                scenario.run();
+                samples.add(System.nanoTime() - start);
+                roundTrips += database.getRoundTrips() - before;
+            }
+            report(entry.getKey(), samples, roundTrips / (double) iterations);
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+    
+    private static void report(String name, List<Long> samples, double roundTrips) {
+        Collections.sort(samples);
+        long total = 0;
+        for (long sample : samples) {
+            total += sample;
+        }
+        System.out.printf("%-20s %10.2f %10.2f %10.2f %10.2f %12.1f%n", name, 
+                total / 1e6 / samples.size(), 
+                samples.get(0) / 1e6, 
+                samples.get(samples.size() / 2) / 1e6, 
+                samples.get(Math.min(samples.size() - 1, (int) Math.ceil(samples.size() * 0.99) - 1)) / 1e6, 
+                roundTrips);
+    }
+    
+    void close() throws SQLException {
+        engine.close();
+        database.deregister();
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int rows = 200000;
+        long latencyMicros = 500;
+        int warmup = 3;
+        int iterations = 10;
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--rows": rows = Integer.parseInt(args[++i]); break;
+                case "--latency-us": latencyMicros = Long.parseLong(args[++i]); break;
+                case "--warmup": warmup = Integer.parseInt(args[++i]); break;
+                case "--iterations": iterations = Integer.parseInt(args[++i]); break;
+                default: names.add(args[i]); break;
+            }
+        }
+        System.out.println("候选行数: " + rows + "，往返延迟: " + latencyMicros + " us，预热: " + warmup +
+                "，测量: " + iterations + (names.isEmpty() ? "" : "，场景: " + Arrays.toString(names.toArray())));
+        CleanupBenchmark benchmark = new CleanupBenchmark(rows, latencyMicros);
+        try {
+            benchmark.runAll(names, warmup, Math.max(1, iterations));
+        } finally {
+            benchmark.close();
+        }
+    }
+}
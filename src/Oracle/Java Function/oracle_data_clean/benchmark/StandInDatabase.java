@@ -0,0 +1,649 @@
+package oracle.data.cleanup.benchmark;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+
+/**
+ * 基准测试用的内存替身数据库
+ * 以JDBC驱动的形式注册，只实现客户端热点路径会执行的SQL，数据按固定随机种子生成。
+ * 每次执行语句和每次按fetchSize取一批行都计一次往返，并按配置的延迟等待，
+ * 用来衡量客户端代码的往返次数和每行开销，不模拟Oracle本身的执行代价。
+ */
+public class StandInDatabase implements Driver {
+    
+    public static final String URL_PREFIX = "jdbc:cleanup-standin:";
+    
+    private static final String[] OBJECT_TYPES = {"TABLE", "TABLE", "TABLE", "TABLE", "DATAFILE", "TABLESPACE"};
+    private static final int OWNER_COUNT = 60;
+    private static final int DEFAULT_FETCH_SIZE = 10;
+    private static final int DATAFILE_COUNT = 400;
+    private static final int TABLESPACE_COUNT = 40;
+    
+    private final long roundTripNanos;
+    private final int rowCount;
+    
+    // 候选数据，按(priority, identified_time, candidate_id)排序
+    private final int[] ids;
+    private final int[] priorities;
+    private final long[] identifiedTimes;
+    private final String[] objectTypes;
+    private final String[] owners;
+    private final String[] names;
+    private final String[] reasons;
+    private final String[] statuses;
+    private final Map<Integer, Integer> positionById = new HashMap<>();
+    
+    private final AtomicLong roundTrips = new AtomicLong();
+    
+    /**
+     * @param rowCount 候选行数
+     * @param roundTripMicros 每次往返的模拟延迟(微秒)
+     */
+    public StandInDatabase(int rowCount, long roundTripMicros) {
+        this.rowCount = rowCount;
+        this.roundTripNanos = roundTripMicros * 1000;
+        this.ids = new int[rowCount];
+        this.priorities = new int[rowCount];
+        this.identifiedTimes = new long[rowCount];
+        this.objectTypes = new String[rowCount];
+        this.owners = new String[rowCount];
+        this.names = new String[rowCount];
+        this.reasons = new String[rowCount];
+        this.statuses = new String[rowCount];
+        seed();
+    }
+    
+    /**
+     * 注册为JDBC驱动，返回用于连接的URL
+     */
+    public String register(String name) throws SQLException {
+        DriverManager.registerDriver(this);
+        return URL_PREFIX + name;
+    }
+    
+    public void deregister() throws SQLException {
+        DriverManager.deregisterDriver(this);
+    }
+    
+    public int getRowCount() {
+        return rowCount;
+    }
+    
+    public long getRoundTrips() {
+        return roundTrips.get();
+    }
+    
+    /**
+     * 返回状态为PENDING的候选ID，最多limit个
+     */
+    public synchronized List<Integer> pendingIds(int limit) {
+        List<Integer> result = new ArrayList<>(limit);
+        for (int i = 0; i < rowCount && result.size() < limit; i++) {
+            if ("PENDING".equals(statuses[i])) {
+                result.add(ids[i]);
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 把所有候选恢复为PENDING，使审批基准每轮处理相同的数据
+     */
+    public synchronized void resetStatuses() {
+        Arrays.fill(statuses, "PENDING");
+    }
+    
+    private void seed() {
+        Random random = new Random(20240324L);
+        long now = System.currentTimeMillis();
+        Integer[] order = new Integer[rowCount];
+        final int[] rawPriority = new int[rowCount];
+        final long[] rawTime = new long[rowCount];
+        for (int i = 0; i < rowCount; i++) {
+            order[i] = i;
+            rawPriority[i] = 1 + random.nextInt(5);
+            // 识别时间按周分批，同一批内时间相同，与每周运行一次的调度作业一致
+            rawTime[i] = now - (random.nextInt(52) * 7L * 24 * 3600 * 1000);
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (rawPriority[a] != rawPriority[b]) return Integer.compare(rawPriority[a], rawPriority[b]);
+                if (rawTime[a] != rawTime[b]) return Long.compare(rawTime[a], rawTime[b]);
+                return Integer.compare(a, b);
+            }
+        });
+        for (int pos = 0; pos < rowCount; pos++) {
+            int raw = order[pos];
+            ids[pos] = raw + 1;
+            priorities[pos] = rawPriority[raw];
+            identifiedTimes[pos] = rawTime[raw];
+            objectTypes[pos] = OBJECT_TYPES[raw % OBJECT_TYPES.length];
+            owners[pos] = "TABLE".equals(objectTypes[pos]) ? "APP_" + (raw % OWNER_COUNT) : null;
+            names[pos] = "TABLE".equals(objectTypes[pos]) ? "T_" + raw : "/u01/oradata/ORCL/data_" + raw + ".dbf";
+            reasons[pos] = "表" + names[pos] + "已有" + (6 + raw % 30) + "个月未被访问";
+            statuses[pos] = "PENDING";
+            positionById.put(ids[pos], pos);
+        }
+    }
+    
+    private void roundTrip() {
+        roundTrips.incrementAndGet();
+        if (roundTripNanos > 0) {
+            LockSupport.parkNanos(roundTripNanos);
+        }
+    }
+    
+    // ---------------------------------------------------------------------
+    // 查询实现
+    // ---------------------------------------------------------------------
+    
+    private List<Object[]> query(String sql, Map<Integer, Object> params) throws SQLException {
+        if (sql.contains("ROW_NUMBER() OVER")) {
+            return pageIndex((Integer) params.get(1));
+        }
+        if (sql.contains("FROM cleanup_candidates WHERE 1 = 1")) {
+            return candidates();
+        }
+        if (sql.contains("FROM cleanup_config")) {
+            // 没有配置，客户端使用默认值
+            return new ArrayList<>();
+        }
+        if (sql.contains("candidate_id >= ?")) {
+            return page((Integer) params.get(1), (Timestamp) params.get(3), (Integer) params.get(5), 
+                    (Integer) params.get(6));
+        }
+        if (sql.contains("db_cleanup.cleanup_report")) {
+            return report();
+        }
+        if (sql.contains("SYS_CONTEXT('USERENV', 'DB_NAME')")) {
+            return single("STANDIN");
+        }
+        if (sql.contains("FROM dba_data_files")) {
+            return dataFiles();
+        }
+        if (sql.contains("FROM dba_free_space")) {
+            return freeSpace();
+        }
+        if (sql.contains("FROM dba_segments")) {
+            return segments();
+        }
+        if (sql.contains("FROM dba_tables")) {
+            return tables();
+        }
+        if (sql.contains("MAX(operation_time)")) {
+            return single("2024-03-24 02:00:00");
+        }
+        throw new SQLException("替身数据库不支持的SQL: " + sql);
+    }
+    
+    /**
+     * 字典视图的聚合结果，每次按固定种子生成相同的数据
+     */
+    private static List<Object[]> dataFiles() {
+        List<Object[]> rows = new ArrayList<>(DATAFILE_COUNT);
+        Random random = new Random(20240324L);
+        for (int i = 1; i <= DATAFILE_COUNT; i++) {
+            rows.add(new Object[] {(long) i, "TS_" + (i % TABLESPACE_COUNT), 
+                    "/u01/oradata/ORCL/data_" + i + ".dbf", (1L + random.nextInt(32)) << 30});
+        }
+        return rows;
+    }
+    
+    private static List<Object[]> freeSpace() {
+        List<Object[]> rows = new ArrayList<>(DATAFILE_COUNT);
+        Random random = new Random(20240325L);
+        for (int i = 1; i <= DATAFILE_COUNT; i++) {
+            rows.add(new Object[] {(long) i, (long) random.nextInt(1 << 30)});
+        }
+        return rows;
+    }
+    
+    private static List<Object[]> segments() {
+        List<Object[]> rows = new ArrayList<>(TABLESPACE_COUNT * OWNER_COUNT);
+        Random random = new Random(20240326L);
+        for (int t = 0; t < TABLESPACE_COUNT; t++) {
+            for (int o = 0; o < OWNER_COUNT; o++) {
+                rows.add(new Object[] {"TS_" + t, "APP_" + o, (long) (1 + random.nextInt(500)), 
+                        (long) random.nextInt(1 << 30)});
+            }
+        }
+        return rows;
+    }
+    
+    private static List<Object[]> tables() {
+        List<Object[]> rows = new ArrayList<>(OWNER_COUNT);
+        Random random = new Random(20240327L);
+        for (int o = 0; o < OWNER_COUNT; o++) {
+            rows.add(new Object[] {"APP_" + o, (long) (1 + random.nextInt(2000)), 
+                    (long) random.nextInt(100000000)});
+        }
+        return rows;
+    }
+    
+    private static List<Object[]> single(Object value) {
+        List<Object[]> rows = new ArrayList<>(1);
+        rows.add(new Object[] {value});
+        return rows;
+    }
+    
+    private static boolean visible(String status) {
+        return "PENDING".equals(status) || "APPROVED".equals(status);
+    }
+    
+    private synchronized List<Object[]> pageIndex(int pageSize) {
+        List<Object[]> rows = new ArrayList<>();
+        int visibleCount = 0;
+        for (int i = 0; i < rowCount; i++) {
+            if (visible(statuses[i])) visibleCount++;
+        }
+        int rn = 0;
+        for (int i = 0; i < rowCount; i++) {
+            if (!visible(statuses[i])) continue;
+            if (rn % pageSize == 0) {
+                rows.add(new Object[] {priorities[i], new Timestamp(identifiedTimes[i]), ids[i], visibleCount});
+            }
+            rn++;
+        }
+        return rows;
+    }
+    
+    private synchronized List<Object[]> page(int priority, Timestamp time, int candidateId, int pageSize) {
+        // 二分查找起始键
+        long t = time.getTime();
+        int lo = 0;
+        int hi = rowCount;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = priorities[mid] != priority ? Integer.compare(priorities[mid], priority)
+                    : identifiedTimes[mid] != t ? Long.compare(identifiedTimes[mid], t)
+                    : Integer.compare(ids[mid], candidateId);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        List<Object[]> rows = new ArrayList<>(pageSize);
+        for (int i = lo; i < rowCount && rows.size() < pageSize; i++) {
+            if (!visible(statuses[i])) continue;
+            rows.add(new Object[] {ids[i], objectTypes[i], owners[i], names[i], reasons[i], 
+                    new Timestamp(identifiedTimes[i]), statuses[i]});
+        }
+        return rows;
+    }
+    
+    /**
+     * 导出的候选行按需生成，不按条件过滤
+     */
+    private List<Object[]> candidates() {
+        return new AbstractList<Object[]>() {
+            @Override
+            public Object[] get(int i) {
+                return new Object[] {ids[i], objectTypes[i], owners[i], names[i], reasons[i], 
+                        new Timestamp(identifiedTimes[i]), statuses[i], null, null, null, priorities[i]};
+            }
+            
+            @Override
+            public int size() {
+                return rowCount;
+            }
+        };
+    }
+    
+    /**
+     * 报告行按需生成，第4节每个待处理候选3行
+     */
+    private List<Object[]> report() {
+        final List<String> header = Arrays.asList(
+                "========== Oracle数据库垃圾数据清理报告 ==========", "报告周期: 最近30天", "", 
+                "1. 清理操作统计", "-------------------", "TABLE           | COMPLETED  | 120", "", 
+                "2. 空间节省统计", "-------------------", "TABLE           | 5120.5 MB", "", 
+                "3. 最近清理的对象 (最多显示10个)", "-------------------", "", 
+                "4. 待清理候选 (状态为PENDING)", "-------------------");
+        return new AbstractList<Object[]>() {
+            @Override
+            public Object[] get(int index) {
+                if (index < header.size()) {
+                    return new Object[] {header.get(index)};
+                }
+                int i = (index - header.size()) / 3;
+                switch ((index - header.size()) % 3) {
+                    case 0: return new Object[] {objectTypes[i] + " | " + owners[i] + " | " + names[i]};
+                    case 1: return new Object[] {"   原因: " + reasons[i]};
+                    default: return new Object[] {"-------------------"};
+                }
+            }
+            
+            @Override
+            public int size() {
+                return header.size() + rowCount * 3;
+            }
+        };
+    }
+    
+    private synchronized int setStatus(Object[] candidateIds, String status) {
+        int updated = 0;
+        for (Object id : candidateIds) {
+            Integer pos = positionById.get(((Number) id).intValue());
+            if (pos != null && "PENDING".equals(statuses[pos])) {
+                statuses[pos] = status;
+                updated++;
+            }
+        }
+        return updated;
+    }
+    
+    private Object call(String sql, Map<Integer, Object> params) throws SQLException {
+        if (sql.contains("get_space_savings")) {
+            return 5.0 * 1024 * 1024 * 1024;
+        }
+        if (sql.contains("approve_cleanup_candidates")) {
+            return setStatus((Object[]) ((Array) params.get(1)).getArray(), "APPROVED");
+        }
+        if (sql.contains("reject_cleanup_candidates")) {
+            return setStatus((Object[]) ((Array) params.get(1)).getArray(), "REJECTED");
+        }
+        throw new SQLException("替身数据库不支持的调用: " + sql);
+    }
+    
+    // ---------------------------------------------------------------------
+    // JDBC代理
+    // ---------------------------------------------------------------------
+    
+    @Override
+    public Connection connect(String url, Properties info) throws SQLException {
+        if (!acceptsURL(url)) return null;
+        roundTrip();
+        return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), 
+                new Class<?>[] {Connection.class}, new ConnectionHandler(url));
+    }
+    
+    @Override
+    public boolean acceptsURL(String url) {
+        return url != null && url.startsWith(URL_PREFIX);
+    }
+    
+    @Override
+    public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+        return new DriverPropertyInfo[0];
+    }
+    
+    @Override
+    public int getMajorVersion() {
+        return 1;
+    }
+    
+    @Override
+    public int getMinorVersion() {
+        return 0;
+    }
+    
+    @Override
+    public boolean jdbcCompliant() {
+        return false;
+    }
+    
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+    
+    private static Object unsupported(Object target, Method method) throws SQLException {
+        throw new SQLFeatureNotSupportedException("替身数据库不支持: " +
+                target.getClass().getSimpleName() + "." + method.getName());
+    }
+    
+    private class ConnectionHandler implements InvocationHandler {
+        private final String url;
+        private boolean closed;
+        
+        ConnectionHandler(String url) {
+            this.url = url;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement":
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), 
+                            new Class<?>[] {PreparedStatement.class}, new StatementHandler((String) args[0]));
+                case "prepareCall":
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), 
+                            new Class<?>[] {CallableStatement.class}, new StatementHandler((String) args[0]));
+                case "createArrayOf":
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), 
+                            new Class<?>[] {Array.class}, new ArrayHandler((Object[]) args[1]));
+                case "isValid":
+                    roundTrip();
+                    return !closed;
+                case "getAutoCommit":
+                    return true;
+                case "setAutoCommit":
+                case "commit":
+                case "rollback":
+                    return null;
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "StandInConnection[" + url + "]";
+                default:
+                    return unsupported(this, method);
+            }
+        }
+    }
+    
+    private static class ArrayHandler implements InvocationHandler {
+        private final Object[] elements;
+        
+        ArrayHandler(Object[] elements) {
+            this.elements = elements;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getArray":
+                    return elements;
+                case "free":
+                    return null;
+                default:
+                    return unsupported(this, method);
+            }
+        }
+    }
+    
+    private class StatementHandler implements InvocationHandler {
+        private final String sql;
+        private final Map<Integer, Object> params = new HashMap<>();
+        private final Map<Integer, Object> outParams = new HashMap<>();
+        private int fetchSize = DEFAULT_FETCH_SIZE;
+        private boolean closed;
+        
+        StatementHandler(String sql) {
+            this.sql = sql;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("set") && args != null && args.length == 2 && args[0] instanceof Integer) {
+                params.put((Integer) args[0], args[1]);
+                return null;
+            }
+            switch (name) {
+                case "setFetchSize":
+                    fetchSize = Math.max(1, (Integer) args[0]);
+                    return null;
+                case "setQueryTimeout":
+                    return null;
+                case "registerOutParameter":
+                    outParams.put((Integer) args[0], null);
+                    return null;
+                case "executeQuery":
+                    roundTrip();
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), 
+                            new Class<?>[] {ResultSet.class}, new ResultSetHandler(query(sql, params), fetchSize));
+                case "execute":
+                    roundTrip();
+                    Object result = call(sql, params);
+                    for (Integer index : outParams.keySet()) {
+                        outParams.put(index, result);
+                    }
+                    return false;
+                case "getInt":
+                    return ((Number) outParams.get(args[0])).intValue();
+                case "getDouble":
+                    return ((Number) outParams.get(args[0])).doubleValue();
+                case "clearParameters":
+                    params.clear();
+                    return null;
+                case "close":
+                    closed = true;
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return unsupported(this, method);
+            }
+        }
+    }
+    
+    private class ResultSetHandler implements InvocationHandler {
+        private final List<Object[]> rows;
+        private final int fetchSize;
+        private int position = -1;
+        private boolean wasNull;
+        
+        ResultSetHandler(List<Object[]> rows, int fetchSize) {
+            this.rows = rows;
+            this.fetchSize = fetchSize;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    position++;
+                    // 第一批行随执行返回，之后每批需要一次往返
+                    if (position > 0 && position % fetchSize == 0 && position <= rows.size()) {
+                        roundTrip();
+                    }
+                    return position < rows.size();
+                case "getString": {
+                    Object value = column(args);
+                    return value == null ? null : value.toString();
+                }
+                case "getInt": {
+                    Object value = column(args);
+                    return value == null ? 0 : ((Number) value).intValue();
+                }
+                case "getLong": {
+                    Object value = column(args);
+                    return value == null ? 0L : ((Number) value).longValue();
+                }
+                case "getDouble": {
+                    Object value = column(args);
+                    return value == null ? 0.0 : ((Number) value).doubleValue();
+                }
+                case "getTimestamp":
+                    return column(args);
+                case "getBigDecimal": {
+                    Object value = column(args);
+                    return value == null ? null : BigDecimal.valueOf(((Number) value).longValue());
+                }
+                case "getMetaData":
+                    return Proxy.newProxyInstance(getClass().getClassLoader(), 
+                            new Class<?>[] {ResultSetMetaData.class}, new MetaDataHandler(rows));
+                case "setFetchSize":
+                    return null;
+                case "wasNull":
+                    return wasNull;
+                case "close":
+                    return null;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return unsupported(this, method);
+            }
+        }
+        
+        private Object column(Object[] args) throws SQLException {
+            if (!(args[0] instanceof Integer)) {
+                throw new SQLFeatureNotSupportedException("替身数据库只支持按列序号读取");
+            }
+            Object value = rows.get(position)[(Integer) args[0] - 1];
+            wasNull = value == null;
+            return value;
+        }
+    }
+    
+    /**
+     * 结果集的列信息，列名按序号生成，类型取第一行的值推断
+     */
+    private static class MetaDataHandler implements InvocationHandler {
+        private final List<Object[]> rows;
+        
+        MetaDataHandler(List<Object[]> rows) {
+            this.rows = rows;
+        }
+        
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getColumnCount":
+                    return rows.isEmpty() ? 0 : rows.get(0).length;
+                case "getColumnName":
+                case "getColumnLabel":
+                    return "COLUMN_" + args[0];
+                case "getColumnType": {
+                    Object value = rows.get(0)[(Integer) args[0] - 1];
+                    return value instanceof Number ? Types.NUMERIC
+                            : value instanceof Timestamp ? Types.TIMESTAMP : Types.VARCHAR;
+                }
+                default:
+                    return unsupported(this, method);
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+#!/bin/bash
+
+# 客户端热点路径基准测试
+# 在内存替身数据库上运行，不需要Oracle实例和JDBC驱动
+# 用法: ./run_benchmark.sh [--rows N] [--latency-us N] [--warmup N] [--iterations N] [场景名...]
+# 场景: candidatePageIndex candidateScroll bulkApprove report dashboard dictionaryRefresh
+
+JAVA_HOME=${JAVA_HOME:-"/usr/lib/jvm/java-8-oracle"}
+BENCH_DIR=$(cd "$(dirname "$0")" && pwd)
+SRC_DIR=$(dirname "$BENCH_DIR")
+OUT_DIR="$BENCH_DIR/classes"
+
+# 编译工具源码和基准测试
+echo "编译基准测试..."
+rm -rf "$OUT_DIR"
+mkdir -p "$OUT_DIR"
+"$JAVA_HOME/bin/javac" -encoding UTF-8 -d "$OUT_DIR" "$SRC_DIR"/*.java "$BENCH_DIR"/*.java
+
+if [ $? -ne 0 ]; then
+    echo "编译失败，请检查Java环境和代码。"
+    exit 1
+fi
+
+exec "$JAVA_HOME/bin/java" -Djava.awt.headless=true -Xms1g -Xmx1g -cp "$OUT_DIR" \
+    oracle.data.cleanup.benchmark.CleanupBenchmark "$@"
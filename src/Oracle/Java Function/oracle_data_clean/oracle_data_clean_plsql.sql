@@ -4,22 +4,113 @@
 -- 描述：本脚本实现Oracle数据库垃圾数据的自动化识别和清理功能
 
 -- 创建日志表
-CREATE TABLE cleanup_log (
-    log_id          NUMBER PRIMARY KEY,
-    operation_type  VARCHAR2(50),
-    object_type     VARCHAR2(50),
-    object_owner    VARCHAR2(30),
-    object_name     VARCHAR2(128),
-    operation_time  TIMESTAMP,
-    status          VARCHAR2(10),
-    error_message   VARCHAR2(4000),
-    space_saved     NUMBER,
-    performed_by    VARCHAR2(30)
+-- 按operation_time每月一个间隔分区，超过保留期的分区由purge_cleanup_log整体删除。
+-- 分区需要企业版的Partitioning选件，没有该选件(ORA-00439)时创建普通表，purge_cleanup_log改为按时间删除过期行。
+-- 报告按操作类型和时间窗口查询最近的记录，分区表上建本地索引
+DECLARE
+    c_columns CONSTANT VARCHAR2(1000) := 
+        '(log_id NUMBER PRIMARY KEY, operation_type VARCHAR2(50), object_type VARCHAR2(50), ' ||
+        'object_owner VARCHAR2(30), object_name VARCHAR2(128), ' ||
+        'operation_time TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL, status VARCHAR2(10), ' ||
+        'error_message VARCHAR2(4000), space_saved NUMBER, performed_by VARCHAR2(30))';
+    e_no_partitioning EXCEPTION;
+    PRAGMA EXCEPTION_INIT(e_no_partitioning, -439);
+BEGIN
+    BEGIN
+        EXECUTE IMMEDIATE 'CREATE TABLE cleanup_log ' || c_columns || 
+            ' PARTITION BY RANGE (operation_time) INTERVAL (NUMTOYMINTERVAL(1, ''MONTH'')) (' ||
+            'PARTITION cleanup_log_p0 VALUES LESS THAN (TIMESTAMP ''2024-01-01 00:00:00''))';
+        EXECUTE IMMEDIATE 'CREATE INDEX cleanup_log_type_time_idx ON cleanup_log (operation_type, operation_time) LOCAL';
+    EXCEPTION
+        WHEN e_no_partitioning THEN
+            EXECUTE IMMEDIATE 'CREATE TABLE cleanup_log ' || c_columns;
+            EXECUTE IMMEDIATE 'CREATE INDEX cleanup_log_type_time_idx ON cleanup_log (operation_type, operation_time)';
+            DBMS_OUTPUT.PUT_LINE('数据库没有Partitioning选件，cleanup_log创建为普通表，过期日志按行删除');
+    END;
+END;
+/
+
+-- 创建每日汇总表，log_operation写日志时同步累加，
+-- 节省空间合计和报告的统计节只读汇总表，不扫描日志，删除过期日志分区后合计也不变
+CREATE TABLE cleanup_log_daily (
+    log_day         DATE NOT NULL,
+    object_type     VARCHAR2(50) NOT NULL,
+    operation_type  VARCHAR2(50) NOT NULL,
+    status          VARCHAR2(10) NOT NULL,
+    operation_count NUMBER DEFAULT 0 NOT NULL,
+    space_saved     NUMBER DEFAULT 0 NOT NULL,
+    CONSTRAINT cleanup_log_daily_pk PRIMARY KEY (log_day, object_type, operation_type, status)
 );
 
 -- 创建日志序列
 CREATE SEQUENCE cleanup_log_seq START WITH 1 INCREMENT BY 1;
 
+-- 创建清理周期阶段耗时表，run_cleanup_cycle每个阶段结束时写入一行，
+-- 同一周期内同名阶段(如逐个清理的对象)累加到同一行
+CREATE TABLE cleanup_run_phase (
+    run_id          NUMBER NOT NULL,
+    phase_name      VARCHAR2(50) NOT NULL,
+    started_time    TIMESTAMP NOT NULL,
+    elapsed_ms      NUMBER DEFAULT 0 NOT NULL,
+    item_count      NUMBER,
+    space_saved     NUMBER,
+    status          VARCHAR2(10),
+    CONSTRAINT cleanup_run_phase_pk PRIMARY KEY (run_id, phase_name)
+);
+
+-- 创建清理周期序列
+CREATE SEQUENCE cleanup_run_seq START WITH 1 INCREMENT BY 1;
+
+-- 创建清理周期检查点表，每个阶段结束和每清理一个候选后更新
+-- 失败、被取消或会话被终止的周期(状态不是COMPLETED)由下一次run_cleanup_cycle从last_phase之后继续，
+-- 不再继续的未完成周期标记为ABANDONED
+CREATE TABLE cleanup_run (
+    run_id            NUMBER PRIMARY KEY,
+    status            VARCHAR2(10) NOT NULL,
+    auto_approve      CHAR(1) DEFAULT 'N' NOT NULL,
+    last_phase        VARCHAR2(30),
+    last_candidate_id NUMBER,
+    items_done        NUMBER DEFAULT 0 NOT NULL,
+    cancel_requested  CHAR(1) DEFAULT 'N' NOT NULL,
+    started_time      TIMESTAMP NOT NULL,
+    updated_time      TIMESTAMP NOT NULL,
+    error_message     VARCHAR2(4000)
+);
+
+-- 创建表访问采样表，每张表一行，由sample_segment_access定期更新
+-- read_counter和write_counter是上次采样时该表所有段(含索引和LOB段)的累计读写计数之和，与下次采样比较得到增量；
+-- access_days是最近368天每天是否有读写的位图，第(日期距1970-01-01的天数 mod 368)位对应那一天
+CREATE TABLE cleanup_table_access (
+    owner           VARCHAR2(128) NOT NULL,
+    table_name      VARCHAR2(128) NOT NULL,
+    first_sampled   DATE NOT NULL,
+    last_sampled    DATE NOT NULL,
+    last_read       DATE,
+    last_write      DATE,
+    read_counter    NUMBER NOT NULL,
+    write_counter   NUMBER NOT NULL,
+    access_days     RAW(46) NOT NULL,
+    CONSTRAINT cleanup_table_access_pk PRIMARY KEY (owner, table_name)
+) ORGANIZATION INDEX;
+
+-- 创建数据文件高水位表，每个数据文件候选一行，由identify_unused_datafiles和cleanup_datafile按批计算
+-- target_bytes是刚好高于高水位(最后一个已分配区的末尾)的整MB大小；reclaimable_bytes是可回收的空间，
+-- 文件中没有任何区且表空间还有其他文件时整个文件可删除，否则为收缩到target_bytes回收的空间；
+-- shrunk_bytes是实际回收的空间
+CREATE TABLE cleanup_datafile_hwm (
+    file_name         VARCHAR2(513) PRIMARY KEY,
+    file_id           NUMBER NOT NULL,
+    tablespace_name   VARCHAR2(30) NOT NULL,
+    file_bytes        NUMBER NOT NULL,
+    target_bytes      NUMBER NOT NULL,
+    reclaimable_bytes NUMBER NOT NULL,
+    empty_file        CHAR(1) NOT NULL,
+    file_count        NUMBER NOT NULL,
+    computed_time     DATE NOT NULL,
+    shrunk_bytes      NUMBER,
+    shrunk_time       DATE
+);
+
 -- 创建配置表
 CREATE TABLE cleanup_config (
     config_id       NUMBER PRIMARY KEY,
@@ -31,7 +122,7 @@ CREATE TABLE cleanup_config (
 );
 
 -- 插入默认配置
-INSERT INTO cleanup_config VALUES (1, 'TABLE_INACTIVE_MONTHS', '6', '表未被访问的月数阈值', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (1, 'TABLE_INACTIVE_MONTHS', '6', '表没有读写的月数阈值，以段访问采样为依据，采样不足该月数时不识别', SYSTIMESTAMP, USER);
 INSERT INTO cleanup_config VALUES (2, 'TABLE_MIN_ROWS', '10', '表最小行数阈值', SYSTIMESTAMP, USER);
 INSERT INTO cleanup_config VALUES (3, 'TEMP_TABLE_MONTHS', '3', '临时表存在的月数阈值', SYSTIMESTAMP, USER);
 INSERT INTO cleanup_config VALUES (4, 'DATAFILE_FREE_PCT', '70', '数据文件空闲百分比阈值', SYSTIMESTAMP, USER);
@@ -39,8 +130,54 @@ INSERT INTO cleanup_config VALUES (5, 'TABLESPACE_FREE_PCT', '80', '表空间空
 INSERT INTO cleanup_config VALUES (6, 'AUTO_CLEANUP_ENABLED', 'FALSE', '是否启用自动清理', SYSTIMESTAMP, USER);
 INSERT INTO cleanup_config VALUES (7, 'BACKUP_BEFORE_CLEANUP', 'TRUE', '清理前是否备份', SYSTIMESTAMP, USER);
 INSERT INTO cleanup_config VALUES (8, 'EXCLUDED_SCHEMAS', 'SYS,SYSTEM,OUTLN,DBSNMP,APPQOSSYS,CTXSYS', '排除的模式', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (9, 'STATS_STALE_ONLY', 'FALSE', '只为统计信息过期或缺失的表收集统计信息', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (10, 'STATS_PARALLEL_DEGREE', '4', '统计信息收集的并行度', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (11, 'CLEANUP_PARALLEL_DEGREE', '4', '客户端执行清理的并行度', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (12, 'CLEANUP_MAX_PER_TABLESPACE', '1', '同一表空间同时清理的最大对象数', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (13, 'CLEANUP_MAX_PER_OWNER', '2', '同一模式同时清理的最大对象数', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (14, 'DICT_CACHE_TTL_DATA_FILES', '3600', '客户端dba_data_files快照有效期(秒)', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (15, 'DICT_CACHE_TTL_FREE_SPACE', '600', '客户端dba_free_space快照有效期(秒)', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (16, 'DICT_CACHE_TTL_SEGMENTS', '1800', '客户端dba_segments快照有效期(秒)', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (17, 'DICT_CACHE_TTL_TABLES', '3600', '客户端dba_tables快照有效期(秒)', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (18, 'DASHBOARD_QUERY_TIMEOUT', '10', '客户端仪表盘每项指标的查询超时(秒)', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (19, 'LOG_RETENTION_DAYS', '365', '清理日志保留天数，按月分区整体删除', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (20, 'BACKUP_MODE', 'CTAS', '删表前的备份方式: CTAS在库内建备份表，EXPORT由客户端导出到本地压缩文件', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (21, 'BACKUP_EXPORT_DIR', NULL, '客户端导出备份的本地目录，为空时使用~/.oracle_data_clean/backups', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (22, 'BACKUP_FETCH_SIZE', '5000', '客户端导出备份时每次读取的行数', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (23, 'BACKUP_MAX_MB_PER_SEC', '50', '客户端所有并行导出合计的吞吐量上限(MB/秒)，0表示不限制', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (24, 'CLEANUP_TIME_BUDGET_MINUTES', '0', '一次清理的时间预算(分钟)，预计超出预算的候选留待下次，0表示不限制', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (25, 'CLEANUP_DDL_BASE_SECONDS', '5', '估算清理耗时：每个候选的固定开销(秒)', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (26, 'CLEANUP_DDL_SECONDS_PER_GB', '1', '估算清理耗时：DDL每GB的耗时(秒)', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (27, 'CLEANUP_BACKUP_SECONDS_PER_GB', '20', '估算清理耗时：库内CTAS备份每GB的耗时(秒)', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (28, 'METRICS_FILE', NULL, '客户端写出Prometheus文本格式运行指标的文件路径，为空时不写', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (29, 'CYCLE_RESUME_HOURS', '24', '未完成的清理周期在多少小时内由下一次运行从检查点继续，超过后重新开始，0表示总是重新开始', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (30, 'SCHEDULE_WINDOWS', '* 01:00-05:00', '调度作业的维护窗口，格式为"日期 HH24:MI-HH24:MI"，多个窗口用分号分隔，日期为*、SUN或MON-FRI等，为空时不限制', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (31, 'SCHEDULE_CYCLE_HOURS', '168', '调度作业两次开始新清理周期的最小间隔(小时)，未完成的周期在窗口内继续', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (32, 'THROTTLE_MAX_MB_PER_MINUTE', '0', '清理时每分钟最多回收的空间(MB)，0表示不限制', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (33, 'THROTTLE_MAX_DDL_PER_MINUTE', '0', '清理时每分钟最多执行的清理DDL数，0表示不限制', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (34, 'LOAD_MAX_CPU_PCT', '80', '主机CPU使用率超过该值(%)时暂停清理，0表示不检查', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (35, 'LOAD_MAX_REDO_MB_PER_SEC', '50', '每秒生成的重做日志超过该值(MB)时暂停清理，0表示不检查', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (36, 'LOAD_MAX_ACTIVE_SESSIONS', '0', '平均活动会话数超过该值时暂停清理，0表示取CPU数', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (37, 'LOAD_BACKOFF_MAX_SECONDS', '300', '负载过高时暂停时间从15秒起逐次加倍，不超过该值(秒)', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (38, 'DATAFILE_MIN_SHRINK_MB', '100', '数据文件高水位以上可回收的空间至少达到该值(MB)才列为候选', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (39, 'REORG_MIN_WASTE_PCT', '50', '表段分配的空间比按行数估算的数据量多出的百分比达到该值时列为重组候选', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (40, 'REORG_MIN_WASTE_MB', '256', '重组候选多出的空间至少达到该值(MB)', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (41, 'REORG_METHOD', 'AUTO', '重组方式: SHRINK原地压缩，MOVE以MOVE ONLINE重建段，AUTO先尝试SHRINK，不支持时改用MOVE ONLINE', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (42, 'REORG_PARALLEL_DEGREE', '4', 'MOVE ONLINE和重建索引的并行度，结束后恢复原来的并行度', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (43, 'REORG_SECONDS_PER_GB', '60', '估算清理耗时：重组每GB可回收空间的耗时(秒)', SYSTIMESTAMP, USER);
+INSERT INTO cleanup_config VALUES (44, 'EXPORT_FETCH_SIZE', '10000', '客户端导出候选和日志时每次读取的行数', SYSTIMESTAMP, USER);
 COMMIT;
 
+-- 创建统计信息收集队列表，每次收集的行以任务名区分，同时运行的收集互不影响
+CREATE TABLE cleanup_stats_queue (
+    task_name       VARCHAR2(128),
+    work_id         NUMBER,
+    owner           VARCHAR2(30),
+    table_name      VARCHAR2(128),
+    created_time    TIMESTAMP DEFAULT SYSTIMESTAMP,
+    CONSTRAINT cleanup_stats_queue_pk PRIMARY KEY (task_name, work_id)
+);
+
 -- 创建清理候选表
 CREATE TABLE cleanup_candidates (
     candidate_id    NUMBER PRIMARY KEY,
@@ -48,17 +185,89 @@ CREATE TABLE cleanup_candidates (
     object_owner    VARCHAR2(30),
     object_name     VARCHAR2(128),
     reason          VARCHAR2(1000),
-    identified_time TIMESTAMP,
+    identified_time TIMESTAMP DEFAULT SYSTIMESTAMP NOT NULL,
     status          VARCHAR2(20) DEFAULT 'PENDING',
     approved_by     VARCHAR2(30),
     approved_time   TIMESTAMP,
     cleanup_time    TIMESTAMP,
-    priority        NUMBER(1)
+    priority        NUMBER(1) DEFAULT 5 NOT NULL
 );
 
 -- 创建候选序列
 CREATE SEQUENCE cleanup_candidates_seq START WITH 1 INCREMENT BY 1;
 
+-- 创建候选分页索引，客户端按(priority, identified_time, candidate_id)键集分页
+CREATE INDEX cleanup_candidates_page_idx ON cleanup_candidates (priority, identified_time, candidate_id, status);
+
+-- 创建候选对象索引，识别时按(object_type, object_owner, object_name)更新已有候选
+CREATE INDEX cleanup_candidates_object_idx ON cleanup_candidates (object_name, object_type, object_owner);
+
+-- 同一对象只保留一个未清理的候选，已清理的历史记录不受限制
+CREATE UNIQUE INDEX cleanup_candidates_object_uk ON cleanup_candidates (
+    CASE WHEN status <> 'CLEANED' THEN object_type END,
+    CASE WHEN status <> 'CLEANED' THEN object_owner END,
+    CASE WHEN status <> 'CLEANED' THEN object_name END
+);
+
+-- 创建候选价值视图，给出每个候选所在的表空间和清理后可回收的字节数
+-- 表包括表、索引和LOB段(含分区和LOB索引)，数据文件取文件大小，表空间取所有数据文件大小之和；
+-- 执行清理时按可回收字节数与预计耗时之比排序，先执行每秒回收空间最多的候选
+CREATE OR REPLACE VIEW cleanup_candidate_value AS
+SELECT c.candidate_id,
+       CASE c.object_type
+         WHEN 'TABLE' THEN (SELECT t.tablespace_name FROM dba_tables t
+                            WHERE t.owner = c.object_owner AND t.table_name = c.object_name)
+         WHEN 'REORG' THEN (SELECT t.tablespace_name FROM dba_tables t
+                            WHERE t.owner = c.object_owner AND t.table_name = c.object_name)
+         WHEN 'DATAFILE' THEN (SELECT f.tablespace_name FROM dba_data_files f
+                               WHERE f.file_name = c.object_name)
+         ELSE c.object_name
+       END tablespace_name,
+       NVL(CASE c.object_type
+         WHEN 'TABLE' THEN (SELECT SUM(s.bytes) FROM dba_segments s
+                            WHERE (s.owner, s.segment_name) IN (
+                                SELECT c.object_owner, c.object_name FROM dual
+                                UNION ALL
+                                SELECT i.owner, i.index_name FROM dba_indexes i
+                                WHERE i.table_owner = c.object_owner AND i.table_name = c.object_name
+                                UNION ALL
+                                SELECT l.owner, l.segment_name FROM dba_lobs l
+                                WHERE l.owner = c.object_owner AND l.table_name = c.object_name
+                                UNION ALL
+                                SELECT l.owner, l.index_name FROM dba_lobs l
+                                WHERE l.owner = c.object_owner AND l.table_name = c.object_name))
+         -- 重组回收的是表段分配的空间超出按行数估算的数据量的部分
+         WHEN 'REORG' THEN (SELECT GREATEST(0, SUM(s.bytes) - 
+                                   MAX(t.num_rows * t.avg_row_len / (1 - NVL(t.pct_free, 10) / 100)))
+                            FROM dba_segments s
+                            JOIN dba_tables t ON t.owner = s.owner AND t.table_name = s.segment_name
+                            WHERE s.owner = c.object_owner AND s.segment_name = c.object_name
+                            AND s.segment_type IN ('TABLE', 'TABLE PARTITION', 'TABLE SUBPARTITION'))
+         WHEN 'DATAFILE' THEN (SELECT h.reclaimable_bytes FROM cleanup_datafile_hwm h
+                               WHERE h.file_name = c.object_name)
+         WHEN 'TABLESPACE' THEN (SELECT SUM(f.bytes) FROM dba_data_files f
+                                 WHERE f.tablespace_name = c.object_name)
+       END, 0) reclaimable_bytes
+FROM cleanup_candidates c;
+
+-- 创建候选ID集合类型，客户端通过数组绑定一次提交所有选中的候选ID
+CREATE OR REPLACE TYPE cleanup_id_list AS TABLE OF NUMBER;
+/
+
+-- 创建名称集合类型，排除的模式列表只解析一次后在SQL中使用
+CREATE OR REPLACE TYPE cleanup_name_list AS TABLE OF VARCHAR2(128);
+/
+
+-- 创建报告行类型，报告以管道函数逐行返回，客户端按数组批量读取
+CREATE OR REPLACE TYPE cleanup_report_row AS OBJECT (
+    section_no  NUMBER,
+    line_text   VARCHAR2(4000)
+);
+/
+
+CREATE OR REPLACE TYPE cleanup_report_tab AS TABLE OF cleanup_report_row;
+/
+
 -- 创建数据库清理包
 CREATE OR REPLACE PACKAGE db_cleanup AS
     -- 常量定义
@@ -69,7 +278,8 @@ CREATE OR REPLACE PACKAGE db_cleanup AS
         owner       VARCHAR2(30),
         object_name VARCHAR2(128),
         object_type VARCHAR2(50),
-        reason      VARCHAR2(1000)
+        reason      VARCHAR2(1000),
+        priority    NUMBER(1)
     );
     
     TYPE object_list IS TABLE OF object_rec;
@@ -78,37 +288,246 @@ CREATE OR REPLACE PACKAGE db_cleanup AS
     FUNCTION get_config_value(p_config_name IN VARCHAR2) RETURN VARCHAR2;
     PROCEDURE set_config_value(p_config_name IN VARCHAR2, p_config_value IN VARCHAR2);
     
+    -- 操作日志先缓冲在会话内存中，由各阶段结束时或缓冲满时批量写入，
+    -- 直接调用cleanup_table等单个对象过程后需要调用flush_log写入日志
+    PROCEDURE flush_log;
+    
     -- 数据收集模块
     PROCEDURE collect_statistics;
-    FUNCTION identify_unused_tables RETURN object_list;
-    FUNCTION identify_empty_tables RETURN object_list;
-    FUNCTION identify_temp_tables RETURN object_list;
+    PROCEDURE gather_table_stats(p_owner IN VARCHAR2, p_table_name IN VARCHAR2);
+    PROCEDURE gather_stats_range(p_start_id IN NUMBER, p_end_id IN NUMBER, p_task IN VARCHAR2);
+    -- 段访问采样，由采样作业定期运行，识别表之前也运行一次
+    -- p_count_reads为FALSE时只推进读计数，不记为读取，用于吸收统计信息收集本身造成的读取
+    PROCEDURE sample_segment_access(p_count_reads IN BOOLEAN DEFAULT TRUE);
+    -- 包的属主能否查询gv$segment_statistics，不能时记录警告；安装脚本据此决定是否启用采样作业
+    FUNCTION check_segment_access RETURN BOOLEAN;
+    FUNCTION classify_tables RETURN object_list;
     FUNCTION identify_unused_datafiles RETURN object_list;
     FUNCTION identify_empty_tablespaces RETURN object_list;
+    FUNCTION identify_bloated_tables RETURN object_list;
     
     -- 分析决策模块
     PROCEDURE analyze_and_identify;
     PROCEDURE approve_candidate(p_candidate_id IN NUMBER, p_approved_by IN VARCHAR2);
     PROCEDURE reject_candidate(p_candidate_id IN NUMBER, p_rejected_by IN VARCHAR2);
+    FUNCTION approve_candidates(p_candidate_ids IN cleanup_id_list, p_approved_by IN VARCHAR2) RETURN NUMBER;
+    FUNCTION reject_candidates(p_candidate_ids IN cleanup_id_list, p_rejected_by IN VARCHAR2) RETURN NUMBER;
     
     -- 执行清理模块
     PROCEDURE cleanup_approved_candidates;
-    PROCEDURE cleanup_table(p_owner IN VARCHAR2, p_table_name IN VARCHAR2);
+    PROCEDURE cleanup_candidate(p_candidate_id IN NUMBER, p_backup_done IN VARCHAR2 DEFAULT 'N');
+    -- 同上，并通过p_space_saved返回实际回收的字节数
+    PROCEDURE cleanup_candidate(p_candidate_id IN NUMBER, p_backup_done IN VARCHAR2, p_space_saved OUT NUMBER);
+    PROCEDURE cleanup_table(p_owner IN VARCHAR2, p_table_name IN VARCHAR2, p_backup_done IN VARCHAR2 DEFAULT 'N');
+    PROCEDURE reorganize_table(p_owner IN VARCHAR2, p_table_name IN VARCHAR2);
     PROCEDURE cleanup_datafile(p_file_name IN VARCHAR2);
     PROCEDURE cleanup_tablespace(p_tablespace_name IN VARCHAR2);
     
     -- 报告模块
     PROCEDURE generate_cleanup_report(p_days_back IN NUMBER DEFAULT 30);
+    FUNCTION cleanup_report(p_days_back IN NUMBER DEFAULT 30) RETURN cleanup_report_tab PIPELINED;
     FUNCTION get_space_savings RETURN NUMBER;
+    PROCEDURE purge_cleanup_log;
     
     -- 主控过程
-    PROCEDURE run_cleanup_cycle(p_auto_approve IN BOOLEAN DEFAULT FALSE);
+    -- p_run_id为open_cycle返回的周期编号时继续该周期，不再打开或选择周期；为NULL时自行打开(或继续)周期
+    PROCEDURE run_cleanup_cycle(p_auto_approve IN BOOLEAN DEFAULT FALSE, p_collect_stats IN BOOLEAN DEFAULT TRUE,
+                                p_run_id IN NUMBER DEFAULT NULL);
+    
+    -- 清理周期检查点，供在客户端收集统计信息的调用方使用：
+    -- 先用open_cycle打开(或继续)周期，收集完成后用checkpoint_phase记录COLLECT_STATS，
+    -- 再把open_cycle返回的周期编号传给run_cleanup_cycle。
+    -- open_cycle的会话持有清理周期锁直到周期结束，调用方应在同一会话中调用run_cleanup_cycle，
+    -- 不再继续时调用release_cycle_lock释放
+    FUNCTION open_cycle(p_auto_approve IN VARCHAR2) RETURN NUMBER;
+    PROCEDURE checkpoint_phase(p_run_id IN NUMBER, p_phase IN VARCHAR2);
+    PROCEDURE release_cycle_lock;
+    -- 请求取消正在运行的清理周期，周期在下一个检查点停止，下次运行从检查点继续；p_run_id为NULL时取消所有运行中的周期。
+    -- 没有匹配的运行中周期时抛出ORA-20036
+    PROCEDURE request_cancel(p_run_id IN NUMBER DEFAULT NULL);
+    
+    -- 调度作业入口：只在SCHEDULE_WINDOWS的维护窗口内运行，窗口结束时暂停周期，下一个窗口继续
+    PROCEDURE run_scheduled_cycle;
 END db_cleanup;
 /
 
 -- 创建数据库清理包体
 CREATE OR REPLACE PACKAGE BODY db_cleanup AS
+    -- 本次识别过程中是否有规则执行失败，失败时不让候选过期
+    g_identify_failed BOOLEAN := FALSE;
+    -- 本会话最近一次段访问采样是否成功
+    g_sample_ok BOOLEAN := FALSE;
+    -- 统计信息收集之前已成功采样，收集结束后可以再采样一次吸收收集本身造成的读取
+    g_stats_baseline BOOLEAN := FALSE;
+    
+    -- 当前清理周期的编号，不在run_cleanup_cycle中时为NULL，此时不记录阶段耗时
+    g_run_id NUMBER;
+    -- 本会话记录的节省空间合计，阶段前后的差值即该阶段回收的字节数
+    g_space_saved NUMBER := 0;
+    -- 当前清理周期的开始时间和最后完成的阶段，继续未完成的周期时取自cleanup_run
+    g_run_started TIMESTAMP;
+    g_last_phase VARCHAR2(30);
+    
+    -- 清理周期被取消时抛出的错误号
+    c_cancelled CONSTANT NUMBER := -20030;
+    -- 维护窗口结束、周期暂停时抛出的错误号
+    c_window_closed CONSTANT NUMBER := -20033;
+    -- 另一个会话正在运行清理周期时抛出的错误号
+    c_cycle_busy CONSTANT NUMBER := -20035;
+    -- 请求取消时没有匹配的运行中周期时抛出的错误号
+    c_no_running_cycle CONSTANT NUMBER := -20036;
+    
+    -- 清理周期锁：同一时间只有一个会话运行清理周期，持有锁的会话结束时数据库自动释放
+    c_cycle_lock_name CONSTANT VARCHAR2(30) := 'DB_CLEANUP_CYCLE';
+    g_cycle_lock_handle VARCHAR2(128);
+    
+    -- 调度作业所在维护窗口的结束时间(数据库服务器时间)，不在调度作业中时为NULL
+    g_window_end DATE;
+    
+    -- 清理限流：每个候选按回收空间和DDL数占用的秒数，负载过高后按倍数放慢，下一个候选最早的开始时间
+    g_throttle_seconds_per_mb NUMBER := 0;
+    g_throttle_seconds_per_ddl NUMBER := 0;
+    g_throttle_factor NUMBER := 1;
+    g_throttle_next TIMESTAMP;
+    -- 负载阈值，0表示不检查；读取v$sysmetric失败后不再检查负载
+    g_load_max_cpu NUMBER := 0;
+    g_load_max_redo NUMBER := 0;
+    g_load_max_sessions NUMBER := 0;
+    g_load_backoff_max NUMBER := 300;
+    g_load_check_enabled BOOLEAN := TRUE;
+    -- DBMS_LOCK.SLEEP调用失败(通常是没有执行权限)后本周期不再限流和按负载暂停
+    g_sleep_enabled BOOLEAN := TRUE;
+    
+    -- 负载过高时的首次暂停秒数，之后逐次加倍
+    c_backoff_initial CONSTANT NUMBER := 15;
+    -- 暂停时每次最多睡眠的秒数，醒来后检查取消和维护窗口
+    c_sleep_slice CONSTANT NUMBER := 10;
+    -- 另一个会话在该分钟数内更新过运行中的周期时，调度作业不接管
+    c_busy_minutes CONSTANT NUMBER := 60;
+    
+    -- 表访问位图覆盖的天数(46字节)和全0的位图
+    c_access_bitmap_days CONSTANT PLS_INTEGER := 368;
+    c_empty_access_days CONSTANT RAW(46) := HEXTORAW(RPAD('0', 92, '0'));
+    
+    -- 数据文件高水位记录超过该分钟数后在收缩前重新计算
+    c_hwm_max_age CONSTANT NUMBER := 10;
+    
     -- 私有过程和函数
+    
+    -- 日志缓冲，log_operation只追加到缓冲，由flush_log按数组批量写入
+    TYPE log_buffer_tab IS TABLE OF cleanup_log%ROWTYPE INDEX BY PLS_INTEGER;
+    g_log_buffer log_buffer_tab;
+    
+    -- 缓冲的最大条数，达到后立即写入；写入失败时缓冲保留，此后每增加这么多条重试一次
+    c_log_buffer_limit CONSTANT PLS_INTEGER := 500;
+    -- 写入日志后仍有日志写不进去时抛出的错误号
+    c_log_flush_failed CONSTANT NUMBER := -20037;
+    -- 日志表不分区时每批删除的过期日志行数
+    c_purge_batch_rows CONSTANT PLS_INTEGER := 10000;
+    
+    -- 把指定日志累加到每日汇总
+    -- 并发会话同时插入同一天同一键的汇总行时，失败的一方重新合并
+    PROCEDURE merge_daily_rollup(p_log_ids IN cleanup_id_list) IS
+    BEGIN
+        FOR v_attempt IN 1..3 LOOP
+            BEGIN
+                MERGE INTO cleanup_log_daily d
+                USING (
+                    SELECT TRUNC(operation_time) log_day,
+                           NVL(object_type, 'N/A') object_type,
+                           NVL(operation_type, 'N/A') operation_type,
+                           NVL(status, 'N/A') status,
+                           COUNT(*) operation_count,
+                           NVL(SUM(space_saved), 0) space_saved
+                    FROM cleanup_log
+                    WHERE log_id IN (SELECT COLUMN_VALUE FROM TABLE(p_log_ids))
+                    GROUP BY TRUNC(operation_time), NVL(object_type, 'N/A'), 
+                             NVL(operation_type, 'N/A'), NVL(status, 'N/A')
+                ) n
+                ON (d.log_day = n.log_day 
+                    AND d.object_type = n.object_type 
+                    AND d.operation_type = n.operation_type 
+                    AND d.status = n.status)
+                WHEN MATCHED THEN UPDATE
+                    SET d.operation_count = d.operation_count + n.operation_count,
+                        d.space_saved = d.space_saved + n.space_saved
+                WHEN NOT MATCHED THEN INSERT (
+                    log_day, object_type, operation_type, status, operation_count, space_saved
+                ) VALUES (
+                    n.log_day, n.object_type, n.operation_type, n.status, n.operation_count, n.space_saved
+                );
+                EXIT;
+            EXCEPTION
+                WHEN DUP_VAL_ON_INDEX THEN
+                    IF v_attempt = 3 THEN
+                        RAISE;
+                    END IF;
+            END;
+        END LOOP;
+    END merge_daily_rollup;
+    
+    -- 把缓冲的日志批量写入日志表和每日汇总
+    -- 在自治事务中提交，不会提交或回滚调用方未完成的事务。批量写入失败时改为逐行写入，
+    -- 个别行出错不影响其他行；写不进去的行留在缓冲中，下次flush_log重试，并抛出c_log_flush_failed。
+    -- 每日汇总写入失败时整批回滚，缓冲原样保留，抛出原来的错误
+    PROCEDURE flush_log IS
+        PRAGMA AUTONOMOUS_TRANSACTION;
+        v_log_ids cleanup_id_list := cleanup_id_list();
+        v_failed log_buffer_tab;
+        v_error VARCHAR2(4000);
+    BEGIN
+        IF g_log_buffer.COUNT = 0 THEN
+            RETURN;
+        END IF;
+        
+        BEGIN
+            FORALL i IN 1..g_log_buffer.COUNT
+                INSERT INTO cleanup_log VALUES g_log_buffer(i);
+            
+            v_log_ids.EXTEND(g_log_buffer.COUNT);
+            FOR i IN 1..g_log_buffer.COUNT LOOP
+                v_log_ids(i) := g_log_buffer(i).log_id;
+            END LOOP;
+        EXCEPTION
+            WHEN OTHERS THEN
+                ROLLBACK;
+                FOR i IN 1..g_log_buffer.COUNT LOOP
+                    BEGIN
+                        INSERT INTO cleanup_log VALUES g_log_buffer(i);
+                        v_log_ids.EXTEND;
+                        v_log_ids(v_log_ids.LAST) := g_log_buffer(i).log_id;
+                    EXCEPTION
+                        WHEN OTHERS THEN
+                            v_failed(v_failed.COUNT + 1) := g_log_buffer(i);
+                            v_error := SQLERRM;
+                    END;
+                END LOOP;
+        END;
+        merge_daily_rollup(v_log_ids);
+        
+        COMMIT;
+        g_log_buffer := v_failed;
+        IF v_failed.COUNT > 0 THEN
+            RAISE_APPLICATION_ERROR(c_log_flush_failed, v_failed.COUNT || '条操作日志写入失败，保留在缓冲中等待下次写入: ' || v_error);
+        END IF;
+    EXCEPTION
+        WHEN OTHERS THEN
+            ROLLBACK;
+            RAISE;
+    END flush_log;
+    
+    -- 在异常处理中写入日志：写入失败时日志留在缓冲中等下次写入，不掩盖正在处理的原始错误，
+    -- 也不跳过随后关闭周期、记录阶段等收尾
+    PROCEDURE flush_log_after_error IS
+    BEGIN
+        flush_log;
+    EXCEPTION
+        WHEN OTHERS THEN
+            DBMS_OUTPUT.PUT_LINE('Error flushing ' || g_log_buffer.COUNT || ' logged operations: ' || SQLERRM);
+    END flush_log_after_error;
+    
+    -- 记录操作日志
+    -- 只追加到会话内的缓冲，不提交调用方的事务；调用方回滚时已缓冲的日志也不会丢失
     PROCEDURE log_operation(
         p_operation_type IN VARCHAR2,
         p_object_type    IN VARCHAR2,
@@ -118,20 +537,449 @@ CREATE OR REPLACE PACKAGE BODY db_cleanup AS
         p_error_message  IN VARCHAR2 DEFAULT NULL,
         p_space_saved    IN NUMBER DEFAULT NULL
     ) IS
+        v_entry cleanup_log%ROWTYPE;
     BEGIN
-        INSERT INTO cleanup_log (
-            log_id, operation_type, object_type, object_owner, object_name,
-            operation_time, status, error_message, space_saved, performed_by
-        ) VALUES (
-            cleanup_log_seq.NEXTVAL, p_operation_type, p_object_type, p_object_owner, p_object_name,
-            SYSTIMESTAMP, p_status, p_error_message, p_space_saved, USER
-        );
-        COMMIT;
+        v_entry.log_id := cleanup_log_seq.NEXTVAL;
+        v_entry.operation_type := p_operation_type;
+        v_entry.object_type := p_object_type;
+        v_entry.object_owner := p_object_owner;
+        v_entry.object_name := p_object_name;
+        v_entry.operation_time := SYSTIMESTAMP;
+        v_entry.status := p_status;
+        v_entry.error_message := SUBSTR(p_error_message, 1, 4000);
+        v_entry.space_saved := p_space_saved;
+        v_entry.performed_by := USER;
+        g_log_buffer(g_log_buffer.COUNT + 1) := v_entry;
+        IF p_status = 'COMPLETED' AND p_space_saved > 0 THEN
+            g_space_saved := g_space_saved + p_space_saved;
+        END IF;
+        
+        IF MOD(g_log_buffer.COUNT, c_log_buffer_limit) = 0 THEN
+            flush_log;
+        END IF;
     EXCEPTION
         WHEN OTHERS THEN
             DBMS_OUTPUT.PUT_LINE('Error logging operation: ' || SQLERRM);
     END log_operation;
     
+    -- 从p_started到现在经过的毫秒数
+    FUNCTION elapsed_ms(p_started IN TIMESTAMP) RETURN NUMBER IS
+        v_elapsed INTERVAL DAY(9) TO SECOND(6);
+    BEGIN
+        v_elapsed := SYSTIMESTAMP - p_started;
+        RETURN ROUND((EXTRACT(DAY FROM v_elapsed) * 86400 + EXTRACT(HOUR FROM v_elapsed) * 3600 + 
+                      EXTRACT(MINUTE FROM v_elapsed) * 60 + EXTRACT(SECOND FROM v_elapsed)) * 1000);
+    END elapsed_ms;
+    
+    -- 记录当前清理周期中一个阶段的耗时
+    -- 以自治事务写入，不提交调用方的事务；同一周期内同名阶段累加耗时、对象数和回收空间，有一次失败即记为FAILED，
+    -- 继续执行的周期累加到原周期，CYCLE阶段的状态取最后一次执行的结果
+    PROCEDURE record_phase(
+        p_phase_name  IN VARCHAR2,
+        p_started     IN TIMESTAMP,
+        p_item_count  IN NUMBER DEFAULT NULL,
+        p_space_saved IN NUMBER DEFAULT NULL,
+        p_status      IN VARCHAR2 DEFAULT 'COMPLETED'
+    ) IS
+        PRAGMA AUTONOMOUS_TRANSACTION;
+        v_elapsed NUMBER;
+    BEGIN
+        IF g_run_id IS NULL THEN
+            RETURN;
+        END IF;
+        v_elapsed := elapsed_ms(p_started);
+        
+        MERGE INTO cleanup_run_phase p
+        USING (SELECT g_run_id run_id, p_phase_name phase_name FROM dual) n
+        ON (p.run_id = n.run_id AND p.phase_name = n.phase_name)
+        WHEN MATCHED THEN UPDATE
+            SET p.elapsed_ms = p.elapsed_ms + v_elapsed,
+                p.item_count = CASE WHEN p_item_count IS NULL THEN p.item_count 
+                                    ELSE NVL(p.item_count, 0) + p_item_count END,
+                p.space_saved = CASE WHEN p_space_saved IS NULL THEN p.space_saved 
+                                     ELSE NVL(p.space_saved, 0) + p_space_saved END,
+                p.status = CASE WHEN p_status IN ('FAILED', 'CANCELLED', 'PAUSED') OR p_phase_name = 'CYCLE' THEN p_status 
+                                ELSE p.status END
+        WHEN NOT MATCHED THEN
+            INSERT (run_id, phase_name, started_time, elapsed_ms, item_count, space_saved, status)
+            VALUES (g_run_id, p_phase_name, p_started, v_elapsed, p_item_count, p_space_saved, p_status);
+        
+        COMMIT;
+    EXCEPTION
+        WHEN OTHERS THEN
+            ROLLBACK;
+            DBMS_OUTPUT.PUT_LINE('Error recording phase ' || p_phase_name || ': ' || SQLERRM);
+    END record_phase;
+    
+    -- 阶段在周期中的顺序，检查点之前(含)的阶段继续执行时跳过
+    FUNCTION phase_no(p_phase IN VARCHAR2) RETURN NUMBER IS
+    BEGIN
+        RETURN CASE p_phase
+                   WHEN 'COLLECT_STATS' THEN 1
+                   WHEN 'ANALYZE' THEN 2
+                   WHEN 'APPROVE' THEN 3
+                   WHEN 'CLEANUP' THEN 4
+                   WHEN 'PURGE_LOG' THEN 5
+                   WHEN 'REPORT' THEN 6
+                   ELSE 0
+               END;
+    END phase_no;
+    
+    FUNCTION phase_done(p_phase IN VARCHAR2) RETURN BOOLEAN IS
+    BEGIN
+        RETURN phase_no(g_last_phase) >= phase_no(p_phase);
+    END phase_done;
+    
+    -- 取得清理周期锁(排他、不等待、提交后不释放)
+    -- 返回OWNED(本会话持有)、BUSY(其他会话持有)或UNAVAILABLE(包的属主没有DBMS_LOCK的执行权限)。
+    -- 通过动态PL/SQL调用，没有权限时包仍能编译；ALLOCATE_UNIQUE会提交，以自治事务调用
+    FUNCTION acquire_cycle_lock RETURN VARCHAR2 IS
+        PRAGMA AUTONOMOUS_TRANSACTION;
+        v_result NUMBER;
+    BEGIN
+        IF g_cycle_lock_handle IS NULL THEN
+            EXECUTE IMMEDIATE 'BEGIN DBMS_LOCK.ALLOCATE_UNIQUE(:name, :handle); END;' 
+                USING c_cycle_lock_name, OUT g_cycle_lock_handle;
+        END IF;
+        EXECUTE IMMEDIATE 'BEGIN :result := DBMS_LOCK.REQUEST(:handle, DBMS_LOCK.X_MODE, 0, FALSE); END;' 
+            USING OUT v_result, g_cycle_lock_handle;
+        COMMIT;
+        -- 0为取得，4为本会话已持有，1为等待超时
+        RETURN CASE WHEN v_result IN (0, 4) THEN 'OWNED' WHEN v_result = 1 THEN 'BUSY' ELSE 'UNAVAILABLE' END;
+    EXCEPTION
+        WHEN OTHERS THEN
+            ROLLBACK;
+            RETURN 'UNAVAILABLE';
+    END acquire_cycle_lock;
+    
+    -- 释放清理周期锁，本会话没有持有时不做任何事
+    PROCEDURE release_cycle_lock IS
+        v_result NUMBER;
+    BEGIN
+        IF g_cycle_lock_handle IS NOT NULL THEN
+            EXECUTE IMMEDIATE 'BEGIN :result := DBMS_LOCK.RELEASE(:handle); END;' 
+                USING OUT v_result, g_cycle_lock_handle;
+        END IF;
+    EXCEPTION
+        WHEN OTHERS THEN
+            NULL;
+    END release_cycle_lock;
+    
+    -- 打开清理周期
+    -- 先取得清理周期锁，其他会话持有时抛出c_cycle_busy，不接管它正在运行的周期。取得锁后状态为RUNNING的周期
+    -- 已没有会话在运行(会话被终止或实例重启)，视为被中断。有自动批准方式相同、最后一次检查点(updated_time)在
+    -- CYCLE_RESUME_HOURS内的未完成周期时继续该周期，维护窗口结束时暂停(PAUSED)的周期不论间隔多久都继续，
+    -- 否则新建周期；其他未完成的周期标记为ABANDONED。
+    -- 没有DBMS_LOCK的执行权限时记录警告，无法排除其他会话正在运行周期
+    PROCEDURE open_run(p_auto_approve IN BOOLEAN) IS
+        PRAGMA AUTONOMOUS_TRANSACTION;
+        v_resume_hours NUMBER;
+        v_auto CHAR(1) := CASE WHEN p_auto_approve THEN 'Y' ELSE 'N' END;
+        v_lock VARCHAR2(20);
+        v_busy_run NUMBER;
+    BEGIN
+        v_resume_hours := NVL(TO_NUMBER(get_config_value('CYCLE_RESUME_HOURS')), 24);
+        g_run_id := NULL;
+        g_last_phase := NULL;
+        
+        v_lock := acquire_cycle_lock;
+        IF v_lock = 'BUSY' THEN
+            SELECT MAX(run_id) INTO v_busy_run FROM cleanup_run WHERE status = 'RUNNING';
+            RAISE_APPLICATION_ERROR(c_cycle_busy, '另一个会话正在运行' || 
+                                    CASE WHEN v_busy_run IS NOT NULL THEN '第' || v_busy_run || '号' END || '清理周期');
+        ELSIF v_lock = 'UNAVAILABLE' THEN
+            log_operation('RUN_CYCLE', 'DATABASE', NULL, NULL, 'WARNING', 
+                          '无法取得清理周期锁(需要DBMS_LOCK的执行权限)，不能排除其他会话正在运行清理周期');
+        END IF;
+        -- 按最后一次检查点判断能否继续：周期可能跨越多个维护窗口，开始时间早已超过CYCLE_RESUME_HOURS
+        BEGIN
+            SELECT run_id, started_time, last_phase
+            INTO g_run_id, g_run_started, g_last_phase
+            FROM (
+                SELECT run_id, started_time, last_phase
+                FROM cleanup_run
+                WHERE status IN ('RUNNING', 'FAILED', 'CANCELLED', 'PAUSED')
+                AND auto_approve = v_auto
+                AND (status = 'PAUSED' 
+                     OR (v_resume_hours > 0 AND updated_time > SYSTIMESTAMP - NUMTODSINTERVAL(v_resume_hours, 'HOUR')))
+                ORDER BY run_id DESC
+            )
+            WHERE ROWNUM = 1;
+        EXCEPTION
+            WHEN NO_DATA_FOUND THEN
+                NULL;
+        END;
+        
+        UPDATE cleanup_run
+        SET status = 'ABANDONED',
+            updated_time = SYSTIMESTAMP
+        WHERE status IN ('RUNNING', 'FAILED', 'CANCELLED', 'PAUSED')
+        AND run_id <> NVL(g_run_id, -1);
+        
+        IF g_run_id IS NOT NULL THEN
+            UPDATE cleanup_run
+            SET status = 'RUNNING',
+                cancel_requested = 'N',
+                error_message = NULL,
+                updated_time = SYSTIMESTAMP
+            WHERE run_id = g_run_id;
+        ELSE
+            g_run_id := cleanup_run_seq.NEXTVAL;
+            g_run_started := SYSTIMESTAMP;
+            INSERT INTO cleanup_run (run_id, status, auto_approve, started_time, updated_time)
+            VALUES (g_run_id, 'RUNNING', v_auto, g_run_started, g_run_started);
+        END IF;
+        COMMIT;
+    END open_run;
+    
+    -- 接着运行open_cycle打开的周期
+    -- 本会话应已持有清理周期锁(请求锁时返回已持有)；周期必须仍处于RUNNING状态，
+    -- 已被其他周期放弃或已结束时抛出错误，不会另开周期，客户端对该周期的取消请求因此仍然有效
+    PROCEDURE attach_run(p_run_id IN NUMBER) IS
+        PRAGMA AUTONOMOUS_TRANSACTION;
+        v_lock VARCHAR2(20);
+    BEGIN
+        g_run_id := NULL;
+        g_last_phase := NULL;
+        
+        v_lock := acquire_cycle_lock;
+        IF v_lock = 'BUSY' THEN
+            RAISE_APPLICATION_ERROR(c_cycle_busy, '另一个会话持有清理周期锁，不能继续第' || p_run_id || '号清理周期');
+        ELSIF v_lock = 'UNAVAILABLE' THEN
+            log_operation('RUN_CYCLE', 'DATABASE', NULL, NULL, 'WARNING', 
+                          '无法取得清理周期锁(需要DBMS_LOCK的执行权限)，不能排除其他会话正在运行清理周期');
+        END IF;
+        
+        SELECT started_time, last_phase
+        INTO g_run_started, g_last_phase
+        FROM cleanup_run
+        WHERE run_id = p_run_id
+        AND status = 'RUNNING'
+        FOR UPDATE;
+        
+        UPDATE cleanup_run
+        SET updated_time = SYSTIMESTAMP
+        WHERE run_id = p_run_id;
+        COMMIT;
+        g_run_id := p_run_id;
+    EXCEPTION
+        WHEN NO_DATA_FOUND THEN
+            ROLLBACK;
+            g_run_started := NULL;
+            g_last_phase := NULL;
+            RAISE_APPLICATION_ERROR(-20032, '清理周期不存在或已不在运行: ' || p_run_id);
+    END attach_run;
+    
+    -- 记录当前周期完成了一个阶段
+    PROCEDURE checkpoint(p_phase IN VARCHAR2) IS
+        PRAGMA AUTONOMOUS_TRANSACTION;
+    BEGIN
+        g_last_phase := p_phase;
+        UPDATE cleanup_run
+        SET last_phase = p_phase,
+            updated_time = SYSTIMESTAMP
+        WHERE run_id = g_run_id;
+        COMMIT;
+    END checkpoint;
+    
+    -- 记录当前周期处理完一个候选，候选本身的状态已随清理提交，这里只记录进度
+    PROCEDURE checkpoint_candidate(p_candidate_id IN NUMBER) IS
+        PRAGMA AUTONOMOUS_TRANSACTION;
+    BEGIN
+        IF g_run_id IS NULL THEN
+            RETURN;
+        END IF;
+        UPDATE cleanup_run
+        SET last_candidate_id = p_candidate_id,
+            items_done = items_done + 1,
+            updated_time = SYSTIMESTAMP
+        WHERE run_id = g_run_id;
+        COMMIT;
+    END checkpoint_candidate;
+    
+    -- 结束当前周期
+    PROCEDURE close_run(p_status IN VARCHAR2, p_error IN VARCHAR2 DEFAULT NULL) IS
+        PRAGMA AUTONOMOUS_TRANSACTION;
+    BEGIN
+        UPDATE cleanup_run
+        SET status = p_status,
+            error_message = SUBSTR(p_error, 1, 4000),
+            updated_time = SYSTIMESTAMP
+        WHERE run_id = g_run_id;
+        COMMIT;
+        release_cycle_lock;
+    END close_run;
+    
+    -- 是否请求了取消当前周期
+    -- 不在周期中的会话(如并行收集统计信息的作业会话)检查任一运行中的周期
+    FUNCTION cycle_cancelled RETURN BOOLEAN IS
+        v_count NUMBER;
+    BEGIN
+        SELECT COUNT(*) INTO v_count
+        FROM cleanup_run
+        WHERE status = 'RUNNING'
+        AND cancel_requested = 'Y'
+        AND (g_run_id IS NULL OR run_id = g_run_id);
+        RETURN v_count > 0;
+    END cycle_cancelled;
+    
+    -- 请求了取消或维护窗口已结束时停止当前周期
+    PROCEDURE check_cancel IS
+    BEGIN
+        IF g_run_id IS NOT NULL AND cycle_cancelled THEN
+            RAISE_APPLICATION_ERROR(c_cancelled, '清理周期已取消，下次运行从' || 
+                                    NVL(g_last_phase, '开头') || '之后继续');
+        END IF;
+        IF g_window_end IS NOT NULL AND SYSDATE >= g_window_end THEN
+            RAISE_APPLICATION_ERROR(c_window_closed, '维护窗口已结束，下一个窗口从' || 
+                                    NVL(g_last_phase, '开头') || '之后继续');
+        END IF;
+    END check_cancel;
+    
+    -- 睡眠指定秒数，每隔c_sleep_slice秒检查一次取消和维护窗口
+    -- 通过动态PL/SQL调用DBMS_LOCK.SLEEP，包的属主未被授予DBMS_LOCK执行权限时包仍能编译；
+    -- 调用失败时记录一次警告，本会话之后不再限流和按负载暂停，与读取负载失败的处理相同
+    PROCEDURE sleep_checked(p_seconds IN NUMBER) IS
+        v_until TIMESTAMP := SYSTIMESTAMP + NUMTODSINTERVAL(p_seconds, 'SECOND');
+        v_left NUMBER;
+    BEGIN
+        LOOP
+            check_cancel;
+            EXIT WHEN NOT g_sleep_enabled;
+            v_left := -elapsed_ms(v_until) / 1000;
+            EXIT WHEN v_left <= 0;
+            BEGIN
+                EXECUTE IMMEDIATE 'BEGIN DBMS_LOCK.SLEEP(:seconds); END;' USING LEAST(v_left, c_sleep_slice);
+            EXCEPTION
+                WHEN OTHERS THEN
+                    g_sleep_enabled := FALSE;
+                    g_load_check_enabled := FALSE;
+                    g_throttle_seconds_per_mb := 0;
+                    g_throttle_seconds_per_ddl := 0;
+                    log_operation('THROTTLE', 'DATABASE', NULL, NULL, 'WARNING', 
+                                  '无法调用DBMS_LOCK.SLEEP，不再限流和按负载暂停: ' || SQLERRM);
+            END;
+        END LOOP;
+    END sleep_checked;
+    
+    -- 读取限流和负载阈值配置，重置本会话的限流状态
+    PROCEDURE load_throttle_config IS
+        v_value NUMBER;
+    BEGIN
+        v_value := NVL(TO_NUMBER(get_config_value('THROTTLE_MAX_MB_PER_MINUTE')), 0);
+        g_throttle_seconds_per_mb := CASE WHEN v_value > 0 THEN 60 / v_value ELSE 0 END;
+        v_value := NVL(TO_NUMBER(get_config_value('THROTTLE_MAX_DDL_PER_MINUTE')), 0);
+        g_throttle_seconds_per_ddl := CASE WHEN v_value > 0 THEN 60 / v_value ELSE 0 END;
+        g_throttle_factor := 1;
+        g_throttle_next := NULL;
+        
+        g_load_max_cpu := NVL(TO_NUMBER(get_config_value('LOAD_MAX_CPU_PCT')), 0);
+        g_load_max_redo := NVL(TO_NUMBER(get_config_value('LOAD_MAX_REDO_MB_PER_SEC')), 0) * 1048576;
+        g_load_max_sessions := NVL(TO_NUMBER(get_config_value('LOAD_MAX_ACTIVE_SESSIONS')), 0);
+        g_load_backoff_max := GREATEST(c_backoff_initial, NVL(TO_NUMBER(get_config_value('LOAD_BACKOFF_MAX_SECONDS')), 300));
+        -- 平均活动会话数总是检查，LOAD_MAX_ACTIVE_SESSIONS为0时取CPU数
+        g_load_check_enabled := TRUE;
+        -- 每个周期重新尝试，授权后不必重新连接
+        g_sleep_enabled := TRUE;
+    END load_throttle_config;
+    
+    -- 检查实例负载，超过阈值时返回原因，否则返回NULL
+    -- 取v$sysmetric中最近一分钟的主机CPU使用率、重做生成速率和平均活动会话数；
+    -- 通过动态SQL查询，包的属主没有查询权限时记录一次警告后不再检查
+    FUNCTION load_pressure RETURN VARCHAR2 IS
+        TYPE metric_tab IS TABLE OF NUMBER INDEX BY VARCHAR2(64);
+        v_metrics metric_tab;
+        v_names DBMS_SQL.VARCHAR2_TABLE;
+        v_values DBMS_SQL.NUMBER_TABLE;
+        v_max_sessions NUMBER;
+    BEGIN
+        IF NOT g_load_check_enabled THEN
+            RETURN NULL;
+        END IF;
+        BEGIN
+            EXECUTE IMMEDIATE 
+                'SELECT metric_name, value FROM v$sysmetric ' ||
+                'WHERE group_id = 2 ' ||
+                'AND metric_name IN (''Host CPU Utilization (%)'', ''Redo Generated Per Sec'', ''Average Active Sessions'') ' ||
+                'UNION ALL ' ||
+                'SELECT ''cpu_count'', TO_NUMBER(value) FROM v$parameter WHERE name = ''cpu_count'''
+            BULK COLLECT INTO v_names, v_values;
+        EXCEPTION
+            WHEN OTHERS THEN
+                g_load_check_enabled := FALSE;
+                log_operation('THROTTLE', 'DATABASE', NULL, NULL, 'WARNING', 
+                              '无法读取实例负载，不再按负载暂停: ' || SQLERRM);
+                RETURN NULL;
+        END;
+        FOR i IN 1..v_names.COUNT LOOP
+            v_metrics(v_names(i)) := v_values(i);
+        END LOOP;
+        
+        IF g_load_max_cpu > 0 AND v_metrics.EXISTS('Host CPU Utilization (%)') 
+           AND v_metrics('Host CPU Utilization (%)') > g_load_max_cpu THEN
+            RETURN '主机CPU使用率' || ROUND(v_metrics('Host CPU Utilization (%)')) || '%';
+        END IF;
+        IF g_load_max_redo > 0 AND v_metrics.EXISTS('Redo Generated Per Sec') 
+           AND v_metrics('Redo Generated Per Sec') > g_load_max_redo THEN
+            RETURN '重做生成' || ROUND(v_metrics('Redo Generated Per Sec') / 1048576, 1) || 'MB/秒';
+        END IF;
+        v_max_sessions := g_load_max_sessions;
+        IF v_max_sessions = 0 AND v_metrics.EXISTS('cpu_count') THEN
+            v_max_sessions := v_metrics('cpu_count');
+        END IF;
+        IF v_max_sessions > 0 AND v_metrics.EXISTS('Average Active Sessions') 
+           AND v_metrics('Average Active Sessions') > v_max_sessions THEN
+            RETURN '平均活动会话' || ROUND(v_metrics('Average Active Sessions'), 1);
+        END IF;
+        RETURN NULL;
+    END load_pressure;
+    
+    -- 开始清理一个候选前等待限流额度和实例负载
+    -- 负载过高时暂停，暂停时间从c_backoff_initial秒起逐次加倍，不超过LOAD_BACKOFF_MAX_SECONDS；
+    -- 负载恢复后限流间隔先按暂停次数放慢，之后每个负载正常的候选减半，直到恢复配置的速率
+    PROCEDURE throttle_candidate(p_object_type IN VARCHAR2, p_reclaimable_bytes IN NUMBER) IS
+        v_pressure VARCHAR2(200);
+        v_backoff NUMBER := c_backoff_initial;
+        v_paused NUMBER := 0;
+        v_seconds NUMBER;
+        v_wait NUMBER;
+    BEGIN
+        LOOP
+            v_pressure := load_pressure;
+            EXIT WHEN v_pressure IS NULL;
+            IF v_paused = 0 THEN
+                log_operation('THROTTLE', p_object_type, NULL, NULL, 'PAUSED', 
+                              '实例负载过高(' || v_pressure || ')，暂停清理');
+                flush_log;
+            END IF;
+            v_paused := v_paused + 1;
+            g_throttle_factor := LEAST(g_throttle_factor * 2, 8);
+            sleep_checked(v_backoff);
+            v_backoff := LEAST(v_backoff * 2, g_load_backoff_max);
+        END LOOP;
+        IF NOT g_sleep_enabled THEN
+            RETURN;
+        END IF;
+        IF v_paused = 0 AND g_throttle_factor > 1 THEN
+            g_throttle_factor := GREATEST(1, g_throttle_factor / 2);
+        END IF;
+        
+        -- 按回收空间和DDL数中较慢的一个计算本候选占用的时间，最多积累一分钟的空闲额度
+        v_seconds := GREATEST(NVL(p_reclaimable_bytes, 0) / 1048576 * g_throttle_seconds_per_mb, 
+                              g_throttle_seconds_per_ddl) * g_throttle_factor;
+        IF v_seconds = 0 THEN
+            RETURN;
+        END IF;
+        IF g_throttle_next IS NULL OR g_throttle_next < SYSTIMESTAMP - INTERVAL '1' MINUTE THEN
+            g_throttle_next := SYSTIMESTAMP - INTERVAL '1' MINUTE;
+        END IF;
+        v_wait := -elapsed_ms(g_throttle_next) / 1000;
+        g_throttle_next := g_throttle_next + NUMTODSINTERVAL(v_seconds, 'SECOND');
+        IF v_wait > 0 THEN
+            sleep_checked(v_wait);
+        END IF;
+    END throttle_candidate;
+    
     -- 获取配置值
     FUNCTION get_config_value(p_config_name IN VARCHAR2) RETURN VARCHAR2 IS
         v_value VARCHAR2(4000);
@@ -171,146 +1019,543 @@ CREATE OR REPLACE PACKAGE BODY db_cleanup AS
             RAISE;
     END set_config_value;
     
-    -- 收集统计信息
-    PROCEDURE collect_statistics IS
+    -- 收集单个表的统计信息，失败时只记录日志
+    PROCEDURE gather_one_table(p_owner IN VARCHAR2, p_table_name IN VARCHAR2) IS
+    BEGIN
+        DBMS_STATS.GATHER_TABLE_STATS(
+            ownname => p_owner,
+            tabname => p_table_name,
+            estimate_percent => DBMS_STATS.AUTO_SAMPLE_SIZE,
+            method_opt => 'FOR ALL COLUMNS SIZE AUTO',
+            cascade => TRUE
+        );
+    EXCEPTION
+        WHEN OTHERS THEN
+            log_operation('COLLECT_STATS', 'TABLE', p_owner, p_table_name, 'FAILED', SQLERRM);
+    END gather_one_table;
+    
+    -- 收集单个表的统计信息，供客户端逐表调用
+    PROCEDURE gather_table_stats(p_owner IN VARCHAR2, p_table_name IN VARCHAR2) IS
+    BEGIN
+        gather_one_table(p_owner, p_table_name);
+        flush_log;
+    END gather_table_stats;
+    
+    -- 收集队列中某次收集任务指定范围的表，由DBMS_PARALLEL_EXECUTE按块调用
+    -- 并行任务在各自的作业会话中运行，每块结束时写入本会话缓冲的日志
+    -- 清理周期被取消后剩余的表不再收集，继续执行时只收集周期开始后还没有收集过的表
+    PROCEDURE gather_stats_range(p_start_id IN NUMBER, p_end_id IN NUMBER, p_task IN VARCHAR2) IS
+    BEGIN
+        FOR r IN (
+            SELECT owner, table_name
+            FROM cleanup_stats_queue
+            WHERE task_name = p_task
+            AND work_id BETWEEN p_start_id AND p_end_id
+        ) LOOP
+            EXIT WHEN cycle_cancelled;
+            gather_one_table(r.owner, r.table_name);
+        END LOOP;
+        flush_log;
+    END gather_stats_range;
+    
+    -- 解析EXCLUDED_SCHEMAS配置为名称集合
+    FUNCTION get_excluded_schemas RETURN cleanup_name_list IS
         v_excluded_schemas VARCHAR2(4000);
+        v_result cleanup_name_list := cleanup_name_list();
     BEGIN
         v_excluded_schemas := get_config_value('EXCLUDED_SCHEMAS');
         
+        SELECT schema_name
+        BULK COLLECT INTO v_result
+        FROM (
+            SELECT TRIM(REGEXP_SUBSTR(v_excluded_schemas, '[^,]+', 1, LEVEL)) schema_name
+            FROM dual
+            CONNECT BY REGEXP_SUBSTR(v_excluded_schemas, '[^,]+', 1, LEVEL) IS NOT NULL
+        )
+        WHERE schema_name IS NOT NULL; -- 配置为空时NOT IN不能包含NULL
+        
+        RETURN v_result;
+    END get_excluded_schemas;
+    
+    -- 收集统计信息
+    -- STATS_STALE_ONLY为TRUE时只处理统计信息过期或缺失的表，
+    -- STATS_PARALLEL_DEGREE大于1时按块并行收集；
+    -- 在清理周期中只处理周期开始后还没有收集过的表，继续中断的周期时已收集的表不再重复
+    PROCEDURE collect_statistics IS
+        v_excluded cleanup_name_list := get_excluded_schemas();
+        v_stale_only VARCHAR2(10);
+        v_degree NUMBER;
+        v_count NUMBER;
+        v_task VARCHAR2(128);
+        v_started TIMESTAMP := SYSTIMESTAMP;
+    BEGIN
+        v_stale_only := NVL(get_config_value('STATS_STALE_ONLY'), 'FALSE');
+        v_degree := NVL(TO_NUMBER(get_config_value('STATS_PARALLEL_DEGREE')), 1);
+        
         -- 记录操作开始
         log_operation('COLLECT_STATS', 'DATABASE', NULL, NULL, 'STARTED');
         
-        -- 为所有用户表收集统计信息
-        FOR r IN (
-            SELECT owner, table_name
-            FROM dba_tables
-            WHERE owner NOT IN (
-                SELECT REGEXP_SUBSTR(v_excluded_schemas, '[^,]+', 1, LEVEL)
-                FROM dual
-                CONNECT BY REGEXP_SUBSTR(v_excluded_schemas, '[^,]+', 1, LEVEL) IS NOT NULL
-            )
-        ) LOOP
-            BEGIN
-                DBMS_STATS.GATHER_TABLE_STATS(
-                    ownname => r.owner,
-                    tabname => r.table_name,
-                    estimate_percent => DBMS_STATS.AUTO_SAMPLE_SIZE,
-                    method_opt => 'FOR ALL COLUMNS SIZE AUTO',
-                    cascade => TRUE
-                );
-            EXCEPTION
-                WHEN OTHERS THEN
-                    log_operation('COLLECT_STATS', 'TABLE', r.owner, r.table_name, 'FAILED', SQLERRM);
-            END;
-        END LOOP;
+        -- 生成本次收集的表队列，任务名区分同时运行的收集；只清除被终止的会话遗留的过期队列
+        v_task := 'CLEANUP_STATS_' || SYS_CONTEXT('USERENV', 'SID') || '_' || TO_CHAR(SYSTIMESTAMP, 'YYYYMMDDHH24MISSFF3');
+        DELETE FROM cleanup_stats_queue WHERE created_time < SYSTIMESTAMP - INTERVAL '1' DAY;
+        INSERT INTO cleanup_stats_queue (task_name, work_id, owner, table_name)
+        SELECT v_task, ROWNUM, owner, table_name
+        FROM dba_tab_statistics
+        WHERE object_type = 'TABLE'
+        AND owner NOT IN (SELECT COLUMN_VALUE FROM TABLE(v_excluded))
+        AND table_name NOT LIKE 'BIN$%' -- 排除回收站对象
+        AND (v_stale_only != 'TRUE' OR stale_stats = 'YES' OR last_analyzed IS NULL)
+        AND (g_run_started IS NULL OR last_analyzed IS NULL OR last_analyzed < g_run_started);
+        v_count := SQL%ROWCOUNT;
+        COMMIT;
+        
+        IF v_degree > 1 AND v_count > 0 THEN
+            -- 按本任务的work_id切块，每个并行度约分到4个块
+            DBMS_PARALLEL_EXECUTE.CREATE_TASK(v_task);
+            DBMS_PARALLEL_EXECUTE.CREATE_CHUNKS_BY_SQL(
+                task_name => v_task,
+                sql_stmt  => 'SELECT MIN(work_id), MAX(work_id) FROM cleanup_stats_queue ' ||
+                             'WHERE task_name = ''' || v_task || ''' ' ||
+                             'GROUP BY CEIL(work_id / ' || CEIL(v_count / (v_degree * 4)) || ')',
+                by_rowid  => FALSE
+            );
+            DBMS_PARALLEL_EXECUTE.RUN_TASK(
+                task_name      => v_task,
+                sql_stmt       => 'BEGIN db_cleanup.gather_stats_range(:start_id, :end_id, ''' || v_task || '''); END;',
+                language_flag  => DBMS_SQL.NATIVE,
+                parallel_level => v_degree
+            );
+            IF DBMS_PARALLEL_EXECUTE.TASK_STATUS(v_task) != DBMS_PARALLEL_EXECUTE.FINISHED THEN
+                log_operation('COLLECT_STATS', 'DATABASE', NULL, NULL, 'FAILED', 
+                             '并行任务' || v_task || '有未完成的块');
+            END IF;
+            DBMS_PARALLEL_EXECUTE.DROP_TASK(v_task);
+        ELSIF v_count > 0 THEN
+            gather_stats_range(1, v_count, v_task);
+        END IF;
+        DELETE FROM cleanup_stats_queue WHERE task_name = v_task;
+        COMMIT;
+        check_cancel;
         
         -- 记录操作完成
         log_operation('COLLECT_STATS', 'DATABASE', NULL, NULL, 'COMPLETED');
+        flush_log;
+        record_phase('COLLECT_STATS', v_started, v_count);
     EXCEPTION
         WHEN OTHERS THEN
             log_operation('COLLECT_STATS', 'DATABASE', NULL, NULL, 'FAILED', SQLERRM);
+            flush_log_after_error;
+            record_phase('COLLECT_STATS', v_started, v_count, NULL, 'FAILED');
+            IF v_task IS NOT NULL THEN
+                DELETE FROM cleanup_stats_queue WHERE task_name = v_task;
+                COMMIT;
+            END IF;
             RAISE;
     END collect_statistics;
     
-    -- 识别长期未使用的表
-    FUNCTION identify_unused_tables RETURN object_list IS
-        v_result object_list := object_list();
-        v_months NUMBER;
-        v_excluded_schemas VARCHAR2(4000);
+    -- 表访问位图中某一天所在的字节位置(从1开始)和位掩码
+    PROCEDURE access_day_bit(p_day IN DATE, p_pos OUT PLS_INTEGER, p_mask OUT PLS_INTEGER) IS
+        v_index PLS_INTEGER := MOD(TRUNC(p_day) - DATE '1970-01-01', c_access_bitmap_days);
     BEGIN
-        v_months := TO_NUMBER(get_config_value('TABLE_INACTIVE_MONTHS'));
-        v_excluded_schemas := get_config_value('EXCLUDED_SCHEMAS');
+        p_pos := TRUNC(v_index / 8) + 1;
+        p_mask := POWER(2, MOD(v_index, 8));
+    END access_day_bit;
+    
+    -- 设置或清除位图中某一天的位
+    FUNCTION set_access_day(p_bitmap IN RAW, p_day IN DATE, p_accessed IN BOOLEAN) RETURN RAW IS
+        v_pos PLS_INTEGER;
+        v_mask PLS_INTEGER;
+        v_byte PLS_INTEGER;
+    BEGIN
+        access_day_bit(p_day, v_pos, v_mask);
+        v_byte := TO_NUMBER(RAWTOHEX(UTL_RAW.SUBSTR(p_bitmap, v_pos, 1)), 'XX');
+        v_byte := v_byte - BITAND(v_byte, v_mask) + CASE WHEN p_accessed THEN v_mask ELSE 0 END;
+        RETURN UTL_RAW.OVERLAY(HEXTORAW(TO_CHAR(v_byte, 'FM0X')), p_bitmap, v_pos);
+    END set_access_day;
+    
+    -- 截至p_as_of的最近p_days天中有读写的天数，最多统计位图覆盖的天数
+    FUNCTION count_access_days(p_bitmap IN RAW, p_as_of IN DATE, p_days IN PLS_INTEGER) RETURN PLS_INTEGER IS
+        v_pos PLS_INTEGER;
+        v_mask PLS_INTEGER;
+        v_count PLS_INTEGER := 0;
+    BEGIN
+        FOR d IN 0..LEAST(p_days, c_access_bitmap_days) - 1 LOOP
+            access_day_bit(p_as_of - d, v_pos, v_mask);
+            IF BITAND(TO_NUMBER(RAWTOHEX(UTL_RAW.SUBSTR(p_bitmap, v_pos, 1)), 'XX'), v_mask) > 0 THEN
+                v_count := v_count + 1;
+            END IF;
+        END LOOP;
+        RETURN v_count;
+    END count_access_days;
+    
+    -- 以包的属主权限(角色不生效)执行一次采样用的查询，检查是否有gv$segment_statistics的查询权限
+    FUNCTION check_segment_access RETURN BOOLEAN IS
+        v_count NUMBER;
+    BEGIN
+        EXECUTE IMMEDIATE 'SELECT COUNT(*) FROM gv$segment_statistics WHERE ROWNUM = 1' INTO v_count;
+        RETURN TRUE;
+    EXCEPTION
+        WHEN OTHERS THEN
+            log_operation('SAMPLE_ACCESS', 'TABLES', NULL, NULL, 'WARNING', 
+                          '无法查询gv$segment_statistics，段访问采样作业未启用(需要把gv_$segment_statistics的查询权限' ||
+                          '直接授予包的属主): ' || SQLERRM);
+            flush_log_after_error;
+            RETURN FALSE;
+    END check_segment_access;
+    
+    -- 段访问采样
+    -- 从gv$segment_statistics读取所有实例上各段的累计读写计数，索引和LOB段计入所属的表，按表汇总后与上次采样比较，
+    -- 计数增加的表把本次采样时间记为最后读(写)时间，并在访问位图中置位当天。实例重启后计数归零，
+    -- 计数减少但不为0时也算有访问；第一次采样到的表实例启动以来有读写即算访问。
+    -- p_count_reads为FALSE时读计数的增加不算访问，清理周期在收集统计信息前后各采样一次，
+    -- 收集之后的这次只吸收收集本身造成的读取，收集期间的写入仍然记录。
+    -- 只在内存中读取已有的累计计数，开销是一次gv$segment_statistics查询和每张表一行的合并；
+    -- 通过动态SQL查询，包的属主没有查询权限时包仍能编译，采样失败时记录失败并标记本次识别失败。以自治事务提交
+    PROCEDURE sample_segment_access(p_count_reads IN BOOLEAN DEFAULT TRUE) IS
+        PRAGMA AUTONOMOUS_TRANSACTION;
+        TYPE sample_rec IS RECORD (
+            owner         VARCHAR2(128),
+            table_name    VARCHAR2(128),
+            reads         NUMBER,
+            writes        NUMBER,
+            read_counter  NUMBER,
+            write_counter NUMBER,
+            last_sampled  DATE,
+            access_days   RAW(46)
+        );
+        TYPE sample_tab IS TABLE OF sample_rec;
+        TYPE name_tab IS TABLE OF VARCHAR2(128) INDEX BY PLS_INTEGER;
+        TYPE number_tab IS TABLE OF NUMBER INDEX BY PLS_INTEGER;
+        TYPE date_tab IS TABLE OF DATE INDEX BY PLS_INTEGER;
+        TYPE raw_tab IS TABLE OF RAW(46) INDEX BY PLS_INTEGER;
         
-        SELECT object_rec(owner, table_name, 'TABLE', 
-               '表' || table_name || '已有' || ROUND(MONTHS_BETWEEN(SYSDATE, last_analyzed)) || '个月未被访问')
-        BULK COLLECT INTO v_result
-        FROM dba_tables
-        WHERE owner NOT IN (
-            SELECT REGEXP_SUBSTR(v_excluded_schemas, '[^,]+', 1, LEVEL)
-            FROM dual
-            CONNECT BY REGEXP_SUBSTR(v_excluded_schemas, '[^,]+', 1, LEVEL) IS NOT NULL
-        )
-        AND last_analyzed < ADD_MONTHS(SYSDATE, -v_months)
-        AND table_name NOT LIKE 'BIN$%'; -- 排除回收站对象
+        v_cursor SYS_REFCURSOR;
+        v_rows sample_tab;
+        v_owners name_tab;
+        v_tables name_tab;
+        v_reads number_tab;
+        v_writes number_tab;
+        v_last_reads date_tab;
+        v_last_writes date_tab;
+        v_days raw_tab;
+        v_now DATE := SYSDATE;
+        v_read BOOLEAN;
+        v_write BOOLEAN;
+        v_bitmap RAW(46);
+        v_count NUMBER := 0;
+        v_accessed NUMBER := 0;
+    BEGIN
+        g_sample_ok := FALSE;
+        OPEN v_cursor FOR
+            'SELECT n.owner, n.table_name, n.reads, n.writes, ' ||
+            '       a.read_counter, a.write_counter, a.last_sampled, a.access_days ' ||
+            'FROM ( ' ||
+            '    SELECT owner, table_name, SUM(reads) reads, SUM(writes) writes ' ||
+            '    FROM ( ' ||
+            '        SELECT NVL(i.table_owner, NVL(l.owner, s.owner)) owner, ' ||
+            '               NVL(i.table_name, NVL(l.table_name, s.object_name)) table_name, ' ||
+            '               CASE WHEN s.statistic_name IN (''logical reads'', ''physical reads direct'') ' ||
+            '                    THEN s.value ELSE 0 END reads, ' ||
+            '               CASE WHEN s.statistic_name IN (''db block changes'', ''physical writes direct'') ' ||
+            '                    THEN s.value ELSE 0 END writes ' ||
+            '        FROM gv$segment_statistics s ' ||
+            '        LEFT JOIN dba_indexes i ON s.object_type LIKE ''INDEX%'' ' ||
+            '             AND i.owner = s.owner AND i.index_name = s.object_name ' ||
+            '        LEFT JOIN dba_lobs l ON s.object_type LIKE ''LOB%'' ' ||
+            '             AND l.owner = s.owner AND l.segment_name = s.object_name ' ||
+            '        WHERE s.statistic_name IN (''logical reads'', ''physical reads direct'', ' ||
+            '                                   ''db block changes'', ''physical writes direct'') ' ||
+            '        AND s.object_type IN (''TABLE'', ''TABLE PARTITION'', ''TABLE SUBPARTITION'', ' ||
+            '                              ''INDEX'', ''INDEX PARTITION'', ''INDEX SUBPARTITION'', ' ||
+            '                              ''LOB'', ''LOB PARTITION'', ''LOB SUBPARTITION'') ' ||
+            '        AND s.owner NOT IN (SELECT COLUMN_VALUE FROM TABLE(:excluded)) ' ||
+            '    ) ' ||
+            '    GROUP BY owner, table_name ' ||
+            ') n ' ||
+            'JOIN dba_tables t ON t.owner = n.owner AND t.table_name = n.table_name ' ||
+            'LEFT JOIN cleanup_table_access a ON a.owner = n.owner AND a.table_name = n.table_name'
+            USING get_excluded_schemas();
+        LOOP
+            FETCH v_cursor BULK COLLECT INTO v_rows LIMIT 1000;
+            
+            FOR i IN 1..v_rows.COUNT LOOP
+                IF v_rows(i).read_counter IS NULL THEN
+                    v_read := v_rows(i).reads > 0;
+                    v_write := v_rows(i).writes > 0;
+                    v_bitmap := c_empty_access_days;
+                ELSE
+                    v_read := v_rows(i).reads > v_rows(i).read_counter 
+                              OR (v_rows(i).reads < v_rows(i).read_counter AND v_rows(i).reads > 0);
+                    v_write := v_rows(i).writes > v_rows(i).write_counter 
+                               OR (v_rows(i).writes < v_rows(i).write_counter AND v_rows(i).writes > 0);
+                    -- 清除上次采样之后、今天之前各天的位，间隔超过位图覆盖的天数时整个清空
+                    IF TRUNC(v_now) - TRUNC(v_rows(i).last_sampled) >= c_access_bitmap_days THEN
+                        v_bitmap := c_empty_access_days;
+                    ELSE
+                        v_bitmap := v_rows(i).access_days;
+                        FOR d IN 1..TRUNC(v_now) - TRUNC(v_rows(i).last_sampled) LOOP
+                            v_bitmap := set_access_day(v_bitmap, TRUNC(v_rows(i).last_sampled) + d, FALSE);
+                        END LOOP;
+                    END IF;
+                END IF;
+                IF NOT p_count_reads THEN
+                    v_read := FALSE;
+                END IF;
+                IF v_read OR v_write THEN
+                    v_bitmap := set_access_day(v_bitmap, v_now, TRUE);
+                    v_accessed := v_accessed + 1;
+                END IF;
+                
+                v_owners(i) := v_rows(i).owner;
+                v_tables(i) := v_rows(i).table_name;
+                v_reads(i) := v_rows(i).reads;
+                v_writes(i) := v_rows(i).writes;
+                v_last_reads(i) := CASE WHEN v_read THEN v_now END;
+                v_last_writes(i) := CASE WHEN v_write THEN v_now END;
+                v_days(i) := v_bitmap;
+            END LOOP;
+            
+            FORALL i IN 1..v_rows.COUNT
+                MERGE INTO cleanup_table_access a
+                USING dual
+                ON (a.owner = v_owners(i) AND a.table_name = v_tables(i))
+                WHEN MATCHED THEN UPDATE
+                    SET a.last_sampled = v_now,
+                        a.last_read = NVL(v_last_reads(i), a.last_read),
+                        a.last_write = NVL(v_last_writes(i), a.last_write),
+                        a.read_counter = v_reads(i),
+                        a.write_counter = v_writes(i),
+                        a.access_days = v_days(i)
+                WHEN NOT MATCHED THEN
+                    INSERT (owner, table_name, first_sampled, last_sampled, last_read, last_write, 
+                            read_counter, write_counter, access_days)
+                    VALUES (v_owners(i), v_tables(i), v_now, v_now, v_last_reads(i), v_last_writes(i), 
+                            v_reads(i), v_writes(i), v_days(i));
+            v_count := v_count + v_rows.COUNT;
+            
+            EXIT WHEN v_cursor%NOTFOUND;
+        END LOOP;
+        CLOSE v_cursor;
+        COMMIT;
+        g_sample_ok := TRUE;
         
-        RETURN v_result;
+        log_operation('SAMPLE_ACCESS', 'TABLES', NULL, NULL, 'COMPLETED', 
+                      '采样' || v_count || '张表，其中' || v_accessed || '张有读写' ||
+                      CASE WHEN NOT p_count_reads THEN '(读取不计，吸收统计信息收集造成的读取)' END);
     EXCEPTION
         WHEN OTHERS THEN
-            log_operation('IDENTIFY', 'UNUSED_TABLES', NULL, NULL, 'FAILED', SQLERRM);
-            RETURN object_list();
-    END identify_unused_tables;
+            ROLLBACK;
+            IF v_cursor%ISOPEN THEN
+                CLOSE v_cursor;
+            END IF;
+            -- 没有采到的读写不能当作没有访问，本次不识别没有读写的表，候选也不过期
+            g_identify_failed := TRUE;
+            log_operation('SAMPLE_ACCESS', 'TABLES', NULL, NULL, 'FAILED', SQLERRM);
+    END sample_segment_access;
     
-    -- 识别空表或记录很少的表
-    FUNCTION identify_empty_tables RETURN object_list IS
+    -- 单次扫描表字典，对每张表应用所有表规则
+    -- 一张表命中多条规则时每条规则各返回一行，带各自的原因和优先级：
+    --   临时表命名但长期存在(优先级1)、空表或记录很少(优先级2)、长期没有读写(优先级3)
+    -- 是否有读写以段访问采样为依据，只有本次识别前的采样成功、且采样开始已满TABLE_INACTIVE_MONTHS个月时
+    -- 才识别没有读写的表；从未采样到的表不算没有读写，创建时间晚于阈值的表不识别
+    FUNCTION classify_tables RETURN object_list IS
+        CURSOR c_tables(
+            p_excluded      cleanup_name_list,
+            p_unused_before DATE,
+            p_min_rows      NUMBER,
+            p_access_known  VARCHAR2
+        ) IS
+            SELECT x.*,
+                   -- 只有临时表命名和没有读写的表才需要查询创建时间
+                   CASE WHEN x.temp_named = 'Y' OR x.inactive = 'Y' THEN
+                       (SELECT o.created FROM dba_objects o
+                        WHERE o.owner = x.owner
+                        AND o.object_name = x.table_name
+                        AND o.object_type = 'TABLE')
+                   END created
+            FROM (
+                SELECT t.owner, t.table_name, t.num_rows, t.last_analyzed,
+                       a.last_read, a.last_write, a.last_sampled, a.access_days,
+                       CASE WHEN t.table_name LIKE '%TEMP%' OR t.table_name LIKE '%TMP%' THEN 'Y' ELSE 'N' END temp_named,
+                       CASE WHEN p_access_known = 'Y' 
+                             AND NVL(a.last_read, a.first_sampled) < p_unused_before 
+                             AND NVL(a.last_write, a.first_sampled) < p_unused_before
+                            THEN 'Y' ELSE 'N' END inactive
+                FROM dba_tables t
+                LEFT JOIN cleanup_table_access a ON a.owner = t.owner AND a.table_name = t.table_name
+                WHERE t.owner NOT IN (SELECT COLUMN_VALUE FROM TABLE(p_excluded))
+                AND t.table_name NOT LIKE 'BIN$%' -- 排除回收站对象
+            ) x
+            WHERE x.inactive = 'Y'
+            OR (x.num_rows > 0 AND x.num_rows < p_min_rows)
+            OR x.temp_named = 'Y';
+        
+        TYPE table_tab IS TABLE OF c_tables%ROWTYPE;
+        
+        v_rows table_tab;
         v_result object_list := object_list();
+        v_unused_before DATE;
+        v_temp_before DATE;
+        v_recent_stats DATE := ADD_MONTHS(SYSDATE, -1);
         v_min_rows NUMBER;
-        v_excluded_schemas VARCHAR2(4000);
+        v_sampled_since DATE;
+        v_sampled_last DATE;
+        v_sample_start DATE := SYSDATE;
+        v_access_known VARCHAR2(1) := 'N';
+        v_last_access DATE;
+        
+        PROCEDURE add_match(p_owner IN VARCHAR2, p_table_name IN VARCHAR2, 
+                            p_reason IN VARCHAR2, p_priority IN NUMBER) IS
+        BEGIN
+            v_result.EXTEND;
+            v_result(v_result.LAST).owner := p_owner;
+            v_result(v_result.LAST).object_name := p_table_name;
+            v_result(v_result.LAST).object_type := 'TABLE';
+            v_result(v_result.LAST).reason := p_reason;
+            v_result(v_result.LAST).priority := p_priority;
+        END add_match;
     BEGIN
+        v_unused_before := ADD_MONTHS(SYSDATE, -TO_NUMBER(get_config_value('TABLE_INACTIVE_MONTHS')));
+        v_temp_before := ADD_MONTHS(SYSDATE, -TO_NUMBER(get_config_value('TEMP_TABLE_MONTHS')));
         v_min_rows := TO_NUMBER(get_config_value('TABLE_MIN_ROWS'));
-        v_excluded_schemas := get_config_value('EXCLUDED_SCHEMAS');
         
-        SELECT object_rec(owner, table_name, 'TABLE', 
-               '表' || table_name || '只有' || num_rows || '行记录')
-        BULK COLLECT INTO v_result
-        FROM dba_tables
-        WHERE owner NOT IN (
-            SELECT REGEXP_SUBSTR(v_excluded_schemas, '[^,]+', 1, LEVEL)
-            FROM dual
-            CONNECT BY REGEXP_SUBSTR(v_excluded_schemas, '[^,]+', 1, LEVEL) IS NOT NULL
-        )
-        AND num_rows < v_min_rows
-        AND num_rows > 0 -- 确保统计信息已收集
-        AND last_analyzed > ADD_MONTHS(SYSDATE, -1) -- 确保统计信息较新
-        AND table_name NOT LIKE 'BIN$%'; -- 排除回收站对象
+        -- 先采样一次，把上次采样以来的读写计入访问记录
+        sample_segment_access;
+        SELECT MIN(first_sampled), MAX(last_sampled) INTO v_sampled_since, v_sampled_last FROM cleanup_table_access;
+        IF NOT g_sample_ok OR NVL(v_sampled_last, v_sample_start - 1) < v_sample_start THEN
+            log_operation('IDENTIFY', 'UNUSED_TABLES', NULL, NULL, 'SKIPPED', 
+                          '本次识别前的段访问采样没有成功，暂不识别没有读写的表');
+        ELSIF v_sampled_since <= v_unused_before THEN
+            v_access_known := 'Y';
+        ELSE
+            log_operation('IDENTIFY', 'UNUSED_TABLES', NULL, NULL, 'SKIPPED', 
+                          '段访问采样' || NVL('从' || TO_CHAR(v_sampled_since, 'YYYY-MM-DD') || '开始', '尚未开始') || 
+                          '，不足' || get_config_value('TABLE_INACTIVE_MONTHS') || '个月，暂不识别没有读写的表');
+        END IF;
+        
+        OPEN c_tables(get_excluded_schemas(), v_unused_before, v_min_rows, v_access_known);
+        LOOP
+            FETCH c_tables BULK COLLECT INTO v_rows LIMIT 1000;
+            
+            FOR i IN 1..v_rows.COUNT LOOP
+                -- 临时表命名但长期存在
+                IF v_rows(i).created < v_temp_before THEN
+                    add_match(v_rows(i).owner, v_rows(i).table_name,
+                              '临时表' || v_rows(i).table_name || '已存在' || 
+                              ROUND(MONTHS_BETWEEN(SYSDATE, v_rows(i).created)) || '个月', 1);
+                END IF;
+                
+                -- 空表或记录很少的表，num_rows大于0且统计信息较新才可信
+                IF v_rows(i).num_rows > 0 AND v_rows(i).num_rows < v_min_rows 
+                   AND v_rows(i).last_analyzed > v_recent_stats THEN
+                    add_match(v_rows(i).owner, v_rows(i).table_name,
+                              '表' || v_rows(i).table_name || '只有' || v_rows(i).num_rows || '行记录', 2);
+                END IF;
+                
+                -- 长期没有读写的表
+                IF v_rows(i).inactive = 'Y' AND v_rows(i).created < v_unused_before THEN
+                    v_last_access := GREATEST(NVL(v_rows(i).last_read, DATE '1900-01-01'), 
+                                              NVL(v_rows(i).last_write, DATE '1900-01-01'));
+                    IF v_last_access = DATE '1900-01-01' THEN
+                        add_match(v_rows(i).owner, v_rows(i).table_name,
+                                  '表' || v_rows(i).table_name || '自' || TO_CHAR(v_sampled_since, 'YYYY-MM-DD') || 
+                                  '开始访问采样以来未被访问', 3);
+                    ELSE
+                        add_match(v_rows(i).owner, v_rows(i).table_name,
+                                  '表' || v_rows(i).table_name || '已有' || 
+                                  ROUND(MONTHS_BETWEEN(SYSDATE, v_last_access)) || '个月未被访问(最后读写于' || 
+                                  TO_CHAR(v_last_access, 'YYYY-MM-DD') || '，最近一年有读写的天数: ' || 
+                                  count_access_days(v_rows(i).access_days, v_rows(i).last_sampled, 365) || ')', 3);
+                    END IF;
+                END IF;
+            END LOOP;
+            
+            EXIT WHEN c_tables%NOTFOUND;
+        END LOOP;
+        CLOSE c_tables;
         
         RETURN v_result;
     EXCEPTION
         WHEN OTHERS THEN
-            log_operation('IDENTIFY', 'EMPTY_TABLES', NULL, NULL, 'FAILED', SQLERRM);
+            IF c_tables%ISOPEN THEN
+                CLOSE c_tables;
+            END IF;
+            g_identify_failed := TRUE;
+            log_operation('IDENTIFY', 'TABLES', NULL, NULL, 'FAILED', SQLERRM);
             RETURN object_list();
-    END identify_empty_tables;
+    END classify_tables;
     
-    -- 识别临时表命名但长期存在的表
-    FUNCTION identify_temp_tables RETURN object_list IS
-        v_result object_list := object_list();
-        v_months NUMBER;
-        v_excluded_schemas VARCHAR2(4000);
+    -- 按批计算数据文件的高水位
+    -- 一次聚合查询dba_extents得到所有指定文件最后一个已分配区的末尾块号，没有区的文件取第一个空闲块之前的文件头，
+    -- 结果合并到cleanup_datafile_hwm。以自治事务提交，不影响调用方随后执行的DDL
+    PROCEDURE compute_datafile_hwm(p_file_names IN cleanup_name_list) IS
+        PRAGMA AUTONOMOUS_TRANSACTION;
     BEGIN
-        v_months := TO_NUMBER(get_config_value('TEMP_TABLE_MONTHS'));
-        v_excluded_schemas := get_config_value('EXCLUDED_SCHEMAS');
-        
-        SELECT object_rec(owner, object_name, 'TABLE', 
-               '临时表' || object_name || '已存在' || ROUND(MONTHS_BETWEEN(SYSDATE, created)) || '个月')
-        BULK COLLECT INTO v_result
-        FROM dba_objects
-        WHERE object_type = 'TABLE'
-        AND owner NOT IN (
-            SELECT REGEXP_SUBSTR(v_excluded_schemas, '[^,]+', 1, LEVEL)
-            FROM dual
-            CONNECT BY REGEXP_SUBSTR(v_excluded_schemas, '[^,]+', 1, LEVEL) IS NOT NULL
-        )
-        AND (object_name LIKE '%TEMP%' OR object_name LIKE '%TMP%')
-        AND created < ADD_MONTHS(SYSDATE, -v_months)
-        AND object_name NOT LIKE 'BIN$%'; -- 排除回收站对象
-        
-        RETURN v_result;
-    EXCEPTION
-        WHEN OTHERS THEN
-            log_operation('IDENTIFY', 'TEMP_TABLES', NULL, NULL, 'FAILED', SQLERRM);
-            RETURN object_list();
-    END identify_temp_tables;
+        MERGE INTO cleanup_datafile_hwm h
+        USING (
+            SELECT f.file_name, f.file_id, f.tablespace_name, f.file_bytes, f.empty_file, f.file_count,
+                   LEAST(f.file_bytes, CEIL((f.hwm_block + 1) * f.block_size / 1048576) * 1048576) target_bytes
+            FROM (
+                SELECT df.file_name, df.file_id, df.tablespace_name, df.bytes file_bytes, ts.block_size,
+                       NVL(e.hwm_block, NVL(fs.first_free_block, 1) - 1) hwm_block,
+                       CASE WHEN e.hwm_block IS NULL THEN 'Y' ELSE 'N' END empty_file,
+                       COUNT(*) OVER (PARTITION BY df.tablespace_name) file_count
+                FROM dba_data_files df
+                JOIN dba_tablespaces ts ON ts.tablespace_name = df.tablespace_name
+                LEFT JOIN (
+                    SELECT file_id, MAX(block_id + blocks - 1) hwm_block
+                    FROM dba_extents
+                    WHERE file_id IN (SELECT file_id FROM dba_data_files 
+                                      WHERE file_name IN (SELECT COLUMN_VALUE FROM TABLE(p_file_names)))
+                    GROUP BY file_id
+                ) e ON e.file_id = df.file_id
+                LEFT JOIN (
+                    SELECT file_id, MIN(block_id) first_free_block
+                    FROM dba_free_space
+                    WHERE file_id IN (SELECT file_id FROM dba_data_files 
+                                      WHERE file_name IN (SELECT COLUMN_VALUE FROM TABLE(p_file_names)))
+                    GROUP BY file_id
+                ) fs ON fs.file_id = df.file_id
+                WHERE df.tablespace_name IN (SELECT tablespace_name FROM dba_data_files 
+                                             WHERE file_name IN (SELECT COLUMN_VALUE FROM TABLE(p_file_names)))
+            ) f
+            WHERE f.file_name IN (SELECT COLUMN_VALUE FROM TABLE(p_file_names))
+        ) n
+        ON (h.file_name = n.file_name)
+        WHEN MATCHED THEN UPDATE
+            SET h.file_id = n.file_id,
+                h.tablespace_name = n.tablespace_name,
+                h.file_bytes = n.file_bytes,
+                h.target_bytes = n.target_bytes,
+                h.reclaimable_bytes = CASE WHEN n.empty_file = 'Y' AND n.file_count > 1 THEN n.file_bytes 
+                                           ELSE n.file_bytes - n.target_bytes END,
+                h.empty_file = n.empty_file,
+                h.file_count = n.file_count,
+                h.computed_time = SYSDATE
+        WHEN NOT MATCHED THEN
+            INSERT (file_name, file_id, tablespace_name, file_bytes, target_bytes, reclaimable_bytes, 
+                    empty_file, file_count, computed_time)
+            VALUES (n.file_name, n.file_id, n.tablespace_name, n.file_bytes, n.target_bytes, 
+                    CASE WHEN n.empty_file = 'Y' AND n.file_count > 1 THEN n.file_bytes 
+                         ELSE n.file_bytes - n.target_bytes END, 
+                    n.empty_file, n.file_count, SYSDATE);
+        COMMIT;
+    END compute_datafile_hwm;
     
-    -- 识别使用率低的数据文件
+    -- 识别可收缩的数据文件
+    -- 空闲空间超过DATAFILE_FREE_PCT的文件按批计算高水位，高水位以上可回收的空间达到DATAFILE_MIN_SHRINK_MB的才是候选；
+    -- 空闲空间都在高水位以下的文件收缩不了，不列为候选
     FUNCTION identify_unused_datafiles RETURN object_list IS
         v_result object_list := object_list();
         v_pct NUMBER;
-        v_excluded_schemas VARCHAR2(4000);
+        v_min_bytes NUMBER;
+        v_files cleanup_name_list;
     BEGIN
         v_pct := TO_NUMBER(get_config_value('DATAFILE_FREE_PCT'));
+        v_min_bytes := NVL(TO_NUMBER(get_config_value('DATAFILE_MIN_SHRINK_MB')), 100) * 1048576;
         
-        SELECT object_rec(NULL, df.file_name, 'DATAFILE', 
-               '数据文件' || df.file_name || '空闲空间' || ROUND(fs.bytes/df.bytes * 100, 2) || '%')
-        BULK COLLECT INTO v_result
+        SELECT df.file_name
+        BULK COLLECT INTO v_files
         FROM dba_data_files df,
              (SELECT file_id, SUM(bytes) bytes
               FROM dba_free_space
@@ -319,9 +1564,32 @@ CREATE OR REPLACE PACKAGE BODY db_cleanup AS
         AND fs.bytes/df.bytes * 100 > v_pct
         AND df.tablespace_name NOT IN ('SYSTEM', 'SYSAUX', 'UNDO', 'TEMP');
         
+        IF v_files.COUNT = 0 THEN
+            RETURN v_result;
+        END IF;
+        compute_datafile_hwm(v_files);
+        
+        FOR r IN (
+            SELECT file_name, empty_file, file_count,
+                   ROUND(file_bytes / 1048576) file_mb, 
+                   ROUND(reclaimable_bytes / 1048576) reclaimable_mb
+            FROM cleanup_datafile_hwm
+            WHERE file_name IN (SELECT COLUMN_VALUE FROM TABLE(v_files))
+            AND reclaimable_bytes >= v_min_bytes
+        ) LOOP
+            v_result.EXTEND;
+            v_result(v_result.LAST) := object_rec(NULL, r.file_name, 'DATAFILE', 
+                CASE WHEN r.empty_file = 'Y' AND r.file_count > 1 
+                     THEN '数据文件' || r.file_name || '没有任何区，可删除回收' || r.reclaimable_mb || ' MB'
+                     ELSE '数据文件' || r.file_name || '(' || r.file_mb || ' MB)高水位以上可回收' || 
+                          r.reclaimable_mb || ' MB'
+                END, 4);
+        END LOOP;
+        
         RETURN v_result;
     EXCEPTION
         WHEN OTHERS THEN
+            g_identify_failed := TRUE;
             log_operation('IDENTIFY', 'UNUSED_DATAFILES', NULL, NULL, 'FAILED', SQLERRM);
             RETURN object_list();
     END identify_unused_datafiles;
@@ -346,7 +1614,7 @@ CREATE OR REPLACE PACKAGE BODY db_cleanup AS
         ) LOOP
             v_result.EXTEND;
             v_result(v_result.LAST) := object_rec(NULL, r.tablespace_name, 'TABLESPACE', 
-                                                 '表空间' || r.tablespace_name || '空闲空间' || r.free_pct || '%');
+                                                 '表空间' || r.tablespace_name || '空闲空间' || r.free_pct || '%', 5);
         END LOOP;
         
         -- 识别不包含任何对象的表空间
@@ -362,103 +1630,180 @@ CREATE OR REPLACE PACKAGE BODY db_cleanup AS
         ) LOOP
             v_result.EXTEND;
             v_result(v_result.LAST) := object_rec(NULL, r.tablespace_name, 'TABLESPACE', 
-                                                 '表空间' || r.tablespace_name || '不包含任何对象');
+                                                 '表空间' || r.tablespace_name || '不包含任何对象', 5);
         END LOOP;
         
         RETURN v_result;
     EXCEPTION
         WHEN OTHERS THEN
+            g_identify_failed := TRUE;
             log_operation('IDENTIFY', 'EMPTY_TABLESPACES', NULL, NULL, 'FAILED', SQLERRM);
             RETURN object_list();
     END identify_empty_tablespaces;
     
+    -- 识别行密度低的表
+    -- 表段(含分区)分配的空间比按num_rows × avg_row_len并留出PCTFREE估算的数据量多出REORG_MIN_WASTE_PCT以上、
+    -- 且多出的空间达到REORG_MIN_WASTE_MB时列为重组候选。统计信息由收集阶段刷新，没有统计信息的表、
+    -- 索引组织表和临时表不识别
+    FUNCTION identify_bloated_tables RETURN object_list IS
+        v_result object_list := object_list();
+        v_excluded cleanup_name_list := get_excluded_schemas();
+        v_min_pct NUMBER;
+        v_min_bytes NUMBER;
+    BEGIN
+        v_min_pct := NVL(TO_NUMBER(get_config_value('REORG_MIN_WASTE_PCT')), 50);
+        v_min_bytes := NVL(TO_NUMBER(get_config_value('REORG_MIN_WASTE_MB')), 256) * 1048576;
+        
+        FOR r IN (
+            SELECT owner, table_name, 
+                   ROUND(allocated_bytes / 1048576) allocated_mb, 
+                   ROUND(estimated_bytes / 1048576) estimated_mb,
+                   ROUND((allocated_bytes - estimated_bytes) / 1048576) waste_mb
+            FROM (
+                SELECT t.owner, t.table_name, s.bytes allocated_bytes,
+                       t.num_rows * t.avg_row_len / (1 - NVL(t.pct_free, 10) / 100) estimated_bytes
+                FROM dba_tables t
+                JOIN (SELECT owner, segment_name, SUM(bytes) bytes
+                      FROM dba_segments
+                      WHERE segment_type IN ('TABLE', 'TABLE PARTITION', 'TABLE SUBPARTITION')
+                      GROUP BY owner, segment_name) s
+                  ON s.owner = t.owner AND s.segment_name = t.table_name
+                WHERE t.owner NOT IN (SELECT COLUMN_VALUE FROM TABLE(v_excluded))
+                AND t.table_name NOT LIKE 'BIN$%' -- 排除回收站对象
+                AND t.num_rows IS NOT NULL
+                AND t.avg_row_len IS NOT NULL
+                AND t.iot_type IS NULL
+                AND t.temporary = 'N'
+            )
+            WHERE allocated_bytes - estimated_bytes >= v_min_bytes
+            AND (allocated_bytes - estimated_bytes) / allocated_bytes * 100 >= v_min_pct
+        ) LOOP
+            v_result.EXTEND;
+            v_result(v_result.LAST) := object_rec(r.owner, r.table_name, 'REORG', 
+                '表' || r.table_name || '分配' || r.allocated_mb || ' MB，按行数估算只需' || 
+                r.estimated_mb || ' MB，重组可回收约' || r.waste_mb || ' MB', 4);
+        END LOOP;
+        
+        RETURN v_result;
+    EXCEPTION
+        WHEN OTHERS THEN
+            g_identify_failed := TRUE;
+            log_operation('IDENTIFY', 'BLOATED_TABLES', NULL, NULL, 'FAILED', SQLERRM);
+            RETURN object_list();
+    END identify_bloated_tables;
+    
     -- 分析并识别垃圾数据
+    -- 本次识别结果按(object_type, object_owner, object_name)合并，同一对象命中多条规则时取最高优先级并合并原因，
+    -- 然后用FORALL批量刷新已有候选的原因和识别时间，只为新对象插入候选；
+    -- 本次不再满足任何规则的待处理和已批准候选标记为EXPIRED
     PROCEDURE analyze_and_identify IS
-        v_unused_tables object_list;
-        v_empty_tables object_list;
-        v_temp_tables object_list;
-        v_unused_datafiles object_list;
-        v_empty_tablespaces object_list;
+        TYPE varchar_tab IS TABLE OF VARCHAR2(1000) INDEX BY PLS_INTEGER;
+        TYPE number_tab IS TABLE OF NUMBER INDEX BY PLS_INTEGER;
+        TYPE index_map IS TABLE OF PLS_INTEGER INDEX BY VARCHAR2(1000);
+        
+        v_types varchar_tab;
+        v_owners varchar_tab;
+        v_names varchar_tab;
+        v_reasons varchar_tab;
+        v_priorities number_tab;
+        v_keys index_map;
+        v_new number_tab;
+        v_run_time TIMESTAMP := SYSTIMESTAMP;
+        v_expired NUMBER := 0;
+        v_rule_started TIMESTAMP;
+        
+        -- 合并一批识别结果，并记录该规则从v_rule_started开始的耗时和识别出的对象数
+        PROCEDURE add_objects(p_rule IN VARCHAR2, p_objects IN object_list) IS
+            v_key VARCHAR2(1000);
+            v_idx PLS_INTEGER;
+        BEGIN
+            record_phase('IDENTIFY_' || p_rule, v_rule_started, p_objects.COUNT);
+            FOR i IN 1..p_objects.COUNT LOOP
+                -- 已识别为可删除的表不再重组
+                CONTINUE WHEN p_objects(i).object_type = 'REORG' 
+                          AND v_keys.EXISTS('TABLE|' || p_objects(i).owner || '|' || p_objects(i).object_name);
+                v_key := p_objects(i).object_type || '|' || p_objects(i).owner || '|' || p_objects(i).object_name;
+                IF v_keys.EXISTS(v_key) THEN
+                    v_idx := v_keys(v_key);
+                    v_priorities(v_idx) := LEAST(v_priorities(v_idx), p_objects(i).priority);
+                    v_reasons(v_idx) := SUBSTR(v_reasons(v_idx) || '; ' || p_objects(i).reason, 1, 1000);
+                ELSE
+                    v_idx := v_types.COUNT + 1;
+                    v_keys(v_key) := v_idx;
+                    v_types(v_idx) := p_objects(i).object_type;
+                    v_owners(v_idx) := p_objects(i).owner;
+                    v_names(v_idx) := p_objects(i).object_name;
+                    v_reasons(v_idx) := p_objects(i).reason;
+                    v_priorities(v_idx) := p_objects(i).priority;
+                END IF;
+            END LOOP;
+        END add_objects;
     BEGIN
         -- 记录操作开始
         log_operation('ANALYZE', 'DATABASE', NULL, NULL, 'STARTED');
+        g_identify_failed := FALSE;
         
-        -- 识别各类垃圾数据
-        v_unused_tables := identify_unused_tables();
-        v_empty_tables := identify_empty_tables();
-        v_temp_tables := identify_temp_tables();
-        v_unused_datafiles := identify_unused_datafiles();
-        v_empty_tablespaces := identify_empty_tablespaces();
+        -- 识别各类垃圾数据，表只扫描一次字典
+        v_rule_started := SYSTIMESTAMP;
+        add_objects('TABLES', classify_tables());
+        v_rule_started := SYSTIMESTAMP;
+        add_objects('REORG', identify_bloated_tables());
+        v_rule_started := SYSTIMESTAMP;
+        add_objects('DATAFILES', identify_unused_datafiles());
+        v_rule_started := SYSTIMESTAMP;
+        add_objects('TABLESPACES', identify_empty_tablespaces());
         
-        -- 将识别结果添加到候选表
-        -- 1. 未使用的表
-        FOR i IN 1..v_unused_tables.COUNT LOOP
-            INSERT INTO cleanup_candidates (
-                candidate_id, object_type, object_owner, object_name, 
-                reason, identified_time, status, priority
-            ) VALUES (
-                cleanup_candidates_seq.NEXTVAL, v_unused_tables(i).object_type,
-                v_unused_tables(i).owner, v_unused_tables(i).object_name,
-                v_unused_tables(i).reason, SYSTIMESTAMP, 'PENDING', 3
-            );
-        END LOOP;
-        
-        -- 2. 空表
-        FOR i IN 1..v_empty_tables.COUNT LOOP
-            INSERT INTO cleanup_candidates (
-                candidate_id, object_type, object_owner, object_name, 
-                reason, identified_time, status, priority
-            ) VALUES (
-                cleanup_candidates_seq.NEXTVAL, v_empty_tables(i).object_type,
-                v_empty_tables(i).owner, v_empty_tables(i).object_name,
-                v_empty_tables(i).reason, SYSTIMESTAMP, 'PENDING', 2
-            );
-        END LOOP;
+        -- 刷新已有候选，已过期的候选重新变为待处理，已拒绝的候选保持拒绝
+        FORALL i IN 1..v_types.COUNT
+            UPDATE cleanup_candidates
+            SET reason = v_reasons(i),
+                priority = v_priorities(i),
+                identified_time = v_run_time,
+                status = DECODE(status, 'EXPIRED', 'PENDING', status)
+            WHERE object_name = v_names(i)
+            AND object_type = v_types(i)
+            AND (object_owner = v_owners(i) OR (object_owner IS NULL AND v_owners(i) IS NULL))
+            AND status <> 'CLEANED';
         
-        -- 3. 临时表
-        FOR i IN 1..v_temp_tables.COUNT LOOP
-            INSERT INTO cleanup_candidates (
-                candidate_id, object_type, object_owner, object_name, 
-                reason, identified_time, status, priority
-            ) VALUES (
-                cleanup_candidates_seq.NEXTVAL, v_temp_tables(i).object_type,
-                v_temp_tables(i).owner, v_temp_tables(i).object_name,
-                v_temp_tables(i).reason, SYSTIMESTAMP, 'PENDING', 1
-            );
+        -- 只为没有候选的对象插入新候选
+        FOR i IN 1..v_types.COUNT LOOP
+            IF SQL%BULK_ROWCOUNT(i) = 0 THEN
+                v_new(i) := i;
+            END IF;
         END LOOP;
         
-        -- 4. 未使用的数据文件
-        FOR i IN 1..v_unused_datafiles.COUNT LOOP
+        FORALL i IN INDICES OF v_new
             INSERT INTO cleanup_candidates (
                 candidate_id, object_type, object_owner, object_name, 
                 reason, identified_time, status, priority
             ) VALUES (
-                cleanup_candidates_seq.NEXTVAL, v_unused_datafiles(i).object_type,
-                v_unused_datafiles(i).owner, v_unused_datafiles(i).object_name,
-                v_unused_datafiles(i).reason, SYSTIMESTAMP, 'PENDING', 4
+                cleanup_candidates_seq.NEXTVAL, v_types(i), v_owners(i), v_names(i),
+                v_reasons(i), v_run_time, 'PENDING', v_priorities(i)
             );
-        END LOOP;
         
-        -- 5. 空表空间
-        FOR i IN 1..v_empty_tablespaces.COUNT LOOP
-            INSERT INTO cleanup_candidates (
-                candidate_id, object_type, object_owner, object_name, 
-                reason, identified_time, status, priority
-            ) VALUES (
-                cleanup_candidates_seq.NEXTVAL, v_empty_tablespaces(i).object_type,
-                v_empty_tablespaces(i).owner, v_empty_tablespaces(i).object_name,
-                v_empty_tablespaces(i).reason, SYSTIMESTAMP, 'PENDING', 5
-            );
-        END LOOP;
+        -- 规则执行失败时识别结果不完整，不让候选过期
+        IF NOT g_identify_failed THEN
+            UPDATE cleanup_candidates
+            SET status = 'EXPIRED'
+            WHERE status IN ('PENDING', 'APPROVED')
+            AND identified_time < v_run_time;
+            
+            v_expired := SQL%ROWCOUNT;
+        END IF;
         
         COMMIT;
         
         -- 记录操作完成
-        log_operation('ANALYZE', 'DATABASE', NULL, NULL, 'COMPLETED');
+        log_operation('ANALYZE', 'DATABASE', NULL, NULL, 'COMPLETED', 
+                      '识别' || v_types.COUNT || '个对象，新增' || v_new.COUNT || '个候选，过期' || v_expired || '个候选');
+        flush_log;
+        record_phase('ANALYZE', v_run_time, v_types.COUNT);
     EXCEPTION
         WHEN OTHERS THEN
             ROLLBACK;
             log_operation('ANALYZE', 'DATABASE', NULL, NULL, 'FAILED', SQLERRM);
+            flush_log_after_error;
+            record_phase('ANALYZE', v_run_time, NULL, NULL, 'FAILED');
             RAISE;
     END analyze_and_identify;
     
@@ -504,85 +1849,367 @@ CREATE OR REPLACE PACKAGE BODY db_cleanup AS
             RAISE;
     END reject_candidate;
     
+    -- 批量更新候选的审核状态，一次FORALL更新并只提交一次
+    -- 不是PENDING状态的候选被忽略，返回实际更新的候选数
+    FUNCTION set_candidates_status(
+        p_candidate_ids IN cleanup_id_list,
+        p_status        IN VARCHAR2,
+        p_by            IN VARCHAR2
+    ) RETURN NUMBER IS
+        v_count NUMBER;
+    BEGIN
+        IF p_candidate_ids IS NULL OR p_candidate_ids.COUNT = 0 THEN
+            RETURN 0;
+        END IF;
+        
+        FORALL i IN 1..p_candidate_ids.COUNT
+            UPDATE cleanup_candidates
+            SET status = p_status,
+                approved_by = p_by,
+                approved_time = SYSTIMESTAMP
+            WHERE candidate_id = p_candidate_ids(i)
+            AND status = 'PENDING';
+        
+        v_count := SQL%ROWCOUNT;
+        COMMIT;
+        RETURN v_count;
+    EXCEPTION
+        WHEN OTHERS THEN
+            ROLLBACK;
+            RAISE;
+    END set_candidates_status;
+    
+    -- 批量批准清理候选
+    FUNCTION approve_candidates(p_candidate_ids IN cleanup_id_list, p_approved_by IN VARCHAR2) RETURN NUMBER IS
+    BEGIN
+        RETURN set_candidates_status(p_candidate_ids, 'APPROVED', p_approved_by);
+    END approve_candidates;
+    
+    -- 批量拒绝清理候选
+    FUNCTION reject_candidates(p_candidate_ids IN cleanup_id_list, p_rejected_by IN VARCHAR2) RETURN NUMBER IS
+    BEGIN
+        RETURN set_candidates_status(p_candidate_ids, 'REJECTED', p_rejected_by);
+    END reject_candidates;
+    
+    -- 表及其索引、LOB段当前占用的字节数
+    FUNCTION table_segment_bytes(p_owner IN VARCHAR2, p_table_name IN VARCHAR2) RETURN NUMBER IS
+        v_bytes NUMBER;
+    BEGIN
+        SELECT NVL(SUM(s.bytes), 0) INTO v_bytes
+        FROM dba_segments s
+        WHERE (s.owner, s.segment_name) IN (
+            SELECT p_owner, p_table_name FROM dual
+            UNION ALL
+            SELECT i.owner, i.index_name FROM dba_indexes i
+            WHERE i.table_owner = p_owner AND i.table_name = p_table_name
+            UNION ALL
+            SELECT l.owner, l.segment_name FROM dba_lobs l
+            WHERE l.owner = p_owner AND l.table_name = p_table_name
+            UNION ALL
+            SELECT l.owner, l.index_name FROM dba_lobs l
+            WHERE l.owner = p_owner AND l.table_name = p_table_name);
+        RETURN v_bytes;
+    END table_segment_bytes;
+    
     -- 清理表
-    PROCEDURE cleanup_table(p_owner IN VARCHAR2, p_table_name IN VARCHAR2) IS
+    -- p_backup_done为'Y'表示调用方已把表导出到本地文件(BACKUP_MODE=EXPORT)，不再在库内创建备份表。
+    -- 以PURGE删除，空间立即释放而不是留在回收站；回收的空间按删除前表及其索引、LOB段(含各分区)合计的大小记录
+    PROCEDURE cleanup_table(p_owner IN VARCHAR2, p_table_name IN VARCHAR2, p_backup_done IN VARCHAR2 DEFAULT 'N') IS
         v_backup_enabled VARCHAR2(10);
         v_space_before NUMBER;
-        v_space_after NUMBER;
+        v_space_after NUMBER;
+        v_space_saved NUMBER;
+    BEGIN
+        -- 检查是否需要备份
+        v_backup_enabled := get_config_value('BACKUP_BEFORE_CLEANUP');
+        
+        -- 获取表及其索引、LOB段的大小
+        v_space_before := table_segment_bytes(p_owner, p_table_name);
+        
+        -- 如果需要备份且调用方没有导出，创建表备份
+        IF v_backup_enabled = 'TRUE' AND p_backup_done = 'Y' THEN
+            log_operation('BACKUP', 'TABLE', p_owner, p_table_name, 'COMPLETED', '已由客户端导出到本地文件');
+        ELSIF v_backup_enabled = 'TRUE' THEN
+            EXECUTE IMMEDIATE 'CREATE TABLE ' || p_owner || '.BKP_' || p_table_name || '_' || 
+                              TO_CHAR(SYSDATE, 'YYYYMMDD') || ' AS SELECT * FROM ' || 
+                              p_owner || '.' || p_table_name;
+            
+            log_operation('BACKUP', 'TABLE', p_owner, p_table_name, 'COMPLETED');
+        END IF;
+        
+        -- 删除表，不进回收站
+        EXECUTE IMMEDIATE 'DROP TABLE ' || p_owner || '.' || p_table_name || ' PURGE';
+        
+        -- 计算节省的空间
+        v_space_saved := v_space_before;
+        
+        -- 记录清理操作
+        log_operation('CLEANUP', 'TABLE', p_owner, p_table_name, 'COMPLETED', NULL, v_space_saved);
+    EXCEPTION
+        WHEN OTHERS THEN
+            log_operation('CLEANUP', 'TABLE', p_owner, p_table_name, 'FAILED', SQLERRM);
+            RAISE;
+    END cleanup_table;
+    
+    -- 表或索引原来的并行度(dba_tables.degree)对应的子句
+    FUNCTION parallel_clause(p_degree IN VARCHAR2) RETURN VARCHAR2 IS
+    BEGIN
+        RETURN CASE TRIM(p_degree)
+                   WHEN '1' THEN 'NOPARALLEL'
+                   WHEN 'DEFAULT' THEN 'PARALLEL'
+                   ELSE 'PARALLEL ' || TRIM(p_degree)
+               END;
+    END parallel_clause;
+    
+    -- 重组表
+    -- REORG_METHOD为SHRINK时以SHRINK SPACE原地压缩并降低高水位(需要ASSM表空间，临时开启行移动)，
+    -- 为MOVE时以MOVE ONLINE重建段(需要12.2及以上，分区表逐个分区或子分区移动)，为AUTO时先尝试SHRINK，失败时改用MOVE ONLINE。
+    -- 之后在线重建表的所有普通索引；MOVE和重建索引按REORG_PARALLEL_DEGREE并行，结束后恢复表和索引原来的并行度和行移动设置。
+    -- 日志中记录表、索引和LOB段合计实际回收的空间
+    PROCEDURE reorganize_table(p_owner IN VARCHAR2, p_table_name IN VARCHAR2) IS
+        TYPE index_rec IS RECORD (
+            owner       VARCHAR2(128),
+            index_name  VARCHAR2(128),
+            partitioned VARCHAR2(3),
+            degree      VARCHAR2(40)
+        );
+        TYPE index_tab IS TABLE OF index_rec;
+        
+        v_table VARCHAR2(300) := DBMS_ASSERT.ENQUOTE_NAME(p_owner, FALSE) || '.' || 
+                                 DBMS_ASSERT.ENQUOTE_NAME(p_table_name, FALSE);
+        v_method VARCHAR2(10);
+        v_degree NUMBER;
+        v_parallel VARCHAR2(20);
+        v_row_movement VARCHAR2(8);
+        v_table_degree VARCHAR2(40);
+        v_partitioned VARCHAR2(3);
+        v_row_movement_enabled BOOLEAN := FALSE;
+        v_degree_changed BOOLEAN := FALSE;
+        v_shrink_error VARCHAR2(1000);
+        v_used VARCHAR2(20);
+        v_indexes index_tab;
+        v_space_before NUMBER;
         v_space_saved NUMBER;
+        
+        PROCEDURE restore_table IS
+        BEGIN
+            IF v_row_movement_enabled THEN
+                EXECUTE IMMEDIATE 'ALTER TABLE ' || v_table || ' DISABLE ROW MOVEMENT';
+                v_row_movement_enabled := FALSE;
+            END IF;
+            IF v_degree_changed THEN
+                EXECUTE IMMEDIATE 'ALTER TABLE ' || v_table || ' ' || parallel_clause(v_table_degree);
+                v_degree_changed := FALSE;
+            END IF;
+        END restore_table;
+        
+        PROCEDURE shrink_table IS
+        BEGIN
+            IF v_row_movement = 'DISABLED' THEN
+                EXECUTE IMMEDIATE 'ALTER TABLE ' || v_table || ' ENABLE ROW MOVEMENT';
+                v_row_movement_enabled := TRUE;
+            END IF;
+            EXECUTE IMMEDIATE 'ALTER TABLE ' || v_table || ' SHRINK SPACE';
+            v_used := 'SHRINK SPACE';
+            restore_table;
+        END shrink_table;
+        
+        PROCEDURE move_table IS
+        BEGIN
+            v_degree_changed := v_degree > 1;
+            IF v_partitioned = 'NO' THEN
+                EXECUTE IMMEDIATE 'ALTER TABLE ' || v_table || ' MOVE ONLINE' || v_parallel;
+            ELSE
+                FOR p IN (SELECT partition_name, subpartition_count
+                          FROM dba_tab_partitions
+                          WHERE table_owner = p_owner AND table_name = p_table_name
+                          ORDER BY partition_position) LOOP
+                    IF p.subpartition_count = 0 THEN
+                        EXECUTE IMMEDIATE 'ALTER TABLE ' || v_table || ' MOVE PARTITION ' || 
+                                          DBMS_ASSERT.ENQUOTE_NAME(p.partition_name, FALSE) || ' ONLINE' || v_parallel;
+                    ELSE
+                        FOR sp IN (SELECT subpartition_name
+                                   FROM dba_tab_subpartitions
+                                   WHERE table_owner = p_owner AND table_name = p_table_name
+                                   AND partition_name = p.partition_name
+                                   ORDER BY subpartition_position) LOOP
+                            EXECUTE IMMEDIATE 'ALTER TABLE ' || v_table || ' MOVE SUBPARTITION ' || 
+                                              DBMS_ASSERT.ENQUOTE_NAME(sp.subpartition_name, FALSE) || ' ONLINE' || v_parallel;
+                        END LOOP;
+                    END IF;
+                END LOOP;
+            END IF;
+            v_used := 'MOVE ONLINE';
+            restore_table;
+        END move_table;
+        
+        PROCEDURE rebuild_index(p_index IN index_rec) IS
+            v_index VARCHAR2(300) := DBMS_ASSERT.ENQUOTE_NAME(p_index.owner, FALSE) || '.' || 
+                                     DBMS_ASSERT.ENQUOTE_NAME(p_index.index_name, FALSE);
+        BEGIN
+            IF p_index.partitioned = 'NO' THEN
+                EXECUTE IMMEDIATE 'ALTER INDEX ' || v_index || ' REBUILD ONLINE' || v_parallel;
+            ELSE
+                FOR p IN (SELECT partition_name, subpartition_count
+                          FROM dba_ind_partitions
+                          WHERE index_owner = p_index.owner AND index_name = p_index.index_name
+                          ORDER BY partition_position) LOOP
+                    IF p.subpartition_count = 0 THEN
+                        EXECUTE IMMEDIATE 'ALTER INDEX ' || v_index || ' REBUILD PARTITION ' || 
+                                          DBMS_ASSERT.ENQUOTE_NAME(p.partition_name, FALSE) || ' ONLINE' || v_parallel;
+                    ELSE
+                        FOR sp IN (SELECT subpartition_name
+                                   FROM dba_ind_subpartitions
+                                   WHERE index_owner = p_index.owner AND index_name = p_index.index_name
+                                   AND partition_name = p.partition_name
+                                   ORDER BY subpartition_position) LOOP
+                            EXECUTE IMMEDIATE 'ALTER INDEX ' || v_index || ' REBUILD SUBPARTITION ' || 
+                                              DBMS_ASSERT.ENQUOTE_NAME(sp.subpartition_name, FALSE) || ' ONLINE' || v_parallel;
+                        END LOOP;
+                    END IF;
+                END LOOP;
+            END IF;
+            IF v_degree > 1 THEN
+                EXECUTE IMMEDIATE 'ALTER INDEX ' || v_index || ' ' || parallel_clause(p_index.degree);
+            END IF;
+        END rebuild_index;
     BEGIN
-        -- 检查是否需要备份
-        v_backup_enabled := get_config_value('BACKUP_BEFORE_CLEANUP');
+        v_method := UPPER(NVL(get_config_value('REORG_METHOD'), 'AUTO'));
+        v_degree := GREATEST(1, NVL(TO_NUMBER(get_config_value('REORG_PARALLEL_DEGREE')), 1));
+        v_parallel := CASE WHEN v_degree > 1 THEN ' PARALLEL ' || v_degree END;
         
-        -- 获取表大小
-        SELECT NVL(SUM(bytes), 0) INTO v_space_before
-        FROM dba_segments
-        WHERE owner = p_owner
-        AND segment_name = p_table_name
-        AND segment_type IN ('TABLE', 'TABLE PARTITION', 'TABLE SUBPARTITION');
+        SELECT row_movement, degree, partitioned 
+        INTO v_row_movement, v_table_degree, v_partitioned
+        FROM dba_tables
+        WHERE owner = p_owner AND table_name = p_table_name;
         
-        -- 如果需要备份，创建表备份
-        IF v_backup_enabled = 'TRUE' THEN
-            EXECUTE IMMEDIATE 'CREATE TABLE ' || p_owner || '.BKP_' || p_table_name || '_' || 
-                              TO_CHAR(SYSDATE, 'YYYYMMDD') || ' AS SELECT * FROM ' || 
-                              p_owner || '.' || p_table_name;
-            
-            log_operation('BACKUP', 'TABLE', p_owner, p_table_name, 'COMPLETED');
-        END IF;
+        SELECT owner, index_name, partitioned, degree
+        BULK COLLECT INTO v_indexes
+        FROM dba_indexes
+        WHERE table_owner = p_owner AND table_name = p_table_name
+        AND index_type IN ('NORMAL', 'NORMAL/REV', 'BITMAP', 'FUNCTION-BASED NORMAL', 'FUNCTION-BASED BITMAP')
+        AND temporary = 'N';
         
-        -- 删除表
-        EXECUTE IMMEDIATE 'DROP TABLE ' || p_owner || '.' || p_table_name;
+        v_space_before := table_segment_bytes(p_owner, p_table_name);
         
-        -- 计算节省的空间
-        v_space_saved := v_space_before;
+        IF v_method IN ('SHRINK', 'AUTO') THEN
+            BEGIN
+                shrink_table;
+            EXCEPTION
+                WHEN OTHERS THEN
+                    v_shrink_error := SQLERRM;
+                    restore_table;
+                    IF v_method = 'SHRINK' THEN
+                        RAISE;
+                    END IF;
+            END;
+        END IF;
+        IF v_used IS NULL THEN
+            move_table;
+        END IF;
         
-        -- 记录清理操作
-        log_operation('CLEANUP', 'TABLE', p_owner, p_table_name, 'COMPLETED', NULL, v_space_saved);
+        FOR i IN 1..v_indexes.COUNT LOOP
+            rebuild_index(v_indexes(i));
+        END LOOP;
+        
+        v_space_saved := v_space_before - table_segment_bytes(p_owner, p_table_name);
+        log_operation('CLEANUP', 'REORG', p_owner, p_table_name, 'COMPLETED', 
+                      '以' || v_used || '重组' || 
+                      CASE WHEN v_shrink_error IS NOT NULL THEN '(SHRINK SPACE失败: ' || v_shrink_error || ')' END ||
+                      '，重建' || v_indexes.COUNT || '个索引，回收' || ROUND(v_space_saved / 1048576, 2) || ' MB', 
+                      v_space_saved);
     EXCEPTION
         WHEN OTHERS THEN
-            log_operation('CLEANUP', 'TABLE', p_owner, p_table_name, 'FAILED', SQLERRM);
+            log_operation('CLEANUP', 'REORG', p_owner, p_table_name, 'FAILED', SQLERRM);
+            BEGIN
+                restore_table;
+            EXCEPTION
+                WHEN OTHERS THEN
+                    log_operation('CLEANUP', 'REORG', p_owner, p_table_name, 'FAILED', 
+                                  '恢复表的行移动和并行度设置失败: ' || SQLERRM);
+            END;
             RAISE;
-    END cleanup_table;
+    END reorganize_table;
     
     -- 清理数据文件
+    -- 文件中没有任何区且表空间还有其他文件时删除文件，否则收缩到刚好高于高水位的整MB大小。
+    -- 高水位取自cleanup_datafile_hwm，本文件的记录超过c_hwm_max_age分钟时，连同所有记录过期的已批准数据文件候选
+    -- 一起按批重新计算；收缩时高水位已上移(ORA-03297)则只重新计算本文件后再试一次。
+    -- 日志中记录高水位以上可回收的空间和实际回收的空间
     PROCEDURE cleanup_datafile(p_file_name IN VARCHAR2) IS
-        v_tablespace_name VARCHAR2(30);
+        v_hwm cleanup_datafile_hwm%ROWTYPE;
         v_space_before NUMBER;
+        v_space_after NUMBER;
+        v_fresh NUMBER;
+        v_files cleanup_name_list;
+        e_above_hwm EXCEPTION;
+        PRAGMA EXCEPTION_INIT(e_above_hwm, -3297);
+        
+        PROCEDURE load_hwm IS
+        BEGIN
+            SELECT * INTO v_hwm FROM cleanup_datafile_hwm WHERE file_name = p_file_name;
+        END load_hwm;
+        
+        PROCEDURE resize_to_hwm IS
+        BEGIN
+            EXECUTE IMMEDIATE 'ALTER DATABASE DATAFILE ''' || p_file_name || ''' RESIZE ' || 
+                              v_hwm.target_bytes / 1048576 || 'M';
+        END resize_to_hwm;
     BEGIN
-        -- 获取数据文件所属的表空间
-        SELECT tablespace_name, bytes INTO v_tablespace_name, v_space_before
+        SELECT bytes INTO v_space_before
         FROM dba_data_files
         WHERE file_name = p_file_name;
         
-        -- 尝试将数据文件脱机并删除
-        BEGIN
-            EXECUTE IMMEDIATE 'ALTER DATABASE DATAFILE ''' || p_file_name || ''' OFFLINE DROP';
-            log_operation('CLEANUP', 'DATAFILE', NULL, p_file_name, 'COMPLETED', NULL, v_space_before);
-        EXCEPTION
-            WHEN OTHERS THEN
-                -- 如果无法直接删除，尝试收缩数据文件
+        SELECT COUNT(*) INTO v_fresh
+        FROM cleanup_datafile_hwm
+        WHERE file_name = p_file_name
+        AND computed_time > SYSDATE - c_hwm_max_age / 1440;
+        IF v_fresh = 0 THEN
+            SELECT p_file_name
+            BULK COLLECT INTO v_files
+            FROM dual
+            UNION
+            SELECT c.object_name
+            FROM cleanup_candidates c
+            WHERE c.object_type = 'DATAFILE'
+            AND c.status = 'APPROVED'
+            AND NOT EXISTS (SELECT 1 FROM cleanup_datafile_hwm h
+                            WHERE h.file_name = c.object_name
+                            AND h.computed_time > SYSDATE - c_hwm_max_age / 1440);
+            compute_datafile_hwm(v_files);
+        END IF;
+        load_hwm;
+        
+        IF v_hwm.empty_file = 'Y' AND v_hwm.file_count > 1 THEN
+            EXECUTE IMMEDIATE 'ALTER TABLESPACE ' || DBMS_ASSERT.ENQUOTE_NAME(v_hwm.tablespace_name, FALSE) || 
+                              ' DROP DATAFILE ''' || p_file_name || '''';
+            v_space_after := 0;
+        ELSE
+            IF v_hwm.target_bytes < v_space_before THEN
                 BEGIN
-                    EXECUTE IMMEDIATE 'ALTER DATABASE DATAFILE ''' || p_file_name || 
-                                      ''' RESIZE 1M';
-                    
-                    -- 获取收缩后的大小
-                    DECLARE
-                        v_space_after NUMBER;
-                    BEGIN
-                        SELECT bytes INTO v_space_after
-                        FROM dba_data_files
-                        WHERE file_name = p_file_name;
-                        
-                        log_operation('RESIZE', 'DATAFILE', NULL, p_file_name, 'COMPLETED', 
-                                     NULL, v_space_before - v_space_after);
-                    END;
+                    resize_to_hwm;
                 EXCEPTION
-                    WHEN OTHERS THEN
-                        log_operation('CLEANUP', 'DATAFILE', NULL, p_file_name, 'FAILED', 
-                                     '无法删除或收缩数据文件: ' || SQLERRM);
-                        RAISE;
+                    WHEN e_above_hwm THEN
+                        compute_datafile_hwm(cleanup_name_list(p_file_name));
+                        load_hwm;
+                        resize_to_hwm;
                 END;
-        END;
+            END IF;
+            SELECT bytes INTO v_space_after
+            FROM dba_data_files
+            WHERE file_name = p_file_name;
+        END IF;
+        
+        UPDATE cleanup_datafile_hwm
+        SET shrunk_bytes = v_space_before - v_space_after,
+            shrunk_time = SYSDATE
+        WHERE file_name = p_file_name;
+        log_operation('CLEANUP', 'DATAFILE', NULL, p_file_name, 'COMPLETED', 
+                      CASE WHEN v_space_after = 0 THEN '已删除没有任何区的数据文件'
+                           ELSE '收缩到' || ROUND(v_space_after / 1048576) || ' MB' END ||
+                      '，高水位以上可回收' || ROUND(v_hwm.reclaimable_bytes / 1048576) || ' MB，实际回收' || 
+                      ROUND((v_space_before - v_space_after) / 1048576) || ' MB', 
+                      v_space_before - v_space_after);
     EXCEPTION
         WHEN OTHERS THEN
             log_operation('CLEANUP', 'DATAFILE', NULL, p_file_name, 'FAILED', SQLERRM);
@@ -630,174 +2257,336 @@ CREATE OR REPLACE PACKAGE BODY db_cleanup AS
             RAISE;
     END cleanup_tablespace;
     
+    -- 清理单个已批准的候选并标记为已清理，失败时抛出异常，候选保持APPROVED状态
+    PROCEDURE cleanup_one_candidate(p_candidate_id IN NUMBER, p_backup_done IN VARCHAR2 DEFAULT 'N') IS
+        v_object_type VARCHAR2(30);
+        v_object_owner VARCHAR2(30);
+        v_object_name VARCHAR2(128);
+    BEGIN
+        BEGIN
+            SELECT object_type, object_owner, object_name
+            INTO v_object_type, v_object_owner, v_object_name
+            FROM cleanup_candidates
+            WHERE candidate_id = p_candidate_id
+            AND status = 'APPROVED';
+        EXCEPTION
+            WHEN NO_DATA_FOUND THEN
+                log_operation('CLEANUP', 'CANDIDATE', NULL, TO_CHAR(p_candidate_id), 'FAILED', '候选不存在或未被批准');
+                RAISE_APPLICATION_ERROR(-20010, '候选不存在或未被批准: ' || p_candidate_id);
+        END;
+        
+        CASE v_object_type
+            WHEN 'TABLE' THEN
+                cleanup_table(v_object_owner, v_object_name, p_backup_done);
+            WHEN 'REORG' THEN
+                reorganize_table(v_object_owner, v_object_name);
+            WHEN 'DATAFILE' THEN
+                cleanup_datafile(v_object_name);
+            WHEN 'TABLESPACE' THEN
+                cleanup_tablespace(v_object_name);
+            ELSE
+                log_operation('CLEANUP', v_object_type, v_object_owner, v_object_name, 'FAILED', '不支持的对象类型');
+                RAISE_APPLICATION_ERROR(-20011, '不支持的对象类型: ' || v_object_type);
+        END CASE;
+        
+        UPDATE cleanup_candidates
+        SET status = 'CLEANED',
+            cleanup_time = SYSTIMESTAMP
+        WHERE candidate_id = p_candidate_id
+        AND status = 'APPROVED';
+        
+        COMMIT;
+    END cleanup_one_candidate;
+    
+    -- 清理单个已批准的候选
+    -- 客户端并行执行器按候选逐个调用，每次调用结束时写入本次的日志
+    PROCEDURE cleanup_candidate(p_candidate_id IN NUMBER, p_backup_done IN VARCHAR2 DEFAULT 'N') IS
+        v_space_saved NUMBER;
+    BEGIN
+        cleanup_candidate(p_candidate_id, p_backup_done, v_space_saved);
+    END cleanup_candidate;
+    
+    -- 清理单个已批准的候选并返回实际回收的字节数，即对象过程记录在日志中的节省空间
+    PROCEDURE cleanup_candidate(p_candidate_id IN NUMBER, p_backup_done IN VARCHAR2, p_space_saved OUT NUMBER) IS
+        v_saved_before NUMBER := g_space_saved;
+    BEGIN
+        cleanup_one_candidate(p_candidate_id, p_backup_done);
+        p_space_saved := g_space_saved - v_saved_before;
+        flush_log;
+    EXCEPTION
+        WHEN OTHERS THEN
+            flush_log_after_error;
+            RAISE;
+    END cleanup_candidate;
+    
     -- 清理已批准的候选
+    -- 按可回收字节数与预计耗时之比从高到低处理，预计耗时按CLEANUP_DDL_BASE_SECONDS、CLEANUP_DDL_SECONDS_PER_GB
+    -- 和CLEANUP_BACKUP_SECONDS_PER_GB估算(重组按REORG_SECONDS_PER_GB)。同一表空间中还有待清理或重组的表(或数据文件)时，
+    -- 数据文件和表空间推迟到第二轮按表、数据文件、表空间的顺序处理。配置了CLEANUP_TIME_BUDGET_MINUTES时，
+    -- 预计在预算内完成不了的候选不再开始，保持APPROVED状态留待下次。单个候选失败时记录错误但继续处理其他候选。
+    -- 每个候选清理后立即提交，在清理周期中每个候选开始前检查是否请求了取消。
+    -- 每个候选开始前按THROTTLE_*限流，实例负载超过LOAD_*阈值时暂停，见throttle_candidate
     PROCEDURE cleanup_approved_candidates IS
+        v_base_seconds NUMBER;
+        v_seconds_per_gb NUMBER;
+        v_backup_seconds_per_gb NUMBER := 0;
+        v_reorg_seconds_per_gb NUMBER;
+        v_budget_minutes NUMBER;
+        v_deadline TIMESTAMP;
+        v_blocked NUMBER;
+        v_postponed cleanup_id_list := cleanup_id_list();
+        
+        -- 每个表空间中还是APPROVED状态的第1阶段(表和重组)、第2阶段(数据文件)候选数，
+        -- 由第一轮读取的候选建立一次，候选清理成功后减一
+        TYPE tablespace_count_tab IS TABLE OF PLS_INTEGER INDEX BY VARCHAR2(128);
+        v_pending_phase1 tablespace_count_tab;
+        v_pending_phase2 tablespace_count_tab;
+        
+        -- p_ids为NULL时返回所有已批准的候选，p_by_phase为'Y'时先按阶段排序
+        CURSOR c_ranked(p_ids IN cleanup_id_list, p_by_phase IN VARCHAR2) IS
+            SELECT candidate_id, object_type, object_owner, object_name, tablespace_name, reclaimable_bytes, 
+                   phase, est_seconds
+            FROM (
+                SELECT c.candidate_id, c.object_type, c.object_owner, c.object_name, c.priority, c.identified_time,
+                       v.tablespace_name, v.reclaimable_bytes,
+                       DECODE(c.object_type, 'TABLE', 1, 'REORG', 1, 'DATAFILE', 2, 3) phase,
+                       GREATEST(1, v_base_seconds + v.reclaimable_bytes / 1073741824 * 
+                                   DECODE(c.object_type, 'TABLE', v_seconds_per_gb + v_backup_seconds_per_gb, 
+                                                         'REORG', v_reorg_seconds_per_gb, v_seconds_per_gb)) est_seconds
+                FROM cleanup_candidates c
+                JOIN cleanup_candidate_value v ON v.candidate_id = c.candidate_id
+                WHERE c.status = 'APPROVED'
+                AND c.object_type IN ('TABLE', 'REORG', 'DATAFILE', 'TABLESPACE')
+                AND (p_ids IS NULL OR c.candidate_id IN (SELECT COLUMN_VALUE FROM TABLE(p_ids)))
+            )
+            ORDER BY CASE WHEN p_by_phase = 'Y' THEN phase END,
+                     reclaimable_bytes / est_seconds DESC, priority, identified_time, candidate_id;
+        
+        TYPE ranked_tab IS TABLE OF c_ranked%ROWTYPE;
+        v_ranked ranked_tab;
+        
+        FUNCTION pending_count(p_counts IN tablespace_count_tab, p_tablespace IN VARCHAR2) RETURN PLS_INTEGER IS
+        BEGIN
+            RETURN CASE WHEN p_counts.EXISTS(p_tablespace) THEN p_counts(p_tablespace) ELSE 0 END;
+        END pending_count;
+        
+        -- 在时间预算内清理一个候选，预计超出预算时只记录推迟
+        -- 每个对象的耗时和回收空间按对象类型累加到CLEANUP_<类型>阶段
+        PROCEDURE run_one(r IN c_ranked%ROWTYPE) IS
+            v_started TIMESTAMP;
+            v_saved_before NUMBER;
+        BEGIN
+            IF v_deadline IS NOT NULL 
+               AND SYSTIMESTAMP + NUMTODSINTERVAL(r.est_seconds, 'SECOND') > v_deadline THEN
+                log_operation('CLEANUP', r.object_type, r.object_owner, r.object_name, 'DEFERRED', 
+                             '预计耗时' || ROUND(r.est_seconds) || '秒，超出本次时间预算');
+                RETURN;
+            END IF;
+            throttle_candidate(r.object_type, r.reclaimable_bytes);
+            v_started := SYSTIMESTAMP;
+            v_saved_before := g_space_saved;
+            cleanup_one_candidate(r.candidate_id);
+            -- 清理成功的候选不再阻挡同一表空间中后续阶段的候选；失败和推迟的候选保持APPROVED，仍然阻挡
+            IF r.tablespace_name IS NOT NULL THEN
+                IF r.phase = 1 THEN
+                    v_pending_phase1(r.tablespace_name) := pending_count(v_pending_phase1, r.tablespace_name) - 1;
+                ELSIF r.phase = 2 THEN
+                    v_pending_phase2(r.tablespace_name) := pending_count(v_pending_phase2, r.tablespace_name) - 1;
+                END IF;
+            END IF;
+            record_phase('CLEANUP_' || r.object_type, v_started, 1, g_space_saved - v_saved_before);
+            checkpoint_candidate(r.candidate_id);
+            -- 删除对象后立即写入审计日志，会话被终止时不丢失已清理对象的日志
+            flush_log;
+        EXCEPTION
+            WHEN OTHERS THEN
+                -- 等待限流时被取消或维护窗口结束则停止整个清理
+                IF SQLCODE IN (c_cancelled, c_window_closed) THEN
+                    RAISE;
+                END IF;
+                -- 记录错误但继续处理其他候选；清理失败时对象过程已写日志，
+                -- 限流等待失败时候选没有开始，只写日志，不计入阶段耗时和周期进度
+                IF v_started IS NULL THEN
+                    log_operation('CLEANUP', r.object_type, r.object_owner, r.object_name, 'FAILED', SQLERRM);
+                ELSE
+                    record_phase('CLEANUP_' || r.object_type, v_started, 1, 0, 'FAILED');
+                    checkpoint_candidate(r.candidate_id);
+                END IF;
+                flush_log;
+        END run_one;
     BEGIN
         -- 记录操作开始
         log_operation('CLEANUP', 'CANDIDATES', NULL, NULL, 'STARTED');
         
-        -- 处理已批准的表
-        FOR r IN (
-            SELECT object_owner, object_name
-            FROM cleanup_candidates
-            WHERE status = 'APPROVED'
-            AND object_type = 'TABLE'
-            ORDER BY priority
-        ) LOOP
-            BEGIN
-                cleanup_table(r.object_owner, r.object_name);
-                
-                UPDATE cleanup_candidates
-                SET status = 'CLEANED',
-                    cleanup_time = SYSTIMESTAMP
-                WHERE object_owner = r.object_owner
-                AND object_name = r.object_name
-                AND object_type = 'TABLE'
-                AND status = 'APPROVED';
-            EXCEPTION
-                WHEN OTHERS THEN
-                    -- 记录错误但继续处理其他候选
-                    NULL;
-            END;
-        END LOOP;
+        v_base_seconds := NVL(TO_NUMBER(get_config_value('CLEANUP_DDL_BASE_SECONDS')), 5);
+        v_seconds_per_gb := NVL(TO_NUMBER(get_config_value('CLEANUP_DDL_SECONDS_PER_GB')), 1);
+        v_reorg_seconds_per_gb := NVL(TO_NUMBER(get_config_value('REORG_SECONDS_PER_GB')), 60);
+        -- 调度作业中无法导出到客户端文件，需要备份时总是库内CTAS备份
+        IF get_config_value('BACKUP_BEFORE_CLEANUP') = 'TRUE' THEN
+            v_backup_seconds_per_gb := NVL(TO_NUMBER(get_config_value('CLEANUP_BACKUP_SECONDS_PER_GB')), 20);
+        END IF;
+        v_budget_minutes := NVL(TO_NUMBER(get_config_value('CLEANUP_TIME_BUDGET_MINUTES')), 0);
+        IF v_budget_minutes > 0 THEN
+            v_deadline := SYSTIMESTAMP + NUMTODSINTERVAL(v_budget_minutes, 'MINUTE');
+        END IF;
+        -- 在维护窗口中运行时，预计在窗口结束前完成不了的候选也留待下一个窗口
+        IF g_window_end IS NOT NULL THEN
+            IF v_deadline IS NULL OR (g_window_end - SYSDATE) * 1440 < v_budget_minutes THEN
+                v_deadline := SYSTIMESTAMP + NUMTODSINTERVAL(GREATEST(0, (g_window_end - SYSDATE) * 86400), 'SECOND');
+            END IF;
+        END IF;
+        load_throttle_config;
         
-        -- 处理已批准的数据文件
-        FOR r IN (
-            SELECT object_name
-            FROM cleanup_candidates
-            WHERE status = 'APPROVED'
-            AND object_type = 'DATAFILE'
-            ORDER BY priority
-        ) LOOP
-            BEGIN
-                cleanup_datafile(r.object_name);
-                
-                UPDATE cleanup_candidates
-                SET status = 'CLEANED',
-                    cleanup_time = SYSTIMESTAMP
-                WHERE object_name = r.object_name
-                AND object_type = 'DATAFILE'
-                AND status = 'APPROVED';
-            EXCEPTION
-                WHEN OTHERS THEN
-                    -- 记录错误但继续处理其他候选
-                    NULL;
-            END;
+        -- 第一轮按价值处理，依赖同一表空间中前一阶段候选的先推迟
+        OPEN c_ranked(NULL, 'N');
+        FETCH c_ranked BULK COLLECT INTO v_ranked;
+        CLOSE c_ranked;
+        FOR i IN 1..v_ranked.COUNT LOOP
+            IF v_ranked(i).tablespace_name IS NOT NULL THEN
+                IF v_ranked(i).phase = 1 THEN
+                    v_pending_phase1(v_ranked(i).tablespace_name) := 
+                        pending_count(v_pending_phase1, v_ranked(i).tablespace_name) + 1;
+                ELSIF v_ranked(i).phase = 2 THEN
+                    v_pending_phase2(v_ranked(i).tablespace_name) := 
+                        pending_count(v_pending_phase2, v_ranked(i).tablespace_name) + 1;
+                END IF;
+            END IF;
         END LOOP;
         
-        -- 处理已批准的表空间
-        FOR r IN (
-            SELECT object_name
-            FROM cleanup_candidates
-            WHERE status = 'APPROVED'
-            AND object_type = 'TABLESPACE'
-            ORDER BY priority
-        ) LOOP
-            BEGIN
-                cleanup_tablespace(r.object_name);
-                
-                UPDATE cleanup_candidates
-                SET status = 'CLEANED',
-                    cleanup_time = SYSTIMESTAMP
-                WHERE object_name = r.object_name
-                AND object_type = 'TABLESPACE'
-                AND status = 'APPROVED';
-            EXCEPTION
-                WHEN OTHERS THEN
-                    -- 记录错误但继续处理其他候选
-                    NULL;
-            END;
+        FOR i IN 1..v_ranked.COUNT LOOP
+            v_blocked := 0;
+            IF v_ranked(i).phase > 1 AND v_ranked(i).tablespace_name IS NOT NULL THEN
+                v_blocked := pending_count(v_pending_phase1, v_ranked(i).tablespace_name);
+                IF v_ranked(i).phase > 2 THEN
+                    v_blocked := v_blocked + pending_count(v_pending_phase2, v_ranked(i).tablespace_name);
+                END IF;
+            END IF;
+            
+            IF v_blocked > 0 THEN
+                v_postponed.EXTEND;
+                v_postponed(v_postponed.LAST) := v_ranked(i).candidate_id;
+            ELSE
+                check_cancel;
+                run_one(v_ranked(i));
+            END IF;
         END LOOP;
         
+        -- 第二轮按阶段处理推迟的候选
+        IF v_postponed.COUNT > 0 THEN
+            FOR r IN c_ranked(v_postponed, 'Y') LOOP
+                check_cancel;
+                run_one(r);
+            END LOOP;
+        END IF;
+        
         COMMIT;
         
         -- 记录操作完成
         log_operation('CLEANUP', 'CANDIDATES', NULL, NULL, 'COMPLETED');
+        flush_log;
     EXCEPTION
         WHEN OTHERS THEN
             ROLLBACK;
-            log_operation('CLEANUP', 'CANDIDATES', NULL, NULL, 'FAILED', SQLERRM);
+            log_operation('CLEANUP', 'CANDIDATES', NULL, NULL, 
+                          CASE SQLCODE WHEN c_cancelled THEN 'CANCELLED' WHEN c_window_closed THEN 'PAUSED' 
+                                       ELSE 'FAILED' END, SQLERRM);
+            flush_log_after_error;
             RAISE;
     END cleanup_approved_candidates;
     
     -- 生成清理报告
-    PROCEDURE generate_cleanup_report(p_days_back IN NUMBER DEFAULT 30) IS
+    -- 以管道方式逐行返回报告，section_no为0表示标题和结尾，1-4对应报告各节
+    -- 客户端通过SELECT ... FROM TABLE(db_cleanup.cleanup_report(:days))按批读取，不受DBMS_OUTPUT缓冲区限制
+    FUNCTION cleanup_report(p_days_back IN NUMBER DEFAULT 30) RETURN cleanup_report_tab PIPELINED IS
     BEGIN
-        DBMS_OUTPUT.PUT_LINE('========== Oracle数据库垃圾数据清理报告 ==========');
-        DBMS_OUTPUT.PUT_LINE('报告生成时间: ' || TO_CHAR(SYSDATE, 'YYYY-MM-DD HH24:MI:SS'));
-        DBMS_OUTPUT.PUT_LINE('报告周期: 最近' || p_days_back || '天');
-        DBMS_OUTPUT.PUT_LINE('');
+        PIPE ROW(cleanup_report_row(0, '========== Oracle数据库垃圾数据清理报告 =========='));
+        PIPE ROW(cleanup_report_row(0, '报告生成时间: ' || TO_CHAR(SYSDATE, 'YYYY-MM-DD HH24:MI:SS')));
+        PIPE ROW(cleanup_report_row(0, '报告周期: 最近' || p_days_back || '天'));
+        PIPE ROW(cleanup_report_row(0, ''));
         
         -- 清理操作统计
-        DBMS_OUTPUT.PUT_LINE('1. 清理操作统计');
-        DBMS_OUTPUT.PUT_LINE('-------------------');
+        PIPE ROW(cleanup_report_row(1, '1. 清理操作统计'));
+        PIPE ROW(cleanup_report_row(1, '-------------------'));
+        -- 统计节读取每日汇总，时间窗口按天对齐
         FOR r IN (
-            SELECT object_type, status, COUNT(*) count
-            FROM cleanup_log
+            SELECT object_type, status, SUM(operation_count) count
+            FROM cleanup_log_daily
             WHERE operation_type = 'CLEANUP'
-            AND operation_time > SYSDATE - p_days_back
+            AND log_day > TRUNC(SYSDATE) - p_days_back
             GROUP BY object_type, status
             ORDER BY object_type, status
         ) LOOP
-            DBMS_OUTPUT.PUT_LINE(RPAD(r.object_type, 15) || ' | ' || 
-                                RPAD(r.status, 10) || ' | ' || r.count);
+            PIPE ROW(cleanup_report_row(1, RPAD(r.object_type, 15) || ' | ' || 
+                                           RPAD(r.status, 10) || ' | ' || r.count));
         END LOOP;
         
-        DBMS_OUTPUT.PUT_LINE('');
+        PIPE ROW(cleanup_report_row(1, ''));
         
         -- 空间节省统计
-        DBMS_OUTPUT.PUT_LINE('2. 空间节省统计');
-        DBMS_OUTPUT.PUT_LINE('-------------------');
+        PIPE ROW(cleanup_report_row(2, '2. 空间节省统计'));
+        PIPE ROW(cleanup_report_row(2, '-------------------'));
         FOR r IN (
             SELECT object_type, 
                    SUM(space_saved)/1024/1024 space_mb
-            FROM cleanup_log
+            FROM cleanup_log_daily
             WHERE operation_type IN ('CLEANUP', 'RESIZE')
-            AND operation_time > SYSDATE - p_days_back
-            AND space_saved IS NOT NULL
+            AND log_day > TRUNC(SYSDATE) - p_days_back
+            AND space_saved > 0
             GROUP BY object_type
             ORDER BY space_mb DESC
         ) LOOP
-            DBMS_OUTPUT.PUT_LINE(RPAD(r.object_type, 15) || ' | ' || 
-                                ROUND(r.space_mb, 2) || ' MB');
+            PIPE ROW(cleanup_report_row(2, RPAD(r.object_type, 15) || ' | ' || 
+                                           ROUND(r.space_mb, 2) || ' MB'));
+        END LOOP;
+        
+        FOR r IN (
+            SELECT COUNT(*) file_count, 
+                   SUM(reclaimable_bytes) / 1024 / 1024 reclaimable_mb, 
+                   SUM(shrunk_bytes) / 1024 / 1024 shrunk_mb
+            FROM cleanup_datafile_hwm
+            WHERE shrunk_time > SYSDATE - p_days_back
+        ) LOOP
+            IF r.file_count > 0 THEN
+                PIPE ROW(cleanup_report_row(2, '数据文件收缩: ' || r.file_count || '个文件，高水位以上可回收' || 
+                                               ROUND(r.reclaimable_mb, 2) || ' MB，实际回收' || 
+                                               ROUND(r.shrunk_mb, 2) || ' MB'));
+            END IF;
         END LOOP;
         
-        DBMS_OUTPUT.PUT_LINE('');
-        DBMS_OUTPUT.PUT_LINE('总节省空间: ' || 
-                            ROUND(get_space_savings()/1024/1024, 2) || ' MB');
+        PIPE ROW(cleanup_report_row(2, ''));
+        PIPE ROW(cleanup_report_row(2, '总节省空间: ' || 
+                                       ROUND(get_space_savings()/1024/1024, 2) || ' MB'));
         
-        DBMS_OUTPUT.PUT_LINE('');
+        PIPE ROW(cleanup_report_row(2, ''));
         
         -- 最近清理的对象
-        DBMS_OUTPUT.PUT_LINE('3. 最近清理的对象 (最多显示10个)');
-        DBMS_OUTPUT.PUT_LINE('-------------------');
+        PIPE ROW(cleanup_report_row(3, '3. 最近清理的对象 (最多显示10个)'));
+        PIPE ROW(cleanup_report_row(3, '-------------------'));
         FOR r IN (
-            SELECT object_type, object_owner, object_name, 
-                   TO_CHAR(operation_time, 'YYYY-MM-DD HH24:MI:SS') cleanup_time,
-                   ROUND(space_saved/1024/1024, 2) space_mb
-            FROM cleanup_log
-            WHERE operation_type = 'CLEANUP'
-            AND status = 'COMPLETED'
-            AND operation_time > SYSDATE - p_days_back
-            ORDER BY operation_time DESC
+            SELECT * FROM (
+                SELECT object_type, object_owner, object_name, 
+                       TO_CHAR(operation_time, 'YYYY-MM-DD HH24:MI:SS') cleanup_time,
+                       ROUND(space_saved/1024/1024, 2) space_mb
+                FROM cleanup_log
+                WHERE operation_type = 'CLEANUP'
+                AND status = 'COMPLETED'
+                AND operation_time > SYSDATE - p_days_back
+                ORDER BY operation_time DESC
+            )
+            WHERE ROWNUM <= 10
         ) LOOP
-            DBMS_OUTPUT.PUT_LINE(RPAD(r.object_type, 12) || ' | ' || 
-                                RPAD(NVL(r.object_owner, ' '), 12) || ' | ' ||
-                                RPAD(r.object_name, 30) || ' | ' ||
-                                r.cleanup_time || ' | ' ||
-                                NVL(TO_CHAR(r.space_mb) || ' MB', 'N/A'));
-            
-            -- 只显示前10个
-            IF ROWNUM >= 10 THEN
-                EXIT;
-            END IF;
+            PIPE ROW(cleanup_report_row(3, RPAD(r.object_type, 12) || ' | ' || 
+                                           RPAD(NVL(r.object_owner, ' '), 12) || ' | ' ||
+                                           RPAD(r.object_name, 30) || ' | ' ||
+                                           r.cleanup_time || ' | ' ||
+                                           NVL(TO_CHAR(r.space_mb) || ' MB', 'N/A')));
         END LOOP;
         
-        DBMS_OUTPUT.PUT_LINE('');
+        PIPE ROW(cleanup_report_row(3, ''));
         
         -- 待清理候选
-        DBMS_OUTPUT.PUT_LINE('4. 待清理候选 (状态为PENDING)');
-        DBMS_OUTPUT.PUT_LINE('-------------------');
+        PIPE ROW(cleanup_report_row(4, '4. 待清理候选 (状态为PENDING)'));
+        PIPE ROW(cleanup_report_row(4, '-------------------'));
         FOR r IN (
             SELECT object_type, object_owner, object_name, reason,
                    TO_CHAR(identified_time, 'YYYY-MM-DD HH24:MI:SS') identified_time
@@ -805,94 +2594,488 @@ CREATE OR REPLACE PACKAGE BODY db_cleanup AS
             WHERE status = 'PENDING'
             ORDER BY priority, identified_time
         ) LOOP
-            DBMS_OUTPUT.PUT_LINE(RPAD(r.object_type, 12) || ' | ' || 
-                                RPAD(NVL(r.object_owner, ' '), 12) || ' | ' ||
-                                RPAD(r.object_name, 30) || ' | ' ||
-                                r.identified_time);
-            DBMS_OUTPUT.PUT_LINE('   原因: ' || r.reason);
-            DBMS_OUTPUT.PUT_LINE('-------------------');
+            PIPE ROW(cleanup_report_row(4, RPAD(r.object_type, 12) || ' | ' || 
+                                           RPAD(NVL(r.object_owner, ' '), 12) || ' | ' ||
+                                           RPAD(r.object_name, 30) || ' | ' ||
+                                           r.identified_time));
+            PIPE ROW(cleanup_report_row(4, '   原因: ' || r.reason));
+            PIPE ROW(cleanup_report_row(4, '-------------------'));
         END LOOP;
         
-        DBMS_OUTPUT.PUT_LINE('');
-        DBMS_OUTPUT.PUT_LINE('========== 报告结束 ==========');
+        PIPE ROW(cleanup_report_row(0, ''));
+        PIPE ROW(cleanup_report_row(0, '========== 报告结束 =========='));
+        RETURN;
+    END cleanup_report;
+    
+    -- 生成清理报告并输出到DBMS_OUTPUT，供SQL*Plus和调度作业使用
+    PROCEDURE generate_cleanup_report(p_days_back IN NUMBER DEFAULT 30) IS
+    BEGIN
+        FOR r IN (SELECT line_text FROM TABLE(cleanup_report(p_days_back))) LOOP
+            DBMS_OUTPUT.PUT_LINE(r.line_text);
+        END LOOP;
     END generate_cleanup_report;
     
     -- 获取节省的空间
+    -- 读取每日汇总，代价与日志历史长度无关
     FUNCTION get_space_savings RETURN NUMBER IS
         v_total_saved NUMBER := 0;
     BEGIN
         SELECT NVL(SUM(space_saved), 0) INTO v_total_saved
-        FROM cleanup_log
-        WHERE operation_type IN ('CLEANUP', 'RESIZE')
-        AND space_saved IS NOT NULL;
+        FROM cleanup_log_daily
+        WHERE operation_type IN ('CLEANUP', 'RESIZE');
         
         RETURN v_total_saved;
     END get_space_savings;
     
+    -- 删除超过LOG_RETENTION_DAYS的日志分区
+    -- 只删除上界不晚于保留起点的整月间隔分区，每日汇总保留，节省空间合计不受影响
+    PROCEDURE purge_cleanup_log IS
+        v_retention_days NUMBER;
+        v_cutoff TIMESTAMP;
+        v_high_value TIMESTAMP;
+        v_dropped NUMBER := 0;
+        v_partitioned VARCHAR2(3);
+        v_deleted NUMBER := 0;
+    BEGIN
+        v_retention_days := TO_NUMBER(NVL(get_config_value('LOG_RETENTION_DAYS'), '365'));
+        IF v_retention_days <= 0 THEN
+            RETURN;
+        END IF;
+        v_cutoff := SYSTIMESTAMP - NUMTODSINTERVAL(v_retention_days, 'DAY');
+        
+        SELECT partitioned INTO v_partitioned FROM user_tables WHERE table_name = 'CLEANUP_LOG';
+        
+        -- 没有Partitioning选件时日志表不分区，按时间分批删除过期行，每批提交一次
+        IF v_partitioned = 'NO' THEN
+            LOOP
+                DELETE FROM cleanup_log WHERE operation_time < v_cutoff AND ROWNUM <= c_purge_batch_rows;
+                v_deleted := v_deleted + SQL%ROWCOUNT;
+                EXIT WHEN SQL%ROWCOUNT < c_purge_batch_rows;
+                COMMIT;
+            END LOOP;
+            COMMIT;
+            IF v_deleted > 0 THEN
+                log_operation('PURGE_LOG', 'TABLE', USER, 'CLEANUP_LOG', 'COMPLETED', 
+                              '删除了' || v_deleted || '条超过' || v_retention_days || '天的日志');
+            END IF;
+        END IF;
+        
+        -- 第一个范围分区不能删除，只处理自动创建的间隔分区
+        FOR r IN (
+            SELECT partition_name, high_value
+            FROM user_tab_partitions
+            WHERE table_name = 'CLEANUP_LOG'
+            AND interval = 'YES'
+            ORDER BY partition_position
+        ) LOOP
+            -- high_value是LONG类型的表达式文本，求值得到分区上界
+            EXECUTE IMMEDIATE 'SELECT ' || r.high_value || ' FROM DUAL' INTO v_high_value;
+            EXIT WHEN v_high_value > v_cutoff;
+            EXECUTE IMMEDIATE 'ALTER TABLE cleanup_log DROP PARTITION ' || 
+                              DBMS_ASSERT.SIMPLE_SQL_NAME(r.partition_name) || ' UPDATE GLOBAL INDEXES';
+            v_dropped := v_dropped + 1;
+        END LOOP;
+        
+        IF v_dropped > 0 THEN
+            log_operation('PURGE_LOG', 'TABLE', USER, 'CLEANUP_LOG', 'COMPLETED', 
+                          '删除了' || v_dropped || '个超过' || v_retention_days || '天的日志分区');
+        END IF;
+        
+        -- 阶段耗时和周期检查点与日志保留相同的天数
+        DELETE FROM cleanup_run_phase WHERE started_time < v_cutoff;
+        DELETE FROM cleanup_run WHERE started_time < v_cutoff AND status <> 'RUNNING';
+        DELETE FROM cleanup_datafile_hwm WHERE NVL(shrunk_time, computed_time) < v_cutoff;
+        -- 已删除的表不再保留访问记录
+        DELETE FROM cleanup_table_access a
+        WHERE a.last_sampled < v_cutoff
+        OR NOT EXISTS (SELECT 1 FROM dba_tables t WHERE t.owner = a.owner AND t.table_name = a.table_name);
+        COMMIT;
+        flush_log;
+    EXCEPTION
+        WHEN OTHERS THEN
+            log_operation('PURGE_LOG', 'TABLE', USER, 'CLEANUP_LOG', 'FAILED', SQLERRM);
+            flush_log;
+    END purge_cleanup_log;
+    
+    -- 统计信息收集之前采样成功时再采样一次，推进读计数但不记为读取，收集本身造成的读取因此不算访问；
+    -- 收集之前的采样失败时不吸收，收集造成的读取记为访问，表不会因此被误判为没有读写
+    PROCEDURE stats_baseline IS
+    BEGIN
+        IF g_stats_baseline THEN
+            g_stats_baseline := FALSE;
+            sample_segment_access(FALSE);
+        END IF;
+    END stats_baseline;
+    
     -- 主控过程
-    PROCEDURE run_cleanup_cycle(p_auto_approve IN BOOLEAN DEFAULT FALSE) IS
-        v_auto_cleanup VARCHAR2(10);
+    -- p_collect_stats为FALSE时跳过统计信息收集，供已在客户端并行收集过统计信息的调用方使用，
+    -- 这类调用方传入open_cycle返回的p_run_id，周期不再重新打开，避免把客户端的周期当作未完成周期放弃
+    -- 每个阶段的耗时、处理的对象数和回收的空间记录到cleanup_run_phase，整个周期记为CYCLE阶段。
+    -- 每个阶段结束后在cleanup_run中记录检查点，失败、取消或被终止后，下一次运行跳过已完成的阶段，
+    -- 统计信息只收集还没有收集过的表，清理只处理还是APPROVED状态的候选
+    PROCEDURE run_cleanup_cycle(p_auto_approve IN BOOLEAN DEFAULT FALSE, p_collect_stats IN BOOLEAN DEFAULT TRUE,
+                                p_run_id IN NUMBER DEFAULT NULL) IS
+        v_auto_approve BOOLEAN;
+        v_pending_ids cleanup_id_list;
+        v_approved NUMBER;
+        v_cycle_started TIMESTAMP := SYSTIMESTAMP;
+        v_cycle_saved NUMBER := g_space_saved;
+        v_started TIMESTAMP;
+        v_saved_before NUMBER;
+        v_status VARCHAR2(10);
     BEGIN
-        -- 检查是否启用自动清理
-        v_auto_cleanup := get_config_value('AUTO_CLEANUP_ENABLED');
+        -- 启用了自动清理或传入了自动批准参数时批准并清理所有候选
+        v_auto_approve := p_auto_approve OR NVL(get_config_value('AUTO_CLEANUP_ENABLED'), 'FALSE') = 'TRUE';
+        IF p_run_id IS NOT NULL THEN
+            attach_run(p_run_id);
+        ELSE
+            open_run(v_auto_approve);
+        END IF;
+        -- 客户端收集完统计信息后记录的检查点属于本次运行，不算继续
+        IF phase_no(g_last_phase) > CASE WHEN p_collect_stats THEN 0 ELSE phase_no('COLLECT_STATS') END THEN
+            log_operation('RUN_CYCLE', 'DATABASE', NULL, NULL, 'RESUMED', 
+                          '继续第' || g_run_id || '号清理周期，跳过' || g_last_phase || '及之前的阶段');
+        END IF;
         
-        -- 收集统计信息
-        collect_statistics;
+        -- 收集统计信息，前后各采样一次，收集本身造成的读取不算访问
+        IF NOT phase_done('COLLECT_STATS') THEN
+            IF p_collect_stats THEN
+                sample_segment_access;
+                g_stats_baseline := g_sample_ok;
+                collect_statistics;
+                stats_baseline;
+            END IF;
+            checkpoint('COLLECT_STATS');
+        END IF;
         
         -- 分析并识别垃圾数据
-        analyze_and_identify;
+        IF NOT phase_done('ANALYZE') THEN
+            check_cancel;
+            analyze_and_identify;
+            checkpoint('ANALYZE');
+        END IF;
         
-        -- 如果启用了自动清理或传入了自动批准参数
-        IF v_auto_cleanup = 'TRUE' OR p_auto_approve THEN
+        IF v_auto_approve THEN
             -- 自动批准所有候选
-            FOR r IN (
+            IF NOT phase_done('APPROVE') THEN
+                check_cancel;
+                v_started := SYSTIMESTAMP;
                 SELECT candidate_id
+                BULK COLLECT INTO v_pending_ids
                 FROM cleanup_candidates
-                WHERE status = 'PENDING'
-            ) LOOP
-                approve_candidate(r.candidate_id, 'AUTO_APPROVED');
-            END LOOP;
+                WHERE status = 'PENDING';
+                
+                v_approved := approve_candidates(v_pending_ids, 'AUTO_APPROVED');
+                record_phase('APPROVE', v_started, v_approved);
+                checkpoint('APPROVE');
+            END IF;
             
-            -- 执行清理
-            cleanup_approved_candidates;
+            -- 执行清理，已清理的候选不再是APPROVED状态，继续执行时自然跳过
+            IF NOT phase_done('CLEANUP') THEN
+                check_cancel;
+                v_started := SYSTIMESTAMP;
+                v_saved_before := g_space_saved;
+                cleanup_approved_candidates;
+                record_phase('CLEANUP', v_started, NULL, g_space_saved - v_saved_before);
+                checkpoint('CLEANUP');
+            END IF;
+        END IF;
+        
+        -- 删除过期日志
+        IF NOT phase_done('PURGE_LOG') THEN
+            check_cancel;
+            v_started := SYSTIMESTAMP;
+            purge_cleanup_log;
+            record_phase('PURGE_LOG', v_started);
+            checkpoint('PURGE_LOG');
         END IF;
         
         -- 生成报告
+        v_started := SYSTIMESTAMP;
         generate_cleanup_report;
+        record_phase('REPORT', v_started);
+        checkpoint('REPORT');
+        
+        record_phase('CYCLE', v_cycle_started, NULL, g_space_saved - v_cycle_saved);
+        close_run('COMPLETED');
+        g_run_id := NULL;
+        g_run_started := NULL;
     EXCEPTION
         WHEN OTHERS THEN
             ROLLBACK;
-            log_operation('RUN_CYCLE', 'DATABASE', NULL, NULL, 'FAILED', SQLERRM);
+            v_status := CASE SQLCODE WHEN c_cancelled THEN 'CANCELLED' WHEN c_window_closed THEN 'PAUSED' 
+                                     ELSE 'FAILED' END;
+            log_operation('RUN_CYCLE', 'DATABASE', NULL, NULL, v_status, SQLERRM);
+            flush_log_after_error;
+            IF g_run_id IS NOT NULL THEN
+                record_phase('CYCLE', v_cycle_started, NULL, g_space_saved - v_cycle_saved, v_status);
+                close_run(v_status, SQLERRM);
+            END IF;
+            g_run_id := NULL;
+            g_run_started := NULL;
             RAISE;
     END run_cleanup_cycle;
     
+    -- 打开(或继续)清理周期并返回周期编号，不在本会话中保留周期状态，但保留清理周期锁
+    -- p_auto_approve为'Y'时与自动批准的周期匹配，AUTO_CLEANUP_ENABLED为TRUE时总是自动批准
+    FUNCTION open_cycle(p_auto_approve IN VARCHAR2) RETURN NUMBER IS
+        v_run_id NUMBER;
+    BEGIN
+        open_run(UPPER(p_auto_approve) = 'Y' OR NVL(get_config_value('AUTO_CLEANUP_ENABLED'), 'FALSE') = 'TRUE');
+        -- 客户端随后收集统计信息，先采样一次，checkpoint_phase记录COLLECT_STATS时再吸收收集造成的读取
+        IF g_last_phase IS NULL THEN
+            sample_segment_access;
+            g_stats_baseline := g_sample_ok;
+            flush_log;
+        ELSE
+            g_stats_baseline := FALSE;
+        END IF;
+        v_run_id := g_run_id;
+        g_run_id := NULL;
+        g_run_started := NULL;
+        g_last_phase := NULL;
+        RETURN v_run_id;
+    END open_cycle;
+    
+    -- 为指定周期记录检查点，已记录了更靠后的阶段时不变
+    PROCEDURE checkpoint_phase(p_run_id IN NUMBER, p_phase IN VARCHAR2) IS
+        PRAGMA AUTONOMOUS_TRANSACTION;
+        v_last_phase VARCHAR2(30);
+    BEGIN
+        IF phase_no(p_phase) = 0 THEN
+            RAISE_APPLICATION_ERROR(-20031, '未知的清理周期阶段: ' || p_phase);
+        END IF;
+        SELECT last_phase INTO v_last_phase
+        FROM cleanup_run
+        WHERE run_id = p_run_id
+        FOR UPDATE;
+        IF phase_no(v_last_phase) < phase_no(p_phase) THEN
+            UPDATE cleanup_run
+            SET last_phase = p_phase,
+                updated_time = SYSTIMESTAMP
+            WHERE run_id = p_run_id;
+        END IF;
+        COMMIT;
+        IF p_phase = 'COLLECT_STATS' THEN
+            stats_baseline;
+            flush_log;
+        END IF;
+    EXCEPTION
+        WHEN NO_DATA_FOUND THEN
+            ROLLBACK;
+            RAISE_APPLICATION_ERROR(-20032, '清理周期不存在: ' || p_run_id);
+    END checkpoint_phase;
+    
+    -- 请求取消正在运行的清理周期
+    -- 以自治事务提交取消标记，运行中的周期在下一个阶段、下一个候选或下一张统计表之前停止；
+    -- 没有匹配的运行中周期时抛出c_no_running_cycle，调用方据此得知取消没有生效
+    PROCEDURE request_cancel(p_run_id IN NUMBER DEFAULT NULL) IS
+        PRAGMA AUTONOMOUS_TRANSACTION;
+        v_count NUMBER;
+    BEGIN
+        UPDATE cleanup_run
+        SET cancel_requested = 'Y',
+            updated_time = SYSTIMESTAMP
+        WHERE status = 'RUNNING'
+        AND (p_run_id IS NULL OR run_id = p_run_id);
+        v_count := SQL%ROWCOUNT;
+        COMMIT;
+        IF v_count = 0 THEN
+            RAISE_APPLICATION_ERROR(c_no_running_cycle, '没有正在运行的' || 
+                                    CASE WHEN p_run_id IS NOT NULL THEN '第' || p_run_id || '号' END || '清理周期');
+        END IF;
+    END request_cancel;
+    
+    -- 星期缩写(SUN..SAT)在一周中的序号1..7，无法识别时返回0
+    FUNCTION day_no(p_day IN VARCHAR2) RETURN NUMBER IS
+        v_day VARCHAR2(10) := UPPER(TRIM(p_day));
+        v_pos NUMBER;
+    BEGIN
+        IF LENGTH(v_day) <> 3 THEN
+            RETURN 0;
+        END IF;
+        v_pos := INSTR('SUNMONTUEWEDTHUFRISAT', v_day);
+        RETURN CASE WHEN v_pos > 0 AND MOD(v_pos - 1, 3) = 0 THEN (v_pos + 2) / 3 ELSE 0 END;
+    END day_no;
+    
+    -- 日期列表是否包含p_day这一天，列表为*或逗号分隔的星期和星期范围，如SUN、MON-FRI、SAT,SUN、FRI-MON
+    FUNCTION day_matches(p_days IN VARCHAR2, p_day IN DATE) RETURN BOOLEAN IS
+        v_day NUMBER := day_no(TO_CHAR(p_day, 'DY', 'NLS_DATE_LANGUAGE=AMERICAN'));
+        v_item VARCHAR2(100);
+        v_from NUMBER;
+        v_to NUMBER;
+    BEGIN
+        IF TRIM(p_days) = '*' THEN
+            RETURN TRUE;
+        END IF;
+        FOR i IN 1..REGEXP_COUNT(p_days, '[^,]+') LOOP
+            v_item := TRIM(REGEXP_SUBSTR(p_days, '[^,]+', 1, i));
+            v_from := day_no(REGEXP_SUBSTR(v_item, '[^-]+', 1, 1));
+            v_to := CASE WHEN INSTR(v_item, '-') > 0 THEN day_no(REGEXP_SUBSTR(v_item, '[^-]+', 1, 2)) ELSE v_from END;
+            IF v_from = 0 OR v_to = 0 THEN
+                RAISE_APPLICATION_ERROR(-20034, '无效的维护窗口日期: ' || v_item);
+            END IF;
+            IF (v_from <= v_to AND v_day BETWEEN v_from AND v_to)
+               OR (v_from > v_to AND (v_day >= v_from OR v_day <= v_to)) THEN
+                RETURN TRUE;
+            END IF;
+        END LOOP;
+        RETURN FALSE;
+    END day_matches;
+    
+    -- 当前时间所在维护窗口的结束时间，不在任何窗口内时返回NULL
+    -- 每个窗口为"日期 HH24:MI-HH24:MI"，结束时间不晚于开始时间的窗口跨过午夜，日期指窗口开始的那一天
+    FUNCTION current_window_end(p_windows IN VARCHAR2) RETURN DATE IS
+        v_now DATE := SYSDATE;
+        v_entry VARCHAR2(200);
+        v_start NUMBER;
+        v_end NUMBER;
+        v_day DATE;
+        v_to DATE;
+    BEGIN
+        FOR i IN 1..REGEXP_COUNT(p_windows, '[^;]+') LOOP
+            v_entry := TRIM(REGEXP_SUBSTR(p_windows, '[^;]+', 1, i));
+            CONTINUE WHEN v_entry IS NULL;
+            IF NOT REGEXP_LIKE(v_entry, '^[^ ]+ +[0-9]{1,2}:[0-9]{2}-[0-9]{1,2}:[0-9]{2}$') THEN
+                RAISE_APPLICATION_ERROR(-20034, '无效的维护窗口: ' || v_entry);
+            END IF;
+            v_start := TO_NUMBER(REGEXP_SUBSTR(v_entry, '([0-9]+):([0-9]+)-', 1, 1, NULL, 1)) * 60 + 
+                       TO_NUMBER(REGEXP_SUBSTR(v_entry, '([0-9]+):([0-9]+)-', 1, 1, NULL, 2));
+            v_end := TO_NUMBER(REGEXP_SUBSTR(v_entry, '-([0-9]+):([0-9]+)$', 1, 1, NULL, 1)) * 60 + 
+                     TO_NUMBER(REGEXP_SUBSTR(v_entry, '-([0-9]+):([0-9]+)$', 1, 1, NULL, 2));
+            -- 跨午夜的窗口可能从前一天开始
+            FOR v_offset IN 0..1 LOOP
+                v_day := TRUNC(v_now) - v_offset;
+                v_to := v_day + v_end / 1440 + CASE WHEN v_end <= v_start THEN 1 ELSE 0 END;
+                IF v_now >= v_day + v_start / 1440 AND v_now < v_to 
+                   AND day_matches(REGEXP_SUBSTR(v_entry, '^[^ ]+'), v_day) THEN
+                    RETURN v_to;
+                END IF;
+            END LOOP;
+        END LOOP;
+        RETURN NULL;
+    END current_window_end;
+    
+    -- 调度作业入口
+    -- 不在维护窗口内、另一个会话持有清理周期锁、或没有可继续的周期且距上一个完成的周期不足SCHEDULE_CYCLE_HOURS时直接返回。
+    -- 没有DBMS_LOCK的执行权限时，以c_busy_minutes内有更新的RUNNING周期判断另一个会话正在运行。
+    -- 周期在窗口结束时停在下一个检查点并记为PAUSED，预计在窗口内完成不了的候选不再开始；
+    -- 作业按较短的间隔运行，下一个窗口内的运行从检查点继续
+    PROCEDURE run_scheduled_cycle IS
+        v_windows VARCHAR2(4000) := get_config_value('SCHEDULE_WINDOWS');
+        v_cycle_hours NUMBER := NVL(TO_NUMBER(get_config_value('SCHEDULE_CYCLE_HOURS')), 168);
+        v_resume_hours NUMBER := NVL(TO_NUMBER(get_config_value('CYCLE_RESUME_HOURS')), 24);
+        v_count NUMBER := 0;
+        v_lock VARCHAR2(20);
+    BEGIN
+        g_window_end := NULL;
+        IF TRIM(v_windows) IS NOT NULL THEN
+            g_window_end := current_window_end(v_windows);
+            IF g_window_end IS NULL THEN
+                RETURN;
+            END IF;
+        END IF;
+        
+        v_lock := acquire_cycle_lock;
+        IF v_lock = 'BUSY' THEN
+            g_window_end := NULL;
+            RETURN;
+        ELSIF v_lock = 'UNAVAILABLE' THEN
+            SELECT COUNT(*) INTO v_count
+            FROM cleanup_run
+            WHERE status = 'RUNNING'
+            AND updated_time > SYSTIMESTAMP - NUMTODSINTERVAL(c_busy_minutes, 'MINUTE');
+        END IF;
+        IF v_count = 0 THEN
+            SELECT COUNT(*) INTO v_count
+            FROM cleanup_run
+            WHERE status IN ('RUNNING', 'FAILED', 'CANCELLED', 'PAUSED')
+            AND (status = 'PAUSED' 
+                 OR (v_resume_hours > 0 AND updated_time > SYSTIMESTAMP - NUMTODSINTERVAL(v_resume_hours, 'HOUR')));
+            IF v_count = 0 THEN
+                SELECT COUNT(*) INTO v_count
+                FROM cleanup_run
+                WHERE status = 'COMPLETED'
+                AND started_time > SYSTIMESTAMP - NUMTODSINTERVAL(v_cycle_hours, 'HOUR');
+            ELSE
+                v_count := 0;
+            END IF;
+        END IF;
+        IF v_count > 0 THEN
+            g_window_end := NULL;
+            release_cycle_lock;
+            RETURN;
+        END IF;
+        
+        run_cleanup_cycle;
+        g_window_end := NULL;
+    EXCEPTION
+        WHEN OTHERS THEN
+            g_window_end := NULL;
+            release_cycle_lock;
+            -- 窗口结束或被取消时周期已记录检查点，作业本身不算失败
+            IF SQLCODE NOT IN (c_window_closed, c_cancelled) THEN
+                RAISE;
+            END IF;
+    END run_scheduled_cycle;
+    
 END db_cleanup;
 /
 
 -- 创建调度作业
+-- 作业每15分钟运行一次，由run_scheduled_cycle判断是否在SCHEDULE_WINDOWS的维护窗口内。
+-- 限流等待需要把DBMS_LOCK的执行权限、按负载暂停需要把v_$sysmetric和v_$parameter的查询权限直接授予包的属主
 BEGIN
     DBMS_SCHEDULER.CREATE_JOB (
         job_name        => 'DB_CLEANUP_JOB',
         job_type        => 'STORED_PROCEDURE',
-        job_action      => 'db_cleanup.run_cleanup_cycle',
+        job_action      => 'db_cleanup.run_scheduled_cycle',
         start_date      => SYSTIMESTAMP,
-        repeat_interval => 'FREQ=WEEKLY; BYDAY=SUN; BYHOUR=2; BYMINUTE=0; BYSECOND=0',
+        repeat_interval => 'FREQ=MINUTELY; INTERVAL=15',
         enabled         => FALSE,
         comments        => 'Oracle数据库垃圾数据自动清理作业'
     );
 END;
 /
 
+-- 创建段访问采样作业
+-- 每小时采样一次各表的读写，识别长期没有读写的表以此为依据，需要把gv_$segment_statistics的查询权限直接授予包的属主。
+-- 作业先以禁用状态创建，包的属主能查询gv$segment_statistics时才启用；否则在日志中记录原因，授权后手动启用：
+-- EXEC DBMS_SCHEDULER.ENABLE('DB_CLEANUP_SAMPLER_JOB')
+BEGIN
+    DBMS_SCHEDULER.CREATE_JOB (
+        job_name        => 'DB_CLEANUP_SAMPLER_JOB',
+        job_type        => 'PLSQL_BLOCK',
+        job_action      => 'BEGIN db_cleanup.sample_segment_access; db_cleanup.flush_log; END;',
+        start_date      => SYSTIMESTAMP,
+        repeat_interval => 'FREQ=HOURLY; INTERVAL=1',
+        enabled         => FALSE,
+        comments        => 'Oracle数据库垃圾数据清理的段访问采样作业'
+    );
+    IF db_cleanup.check_segment_access THEN
+        DBMS_SCHEDULER.ENABLE('DB_CLEANUP_SAMPLER_JOB');
+    ELSE
+        DBMS_OUTPUT.PUT_LINE('包的属主无法查询gv$segment_statistics，DB_CLEANUP_SAMPLER_JOB未启用，原因见cleanup_log');
+    END IF;
+END;
+/
+
 -- 创建用于手动运行清理的存储过程
 CREATE OR REPLACE PROCEDURE run_db_cleanup(
-    p_auto_approve IN VARCHAR2 DEFAULT 'N'
+    p_auto_approve IN VARCHAR2 DEFAULT 'N',
+    p_collect_stats IN VARCHAR2 DEFAULT 'Y',
+    p_run_id IN NUMBER DEFAULT NULL
 ) AS
 BEGIN
-    IF UPPER(p_auto_approve) = 'Y' THEN
-        db_cleanup.run_cleanup_cycle(TRUE);
-    ELSE
-        db_cleanup.run_cleanup_cycle(FALSE);
-    END IF;
+    db_cleanup.run_cleanup_cycle(UPPER(p_auto_approve) = 'Y', NVL(UPPER(p_collect_stats), 'Y') = 'Y', p_run_id);
+END;
+/
+
+-- 创建用于取消正在运行的清理周期的存储过程
+CREATE OR REPLACE PROCEDURE cancel_db_cleanup AS
+BEGIN
+    db_cleanup.request_cancel;
+    DBMS_OUTPUT.PUT_LINE('已请求取消清理周期，周期在下一个检查点停止');
 END;
 /
 
@@ -925,6 +3108,26 @@ BEGIN
 END;
 /
 
+-- 创建用于批量批准清理候选的存储过程
+CREATE OR REPLACE PROCEDURE approve_cleanup_candidates(
+    p_candidate_ids IN cleanup_id_list,
+    p_count OUT NUMBER
+) AS
+BEGIN
+    p_count := db_cleanup.approve_candidates(p_candidate_ids, USER);
+END;
+/
+
+-- 创建用于批量拒绝清理候选的存储过程
+CREATE OR REPLACE PROCEDURE reject_cleanup_candidates(
+    p_candidate_ids IN cleanup_id_list,
+    p_count OUT NUMBER
+) AS
+BEGIN
+    p_count := db_cleanup.reject_candidates(p_candidate_ids, USER);
+END;
+/
+
 -- 创建用于执行已批准清理的存储过程
 CREATE OR REPLACE PROCEDURE execute_approved_cleanup AS
 BEGIN
@@ -959,12 +3162,17 @@ PROMPT
 PROMPT Oracle数据库垃圾数据自动化清理框架已安装完成
 PROMPT
 PROMPT 可用的存储过程:
-PROMPT 1. run_db_cleanup(p_auto_approve) - 运行完整的清理周期
+PROMPT 1. run_db_cleanup(p_auto_approve, p_collect_stats, p_run_id) - 运行完整的清理周期，p_run_id继续open_cycle打开的周期
 PROMPT 2. show_cleanup_report(p_days_back) - 显示清理报告
 PROMPT 3. show_cleanup_candidates - 显示待清理的候选
 PROMPT 4. approve_cleanup_candidate(p_candidate_id) - 批准清理候选
 PROMPT 5. reject_cleanup_candidate(p_candidate_id) - 拒绝清理候选
 PROMPT 6. execute_approved_cleanup - 执行已批准的清理操作
+PROMPT 7. approve_cleanup_candidates(p_candidate_ids, p_count) - 批量批准清理候选
+PROMPT 8. reject_cleanup_candidates(p_candidate_ids, p_count) - 批量拒绝清理候选
+PROMPT 9. db_cleanup.purge_cleanup_log - 删除超过LOG_RETENTION_DAYS的日志分区
+PROMPT 10. cancel_db_cleanup - 取消正在运行的清理周期，下次运行从检查点继续，没有运行中的周期时报ORA-20036
+PROMPT 11. db_cleanup.run_scheduled_cycle - 调度作业入口，只在维护窗口内运行并按配置限流
 PROMPT
 PROMPT 示例:
 PROMPT EXEC run_db_cleanup('N'); -- 运行清理周期但不自动批准
@@ -972,4 +3180,6 @@ PROMPT EXEC show_cleanup_candidates; -- 查看待清理候选
 PROMPT EXEC approve_cleanup_candidate(1); -- 批准ID为1的候选
 PROMPT EXEC execute_approved_cleanup; -- 执行已批准的清理
 PROMPT EXEC show_cleanup_report(30); -- 显示最近30天的清理报告
+PROMPT SELECT line_text FROM TABLE(db_cleanup.cleanup_report(30)); -- 以查询方式读取报告
+PROMPT SELECT * FROM cleanup_run_phase WHERE run_id = (SELECT MAX(run_id) FROM cleanup_run_phase); -- 最近一次清理周期各阶段的耗时
 PROMPT
\ No newline at end of file
@@ -1,6 +1,8 @@
 @echo off
 REM Oracle数据库垃圾数据清理工具启动脚本
 REM 用于在Windows环境下启动Java应用程序
+REM 用法: start_cleanup_tool.bat            启动图形界面
+REM       start_cleanup_tool.bat cli <参数>  以无界面方式运行命令行工具
 
 REM 设置环境变量
 if "%JAVA_HOME%"=="" set JAVA_HOME=C:\Program Files\Java\jdk1.8.0_281
@@ -30,7 +32,7 @@ if not exist "%ORACLE_HOME%\jdbc\lib\ojdbc8.jar" (
 
 REM 编译Java程序
 echo 编译Java程序...
-"%JAVA_HOME%\bin\javac" -cp "%CLASSPATH%" OracleDataCleanup.java
+"%JAVA_HOME%\bin\javac" -encoding UTF-8 -cp "%CLASSPATH%" -d . *.java
 
 if %ERRORLEVEL% neq 0 (
     echo 编译失败，请检查Java环境和代码。
@@ -38,6 +40,12 @@ if %ERRORLEVEL% neq 0 (
     exit /b 1
 )
 
+REM 命令行模式，不加载AWT/Swing
+if /i "%1"=="cli" (
+    "%JAVA_HOME%\bin\java" -Djava.awt.headless=true -cp "%CLASSPATH%" oracle.data.cleanup.CleanupCli %2 %3 %4 %5 %6 %7 %8 %9
+    exit /b %ERRORLEVEL%
+)
+
 REM 运行Java程序
 echo 启动Oracle数据库垃圾数据清理工具...
 "%JAVA_HOME%\bin\java" -cp "%CLASSPATH%" oracle.data.cleanup.OracleDataCleanup
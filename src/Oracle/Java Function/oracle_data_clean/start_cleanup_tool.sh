@@ -2,6 +2,8 @@
 
 # Oracle数据库垃圾数据清理工具启动脚本
 # 用于在Linux/macOS环境下启动Java应用程序
+# 用法: ./start_cleanup_tool.sh            启动图形界面
+#       ./start_cleanup_tool.sh cli <参数>  以无界面方式运行命令行工具
 
 # 设置环境变量
 JAVA_HOME=${JAVA_HOME:-"/usr/lib/jvm/java-8-oracle"}
@@ -29,13 +31,19 @@ fi
 
 # 编译Java程序
 echo "编译Java程序..."
-"$JAVA_HOME/bin/javac" -cp "$CLASSPATH" OracleDataCleanup.java
+"$JAVA_HOME/bin/javac" -encoding UTF-8 -cp "$CLASSPATH" -d . *.java
 
 if [ $? -ne 0 ]; then
     echo "编译失败，请检查Java环境和代码。"
     exit 1
 fi
 
+# 命令行模式，不加载AWT/Swing
+if [ "$1" = "cli" ]; then
+    shift
+    exec "$JAVA_HOME/bin/java" -Djava.awt.headless=true -cp "$CLASSPATH" oracle.data.cleanup.CleanupCli "$@"
+fi
+
 # 运行Java程序
 echo "启动Oracle数据库垃圾数据清理工具..."
 "$JAVA_HOME/bin/java" -cp "$CLASSPATH" oracle.data.cleanup.OracleDataCleanup
\ No newline at end of file